@@ -0,0 +1,25 @@
+package com.chatbi.config;
+
+import com.chatbi.service.DataSourceRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 目标库连接池状态，通过 /actuator/datasourcepools 暴露
+ */
+@Component
+@Endpoint(id = "datasourcepools")
+public class DataSourcePoolsEndpoint {
+
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+
+    @ReadOperation
+    public Map<String, Object> pools() {
+        return dataSourceRegistry.getPoolStats();
+    }
+}
@@ -7,15 +7,24 @@ import com.chatbi.service.ChatService;
 import com.chatbi.service.ChatMessageService;
 import com.chatbi.service.ChatSessionService;
 import com.chatbi.service.DatabaseAdminService;
+import com.chatbi.service.DatabaseConnectionGroupService;
 import com.chatbi.service.DatabaseManager;
+import com.chatbi.service.FederatedJoinExecutor;
+import com.chatbi.service.QueryExportService;
+import com.chatbi.service.ResultCursorService;
 import com.chatbi.service.SchemaMetadataBuilder;
+import com.chatbi.service.ShardedQueryExecutor;
+import com.chatbi.service.SqlText;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -46,6 +55,21 @@ public class ChatController {
     @Autowired
     private ChatMessageService chatMessageService;
 
+    @Autowired
+    private ResultCursorService resultCursorService;
+
+    @Autowired
+    private QueryExportService queryExportService;
+
+    @Autowired
+    private DatabaseConnectionGroupService databaseConnectionGroupService;
+
+    @Autowired
+    private ShardedQueryExecutor shardedQueryExecutor;
+
+    @Autowired
+    private FederatedJoinExecutor federatedJoinExecutor;
+
     @GetMapping("/")
     public ResponseEntity<Map<String, Object>> root() {
         return ResponseEntity.ok(Map.of(
@@ -121,6 +145,9 @@ public class ChatController {
             // Save user message
             chatMessageService.appendUserMessage(session, request.getMessage());
 
+            // Keep in-memory history keyed by session id, the id the client sends back on execute
+            request.setConversationId(String.valueOf(session.getId()));
+
             // Delegate to existing chat pipeline to get response content
             ChatResponse response = chatService.processChatMessage(request);
 
@@ -145,6 +172,8 @@ public class ChatController {
                     response.getExecutionResult(),
                     response.getDebugOllama()
             );
+            finalResponse.setParameterizedSql(response.getParameterizedSql());
+            finalResponse.setCostEstimate(response.getCostEstimate());
 
             return ResponseEntity.ok(finalResponse);
         } catch (Exception e) {
@@ -155,49 +184,205 @@ public class ChatController {
 
     @PostMapping("/execute-sql")
     @EnableAuth  // 示例：此接口需要token验证
-    public ResponseEntity<SQLExecutionResponse> executeSql(@Valid @RequestBody SQLExecutionRequest request) {
+    public ResponseEntity<?> executeSql(
+            @RequestHeader(value = "Accept", required = false) String accept,
+            @Valid @RequestBody SQLExecutionRequest request) {
+        if (acceptsArrow(accept)) {
+            return executeSqlArrow(request);
+        }
         try {
             // Get database connection
-            DatabaseConnection selectedConnection = null;
-            if (request.getDatabaseConnectionId() != null && !request.getDatabaseConnectionId().trim().isEmpty()) {
-                selectedConnection = databaseAdminService.getConnection(request.getDatabaseConnectionId())
-                        .orElse(null);
-                if (selectedConnection == null) {
-                    logger.warn("Database connection not found: {}", request.getDatabaseConnectionId());
+            DatabaseConnection selectedConnection = resolveConnection(request.getDatabaseConnectionId());
+
+            QueryOptions options = QueryOptions.defaults();
+            if (request.getResultFormat() != null) {
+                options.setResultFormat(request.getResultFormat());
+            }
+            options.setTimeoutSeconds(request.getTimeoutSeconds());
+            options.setCostGate(true);
+            String sql = resolveParameters(request, options);
+            if (request.getPageSize() == null
+                    && (request.getParameters() == null || request.getParameters().isEmpty())
+                    && request.getConversationId() != null && !request.getConversationId().trim().isEmpty()) {
+                // Only the generated statement has a semantic form the table cache and parallel executor can use
+                SemanticSQL generated =
+                        chatService.findSemanticSql(request.getConversationId(), request.getSqlQuery()).orElse(null);
+                options.setSemanticSql(generated);
+                if (Boolean.TRUE.equals(request.getParallel())) {
+                    options.setParallelAggregate(generated);
                 }
             }
 
-            // Execute SQL query
-            SQLExecutionResponse result;
-            if (selectedConnection != null) {
-                result = databaseManager.executeQuery(request.getSqlQuery(), selectedConnection);
+            // Execute SQL query once; the handle feeds the response, history and persisted message
+            QueryExecution execution;
+            if (request.getFederatedConnectionIds() != null && request.getFederatedConnectionIds().size() > 1) {
+                List<DatabaseConnection> connections = new ArrayList<>();
+                for (String connectionId : request.getFederatedConnectionIds()) {
+                    DatabaseConnection connection = resolveConnection(connectionId);
+                    if (connection == null) {
+                        return ResponseEntity.badRequest().body(Map.of("error", "数据库连接不存在: " + connectionId));
+                    }
+                    connections.add(connection);
+                }
+                // The join is planned from the semantic form, never from SQL text
+                SemanticSQL semanticSQL = request.getConversationId() != null
+                        && !request.getConversationId().trim().isEmpty()
+                        ? chatService.findSemanticSql(request.getConversationId(), request.getSqlQuery()).orElse(null)
+                        : null;
+                if (semanticSQL == null) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "跨库联合查询只能执行对话生成的SQL"));
+                }
+                execution = QueryExecution.start(sql, connections.get(0).getId());
+                execution.complete(federatedJoinExecutor.execute(semanticSQL, connections, options));
+            } else if (request.getConnectionGroupId() != null && !request.getConnectionGroupId().trim().isEmpty()) {
+                Optional<DatabaseConnectionGroup> group =
+                        databaseConnectionGroupService.getGroup(request.getConnectionGroupId());
+                if (group.isEmpty()) {
+                    return ResponseEntity.badRequest()
+                            .body(Map.of("error", "连接组不存在: " + request.getConnectionGroupId()));
+                }
+                SemanticSQL semanticSQL = request.getConversationId() != null
+                        && !request.getConversationId().trim().isEmpty()
+                        ? chatService.findSemanticSql(request.getConversationId(), request.getSqlQuery()).orElse(null)
+                        : null;
+                execution = QueryExecution.start(sql, group.get().getId());
+                execution.complete(shardedQueryExecutor.execute(sql, group.get(), semanticSQL, options));
+            } else if (request.getPageSize() != null && SqlText.isSelect(sql)) {
+                execution = QueryExecution.start(sql,
+                        selectedConnection != null ? selectedConnection.getId() : null);
+                execution.complete(resultCursorService.openCursor(
+                        sql, selectedConnection, options, request.getPageSize()));
             } else {
-                result = databaseManager.executeQuery(request.getSqlQuery());
+                execution = databaseManager.execute(sql, selectedConnection, options);
             }
 
             // Update conversation history if conversation ID is provided
             if (request.getConversationId() != null && !request.getConversationId().trim().isEmpty()) {
-                chatService.executeSqlAndUpdateResponse(request.getConversationId(), request.getSqlQuery());
+                chatService.recordExecution(request.getConversationId(), execution);
                 try {
                     Long sid = Long.parseLong(request.getConversationId());
-                    chatSessionService.getById(sid).ifPresent(s -> {
-                        java.util.Map<String, Object> resultMap = new java.util.HashMap<>();
-                        resultMap.put("success", result.isSuccess());
-                        resultMap.put("data", result.getData());
-                        resultMap.put("error", result.getError());
-                        resultMap.put("row_count", result.getRowCount());
-                        chatMessageService.appendExecutionResultToLastAssistant(s, resultMap);
-                    });
+                    chatSessionService.getById(sid).ifPresent(s ->
+                            chatMessageService.appendExecutionResultToLastAssistant(s, execution.toResultMap()));
                 } catch (NumberFormatException ignored) {}
             }
 
-            return ResponseEntity.ok(result);
+            return ResponseEntity.ok()
+                    .header("X-Execution-Id", execution.getId())
+                    .body(execution.getResult());
         } catch (Exception e) {
             logger.error("Error executing SQL: {}", e.getMessage(), e);
             throw new RuntimeException("执行SQL时发生错误: " + e.getMessage());
         }
     }
 
+    @PostMapping(value = "/execute-sql/stream",
+            produces = {"application/x-ndjson", QueryExportService.ARROW_STREAM_MEDIA_TYPE})
+    @EnableAuth
+    public ResponseEntity<StreamingResponseBody> executeSqlStream(
+            @RequestHeader(value = "Accept", required = false) String accept,
+            @Valid @RequestBody SQLExecutionRequest request) {
+        if (acceptsArrow(accept)) {
+            return executeSqlArrow(request);
+        }
+        DatabaseConnection selectedConnection = resolveConnection(request.getDatabaseConnectionId());
+
+        QueryOptions options = QueryOptions.defaults();
+        options.setTimeoutSeconds(request.getTimeoutSeconds());
+        String sql = resolveParameters(request, options);
+
+        StreamingResponseBody body = out -> {
+            if (selectedConnection != null) {
+                databaseManager.streamQuery(sql, selectedConnection, options, out);
+            } else {
+                databaseManager.streamQuery(sql, options, out);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    private static boolean acceptsArrow(String accept) {
+        return accept != null && accept.contains(QueryExportService.ARROW_STREAM_MEDIA_TYPE);
+    }
+
+    /**
+     * 请求头 Accept 明确要求 application/vnd.apache.arrow.stream 时以 Arrow IPC 记录批返回SELECT结果，
+     * 供图表直接按列读取；不经过结果缓存，也不写入会话历史
+     */
+    private ResponseEntity<StreamingResponseBody> executeSqlArrow(SQLExecutionRequest request) {
+        DatabaseConnection selectedConnection = resolveConnection(request.getDatabaseConnectionId());
+
+        QueryOptions options = QueryOptions.defaults();
+        options.setTimeoutSeconds(request.getTimeoutSeconds());
+        options.setCostGate(true);
+        String sql = resolveParameters(request, options);
+        if (!SqlText.isSelect(sql)) {
+            throw new RuntimeException("执行SQL时发生错误: Arrow 格式只支持SELECT查询");
+        }
+
+        StreamingResponseBody body = out -> {
+            try {
+                queryExportService.export(sql, selectedConnection, options, QueryExportService.FORMAT_ARROW, out);
+            } catch (Exception e) {
+                logger.error("Error executing SQL as Arrow: {}", e.getMessage(), e);
+                throw e;
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(QueryExportService.ARROW_STREAM_MEDIA_TYPE))
+                .body(body);
+    }
+
+    @GetMapping("/execute-sql/cursor/{cursorId}")
+    @EnableAuth
+    public ResponseEntity<SQLExecutionResponse> fetchCursorPage(@PathVariable String cursorId) {
+        return resultCursorService.fetchNext(cursorId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(404)
+                        .body(new SQLExecutionResponse(false, null, "游标不存在或已过期", 0)));
+    }
+
+    @DeleteMapping("/execute-sql/cursor/{cursorId}")
+    @EnableAuth
+    public ResponseEntity<Map<String, String>> closeCursor(@PathVariable String cursorId) {
+        if (!resultCursorService.close(cursorId)) {
+            return ResponseEntity.status(404).body(Map.of("error", "游标不存在或已过期"));
+        }
+        return ResponseEntity.ok(Map.of("message", "游标已关闭"));
+    }
+
+    /**
+     * 确定实际执行的SQL：请求显式带参数时按占位符语句执行；
+     * 否则若SQL就是该会话最近生成的语句，换成其参数化形式，以便复用服务端预编译语句
+     */
+    private String resolveParameters(SQLExecutionRequest request, QueryOptions options) {
+        if (request.getParameters() != null && !request.getParameters().isEmpty()) {
+            options.setParameters(request.getParameters());
+            return request.getSqlQuery();
+        }
+        if (request.getConversationId() != null && !request.getConversationId().trim().isEmpty()) {
+            Optional<ParameterizedSQL> parameterized =
+                    chatService.findParameterizedSql(request.getConversationId(), request.getSqlQuery());
+            if (parameterized.isPresent() && !parameterized.get().getParameters().isEmpty()) {
+                options.setParameters(parameterized.get().getParameters());
+                return parameterized.get().getSql();
+            }
+        }
+        return request.getSqlQuery();
+    }
+
+    private DatabaseConnection resolveConnection(String databaseConnectionId) {
+        if (databaseConnectionId == null || databaseConnectionId.trim().isEmpty()) {
+            return null;
+        }
+        DatabaseConnection connection = databaseAdminService.getConnection(databaseConnectionId).orElse(null);
+        if (connection == null) {
+            logger.warn("Database connection not found: {}", databaseConnectionId);
+        }
+        return connection;
+    }
+
     @GetMapping("/conversation/{conversationId}")
     public ResponseEntity<Map<String, Object>> getConversationHistory(@PathVariable String conversationId) {
         try {
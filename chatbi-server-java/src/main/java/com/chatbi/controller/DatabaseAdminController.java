@@ -2,8 +2,16 @@ package com.chatbi.controller;
 
 import com.chatbi.annotation.EnableAuth;
 import com.chatbi.model.*;
+import com.chatbi.service.CachedTableService;
+import com.chatbi.service.ColumnProfiler;
 import com.chatbi.service.DatabaseAdminService;
+import com.chatbi.service.DatabaseConnectionGroupService;
 import com.chatbi.service.DatabaseConnectionService;
+import com.chatbi.service.DatabaseReplicaService;
+import com.chatbi.service.RollupAdvisor;
+import com.chatbi.service.RollupService;
+import com.chatbi.service.SchemaMetadataBuilder;
+import com.chatbi.service.SchemaWatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,6 +34,30 @@ public class DatabaseAdminController {
     
     @Autowired
     private DatabaseAdminService databaseAdminService;
+    
+    @Autowired
+    private DatabaseReplicaService databaseReplicaService;
+    
+    @Autowired
+    private DatabaseConnectionGroupService databaseConnectionGroupService;
+    
+    @Autowired
+    private CachedTableService cachedTableService;
+    
+    @Autowired
+    private RollupService rollupService;
+    
+    @Autowired
+    private RollupAdvisor rollupAdvisor;
+    
+    @Autowired
+    private SchemaMetadataBuilder schemaMetadataBuilder;
+    
+    @Autowired
+    private SchemaWatcher schemaWatcher;
+    
+    @Autowired
+    private ColumnProfiler columnProfiler;
 
     @GetMapping("/databases")
     public ResponseEntity<List<DatabaseConnection>> getDatabaseConnections() {
@@ -191,7 +223,20 @@ public class DatabaseAdminController {
                 return ResponseEntity.badRequest().body(Map.of("error", "SQL query is required"));
             }
             
-            Map<String, Object> result = databaseAdminService.executeCustomSql(connectionId, sql);
+            Integer timeoutSeconds = null;
+            String timeout = sqlRequest.get("timeout_seconds");
+            if (timeout != null && !timeout.isBlank()) {
+                try {
+                    timeoutSeconds = Integer.valueOf(timeout.trim());
+                } catch (NumberFormatException e) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "timeout_seconds must be a positive integer"));
+                }
+                if (timeoutSeconds <= 0) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "timeout_seconds must be a positive integer"));
+                }
+            }
+            
+            Map<String, Object> result = databaseAdminService.executeCustomSql(connectionId, sql, timeoutSeconds);
             return ResponseEntity.ok(result);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.notFound().build();
@@ -200,4 +245,344 @@ public class DatabaseAdminController {
             throw new RuntimeException("执行自定义SQL时发生错误: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @PostMapping("/databases/{connectionId}/metadata/refresh")
+    public ResponseEntity<Map<String, Object>> refreshMetadata(@PathVariable String connectionId) {
+        try {
+            Optional<DatabaseConnection> connection = databaseConnectionService.getConnection(connectionId);
+            if (connection.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(schemaMetadataBuilder.refreshDatabaseMetadata(connection.get()));
+        } catch (Exception e) {
+            logger.error("Error refreshing metadata: {}", e.getMessage(), e);
+            throw new RuntimeException("刷新表结构元数据时发生错误: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/databases/{connectionId}/schema-version")
+    public ResponseEntity<Map<String, Object>> getSchemaVersion(@PathVariable String connectionId) {
+        try {
+            if (databaseConnectionService.getConnection(connectionId).isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(schemaWatcher.describe(connectionId));
+        } catch (Exception e) {
+            logger.error("Error getting schema version: {}", e.getMessage(), e);
+            throw new RuntimeException("获取表结构版本时发生错误: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/databases/{connectionId}/profiles")
+    public ResponseEntity<List<ColumnProfile>> getColumnProfiles(@PathVariable String connectionId) {
+        try {
+            if (databaseConnectionService.getConnection(connectionId).isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(columnProfiler.getProfiles(connectionId));
+        } catch (Exception e) {
+            logger.error("Error getting column profiles: {}", e.getMessage(), e);
+            throw new RuntimeException("获取字段画像时发生错误: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/databases/{connectionId}/profiles/refresh")
+    public ResponseEntity<Map<String, String>> refreshColumnProfiles(@PathVariable String connectionId) {
+        try {
+            Optional<DatabaseConnection> connection = databaseConnectionService.getConnection(connectionId);
+            if (connection.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            columnProfiler.profileNow(connection.get());
+            return ResponseEntity.accepted().body(Map.of("message", "Column profiling scheduled"));
+        } catch (Exception e) {
+            logger.error("Error scheduling column profiling: {}", e.getMessage(), e);
+            throw new RuntimeException("重新统计字段画像时发生错误: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/databases/{connectionId}/replicas")
+    public ResponseEntity<List<DatabaseReplica>> getReplicas(@PathVariable String connectionId) {
+        try {
+            if (databaseConnectionService.getConnection(connectionId).isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(databaseReplicaService.getReplicas(connectionId));
+        } catch (Exception e) {
+            logger.error("Error getting replicas: {}", e.getMessage(), e);
+            throw new RuntimeException("获取只读副本时发生错误: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/databases/{connectionId}/replicas")
+    public ResponseEntity<DatabaseReplica> createReplica(
+            @PathVariable String connectionId,
+            @Valid @RequestBody DatabaseReplicaCreate replicaData) {
+        try {
+            if (databaseConnectionService.getConnection(connectionId).isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(databaseReplicaService.createReplica(connectionId, replicaData));
+        } catch (Exception e) {
+            logger.error("Error creating replica: {}", e.getMessage(), e);
+            throw new RuntimeException("创建只读副本时发生错误: " + e.getMessage());
+        }
+    }
+
+    @PutMapping("/databases/{connectionId}/replicas/{replicaId}")
+    public ResponseEntity<DatabaseReplica> updateReplica(
+            @PathVariable String connectionId,
+            @PathVariable String replicaId,
+            @Valid @RequestBody DatabaseReplicaUpdate updateData) {
+        try {
+            DatabaseReplica replica = databaseReplicaService.updateReplica(connectionId, replicaId, updateData);
+            if (replica == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(replica);
+        } catch (Exception e) {
+            logger.error("Error updating replica: {}", e.getMessage(), e);
+            throw new RuntimeException("更新只读副本时发生错误: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/databases/{connectionId}/replicas/{replicaId}")
+    public ResponseEntity<Map<String, String>> deleteReplica(
+            @PathVariable String connectionId,
+            @PathVariable String replicaId) {
+        try {
+            if (!databaseReplicaService.deleteReplica(connectionId, replicaId)) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(Map.of("message", "Replica deleted successfully"));
+        } catch (Exception e) {
+            logger.error("Error deleting replica: {}", e.getMessage(), e);
+            throw new RuntimeException("删除只读副本时发生错误: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/databases/{connectionId}/cached-tables")
+    public ResponseEntity<List<CachedTable>> getCachedTables(@PathVariable String connectionId) {
+        try {
+            if (databaseConnectionService.getConnection(connectionId).isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(cachedTableService.getCachedTables(connectionId));
+        } catch (Exception e) {
+            logger.error("Error getting cached tables: {}", e.getMessage(), e);
+            throw new RuntimeException("获取缓存表时发生错误: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/databases/{connectionId}/cached-tables")
+    public ResponseEntity<CachedTable> createCachedTable(
+            @PathVariable String connectionId,
+            @Valid @RequestBody CachedTableCreate cachedTableData) {
+        try {
+            if (databaseConnectionService.getConnection(connectionId).isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(cachedTableService.createCachedTable(connectionId, cachedTableData));
+        } catch (Exception e) {
+            logger.error("Error creating cached table: {}", e.getMessage(), e);
+            throw new RuntimeException("创建缓存表时发生错误: " + e.getMessage());
+        }
+    }
+
+    @PutMapping("/databases/{connectionId}/cached-tables/{cachedTableId}")
+    public ResponseEntity<CachedTable> updateCachedTable(
+            @PathVariable String connectionId,
+            @PathVariable String cachedTableId,
+            @Valid @RequestBody CachedTableUpdate updateData) {
+        try {
+            CachedTable cachedTable = cachedTableService.updateCachedTable(connectionId, cachedTableId, updateData);
+            if (cachedTable == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(cachedTable);
+        } catch (Exception e) {
+            logger.error("Error updating cached table: {}", e.getMessage(), e);
+            throw new RuntimeException("更新缓存表时发生错误: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/databases/{connectionId}/cached-tables/{cachedTableId}")
+    public ResponseEntity<Map<String, String>> deleteCachedTable(
+            @PathVariable String connectionId,
+            @PathVariable String cachedTableId) {
+        try {
+            if (!cachedTableService.deleteCachedTable(connectionId, cachedTableId)) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(Map.of("message", "Cached table deleted successfully"));
+        } catch (Exception e) {
+            logger.error("Error deleting cached table: {}", e.getMessage(), e);
+            throw new RuntimeException("删除缓存表时发生错误: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/databases/{connectionId}/rollups")
+    public ResponseEntity<List<RollupTable>> getRollups(@PathVariable String connectionId) {
+        try {
+            if (databaseConnectionService.getConnection(connectionId).isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(rollupService.getRollups(connectionId));
+        } catch (Exception e) {
+            logger.error("Error getting rollups: {}", e.getMessage(), e);
+            throw new RuntimeException("获取汇总表时发生错误: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/databases/{connectionId}/rollups/proposals")
+    public ResponseEntity<List<RollupProposal>> getRollupProposals(
+            @PathVariable String connectionId,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            Optional<DatabaseConnection> connection = databaseConnectionService.getConnection(connectionId);
+            if (connection.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(rollupAdvisor.propose(connection.get(), limit));
+        } catch (Exception e) {
+            logger.error("Error proposing rollups: {}", e.getMessage(), e);
+            throw new RuntimeException("生成汇总表建议时发生错误: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/databases/{connectionId}/rollups")
+    public ResponseEntity<?> createRollup(
+            @PathVariable String connectionId,
+            @Valid @RequestBody RollupTableCreate rollupData) {
+        try {
+            if (databaseConnectionService.getConnection(connectionId).isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(rollupService.createRollup(connectionId, rollupData));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error creating rollup: {}", e.getMessage(), e);
+            throw new RuntimeException("创建汇总表时发生错误: " + e.getMessage());
+        }
+    }
+
+    @PutMapping("/databases/{connectionId}/rollups/{rollupId}")
+    public ResponseEntity<RollupTable> updateRollup(
+            @PathVariable String connectionId,
+            @PathVariable String rollupId,
+            @Valid @RequestBody RollupTableUpdate updateData) {
+        try {
+            RollupTable rollup = rollupService.updateRollup(connectionId, rollupId, updateData);
+            if (rollup == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(rollup);
+        } catch (Exception e) {
+            logger.error("Error updating rollup: {}", e.getMessage(), e);
+            throw new RuntimeException("更新汇总表时发生错误: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/databases/{connectionId}/rollups/{rollupId}/rebuild")
+    public ResponseEntity<RollupTable> rebuildRollup(
+            @PathVariable String connectionId,
+            @PathVariable String rollupId) {
+        try {
+            RollupTable rollup = rollupService.rebuildRollup(connectionId, rollupId);
+            if (rollup == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(rollup);
+        } catch (Exception e) {
+            logger.error("Error rebuilding rollup: {}", e.getMessage(), e);
+            throw new RuntimeException("重建汇总表时发生错误: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/databases/{connectionId}/rollups/{rollupId}")
+    public ResponseEntity<Map<String, String>> deleteRollup(
+            @PathVariable String connectionId,
+            @PathVariable String rollupId) {
+        try {
+            if (!rollupService.deleteRollup(connectionId, rollupId)) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(Map.of("message", "Rollup deleted successfully"));
+        } catch (Exception e) {
+            logger.error("Error deleting rollup: {}", e.getMessage(), e);
+            throw new RuntimeException("删除汇总表时发生错误: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/connection-groups")
+    public ResponseEntity<List<DatabaseConnectionGroup>> getConnectionGroups() {
+        try {
+            return ResponseEntity.ok(databaseConnectionGroupService.getGroups());
+        } catch (Exception e) {
+            logger.error("Error getting connection groups: {}", e.getMessage(), e);
+            throw new RuntimeException("获取分片连接组时发生错误: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/connection-groups/{groupId}")
+    public ResponseEntity<DatabaseConnectionGroup> getConnectionGroup(@PathVariable String groupId) {
+        try {
+            return databaseConnectionGroupService.getGroup(groupId)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (Exception e) {
+            logger.error("Error getting connection group: {}", e.getMessage(), e);
+            throw new RuntimeException("获取分片连接组时发生错误: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/connection-groups")
+    public ResponseEntity<?> createConnectionGroup(@Valid @RequestBody DatabaseConnectionGroupCreate groupData) {
+        try {
+            List<String> missing = databaseConnectionGroupService.findMissingConnections(groupData.getConnectionIds());
+            if (!missing.isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of("error", "数据库连接不存在: " + String.join(", ", missing)));
+            }
+            return ResponseEntity.ok(databaseConnectionGroupService.createGroup(groupData));
+        } catch (Exception e) {
+            logger.error("Error creating connection group: {}", e.getMessage(), e);
+            throw new RuntimeException("创建分片连接组时发生错误: " + e.getMessage());
+        }
+    }
+
+    @PutMapping("/connection-groups/{groupId}")
+    public ResponseEntity<?> updateConnectionGroup(
+            @PathVariable String groupId,
+            @Valid @RequestBody DatabaseConnectionGroupUpdate updateData) {
+        try {
+            if (updateData.getConnectionIds() != null) {
+                List<String> missing = databaseConnectionGroupService.findMissingConnections(updateData.getConnectionIds());
+                if (!missing.isEmpty()) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "数据库连接不存在: " + String.join(", ", missing)));
+                }
+            }
+            DatabaseConnectionGroup group = databaseConnectionGroupService.updateGroup(groupId, updateData);
+            if (group == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(group);
+        } catch (Exception e) {
+            logger.error("Error updating connection group: {}", e.getMessage(), e);
+            throw new RuntimeException("更新分片连接组时发生错误: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/connection-groups/{groupId}")
+    public ResponseEntity<Map<String, String>> deleteConnectionGroup(@PathVariable String groupId) {
+        try {
+            if (!databaseConnectionGroupService.deleteGroup(groupId)) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(Map.of("message", "Connection group deleted successfully"));
+        } catch (Exception e) {
+            logger.error("Error deleting connection group: {}", e.getMessage(), e);
+            throw new RuntimeException("删除分片连接组时发生错误: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.chatbi.controller;
+
+import com.chatbi.annotation.EnableAuth;
+import com.chatbi.interceptor.TokenInterceptor;
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryJob;
+import com.chatbi.model.QueryJobRequest;
+import com.chatbi.model.UserToken;
+import com.chatbi.service.DatabaseAdminService;
+import com.chatbi.service.QueryJobService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.validation.Valid;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+    private static final Logger logger = LoggerFactory.getLogger(JobController.class);
+
+    private static final int MAX_PAGE_SIZE = 5000;
+
+    @Autowired
+    private QueryJobService queryJobService;
+
+    @Autowired
+    private DatabaseAdminService databaseAdminService;
+
+    private String resolveUserId(String loginToken) {
+        UserToken parsed = TokenInterceptor.parseUserTokenFromJson(loginToken);
+        return parsed != null ? parsed.getUserId() : null;
+    }
+
+    /**
+     * 任务只对提交者可见；未携带用户标识提交的任务不做限制
+     */
+    private Optional<QueryJob> findVisibleJob(String jobId, String loginToken) {
+        String userId = resolveUserId(loginToken);
+        return queryJobService.getJob(jobId)
+                .filter(job -> job.getUserId() == null || job.getUserId().equals(userId));
+    }
+
+    @PostMapping
+    @EnableAuth
+    public ResponseEntity<?> submitJob(
+            @RequestHeader(value = "Login-Token", required = false) String loginToken,
+            @Valid @RequestBody QueryJobRequest request) {
+        try {
+            DatabaseConnection connection = null;
+            if (request.getDatabaseConnectionId() != null && !request.getDatabaseConnectionId().trim().isEmpty()) {
+                connection = databaseAdminService.getConnection(request.getDatabaseConnectionId()).orElse(null);
+                if (connection == null) {
+                    return ResponseEntity.status(404).body(Map.of("error", "数据库连接不存在"));
+                }
+            }
+            Long sessionId = null;
+            if (request.getConversationId() != null && !request.getConversationId().trim().isEmpty()) {
+                try {
+                    sessionId = Long.parseLong(request.getConversationId());
+                } catch (NumberFormatException ignored) {}
+            }
+            QueryJob job = queryJobService.submit(request.getSqlQuery(), connection, sessionId,
+                    resolveUserId(loginToken), request.getTimeoutSeconds());
+            return ResponseEntity.accepted().body(job);
+        } catch (Exception e) {
+            logger.error("Error submitting query job: {}", e.getMessage(), e);
+            throw new RuntimeException("提交查询任务时发生错误: " + e.getMessage());
+        }
+    }
+
+    @GetMapping
+    @EnableAuth
+    public ResponseEntity<List<QueryJob>> listJobs(
+            @RequestHeader(value = "Login-Token", required = false) String loginToken,
+            @RequestParam("conversation_id") Long conversationId) {
+        String userId = resolveUserId(loginToken);
+        List<QueryJob> jobs = queryJobService.listBySession(conversationId).stream()
+                .filter(job -> job.getUserId() == null || job.getUserId().equals(userId))
+                .toList();
+        return ResponseEntity.ok(jobs);
+    }
+
+    @GetMapping("/{id}")
+    @EnableAuth
+    public ResponseEntity<?> getJob(
+            @RequestHeader(value = "Login-Token", required = false) String loginToken,
+            @PathVariable String id) {
+        return findVisibleJob(id, loginToken)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(404).body(Map.of("error", "任务不存在")));
+    }
+
+    @GetMapping("/{id}/results")
+    @EnableAuth
+    public ResponseEntity<?> getJobResults(
+            @RequestHeader(value = "Login-Token", required = false) String loginToken,
+            @PathVariable String id,
+            @RequestParam(value = "offset", defaultValue = "0") long offset,
+            @RequestParam(value = "limit", defaultValue = "500") int limit) {
+        Optional<QueryJob> job = findVisibleJob(id, loginToken);
+        if (job.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "任务不存在"));
+        }
+        if (!QueryJob.STATUS_SUCCEEDED.equals(job.get().getStatus())) {
+            return ResponseEntity.status(409).body(Map.of("error", "任务尚未成功完成", "status", job.get().getStatus()));
+        }
+        try {
+            return queryJobService.readResults(id, Math.max(0, offset), Math.min(Math.max(1, limit), MAX_PAGE_SIZE))
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.status(410).body(Map.of("error", "任务结果已过期，请重新执行")));
+        } catch (Exception e) {
+            logger.error("Error reading query job results: {}", e.getMessage(), e);
+            throw new RuntimeException("读取任务结果时发生错误: " + e.getMessage());
+        }
+    }
+
+    @GetMapping(value = "/{id}/events", produces = "text/event-stream")
+    @EnableAuth
+    public ResponseEntity<SseEmitter> subscribeJob(
+            @RequestHeader(value = "Login-Token", required = false) String loginToken,
+            @PathVariable String id) {
+        if (findVisibleJob(id, loginToken).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return queryJobService.subscribe(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    @EnableAuth
+    public ResponseEntity<Map<String, String>> cancelJob(
+            @RequestHeader(value = "Login-Token", required = false) String loginToken,
+            @PathVariable String id) {
+        if (findVisibleJob(id, loginToken).isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "任务不存在"));
+        }
+        if (!queryJobService.cancel(id)) {
+            return ResponseEntity.status(409).body(Map.of("error", "任务已结束"));
+        }
+        return ResponseEntity.ok(Map.of("message", "已发送取消请求"));
+    }
+}
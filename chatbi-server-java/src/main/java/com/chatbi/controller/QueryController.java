@@ -0,0 +1,122 @@
+package com.chatbi.controller;
+
+import com.chatbi.annotation.EnableAuth;
+import com.chatbi.interceptor.TokenInterceptor;
+import com.chatbi.model.ChatMessage;
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.RunningQuery;
+import com.chatbi.model.UserToken;
+import com.chatbi.service.ChatMessageService;
+import com.chatbi.service.DatabaseAdminService;
+import com.chatbi.service.QueryExportService;
+import com.chatbi.service.QueryRegistry;
+import com.chatbi.service.SqlText;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/queries")
+public class QueryController {
+    private static final Logger logger = LoggerFactory.getLogger(QueryController.class);
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    @Autowired
+    private QueryRegistry queryRegistry;
+
+    @Autowired
+    private QueryExportService queryExportService;
+
+    @Autowired
+    private ChatMessageService chatMessageService;
+
+    @Autowired
+    private DatabaseAdminService databaseAdminService;
+
+    @GetMapping
+    @EnableAuth
+    public ResponseEntity<List<RunningQuery>> listQueries() {
+        return ResponseEntity.ok(queryRegistry.list());
+    }
+
+    @DeleteMapping("/{id}")
+    @EnableAuth
+    public ResponseEntity<Map<String, String>> cancelQuery(@PathVariable String id) {
+        if (!queryRegistry.cancel(id)) {
+            return ResponseEntity.status(404).body(Map.of("error", "查询不存在或已结束"));
+        }
+        return ResponseEntity.ok(Map.of("message", "已发送取消请求"));
+    }
+
+    /**
+     * 导出查询结果：SQL取自会话消息（message_id）或直接传入（sql），结果从数据库游标流式写入响应
+     */
+    @GetMapping("/export")
+    @EnableAuth
+    public ResponseEntity<?> export(
+            @RequestHeader(value = "Login-Token", required = false) String loginToken,
+            @RequestParam(value = "format", defaultValue = QueryExportService.FORMAT_CSV) String format,
+            @RequestParam(value = "message_id", required = false) Long messageId,
+            @RequestParam(value = "sql", required = false) String sql,
+            @RequestParam(value = "database_connection_id", required = false) String databaseConnectionId) {
+        String exportFormat = format.trim().toLowerCase();
+        if (!QueryExportService.isSupported(exportFormat)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "不支持的导出格式: " + format));
+        }
+
+        String exportSql = sql;
+        if (messageId != null) {
+            ChatMessage message = chatMessageService.findById(messageId).orElse(null);
+            UserToken user = TokenInterceptor.parseUserTokenFromJson(loginToken);
+            String userId = user != null ? user.getUserId() : null;
+            if (message == null || (userId != null && !userId.equals(message.getSession().getUserId()))) {
+                return ResponseEntity.notFound().build();
+            }
+            exportSql = message.getSqlQuery();
+        }
+        if (exportSql == null || exportSql.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "没有可导出的SQL"));
+        }
+        if (!SqlText.isSelect(exportSql)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "只能导出SELECT查询的结果"));
+        }
+
+        DatabaseConnection connection = null;
+        if (databaseConnectionId != null && !databaseConnectionId.trim().isEmpty()) {
+            connection = databaseAdminService.getConnection(databaseConnectionId).orElse(null);
+            if (connection == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "数据库连接不存在"));
+            }
+        }
+
+        String finalSql = exportSql;
+        DatabaseConnection finalConnection = connection;
+        StreamingResponseBody body = out -> {
+            try {
+                queryExportService.export(finalSql, finalConnection, exportFormat, out);
+            } catch (Exception e) {
+                // Headers are already sent; the truncated download is the only signal left
+                logger.error("Error exporting query: {}", e.getMessage(), e);
+                throw e;
+            }
+        };
+        String filename = "query-" + LocalDateTime.now().format(FILE_TIMESTAMP) + "." + exportFormat;
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(filename).build().toString())
+                .contentType(MediaType.parseMediaType(QueryExportService.contentType(exportFormat)))
+                .body(body);
+    }
+}
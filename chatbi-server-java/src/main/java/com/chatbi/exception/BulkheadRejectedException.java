@@ -0,0 +1,16 @@
+package com.chatbi.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 目标数据库并发已满且排队超时（或队列已满）时抛出
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class BulkheadRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public BulkheadRejectedException(String message) {
+        super(message);
+    }
+}
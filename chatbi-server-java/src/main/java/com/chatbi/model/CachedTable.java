@@ -0,0 +1,82 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Transient;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 在服务内存中保存列式副本的表。对话生成的、只涉及该表的查询直接在内存中计算，不访问数据库。
+ * 设置 watermark_column 时以 MAX(该列) 和行数判断数据是否变化，否则使用 information_schema 的 UPDATE_TIME。
+ */
+@Entity
+@Data
+public class CachedTable {
+    @Id
+    private String id;
+
+    @JsonProperty("connection_id")
+    private String connectionId;
+
+    @JsonProperty("table_name")
+    private String tableName;
+
+    @JsonProperty("watermark_column")
+    private String watermarkColumn;
+
+    /**
+     * 检查数据版本的间隔（秒）；为空时使用全局默认值
+     */
+    @JsonProperty("refresh_interval_seconds")
+    private Integer refreshIntervalSeconds;
+
+    private Boolean enabled = true;
+
+    @JsonProperty("created_at")
+    private LocalDateTime createdAt;
+
+    @JsonProperty("updated_at")
+    private LocalDateTime updatedAt;
+
+    // Runtime state, filled in by ColumnarTableCache for admin responses
+    @Transient
+    private Boolean loaded;
+
+    @Transient
+    @JsonProperty("row_count")
+    private Integer rowCount;
+
+    @Transient
+    @JsonProperty("memory_bytes")
+    private Long memoryBytes;
+
+    @Transient
+    @JsonProperty("column_bytes")
+    private Map<String, Long> columnBytes;
+
+    @Transient
+    @JsonProperty("data_version")
+    private String dataVersion;
+
+    @Transient
+    @JsonProperty("loaded_at")
+    private LocalDateTime loadedAt;
+
+    @Transient
+    @JsonProperty("load_ms")
+    private Long loadMs;
+
+    @Transient
+    private Long hits;
+
+    @Transient
+    @JsonProperty("last_error")
+    private String lastError;
+
+    // Constructors
+    public CachedTable() {}
+}
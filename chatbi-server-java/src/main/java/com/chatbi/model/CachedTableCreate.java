@@ -0,0 +1,25 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+@Data
+public class CachedTableCreate {
+    @NotBlank(message = "Table name is required")
+    @JsonProperty("table_name")
+    private String tableName;
+
+    @JsonProperty("watermark_column")
+    private String watermarkColumn;
+
+    @Positive(message = "Refresh interval must be positive")
+    @JsonProperty("refresh_interval_seconds")
+    private Integer refreshIntervalSeconds;
+
+    private Boolean enabled = true;
+
+    // Constructors
+    public CachedTableCreate() {}
+}
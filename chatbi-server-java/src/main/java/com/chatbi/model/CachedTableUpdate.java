@@ -0,0 +1,18 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+@Data
+public class CachedTableUpdate {
+    @JsonProperty("watermark_column")
+    private String watermarkColumn;
+    @Positive(message = "Refresh interval must be positive")
+    @JsonProperty("refresh_interval_seconds")
+    private Integer refreshIntervalSeconds;
+    private Boolean enabled;
+
+    // Constructors
+    public CachedTableUpdate() {}
+}
@@ -4,6 +4,8 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public class ChatRequest {
     @NotBlank(message = "Message is required")
@@ -14,6 +16,18 @@ public class ChatRequest {
     
     @JsonProperty("database_connection_id")
     private String databaseConnectionId;
+    
+    /**
+     * 分片连接组ID，设置后忽略 database_connection_id，把组内各分片作为一个逻辑数据库
+     */
+    @JsonProperty("connection_group_id")
+    private String connectionGroupId;
+
+    /**
+     * 跨库联合查询涉及的连接ID（至少两个），语义SQL中的表按顺序归属第一个包含它的连接
+     */
+    @JsonProperty("federated_connection_ids")
+    private List<String> federatedConnectionIds;
 
     // Constructors
     public ChatRequest() {}
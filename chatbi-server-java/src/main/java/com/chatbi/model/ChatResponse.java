@@ -11,6 +11,12 @@ public class ChatResponse {
     @JsonProperty("sql_query")
     private String sqlQuery;
     
+    /**
+     * sql_query 对应的参数化形式（? 占位符 + 绑定参数），执行时可直接回传
+     */
+    @JsonProperty("parameterized_sql")
+    private ParameterizedSQL parameterizedSql;
+    
     @JsonProperty("semantic_sql")
     private SemanticSQL semanticSql;
     
@@ -20,6 +26,12 @@ public class ChatResponse {
     @JsonProperty("execution_result")
     private Map<String, Object> executionResult;
     
+    /**
+     * 生成SQL的执行前代价估算，执行前即可看到预计扫描行数和处理决定
+     */
+    @JsonProperty("cost_estimate")
+    private QueryCostEstimate costEstimate;
+    
     @JsonProperty("debug_ollama")
     private Map<String, Object> debugOllama;
 
@@ -0,0 +1,85 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 后台统计得到的字段画像，供提示词使用。统计基于每张表最多 chatbi.profile.max-rows 行的一次扫描；
+ * 扫描中不同值较少时 top_values 为全部取值、不同值数为精确值，否则分别为近似 top-k 和 HyperLogLog 估算值。
+ */
+@Entity
+@Data
+public class ColumnProfile {
+    /**
+     * 由连接、表名和字段名确定，重新统计时覆盖原有记录
+     */
+    @Id
+    private String id;
+
+    @JsonProperty("connection_id")
+    private String connectionId;
+
+    @JsonProperty("table_name")
+    private String tableName;
+
+    @JsonProperty("column_name")
+    private String columnName;
+
+    @JsonProperty("ordinal_position")
+    private Integer ordinalPosition;
+
+    /**
+     * 统计时扫描的行数
+     */
+    @JsonProperty("row_count")
+    private Long rowCount;
+
+    @JsonProperty("null_ratio")
+    private Double nullRatio;
+
+    @JsonProperty("min_value")
+    private String minValue;
+
+    @JsonProperty("max_value")
+    private String maxValue;
+
+    @JsonProperty("distinct_count")
+    private Long distinctCount;
+
+    /**
+     * 高频值及其次数，JSON 数组：[{"value": ..., "count": ...}]
+     */
+    @JsonRawValue
+    @JsonProperty("top_values")
+    private String topValues;
+
+    /**
+     * top_values 包含扫描到的全部不同值，而不只是高频的前几个
+     */
+    @JsonProperty("complete_values")
+    private Boolean completeValues;
+
+    /**
+     * 扫描在 max-rows 处截止，最值、不同值数和取值只代表扫描到的行
+     */
+    @JsonProperty("sampled")
+    private Boolean sampled;
+
+    /**
+     * 代表性样例值，JSON 数组
+     */
+    @JsonRawValue
+    @JsonProperty("sample_values")
+    private String sampleValues;
+
+    @JsonProperty("profiled_at")
+    private LocalDateTime profiledAt;
+
+    // Constructors
+    public ColumnProfile() {}
+}
@@ -0,0 +1,88 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 列式查询结果：列头携带JDBC类型，每列一个数组。
+ * 数值列以 long[]/double[] 存储，字符串及其他类型列做字典编码。
+ */
+@Data
+public class ColumnarResult {
+    public static final String ENCODING_INT64 = "int64";
+    public static final String ENCODING_FLOAT64 = "float64";
+    public static final String ENCODING_DICTIONARY = "dictionary";
+
+    private List<ColumnHeader> columns;
+
+    private List<ColumnVector> vectors;
+
+    @JsonProperty("row_count")
+    private int rowCount;
+
+    // Constructors
+    public ColumnarResult() {}
+
+    public ColumnarResult(List<ColumnHeader> columns, List<ColumnVector> vectors, int rowCount) {
+        this.columns = columns;
+        this.vectors = vectors;
+        this.rowCount = rowCount;
+    }
+
+    @Data
+    public static class ColumnHeader {
+        private String name;
+
+        @JsonProperty("jdbc_type")
+        private int jdbcType;
+
+        @JsonProperty("type_name")
+        private String typeName;
+
+        private String encoding;
+
+        public ColumnHeader() {}
+
+        public ColumnHeader(String name, int jdbcType, String typeName, String encoding) {
+            this.name = name;
+            this.jdbcType = jdbcType;
+            this.typeName = typeName;
+            this.encoding = encoding;
+        }
+    }
+
+    /**
+     * 单列数据。int64/float64 编码使用 values（long[] 或 double[]），空值行号记录在 nulls；
+     * dictionary 编码使用 dictionary + codes，code 为 -1 表示空值。
+     */
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ColumnVector {
+        private Object values;
+
+        private int[] nulls;
+
+        private List<String> dictionary;
+
+        private int[] codes;
+
+        public ColumnVector() {}
+
+        public static ColumnVector numeric(Object values, int[] nulls) {
+            ColumnVector vector = new ColumnVector();
+            vector.setValues(values);
+            vector.setNulls(nulls != null && nulls.length > 0 ? nulls : null);
+            return vector;
+        }
+
+        public static ColumnVector dictionary(List<String> dictionary, int[] codes) {
+            ColumnVector vector = new ColumnVector();
+            vector.setDictionary(dictionary);
+            vector.setCodes(codes);
+            return vector;
+        }
+    }
+}
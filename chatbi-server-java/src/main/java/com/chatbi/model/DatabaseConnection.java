@@ -43,6 +43,36 @@ public class DatabaseConnection {
     @JsonProperty("is_active")
     private Boolean isActive = true;
     
+    /**
+     * 该连接上语句的默认超时（秒），为空时使用全局默认值
+     */
+    @Positive(message = "Query timeout must be positive")
+    @JsonProperty("query_timeout_seconds")
+    private Integer queryTimeoutSeconds;
+    
+    /**
+     * 该连接上同时执行的语句上限，为空时使用全局默认值
+     */
+    @Positive(message = "Max concurrent queries must be positive")
+    @JsonProperty("max_concurrent_queries")
+    private Integer maxConcurrentQueries;
+    
+    /**
+     * 生成SQL执行前代价检查的阈值（预计扫描行数），为空时使用全局默认值：
+     * 超过 warn 提示，超过 limit 自动追加LIMIT，超过 block 拒绝执行
+     */
+    @Positive(message = "Cost thresholds must be positive")
+    @JsonProperty("cost_warn_rows")
+    private Long costWarnRows;
+    
+    @Positive(message = "Cost thresholds must be positive")
+    @JsonProperty("cost_limit_rows")
+    private Long costLimitRows;
+    
+    @Positive(message = "Cost thresholds must be positive")
+    @JsonProperty("cost_block_rows")
+    private Long costBlockRows;
+    
     @JsonProperty("created_at")
     private LocalDateTime createdAt;
     
@@ -0,0 +1,53 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.CollectionTable;
+import jakarta.persistence.Column;
+import jakarta.persistence.ElementCollection;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.OrderColumn;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分片连接组：结构相同、数据按分片分布在多个库上的一组 DatabaseConnection，
+ * 对话和执行时作为一个逻辑数据库使用，查询发往全部分片后在服务端合并结果。
+ */
+@Entity
+@Data
+public class DatabaseConnectionGroup {
+    @Id
+    private String id;
+
+    private String name;
+
+    private String description;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "database_connection_group_member", joinColumns = @JoinColumn(name = "group_id"))
+    @OrderColumn(name = "shard_index")
+    @Column(name = "connection_id")
+    @JsonProperty("connection_ids")
+    private List<String> connectionIds = new ArrayList<>();
+
+    /**
+     * 每个分片上语句的超时（秒），为空时使用全局默认值
+     */
+    @JsonProperty("shard_timeout_seconds")
+    private Integer shardTimeoutSeconds;
+
+    @JsonProperty("created_at")
+    private LocalDateTime createdAt;
+
+    @JsonProperty("updated_at")
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public DatabaseConnectionGroup() {}
+}
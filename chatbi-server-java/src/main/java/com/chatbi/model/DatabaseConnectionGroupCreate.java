@@ -0,0 +1,28 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class DatabaseConnectionGroupCreate {
+    @NotBlank(message = "Name is required")
+    private String name;
+
+    private String description;
+
+    @NotEmpty(message = "At least one connection is required")
+    @JsonProperty("connection_ids")
+    private List<String> connectionIds;
+
+    @Positive(message = "Shard timeout must be positive")
+    @JsonProperty("shard_timeout_seconds")
+    private Integer shardTimeoutSeconds;
+
+    // Constructors
+    public DatabaseConnectionGroupCreate() {}
+}
@@ -0,0 +1,21 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class DatabaseConnectionGroupUpdate {
+    private String name;
+    private String description;
+    @JsonProperty("connection_ids")
+    private List<String> connectionIds;
+    @Positive(message = "Shard timeout must be positive")
+    @JsonProperty("shard_timeout_seconds")
+    private Integer shardTimeoutSeconds;
+
+    // Constructors
+    public DatabaseConnectionGroupUpdate() {}
+}
@@ -18,6 +18,21 @@ public class DatabaseConnectionUpdate {
     @JsonProperty("charset_name")
     private String charsetName;
     private String description;
+    @Positive(message = "Query timeout must be positive")
+    @JsonProperty("query_timeout_seconds")
+    private Integer queryTimeoutSeconds;
+    @Positive(message = "Max concurrent queries must be positive")
+    @JsonProperty("max_concurrent_queries")
+    private Integer maxConcurrentQueries;
+    @Positive(message = "Cost thresholds must be positive")
+    @JsonProperty("cost_warn_rows")
+    private Long costWarnRows;
+    @Positive(message = "Cost thresholds must be positive")
+    @JsonProperty("cost_limit_rows")
+    private Long costLimitRows;
+    @Positive(message = "Cost thresholds must be positive")
+    @JsonProperty("cost_block_rows")
+    private Long costBlockRows;
     private Boolean isActive;
 
     // Constructors
@@ -0,0 +1,73 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Transient;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * DatabaseConnection 的只读副本。用户名/密码为空时沿用主库配置。
+ */
+@Entity
+@Data
+public class DatabaseReplica {
+    @Id
+    private String id;
+
+    @JsonProperty("connection_id")
+    private String connectionId;
+
+    private String host;
+
+    private Integer port = 3306;
+
+    private String username;
+
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private String password;
+
+    /**
+     * 路由权重，实际权重 = weight × 健康分
+     */
+    private Integer weight = 1;
+
+    /**
+     * 复制延迟上限（秒），超过后不再路由到该副本；为空时使用全局默认值
+     */
+    @JsonProperty("max_lag_seconds")
+    private Integer maxLagSeconds;
+
+    private Boolean enabled = true;
+
+    @JsonProperty("created_at")
+    private LocalDateTime createdAt;
+
+    @JsonProperty("updated_at")
+    private LocalDateTime updatedAt;
+
+    // Runtime health, filled in by ReplicaRouter for admin responses
+    @Transient
+    private Boolean healthy;
+
+    @Transient
+    @JsonProperty("lag_seconds")
+    private Long lagSeconds;
+
+    @Transient
+    @JsonProperty("health_score")
+    private Double healthScore;
+
+    @Transient
+    @JsonProperty("last_error")
+    private String lastError;
+
+    @Transient
+    @JsonProperty("checked_at")
+    private LocalDateTime checkedAt;
+
+    // Constructors
+    public DatabaseReplica() {}
+}
@@ -0,0 +1,34 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Data;
+
+@Data
+public class DatabaseReplicaCreate {
+    @NotBlank(message = "Host is required")
+    private String host;
+
+    @NotNull(message = "Port is required")
+    @Positive(message = "Port must be positive")
+    private Integer port = 3306;
+
+    private String username;
+
+    private String password;
+
+    @PositiveOrZero(message = "Weight must not be negative")
+    private Integer weight = 1;
+
+    @Positive(message = "Max lag must be positive")
+    @JsonProperty("max_lag_seconds")
+    private Integer maxLagSeconds;
+
+    private Boolean enabled = true;
+
+    // Constructors
+    public DatabaseReplicaCreate() {}
+}
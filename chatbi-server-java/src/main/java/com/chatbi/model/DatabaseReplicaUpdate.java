@@ -0,0 +1,24 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Data;
+
+@Data
+public class DatabaseReplicaUpdate {
+    private String host;
+    @Positive(message = "Port must be positive")
+    private Integer port;
+    private String username;
+    private String password;
+    @PositiveOrZero(message = "Weight must not be negative")
+    private Integer weight;
+    @Positive(message = "Max lag must be positive")
+    @JsonProperty("max_lag_seconds")
+    private Integer maxLagSeconds;
+    private Boolean enabled;
+
+    // Constructors
+    public DatabaseReplicaUpdate() {}
+}
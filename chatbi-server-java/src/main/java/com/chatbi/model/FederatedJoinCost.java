@@ -0,0 +1,71 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 跨库连接的执行代价：两侧下推后的语句、读取行数、构建侧内存与落盘情况，以及各阶段耗时
+ */
+@Data
+public class FederatedJoinCost {
+    /**
+     * INNER 或 LEFT
+     */
+    @JsonProperty("join_type")
+    private String joinType;
+
+    @JsonProperty("build_table")
+    private String buildTable;
+
+    @JsonProperty("build_connection_id")
+    private String buildConnectionId;
+
+    @JsonProperty("probe_table")
+    private String probeTable;
+
+    @JsonProperty("probe_connection_id")
+    private String probeConnectionId;
+
+    /**
+     * 各侧实际执行的下推语句，键为表名
+     */
+    @JsonProperty("pushed_sql")
+    private Map<String, String> pushedSql = new LinkedHashMap<>();
+
+    @JsonProperty("build_rows")
+    private long buildRows;
+
+    @JsonProperty("probe_rows")
+    private long probeRows;
+
+    @JsonProperty("output_rows")
+    private long outputRows;
+
+    /**
+     * 构建侧哈希表的估算字节数（落盘前的峰值）
+     */
+    @JsonProperty("build_bytes")
+    private long buildBytes;
+
+    private boolean spilled;
+
+    /**
+     * 落盘时两侧按连接键哈希分区的数量，未落盘时为 0
+     */
+    private int partitions;
+
+    @JsonProperty("build_ms")
+    private long buildMs;
+
+    @JsonProperty("probe_ms")
+    private long probeMs;
+
+    @JsonProperty("total_ms")
+    private long totalMs;
+
+    // Constructors
+    public FederatedJoinCost() {}
+}
@@ -0,0 +1,55 @@
+package com.chatbi.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 带 ? 占位符的SQL及其按顺序排列的绑定参数
+ */
+@Data
+public class ParameterizedSQL {
+    private String sql;
+
+    private List<SqlParameter> parameters = new ArrayList<>();
+
+    // Constructors
+    public ParameterizedSQL() {}
+
+    public ParameterizedSQL(String sql, List<SqlParameter> parameters) {
+        this.sql = sql;
+        this.parameters = parameters;
+    }
+
+    /**
+     * 按顺序把参数代入引号外的占位符，得到展示给用户的SQL文本
+     */
+    public String render() {
+        if (parameters == null || parameters.isEmpty()) {
+            return sql;
+        }
+        StringBuilder rendered = new StringBuilder(sql.length() + parameters.size() * 8);
+        int next = 0;
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                rendered.append(c);
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '\\' && i + 1 < sql.length()) {
+                    rendered.append(sql.charAt(++i));
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+                rendered.append(c);
+            } else if (c == '?' && next < parameters.size()) {
+                rendered.append(parameters.get(next++).getSqlLiteral());
+            } else {
+                rendered.append(c);
+            }
+        }
+        return rendered.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于 EXPLAIN FORMAT=JSON 的执行前代价估算及处理决定
+ */
+@Data
+public class QueryCostEstimate {
+    public static final String ACTION_ALLOW = "allow";
+    public static final String ACTION_WARN = "warn";
+    public static final String ACTION_LIMIT = "limit";
+    public static final String ACTION_BLOCK = "block";
+
+    /**
+     * 预计扫描的行数（按连接顺序累乘各表的估算行数与过滤比例）
+     */
+    @JsonProperty("estimated_rows")
+    private long estimatedRows;
+
+    /**
+     * 全表扫描（access_type = ALL）的表
+     */
+    @JsonProperty("full_scan_tables")
+    private List<String> fullScanTables = new ArrayList<>();
+
+    private boolean filesort;
+
+    @JsonProperty("temporary_table")
+    private boolean temporaryTable;
+
+    private String action = ACTION_ALLOW;
+
+    private String message;
+
+    /**
+     * action 为 limit 时自动追加的 LIMIT
+     */
+    @JsonProperty("applied_limit")
+    private Integer appliedLimit;
+
+    // Constructors
+    public QueryCostEstimate() {}
+
+    @JsonIgnore
+    public boolean isBlocked() {
+        return ACTION_BLOCK.equals(action);
+    }
+}
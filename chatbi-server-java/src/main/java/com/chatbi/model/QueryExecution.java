@@ -0,0 +1,57 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 一次SQL执行的句柄：同一次执行结果同时用于HTTP响应、内存会话历史和持久化消息
+ */
+@Data
+public class QueryExecution {
+    private String id;
+
+    @JsonProperty("connection_id")
+    private String connectionId;
+
+    private String sql;
+
+    @JsonProperty("started_at")
+    private OffsetDateTime startedAt;
+
+    @JsonProperty("finished_at")
+    private OffsetDateTime finishedAt;
+
+    private SQLExecutionResponse result;
+
+    // Constructors
+    public QueryExecution() {}
+
+    public static QueryExecution start(String sql, String connectionId) {
+        QueryExecution execution = new QueryExecution();
+        execution.setId(UUID.randomUUID().toString());
+        execution.setConnectionId(connectionId);
+        execution.setSql(sql);
+        execution.setStartedAt(OffsetDateTime.now());
+        return execution;
+    }
+
+    public QueryExecution complete(SQLExecutionResponse result) {
+        this.result = result;
+        this.finishedAt = OffsetDateTime.now();
+        return this;
+    }
+
+    /**
+     * 持久化到 ChatMessage.executionResult 的结构
+     */
+    public Map<String, Object> toResultMap() {
+        Map<String, Object> resultMap = result.toResultMap();
+        resultMap.put("execution_id", id);
+        resultMap.put("executed_at", finishedAt != null ? finishedAt.toString() : null);
+        return resultMap;
+    }
+}
@@ -0,0 +1,120 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.*;
+
+import java.time.OffsetDateTime;
+
+/**
+ * 异步查询任务。session_id / message_id 关联发起任务的会话及其最后一条助手消息，
+ * 任务完成后结果会写回该消息，重新打开会话即可看到。
+ */
+@Entity
+@Table(name = "query_job", indexes = {
+        @Index(name = "idx_query_job_session_id", columnList = "session_id"),
+        @Index(name = "idx_query_job_status", columnList = "status")
+})
+public class QueryJob {
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_SUCCEEDED = "SUCCEEDED";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_CANCELLED = "CANCELLED";
+
+    @Id
+    @Column(name = "id", length = 64)
+    private String id;
+
+    @Column(name = "user_id", length = 191)
+    @JsonProperty("user_id")
+    private String userId;
+
+    @Column(name = "session_id")
+    @JsonProperty("session_id")
+    private Long sessionId;
+
+    @Column(name = "message_id")
+    @JsonProperty("message_id")
+    private Long messageId;
+
+    @Column(name = "connection_id", length = 191)
+    @JsonProperty("connection_id")
+    private String connectionId;
+
+    @Lob
+    @Column(name = "sql_query", nullable = false, columnDefinition = "LONGTEXT")
+    @JsonProperty("sql_query")
+    private String sqlQuery;
+
+    @Column(name = "status", length = 20, nullable = false)
+    private String status = STATUS_PENDING;
+
+    @Column(name = "row_count")
+    @JsonProperty("row_count")
+    private Long rowCount;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    @JsonProperty("error_message")
+    private String errorMessage;
+
+    @Column(name = "result_file", length = 512)
+    @JsonIgnore
+    private String resultFile;
+
+    @Column(name = "created_at", nullable = false)
+    @JsonProperty("created_at")
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    @Column(name = "started_at")
+    @JsonProperty("started_at")
+    private OffsetDateTime startedAt;
+
+    @Column(name = "finished_at")
+    @JsonProperty("finished_at")
+    private OffsetDateTime finishedAt;
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return STATUS_SUCCEEDED.equals(status) || STATUS_FAILED.equals(status) || STATUS_CANCELLED.equals(status);
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public Long getSessionId() { return sessionId; }
+    public void setSessionId(Long sessionId) { this.sessionId = sessionId; }
+
+    public Long getMessageId() { return messageId; }
+    public void setMessageId(Long messageId) { this.messageId = messageId; }
+
+    public String getConnectionId() { return connectionId; }
+    public void setConnectionId(String connectionId) { this.connectionId = connectionId; }
+
+    public String getSqlQuery() { return sqlQuery; }
+    public void setSqlQuery(String sqlQuery) { this.sqlQuery = sqlQuery; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public Long getRowCount() { return rowCount; }
+    public void setRowCount(Long rowCount) { this.rowCount = rowCount; }
+
+    public String getErrorMessage() { return errorMessage; }
+    public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
+
+    public String getResultFile() { return resultFile; }
+    public void setResultFile(String resultFile) { this.resultFile = resultFile; }
+
+    public OffsetDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(OffsetDateTime createdAt) { this.createdAt = createdAt; }
+
+    public OffsetDateTime getStartedAt() { return startedAt; }
+    public void setStartedAt(OffsetDateTime startedAt) { this.startedAt = startedAt; }
+
+    public OffsetDateTime getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(OffsetDateTime finishedAt) { this.finishedAt = finishedAt; }
+}
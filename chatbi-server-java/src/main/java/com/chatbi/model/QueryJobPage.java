@@ -0,0 +1,35 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 异步任务结果的一页
+ */
+@Data
+public class QueryJobPage {
+    @JsonProperty("job_id")
+    private String jobId;
+
+    private long offset;
+
+    private List<Map<String, Object>> data;
+
+    @JsonProperty("row_count")
+    private int rowCount;
+
+    @JsonProperty("total_rows")
+    private long totalRows;
+
+    /**
+     * 下一页的offset，没有更多数据时为null
+     */
+    @JsonProperty("next_offset")
+    private Long nextOffset;
+
+    // Constructors
+    public QueryJobPage() {}
+}
@@ -0,0 +1,29 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+@Data
+public class QueryJobRequest {
+    @NotBlank(message = "SQL query is required")
+    @JsonProperty("sql_query")
+    private String sqlQuery;
+
+    /**
+     * 会话ID，任务完成后结果写回该会话最后一条助手消息
+     */
+    @JsonProperty("conversation_id")
+    private String conversationId;
+
+    @JsonProperty("database_connection_id")
+    private String databaseConnectionId;
+
+    @Positive(message = "Timeout must be positive")
+    @JsonProperty("timeout_seconds")
+    private Integer timeoutSeconds;
+
+    // Constructors
+    public QueryJobRequest() {}
+}
@@ -0,0 +1,68 @@
+package com.chatbi.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 单次SQL执行的可选参数
+ */
+@Data
+public class QueryOptions {
+    public static final String FORMAT_ROWS = "rows";
+    public static final String FORMAT_COLUMNAR = "columnar";
+
+    private String resultFormat = FORMAT_ROWS;
+
+    /**
+     * 是否允许使用结果缓存
+     */
+    private boolean useCache = true;
+
+    /**
+     * 语句超时（秒），为空时使用连接配置或全局默认值
+     */
+    private Integer timeoutSeconds;
+
+    /**
+     * SQL中 ? 占位符的绑定参数，按出现顺序排列
+     */
+    private List<SqlParameter> parameters;
+
+    /**
+     * 执行前是否做 EXPLAIN 代价检查（对话生成的SQL）
+     */
+    private boolean costGate;
+
+    /**
+     * 设置后尝试按主键范围切片并行执行该语义SQL的聚合；不满足条件时按原SQL执行
+     */
+    private SemanticSQL parallelAggregate;
+
+    /**
+     * 生成该SQL的语义SQL；只涉及已加载的缓存表时可在内存中计算，不访问数据库
+     */
+    private SemanticSQL semanticSql;
+
+    // Constructors
+    public QueryOptions() {}
+
+    public static QueryOptions defaults() {
+        return new QueryOptions();
+    }
+
+    public boolean isColumnar() {
+        return FORMAT_COLUMNAR.equalsIgnoreCase(resultFormat);
+    }
+
+    public boolean hasParameters() {
+        return parameters != null && !parameters.isEmpty();
+    }
+
+    public Object[] bindValues() {
+        if (!hasParameters()) {
+            return new Object[0];
+        }
+        return parameters.stream().map(SqlParameter::getJdbcValue).toArray();
+    }
+}
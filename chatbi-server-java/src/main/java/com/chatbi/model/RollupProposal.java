@@ -0,0 +1,35 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * 从历史对话的聚合查询中归纳出的汇总表建议，可直接作为 RollupTableCreate 提交
+ */
+@Data
+public class RollupProposal {
+    @JsonProperty("source_table")
+    private String sourceTable;
+
+    private List<String> dimensions;
+
+    private List<String> measures;
+
+    /**
+     * 能由该汇总表回答的历史查询数
+     */
+    @JsonProperty("query_count")
+    private Integer queryCount;
+
+    @JsonProperty("last_asked_at")
+    private OffsetDateTime lastAskedAt;
+
+    @JsonProperty("sample_sql")
+    private String sampleSql;
+
+    // Constructors
+    public RollupProposal() {}
+}
@@ -0,0 +1,125 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.CollectionTable;
+import jakarta.persistence.Column;
+import jakarta.persistence.ElementCollection;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.OrderColumn;
+import jakarta.persistence.Transient;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预聚合的汇总表：按 dimensions 分组、保存 measures 部分聚合结果的物理表，建在源表所在的库中。
+ * 对话生成的聚合查询只用到这些维度和度量时，改写为读取汇总表。
+ * 设置 watermark_column 时只把该列大于上次水位的新行增量合并进来，否则每次整表重建。
+ * 水位列必须在插入时确定且不再修改（自增主键、created_at），源表只追加；有更新、删除或迟到提交的行时需调用 rebuild。
+ */
+@Entity
+@Data
+public class RollupTable {
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_ACTIVE = "ACTIVE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @Id
+    private String id;
+
+    @JsonProperty("connection_id")
+    private String connectionId;
+
+    @JsonProperty("source_table")
+    private String sourceTable;
+
+    /**
+     * 库中汇总表的表名，由服务生成
+     */
+    @JsonProperty("table_name")
+    private String tableName;
+
+    /**
+     * 分组维度：列名，或 DATE/YEAR/MONTH/DATE_FORMAT 等作用于单列的时间粒度表达式
+     */
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "rollup_table_dimension", joinColumns = @JoinColumn(name = "rollup_id"))
+    @OrderColumn(name = "position")
+    @Column(name = "expression")
+    private List<String> dimensions = new ArrayList<>();
+
+    /**
+     * 度量：COUNT(*)、COUNT(列)、SUM(列)、MIN(列)、MAX(列)；AVG 由 SUM 与 COUNT 计算
+     */
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "rollup_table_measure", joinColumns = @JoinColumn(name = "rollup_id"))
+    @OrderColumn(name = "position")
+    @Column(name = "expression")
+    private List<String> measures = new ArrayList<>();
+
+    @JsonProperty("watermark_column")
+    private String watermarkColumn;
+
+    /**
+     * 刷新间隔（秒）；为空时使用全局默认值
+     */
+    @JsonProperty("refresh_interval_seconds")
+    private Integer refreshIntervalSeconds;
+
+    private Boolean enabled = true;
+
+    /**
+     * PENDING（尚未建成）/ ACTIVE / FAILED（最近一次刷新失败，仍可使用上次的数据）
+     */
+    private String status = STATUS_PENDING;
+
+    /**
+     * 已合并到汇总表的最大水位值；刷新修改汇总表期间为空，刷新中断时保持为空，下次整表重建
+     */
+    @JsonProperty("last_watermark")
+    private String lastWatermark;
+
+    @JsonProperty("row_count")
+    private Long rowCount;
+
+    @JsonProperty("last_refreshed_at")
+    private LocalDateTime lastRefreshedAt;
+
+    @JsonProperty("last_error")
+    private String lastError;
+
+    @JsonProperty("created_at")
+    private LocalDateTime createdAt;
+
+    @JsonProperty("updated_at")
+    private LocalDateTime updatedAt;
+
+    // Usage since startup, filled in by RollupService for admin responses
+    @Transient
+    private Long hits;
+
+    /**
+     * 针对同一源表、但该汇总表无法回答的聚合查询数
+     */
+    @Transient
+    private Long misses;
+
+    @Transient
+    @JsonProperty("hit_rate")
+    private Double hitRate;
+
+    /**
+     * 距上次成功刷新的秒数
+     */
+    @Transient
+    @JsonProperty("staleness_seconds")
+    private Long stalenessSeconds;
+
+    // Constructors
+    public RollupTable() {}
+}
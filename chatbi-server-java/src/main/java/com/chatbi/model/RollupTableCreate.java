@@ -0,0 +1,36 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class RollupTableCreate {
+    @NotBlank(message = "Source table is required")
+    @JsonProperty("source_table")
+    private String sourceTable;
+
+    @NotNull(message = "Dimensions are required")
+    private List<String> dimensions;
+
+    @NotEmpty(message = "At least one measure is required")
+    private List<String> measures;
+
+    // 只在插入时写入的整数或日期时间列（自增主键、created_at），不能是 ON UPDATE 列
+    @JsonProperty("watermark_column")
+    private String watermarkColumn;
+
+    @Positive(message = "Refresh interval must be positive")
+    @JsonProperty("refresh_interval_seconds")
+    private Integer refreshIntervalSeconds;
+
+    private Boolean enabled;
+
+    // Constructors
+    public RollupTableCreate() {}
+}
@@ -0,0 +1,17 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+@Data
+public class RollupTableUpdate {
+    @Positive(message = "Refresh interval must be positive")
+    @JsonProperty("refresh_interval_seconds")
+    private Integer refreshIntervalSeconds;
+
+    private Boolean enabled;
+
+    // Constructors
+    public RollupTableUpdate() {}
+}
@@ -0,0 +1,41 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.time.OffsetDateTime;
+
+/**
+ * 正在执行的SQL语句快照，用于 GET /api/queries
+ */
+@Data
+public class RunningQuery {
+    private String id;
+
+    @JsonProperty("connection_id")
+    private String connectionId;
+
+    private String sql;
+
+    /**
+     * 发起方：execute / stream / admin / job
+     */
+    private String source;
+
+    @JsonProperty("started_at")
+    private OffsetDateTime startedAt;
+
+    @JsonProperty("elapsed_ms")
+    private long elapsedMs;
+
+    @JsonProperty("timeout_seconds")
+    private int timeoutSeconds;
+
+    @JsonProperty("thread_id")
+    private Long threadId;
+
+    private boolean cancelled;
+
+    // Constructors
+    public RunningQuery() {}
+}
@@ -2,8 +2,11 @@ package com.chatbi.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public class SQLExecutionRequest {
     @NotBlank(message = "SQL query is required")
@@ -15,6 +18,48 @@ public class SQLExecutionRequest {
     
     @JsonProperty("database_connection_id")
     private String databaseConnectionId;
+    
+    /**
+     * 分片连接组ID，设置后忽略 database_connection_id，把组内各分片作为一个逻辑数据库
+     */
+    @JsonProperty("connection_group_id")
+    private String connectionGroupId;
+
+    /**
+     * 跨库联合查询涉及的连接ID（至少两个），语义SQL中的表按顺序归属第一个包含它的连接
+     */
+    @JsonProperty("federated_connection_ids")
+    private List<String> federatedConnectionIds;
+    
+    /**
+     * rows（默认）或 columnar
+     */
+    @JsonProperty("result_format")
+    private String resultFormat;
+    
+    /**
+     * 设置后只返回第一页，并通过 next_cursor 继续翻页
+     */
+    @Positive(message = "Page size must be positive")
+    @JsonProperty("page_size")
+    private Integer pageSize;
+    
+    /**
+     * 本次执行的超时（秒），覆盖连接上配置的默认超时
+     */
+    @Positive(message = "Timeout must be positive")
+    @JsonProperty("timeout_seconds")
+    private Integer timeoutSeconds;
+    
+    /**
+     * 设置后 sql_query 为带 ? 占位符的语句，按顺序绑定这些参数执行
+     */
+    private List<SqlParameter> parameters;
+    
+    /**
+     * 对话生成的单表聚合查询按主键范围切片并行执行（不满足条件时按普通方式执行）
+     */
+    private Boolean parallel;
 
     // Constructors
     public SQLExecutionRequest() {}
@@ -1,9 +1,11 @@
 package com.chatbi.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -16,6 +18,51 @@ public class SQLExecutionResponse {
     
     @JsonProperty("row_count")
     private Integer rowCount;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ColumnarResult columnar;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("pagination_mode")
+    private String paginationMode;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("cost_estimate")
+    private QueryCostEstimate costEstimate;
+    
+    /**
+     * 分片连接组执行时各分片的状态；partial 为 true 表示部分分片失败，结果不完整
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<ShardResult> shards;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean partial;
+    
+    /**
+     * 分片结果的合并方式：aggregate / top_n / concat
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("merge_strategy")
+    private String mergeStrategy;
+    
+    /**
+     * 跨库连接执行时的代价信息
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("join_cost")
+    private FederatedJoinCost joinCost;
+    
+    /**
+     * 结果不是由数据库直接返回时标明来源，例如 table_cache（进程内列式表缓存）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("served_from")
+    private String servedFrom;
 
     public SQLExecutionResponse(boolean success, List<Map<String, Object>> data, 
                                String error, Integer rowCount) {
@@ -24,4 +71,59 @@ public class SQLExecutionResponse {
         this.error = Objects.requireNonNullElse(error, "");
         this.rowCount = rowCount;
     }
+
+    public static SQLExecutionResponse ofColumnar(ColumnarResult columnar) {
+        SQLExecutionResponse response = new SQLExecutionResponse(true, null, null, columnar.getRowCount());
+        response.setColumnar(columnar);
+        return response;
+    }
+
+    /**
+     * 附带代价估算的浅拷贝；结果可能来自缓存，不能直接修改
+     */
+    public SQLExecutionResponse withCostEstimate(QueryCostEstimate estimate) {
+        SQLExecutionResponse copy = new SQLExecutionResponse(success, data, error, rowCount);
+        copy.setColumnar(columnar);
+        copy.setNextCursor(nextCursor);
+        copy.setPaginationMode(paginationMode);
+        copy.setShards(shards);
+        copy.setPartial(partial);
+        copy.setMergeStrategy(mergeStrategy);
+        copy.setJoinCost(joinCost);
+        copy.setServedFrom(servedFrom);
+        copy.setCostEstimate(estimate);
+        return copy;
+    }
+
+    /**
+     * 会话历史与持久化消息中保存的执行结果结构
+     */
+    public Map<String, Object> toResultMap() {
+        Map<String, Object> resultMap = new HashMap<>();
+        resultMap.put("success", success);
+        resultMap.put("data", data);
+        resultMap.put("error", error);
+        resultMap.put("row_count", rowCount);
+        if (columnar != null) {
+            resultMap.put("columnar", columnar);
+        }
+        if (nextCursor != null) {
+            resultMap.put("next_cursor", nextCursor);
+        }
+        if (costEstimate != null) {
+            resultMap.put("cost_estimate", costEstimate);
+        }
+        if (shards != null) {
+            resultMap.put("shards", shards);
+            resultMap.put("partial", partial);
+            resultMap.put("merge_strategy", mergeStrategy);
+        }
+        if (joinCost != null) {
+            resultMap.put("join_cost", joinCost);
+        }
+        if (servedFrom != null) {
+            resultMap.put("served_from", servedFrom);
+        }
+        return resultMap;
+    }
 }
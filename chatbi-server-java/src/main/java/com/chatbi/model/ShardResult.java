@@ -0,0 +1,37 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+/**
+ * 分片连接组执行时单个分片的状态
+ */
+@Data
+public class ShardResult {
+    @JsonProperty("connection_id")
+    private String connectionId;
+
+    @JsonProperty("connection_name")
+    private String connectionName;
+
+    private boolean success;
+
+    @JsonProperty("timed_out")
+    private boolean timedOut;
+
+    @JsonProperty("row_count")
+    private Integer rowCount;
+
+    @JsonProperty("latency_ms")
+    private long latencyMs;
+
+    private String error;
+
+    // Constructors
+    public ShardResult() {}
+
+    public ShardResult(DatabaseConnection connection) {
+        this.connectionId = connection.getId();
+        this.connectionName = connection.getName();
+    }
+}
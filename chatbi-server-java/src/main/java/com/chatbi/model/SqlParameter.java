@@ -0,0 +1,93 @@
+package com.chatbi.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * 预编译语句的一个绑定参数，显式携带类型，JSON往返后绑定值不变
+ */
+@Data
+public class SqlParameter {
+    public static final String TYPE_STRING = "string";
+    public static final String TYPE_LONG = "long";
+    public static final String TYPE_DOUBLE = "double";
+    public static final String TYPE_DECIMAL = "decimal";
+    public static final String TYPE_BOOLEAN = "boolean";
+    public static final String TYPE_NULL = "null";
+
+    private String type;
+
+    private Object value;
+
+    // Constructors
+    public SqlParameter() {}
+
+    public SqlParameter(String type, Object value) {
+        this.type = type;
+        this.value = value;
+    }
+
+    public static SqlParameter of(Object value) {
+        if (value == null) {
+            return new SqlParameter(TYPE_NULL, null);
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return new SqlParameter(TYPE_LONG, ((Number) value).longValue());
+        }
+        if (value instanceof BigInteger integer) {
+            return integer.bitLength() < 64
+                ? new SqlParameter(TYPE_LONG, integer.longValue())
+                : new SqlParameter(TYPE_DECIMAL, integer.toString());
+        }
+        if (value instanceof BigDecimal decimal) {
+            // Kept as text so precision survives the JSON round trip
+            return new SqlParameter(TYPE_DECIMAL, decimal.toPlainString());
+        }
+        if (value instanceof Float || value instanceof Double) {
+            return new SqlParameter(TYPE_DOUBLE, ((Number) value).doubleValue());
+        }
+        if (value instanceof Boolean) {
+            return new SqlParameter(TYPE_BOOLEAN, value);
+        }
+        return new SqlParameter(TYPE_STRING, String.valueOf(value));
+    }
+
+    /**
+     * 传给 PreparedStatement.setObject 的值
+     */
+    @JsonIgnore
+    public Object getJdbcValue() {
+        if (value == null || type == null) {
+            return value;
+        }
+        return switch (type) {
+            case TYPE_LONG -> value instanceof Number number ? number.longValue() : Long.parseLong(value.toString());
+            case TYPE_DOUBLE -> value instanceof Number number ? number.doubleValue() : Double.parseDouble(value.toString());
+            case TYPE_DECIMAL -> new BigDecimal(value.toString());
+            case TYPE_BOOLEAN -> value instanceof Boolean bool ? bool : Boolean.parseBoolean(value.toString());
+            case TYPE_NULL -> null;
+            default -> value.toString();
+        };
+    }
+
+    /**
+     * 展示用的SQL字面量
+     */
+    @JsonIgnore
+    public String getSqlLiteral() {
+        Object jdbcValue = getJdbcValue();
+        if (jdbcValue == null) {
+            return "NULL";
+        }
+        if (jdbcValue instanceof String text) {
+            return "'" + text.replace("\\", "\\\\").replace("'", "''") + "'";
+        }
+        if (jdbcValue instanceof BigDecimal decimal) {
+            return decimal.toPlainString();
+        }
+        return String.valueOf(jdbcValue);
+    }
+}
@@ -0,0 +1,18 @@
+package com.chatbi.repository;
+
+import com.chatbi.model.CachedTable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface CachedTableRepository extends JpaRepository<CachedTable, String> {
+    List<CachedTable> findByConnectionId(String connectionId);
+
+    List<CachedTable> findByEnabledTrue();
+
+    @Transactional
+    void deleteByConnectionId(String connectionId);
+}
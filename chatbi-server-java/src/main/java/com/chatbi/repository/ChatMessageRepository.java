@@ -2,9 +2,11 @@ package com.chatbi.repository;
 
 import com.chatbi.model.ChatMessage;
 import com.chatbi.model.ChatSession;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 
 @Repository
@@ -13,6 +15,9 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     List<ChatMessage> findBySessionOrderByCreatedAtAsc(ChatSession session);
 
     void deleteBySession(ChatSession session);
+
+    List<ChatMessage> findByRoleAndSqlQueryIsNotNullAndCreatedAtAfterOrderByCreatedAtDesc(
+            String role, OffsetDateTime after, Pageable pageable);
 }
 
 
@@ -0,0 +1,19 @@
+package com.chatbi.repository;
+
+import com.chatbi.model.ColumnProfile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ColumnProfileRepository extends JpaRepository<ColumnProfile, String> {
+    List<ColumnProfile> findByConnectionId(String connectionId);
+
+    List<ColumnProfile> findByConnectionIdAndTableNameIn(String connectionId, Collection<String> tableNames);
+
+    @Transactional
+    void deleteByConnectionId(String connectionId);
+}
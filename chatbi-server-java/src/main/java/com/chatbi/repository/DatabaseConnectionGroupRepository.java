@@ -0,0 +1,12 @@
+package com.chatbi.repository;
+
+import com.chatbi.model.DatabaseConnectionGroup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface DatabaseConnectionGroupRepository extends JpaRepository<DatabaseConnectionGroup, String> {
+    List<DatabaseConnectionGroup> findByConnectionIdsContaining(String connectionId);
+}
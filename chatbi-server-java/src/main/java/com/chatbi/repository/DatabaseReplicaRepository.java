@@ -0,0 +1,18 @@
+package com.chatbi.repository;
+
+import com.chatbi.model.DatabaseReplica;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface DatabaseReplicaRepository extends JpaRepository<DatabaseReplica, String> {
+    List<DatabaseReplica> findByConnectionId(String connectionId);
+
+    List<DatabaseReplica> findByEnabledTrue();
+
+    @Transactional
+    void deleteByConnectionId(String connectionId);
+}
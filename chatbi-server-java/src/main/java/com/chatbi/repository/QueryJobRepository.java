@@ -0,0 +1,19 @@
+package com.chatbi.repository;
+
+import com.chatbi.model.QueryJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface QueryJobRepository extends JpaRepository<QueryJob, String> {
+
+    List<QueryJob> findBySessionIdOrderByCreatedAtDesc(Long sessionId);
+
+    List<QueryJob> findByStatusIn(Collection<String> statuses);
+
+    List<QueryJob> findByResultFileIsNotNullAndFinishedAtBefore(OffsetDateTime cutoff);
+}
@@ -0,0 +1,18 @@
+package com.chatbi.repository;
+
+import com.chatbi.model.RollupTable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface RollupTableRepository extends JpaRepository<RollupTable, String> {
+    List<RollupTable> findByConnectionId(String connectionId);
+
+    List<RollupTable> findByEnabledTrue();
+
+    @Transactional
+    void deleteByConnectionId(String connectionId);
+}
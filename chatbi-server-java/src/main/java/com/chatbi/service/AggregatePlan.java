@@ -0,0 +1,584 @@
+package com.chatbi.service;
+
+import com.chatbi.model.SemanticSQL;
+import com.chatbi.model.SqlParameter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 可拆分的单表聚合：把语义SQL改写成部分聚合语句（AVG拆成SUM+COUNT），
+ * 各部分（主键切片、分片库）的结果在JVM内合并后再排序、截取LIMIT。
+ * 只有一个整数分组列时用long键哈希表合并，避免装箱。
+ */
+final class AggregatePlan {
+    static final Set<String> INTEGER_TYPES = Set.of("tinyint", "smallint", "mediumint", "int", "bigint");
+    static final Set<String> CHARACTER_TYPES = Set.of(
+        "char", "varchar", "tinytext", "text", "mediumtext", "longtext", "enum", "set", "json");
+
+    private static final Pattern AGGREGATE = Pattern.compile(
+        "^(COUNT|SUM|AVG|MIN|MAX)\\s*\\(\\s*(.+?)\\s*\\)(?:\\s+(?:AS\\s+)?`?(\\w+)`?)?$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ALIASED = Pattern.compile("^(.+?)\\s+AS\\s+`?(\\w+)`?$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern IDENTIFIER = Pattern.compile("^`?(\\w+)`?(?:\\.`?(\\w+)`?)?$");
+    private static final Pattern AGGREGATE_CALL = Pattern.compile(
+        "\\b(COUNT|SUM|AVG|MIN|MAX|GROUP_CONCAT|STD|STDDEV|STDDEV_POP|STDDEV_SAMP|VARIANCE|VAR_POP|VAR_SAMP"
+            + "|BIT_AND|BIT_OR|BIT_XOR|JSON_ARRAYAGG|JSON_OBJECTAGG)\\s*\\(", Pattern.CASE_INSENSITIVE);
+
+    enum Function { COUNT, SUM, MIN, MAX, AVG }
+
+    /**
+     * 输出列：分组列（groupIndex）或聚合（function + 部分聚合列下标）
+     */
+    record Output(String label, String expression, int groupIndex, Function function, int partial) {
+        boolean isGroup() {
+            return function == null;
+        }
+    }
+
+    record Order(int output, boolean descending) {
+    }
+
+    private final String table;
+    private final List<String> groupColumns;
+    private final boolean longKey;
+    private final List<Output> outputs;
+    private final List<Function> partialFunctions;
+    private final List<String> partialExpressions;
+    private final List<String> partialArguments;
+    private final String where;
+    private final List<SqlParameter> parameters;
+    private final List<Order> orderBy;
+    private final Integer limit;
+
+    private AggregatePlan(String table, List<String> groupColumns, boolean longKey, List<Output> outputs,
+                          List<Function> partialFunctions, List<String> partialExpressions,
+                          List<String> partialArguments, String where, List<SqlParameter> parameters,
+                          List<Order> orderBy, Integer limit) {
+        this.table = table;
+        this.groupColumns = groupColumns;
+        this.longKey = longKey;
+        this.outputs = outputs;
+        this.partialFunctions = partialFunctions;
+        this.partialExpressions = partialExpressions;
+        this.partialArguments = partialArguments;
+        this.where = where;
+        this.parameters = parameters;
+        this.orderBy = orderBy;
+        this.limit = limit;
+    }
+
+    /**
+     * 语义SQL中的单表名（去掉反引号）；多表、JOIN或带库名时返回null
+     */
+    static String singleTable(SemanticSQL semanticSQL) {
+        if (semanticSQL.getTables() == null || semanticSQL.getTables().size() != 1
+            || (semanticSQL.getJoins() != null && !semanticSQL.getJoins().isEmpty())) {
+            return null;
+        }
+        Matcher matcher = IDENTIFIER.matcher(semanticSQL.getTables().get(0).trim());
+        return matcher.matches() && matcher.group(2) == null ? matcher.group(1) : null;
+    }
+
+    /**
+     * 是否为分组或聚合查询；否则每行结果都来自单个源行
+     */
+    static boolean isAggregate(SemanticSQL semanticSQL) {
+        if (semanticSQL.getGroupBy() != null && !semanticSQL.getGroupBy().isEmpty()) {
+            return true;
+        }
+        return semanticSQL.getColumns() != null
+            && semanticSQL.getColumns().stream().anyMatch(column -> AGGREGATE_CALL.matcher(column).find());
+    }
+
+    /**
+     * 拆分语义SQL。columnTypes 为该表小写列名到 DATA_TYPE 的映射：给出时分组列和MIN/MAX参数
+     * 必须是已知的非字符类型列（字符比较依赖排序规则，JVM内合并可能与单条SQL不一致）；
+     * 为null时不做类型检查，分组值按原值精确合并。不可拆分时返回null
+     */
+    static AggregatePlan parse(SemanticSQL semanticSQL, MySQLSQLGenerator generator, Map<String, String> columnTypes) {
+        String table = singleTable(semanticSQL);
+        if (table == null) {
+            return null;
+        }
+        List<SqlParameter> parameters = new ArrayList<>();
+        String where = semanticSQL.getConditions() != null && !semanticSQL.getConditions().isEmpty()
+            ? generator.buildWhereClause(semanticSQL, parameters) : "";
+        return build(semanticSQL, table, expression -> columnName(expression, table), columnTypes, where, parameters);
+    }
+
+    /**
+     * 在JVM内对连接后的行做聚合（跨库连接）：resolver 把列引用规范化为 表.列，无法识别时返回null。
+     * 不生成SQL，条件已在各侧下推
+     */
+    static AggregatePlan parseJoined(SemanticSQL semanticSQL, UnaryOperator<String> resolver) {
+        return build(semanticSQL, null, resolver, null, "", List.of());
+    }
+
+    private static AggregatePlan build(SemanticSQL semanticSQL, String table, UnaryOperator<String> resolver,
+                                       Map<String, String> columnTypes, String where, List<SqlParameter> parameters) {
+        if (semanticSQL.getColumns() == null || semanticSQL.getColumns().isEmpty()) {
+            return null;
+        }
+
+        List<String> groupColumns = new ArrayList<>();
+        if (semanticSQL.getGroupBy() != null) {
+            for (String group : semanticSQL.getGroupBy()) {
+                String column = resolver.apply(group);
+                if (column == null || !comparable(column, columnTypes)) {
+                    return null;
+                }
+                groupColumns.add(column);
+            }
+        }
+
+        List<Output> outputs = new ArrayList<>();
+        List<Function> partialFunctions = new ArrayList<>();
+        List<String> partialExpressions = new ArrayList<>();
+        List<String> partialArguments = new ArrayList<>();
+        for (String raw : semanticSQL.getColumns()) {
+            String item = raw.trim();
+            Matcher aggregate = AGGREGATE.matcher(item);
+            if (aggregate.matches()) {
+                Function function = Function.valueOf(aggregate.group(1).toUpperCase(Locale.ROOT));
+                String argument = aggregate.group(2);
+                if (argument.toUpperCase(Locale.ROOT).startsWith("DISTINCT")) {
+                    return null;
+                }
+                if (function == Function.MIN || function == Function.MAX) {
+                    String column = resolver.apply(argument);
+                    if (column == null || !comparable(column, columnTypes)) {
+                        return null;
+                    }
+                }
+                String label = aggregate.group(3) != null ? aggregate.group(3)
+                    : item.substring(0, item.lastIndexOf(')') + 1);
+                outputs.add(new Output(label, item, -1, function, partialExpressions.size()));
+                if (function == Function.AVG) {
+                    partialFunctions.add(Function.SUM);
+                    partialExpressions.add("SUM(" + argument + ")");
+                    partialArguments.add(argument);
+                    partialFunctions.add(Function.COUNT);
+                    partialExpressions.add("COUNT(" + argument + ")");
+                    partialArguments.add(argument);
+                } else {
+                    partialFunctions.add(function);
+                    partialExpressions.add(function.name() + "(" + argument + ")");
+                    partialArguments.add(argument);
+                }
+                continue;
+            }
+            Matcher aliased = ALIASED.matcher(item);
+            String expression = aliased.matches() ? aliased.group(1) : item;
+            String column = resolver.apply(expression);
+            int groupIndex = column != null ? groupColumns.indexOf(column) : -1;
+            if (groupIndex < 0) {
+                return null;
+            }
+            String label = aliased.matches() ? aliased.group(2) : unqualified(expression);
+            outputs.add(new Output(label, expression, groupIndex, null, -1));
+        }
+        // Plain row queries have nothing to merge
+        if (partialFunctions.isEmpty() && groupColumns.isEmpty()) {
+            return null;
+        }
+
+        List<Order> orderBy = new ArrayList<>();
+        if (semanticSQL.getOrderBy() != null) {
+            for (Map<String, String> order : semanticSQL.getOrderBy()) {
+                String column = order.get("column");
+                if (column == null) {
+                    continue;
+                }
+                int output = findOutput(outputs, column.trim(), resolver);
+                if (output < 0) {
+                    return null;
+                }
+                orderBy.add(new Order(output, "DESC".equalsIgnoreCase(order.getOrDefault("direction", "ASC"))));
+            }
+        }
+
+        boolean longKey = groupColumns.size() == 1
+            && (columnTypes == null || INTEGER_TYPES.contains(columnTypes.get(groupColumns.get(0))));
+        return new AggregatePlan(table, groupColumns, longKey, outputs, partialFunctions, partialExpressions,
+            partialArguments, where, parameters, orderBy, semanticSQL.getLimit());
+    }
+
+    String table() {
+        return table;
+    }
+
+    int groupCount() {
+        return groupColumns.size();
+    }
+
+    int partialCount() {
+        return partialFunctions.size();
+    }
+
+    /**
+     * 第 i 个分组列（parseJoined 时为 resolver 规范化后的引用）
+     */
+    String groupColumn(int i) {
+        return groupColumns.get(i);
+    }
+
+    Function partialFunction(int i) {
+        return partialFunctions.get(i);
+    }
+
+    /**
+     * 第 i 个部分聚合的参数表达式，COUNT(*) 为 "*"
+     */
+    String partialArgument(int i) {
+        return partialArguments.get(i);
+    }
+
+    /**
+     * 输出列，按 SELECT 中的顺序
+     */
+    List<Output> outputs() {
+        return outputs;
+    }
+
+    /**
+     * ORDER BY 各项，引用输出列下标
+     */
+    List<Order> orderBy() {
+        return orderBy;
+    }
+
+    /**
+     * 部分聚合语句：先是分组列，再是各部分聚合列；extraCondition 不为空时与原条件用 AND 连接
+     */
+    String partialSql(String extraCondition) {
+        List<String> select = new ArrayList<>();
+        for (int i = 0; i < groupColumns.size(); i++) {
+            select.add(quote(groupColumns.get(i)) + " AS g" + i);
+        }
+        for (int i = 0; i < partialExpressions.size(); i++) {
+            select.add(partialExpressions.get(i) + " AS p" + i);
+        }
+        StringBuilder sql = new StringBuilder("SELECT ").append(String.join(", ", select))
+            .append(" FROM ").append(quote(table));
+        List<String> conditions = new ArrayList<>();
+        if (!where.isEmpty()) {
+            conditions.add("(" + where + ")");
+        }
+        if (extraCondition != null) {
+            conditions.add(extraCondition);
+        }
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        if (!groupColumns.isEmpty()) {
+            sql.append(" GROUP BY ").append(String.join(", ",
+                groupColumns.stream().map(AggregatePlan::quote).toList()));
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 原条件的绑定参数，后面追加 extra（对应 extraCondition 中的占位符）
+     */
+    Object[] bindValues(Object... extra) {
+        Object[] args = new Object[parameters.size() + extra.length];
+        for (int i = 0; i < parameters.size(); i++) {
+            args[i] = parameters.get(i).getJdbcValue();
+        }
+        System.arraycopy(extra, 0, args, parameters.size(), extra.length);
+        return args;
+    }
+
+    List<SqlParameter> parameters() {
+        return parameters;
+    }
+
+    AggregateTable newTable() {
+        return new AggregateTable();
+    }
+
+    /**
+     * 用fork-join两两合并部分结果
+     */
+    AggregateTable merge(List<AggregateTable> partials) {
+        if (partials.isEmpty()) {
+            return newTable();
+        }
+        return partials.size() == 1 ? partials.get(0)
+            : ForkJoinPool.commonPool().invoke(new MergeTask(partials, 0, partials.size()));
+    }
+
+    /**
+     * 合并结果转为输出行：计算AVG，按ORDER BY排序并截取LIMIT
+     */
+    List<Map<String, Object>> finish(AggregateTable merged) {
+        List<Object[]> groupRows = new ArrayList<>();
+        merged.forEach((key, states) -> {
+            Object[] row = new Object[outputs.size()];
+            for (int i = 0; i < row.length; i++) {
+                Output output = outputs.get(i);
+                if (output.isGroup()) {
+                    row[i] = key[output.groupIndex()];
+                } else if (output.function() == Function.AVG) {
+                    row[i] = average(states[output.partial()], states[output.partial() + 1]);
+                } else if (output.function() == Function.COUNT) {
+                    row[i] = states[output.partial()] != null ? states[output.partial()] : 0L;
+                } else {
+                    row[i] = states[output.partial()];
+                }
+            }
+            groupRows.add(row);
+        });
+        // A global aggregate over zero rows still returns one row, as it does in SQL
+        if (groupRows.isEmpty() && groupColumns.isEmpty()) {
+            Object[] row = new Object[outputs.size()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = outputs.get(i).function() == Function.COUNT ? 0L : null;
+            }
+            groupRows.add(row);
+        }
+
+        if (!orderBy.isEmpty()) {
+            Comparator<Object[]> comparator = null;
+            for (Order order : orderBy) {
+                Comparator<Object[]> next = (a, b) -> compare(a[order.output()], b[order.output()]);
+                if (order.descending()) {
+                    next = next.reversed();
+                }
+                comparator = comparator == null ? next : comparator.thenComparing(next);
+            }
+            groupRows.sort(comparator);
+        }
+        int size = limit != null ? Math.min(limit, groupRows.size()) : groupRows.size();
+
+        List<Map<String, Object>> rows = new ArrayList<>(size);
+        for (Object[] values : groupRows.subList(0, size)) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 0; i < values.length; i++) {
+                row.put(outputs.get(i).label(), values[i]);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * 与 ORDER BY 一致：NULL 最小
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compare(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a instanceof Number x && b instanceof Number y && a.getClass() != b.getClass()) {
+            return decimal(x).compareTo(decimal(y));
+        }
+        if (a instanceof Comparable comparable && a.getClass() == b.getClass()) {
+            return comparable.compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    /**
+     * 列引用（可带本表前缀）对应的小写列名；不是本表的普通列引用时返回null
+     */
+    static String columnName(String expression, String table) {
+        Matcher matcher = IDENTIFIER.matcher(expression.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        if (matcher.group(2) == null) {
+            return matcher.group(1).toLowerCase(Locale.ROOT);
+        }
+        return table == null || matcher.group(1).equalsIgnoreCase(table)
+            ? matcher.group(2).toLowerCase(Locale.ROOT) : null;
+    }
+
+    static String unqualified(String expression) {
+        Matcher matcher = IDENTIFIER.matcher(expression.trim());
+        if (!matcher.matches()) {
+            return expression;
+        }
+        return matcher.group(2) != null ? matcher.group(2) : matcher.group(1);
+    }
+
+    static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+
+    private static boolean comparable(String column, Map<String, String> columnTypes) {
+        if (columnTypes == null) {
+            return true;
+        }
+        String type = columnTypes.get(column);
+        return type != null && !CHARACTER_TYPES.contains(type);
+    }
+
+    private static int findOutput(List<Output> outputs, String column, UnaryOperator<String> resolver) {
+        for (int i = 0; i < outputs.size(); i++) {
+            Output output = outputs.get(i);
+            if (output.label().equalsIgnoreCase(column) || output.expression().equalsIgnoreCase(column)) {
+                return i;
+            }
+            if (output.isGroup()) {
+                String name = resolver.apply(column);
+                if (name != null && name.equals(resolver.apply(output.expression()))) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 合并部分聚合：COUNT/SUM 相加，MIN/MAX 取较小/较大值，NULL 视为无值
+     */
+    private static Object combine(Function function, Object current, Object value) {
+        if (current == null) {
+            return value;
+        }
+        if (value == null) {
+            return current;
+        }
+        return switch (function) {
+            case COUNT, SUM, AVG -> add((Number) current, (Number) value);
+            case MIN -> compare(value, current) < 0 ? value : current;
+            case MAX -> compare(value, current) > 0 ? value : current;
+        };
+    }
+
+    private static Number add(Number a, Number b) {
+        if (a instanceof BigDecimal || b instanceof BigDecimal || a instanceof BigInteger || b instanceof BigInteger) {
+            return decimal(a).add(decimal(b));
+        }
+        if (a instanceof Double || b instanceof Double || a instanceof Float || b instanceof Float) {
+            return a.doubleValue() + b.doubleValue();
+        }
+        try {
+            return Math.addExact(a.longValue(), b.longValue());
+        } catch (ArithmeticException e) {
+            return BigDecimal.valueOf(a.longValue()).add(BigDecimal.valueOf(b.longValue()));
+        }
+    }
+
+    private static Object average(Object sum, Object count) {
+        if (sum == null || count == null || ((Number) count).longValue() == 0) {
+            return null;
+        }
+        if (sum instanceof Double || sum instanceof Float) {
+            return ((Number) sum).doubleValue() / ((Number) count).longValue();
+        }
+        // Same as the server's div_precision_increment default: four more decimals than the input
+        BigDecimal total = decimal((Number) sum);
+        return total.divide(BigDecimal.valueOf(((Number) count).longValue()), total.scale() + 4, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal decimal(Number value) {
+        if (value instanceof BigDecimal decimal) {
+            return decimal;
+        }
+        if (value instanceof BigInteger integer) {
+            return new BigDecimal(integer);
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return BigDecimal.valueOf(value.doubleValue());
+        }
+        return BigDecimal.valueOf(value.longValue());
+    }
+
+    /**
+     * 一个部分（或合并后）的分组聚合状态
+     */
+    final class AggregateTable {
+        private final LongObjectHashMap<Object[][]> byLong = longKey ? new LongObjectHashMap<>(1024) : null;
+        private final Map<List<Object>, Object[][]> byKey = new HashMap<>();
+
+        /**
+         * 累加一行部分结果；key 与 values 可被调用方复用
+         */
+        void accumulate(Object[] key, Object[] values) {
+            Object[][] entry;
+            if (byLong != null && (key[0] instanceof Long || key[0] instanceof Integer
+                || key[0] instanceof Short || key[0] instanceof Byte)) {
+                entry = byLong.computeIfAbsent(((Number) key[0]).longValue(),
+                    k -> new Object[][] {key.clone(), new Object[partialFunctions.size()]});
+            } else {
+                entry = byKey.computeIfAbsent(Arrays.asList(key.clone()),
+                    k -> new Object[][] {k.toArray(), new Object[partialFunctions.size()]});
+            }
+            fold(entry[1], values);
+        }
+
+        void mergeFrom(AggregateTable other) {
+            if (other.byLong != null) {
+                other.byLong.forEach((k, entry) -> {
+                    Object[][] target = byLong.computeIfAbsent(k,
+                        x -> new Object[][] {entry[0], new Object[partialFunctions.size()]});
+                    fold(target[1], entry[1]);
+                });
+            }
+            other.byKey.forEach((k, entry) -> {
+                Object[][] target = byKey.computeIfAbsent(k,
+                    x -> new Object[][] {entry[0], new Object[partialFunctions.size()]});
+                fold(target[1], entry[1]);
+            });
+        }
+
+        void forEach(BiConsumer<Object[], Object[]> action) {
+            if (byLong != null) {
+                byLong.forEach((k, entry) -> action.accept(entry[0], entry[1]));
+            }
+            byKey.values().forEach(entry -> action.accept(entry[0], entry[1]));
+        }
+
+        private void fold(Object[] states, Object[] values) {
+            for (int i = 0; i < states.length; i++) {
+                states[i] = combine(partialFunctions.get(i), states[i], values[i]);
+            }
+        }
+    }
+
+    private static final class MergeTask extends RecursiveTask<AggregateTable> {
+        private static final long serialVersionUID = 1L;
+
+        // Only ever run in this JVM; the partial tables are not serializable
+        private final transient List<AggregateTable> tables;
+        private final int from;
+        private final int to;
+
+        MergeTask(List<AggregateTable> tables, int from, int to) {
+            this.tables = tables;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected AggregateTable compute() {
+            if (to - from == 1) {
+                return tables.get(from);
+            }
+            int middle = (from + to) >>> 1;
+            MergeTask right = new MergeTask(tables, middle, to);
+            right.fork();
+            AggregateTable left = new MergeTask(tables, from, middle).compute();
+            left.mergeFrom(right.join());
+            return left;
+        }
+    }
+}
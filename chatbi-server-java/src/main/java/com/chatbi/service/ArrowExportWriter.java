@@ -0,0 +1,277 @@
+package com.chatbi.service;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.UInt8Vector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arrow IPC 流格式。每 batchSize 行组成一个记录批写出；数值列用 getLong/getDouble 直接写入列向量的缓冲区，
+ * 写出时缓冲区原样进入响应流，不做逐值编码，浏览器端也可直接在该缓冲区上建立类型化数组视图。
+ * 列类型由结果集元数据映射，其余类型按UTF-8字符串输出。
+ */
+class ArrowExportWriter implements ExportWriter {
+    private static final int MAX_DECIMAL_PRECISION = 38;
+
+    private enum Kind { BOOLEAN, INT32, INT64, UINT64, FLOAT, DOUBLE, DECIMAL, DATE, TIMESTAMP, BINARY, STRING }
+
+    private final OutputStream out;
+    private final BufferAllocator allocator;
+    private final int batchSize;
+
+    private Kind[] kinds;
+    private int[] scales;
+    private VectorSchemaRoot root;
+    private FieldVector[] vectors;
+    private ArrowStreamWriter writer;
+    private int batchRows;
+    private boolean closed;
+
+    ArrowExportWriter(OutputStream out, BufferAllocator allocator, int batchSize) {
+        this.out = out;
+        this.allocator = allocator;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void start(ResultSetMetaData metaData) throws IOException, SQLException {
+        int columnCount = metaData.getColumnCount();
+        kinds = new Kind[columnCount];
+        scales = new int[columnCount];
+        List<Field> fields = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            fields.add(new Field(JdbcUtils.lookupColumnName(metaData, i + 1),
+                FieldType.nullable(arrowType(metaData, i)), null));
+        }
+        root = VectorSchemaRoot.create(new Schema(fields), allocator);
+        vectors = root.getFieldVectors().toArray(new FieldVector[0]);
+        root.allocateNew();
+        writer = new ArrowStreamWriter(root, null, Channels.newChannel(out));
+        writer.start();
+    }
+
+    @Override
+    public void writeRow(ResultSet rs, Object[] values) throws IOException, SQLException {
+        int row = batchRows;
+        for (int i = 0; i < kinds.length; i++) {
+            int column = i + 1;
+            FieldVector vector = vectors[i];
+            switch (kinds[i]) {
+                case BOOLEAN -> {
+                    boolean value = rs.getBoolean(column);
+                    if (rs.wasNull()) {
+                        ((BitVector) vector).setNull(row);
+                    } else {
+                        ((BitVector) vector).setSafe(row, value ? 1 : 0);
+                    }
+                }
+                case INT32 -> {
+                    int value = rs.getInt(column);
+                    if (rs.wasNull()) {
+                        ((IntVector) vector).setNull(row);
+                    } else {
+                        ((IntVector) vector).setSafe(row, value);
+                    }
+                }
+                case INT64 -> {
+                    long value = rs.getLong(column);
+                    if (rs.wasNull()) {
+                        ((BigIntVector) vector).setNull(row);
+                    } else {
+                        ((BigIntVector) vector).setSafe(row, value);
+                    }
+                }
+                case UINT64 -> {
+                    // Values above Long.MAX_VALUE overflow getLong; the low 64 bits are the unsigned value
+                    Object value = rs.getObject(column);
+                    if (value == null) {
+                        ((UInt8Vector) vector).setNull(row);
+                    } else {
+                        long bits = value instanceof BigInteger integer ? integer.longValue()
+                            : value instanceof BigDecimal decimal ? decimal.toBigInteger().longValue()
+                            : ((Number) value).longValue();
+                        ((UInt8Vector) vector).setSafe(row, bits);
+                    }
+                }
+                case FLOAT -> {
+                    float value = rs.getFloat(column);
+                    if (rs.wasNull()) {
+                        ((Float4Vector) vector).setNull(row);
+                    } else {
+                        ((Float4Vector) vector).setSafe(row, value);
+                    }
+                }
+                case DOUBLE -> {
+                    double value = rs.getDouble(column);
+                    if (rs.wasNull()) {
+                        ((Float8Vector) vector).setNull(row);
+                    } else {
+                        ((Float8Vector) vector).setSafe(row, value);
+                    }
+                }
+                case DECIMAL -> {
+                    BigDecimal value = rs.getBigDecimal(column);
+                    if (value == null) {
+                        ((DecimalVector) vector).setNull(row);
+                    } else {
+                        ((DecimalVector) vector).setSafe(row, value.setScale(scales[i], RoundingMode.HALF_UP));
+                    }
+                }
+                case DATE -> {
+                    Date value = rs.getDate(column);
+                    if (value == null) {
+                        ((DateDayVector) vector).setNull(row);
+                    } else {
+                        ((DateDayVector) vector).setSafe(row, (int) value.toLocalDate().toEpochDay());
+                    }
+                }
+                case TIMESTAMP -> {
+                    Timestamp value = rs.getTimestamp(column);
+                    if (value == null) {
+                        ((TimeStampMicroVector) vector).setNull(row);
+                    } else {
+                        // Wall-clock time without a zone, like the DATETIME it came from
+                        LocalDateTime time = value.toLocalDateTime();
+                        ((TimeStampMicroVector) vector).setSafe(row,
+                            time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000);
+                    }
+                }
+                case BINARY -> {
+                    byte[] value = rs.getBytes(column);
+                    if (value == null) {
+                        ((VarBinaryVector) vector).setNull(row);
+                    } else {
+                        ((VarBinaryVector) vector).setSafe(row, value);
+                    }
+                }
+                case STRING -> {
+                    String value = rs.getString(column);
+                    if (value == null) {
+                        ((VarCharVector) vector).setNull(row);
+                    } else {
+                        ((VarCharVector) vector).setSafe(row, value.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        }
+        batchRows++;
+        if (batchRows == batchSize) {
+            flushBatch();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        try {
+            if (batchRows > 0) {
+                flushBatch();
+            }
+            writer.end();
+            out.flush();
+        } finally {
+            abort();
+        }
+    }
+
+    @Override
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (root != null) {
+            root.close();
+        }
+        allocator.close();
+    }
+
+    private void flushBatch() throws IOException {
+        root.setRowCount(batchRows);
+        writer.writeBatch();
+        out.flush();
+        // Reuse the vectors for the next batch; their buffers were written out as-is
+        for (FieldVector vector : vectors) {
+            vector.reset();
+        }
+        batchRows = 0;
+    }
+
+    private ArrowType arrowType(ResultSetMetaData metaData, int i) throws SQLException {
+        int column = i + 1;
+        boolean signed = metaData.isSigned(column);
+        Kind kind = switch (metaData.getColumnType(column)) {
+            case java.sql.Types.BIT, java.sql.Types.BOOLEAN -> metaData.getPrecision(column) > 1
+                ? Kind.BINARY : Kind.BOOLEAN;
+            case java.sql.Types.TINYINT, java.sql.Types.SMALLINT -> Kind.INT32;
+            // Unsigned values need the next wider type
+            case java.sql.Types.INTEGER -> signed ? Kind.INT32 : Kind.INT64;
+            case java.sql.Types.BIGINT -> signed ? Kind.INT64 : Kind.UINT64;
+            case java.sql.Types.REAL, java.sql.Types.FLOAT -> Kind.FLOAT;
+            case java.sql.Types.DOUBLE -> Kind.DOUBLE;
+            case java.sql.Types.DECIMAL, java.sql.Types.NUMERIC -> {
+                int precision = metaData.getPrecision(column);
+                int scale = metaData.getScale(column);
+                yield precision > 0 && precision <= MAX_DECIMAL_PRECISION && scale >= 0 && scale <= precision
+                    ? Kind.DECIMAL : Kind.STRING;
+            }
+            case java.sql.Types.DATE -> Kind.DATE;
+            case java.sql.Types.TIMESTAMP -> Kind.TIMESTAMP;
+            case java.sql.Types.BINARY, java.sql.Types.VARBINARY, java.sql.Types.LONGVARBINARY,
+                 java.sql.Types.BLOB -> Kind.BINARY;
+            default -> Kind.STRING;
+        };
+        kinds[i] = kind;
+        return switch (kind) {
+            case BOOLEAN -> ArrowType.Bool.INSTANCE;
+            case INT32 -> new ArrowType.Int(32, true);
+            case INT64 -> new ArrowType.Int(64, true);
+            case UINT64 -> new ArrowType.Int(64, false);
+            case FLOAT -> new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+            case DOUBLE -> new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case DECIMAL -> {
+                scales[i] = metaData.getScale(column);
+                yield new ArrowType.Decimal(metaData.getPrecision(column), scales[i], 128);
+            }
+            case DATE -> new ArrowType.Date(DateUnit.DAY);
+            case TIMESTAMP -> new ArrowType.Timestamp(TimeUnit.MICROSECOND, null);
+            case BINARY -> ArrowType.Binary.INSTANCE;
+            case STRING -> ArrowType.Utf8.INSTANCE;
+        };
+    }
+}
@@ -0,0 +1,96 @@
+package com.chatbi.service;
+
+import com.chatbi.model.CachedTable;
+import com.chatbi.model.CachedTableCreate;
+import com.chatbi.model.CachedTableUpdate;
+import com.chatbi.repository.CachedTableRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 列式缓存表配置的增删改查，变更后通知 ColumnarTableCache 重新加载
+ */
+@Service
+public class CachedTableService {
+
+    @Autowired
+    private CachedTableRepository repository;
+
+    @Autowired
+    private ColumnarTableCache columnarTableCache;
+
+    public List<CachedTable> getCachedTables(String connectionId) {
+        return columnarTableCache.describe(repository.findByConnectionId(connectionId));
+    }
+
+    public CachedTable createCachedTable(String connectionId, CachedTableCreate createRequest) {
+        LocalDateTime now = LocalDateTime.now();
+        CachedTable cachedTable = new CachedTable();
+        cachedTable.setId(UUID.randomUUID().toString());
+        cachedTable.setConnectionId(connectionId);
+        cachedTable.setTableName(createRequest.getTableName().trim());
+        cachedTable.setWatermarkColumn(blankToNull(createRequest.getWatermarkColumn()));
+        cachedTable.setRefreshIntervalSeconds(createRequest.getRefreshIntervalSeconds());
+        cachedTable.setEnabled(createRequest.getEnabled() != null ? createRequest.getEnabled() : true);
+        cachedTable.setCreatedAt(now);
+        cachedTable.setUpdatedAt(now);
+
+        CachedTable saved = repository.save(cachedTable);
+        columnarTableCache.reload();
+        return saved;
+    }
+
+    public CachedTable updateCachedTable(String connectionId, String cachedTableId, CachedTableUpdate updateRequest) {
+        Optional<CachedTable> optionalCachedTable = findCachedTable(connectionId, cachedTableId);
+        if (optionalCachedTable.isEmpty()) {
+            return null;
+        }
+
+        CachedTable cachedTable = optionalCachedTable.get();
+        if (updateRequest.getWatermarkColumn() != null) {
+            // An empty string switches back to UPDATE_TIME
+            cachedTable.setWatermarkColumn(blankToNull(updateRequest.getWatermarkColumn()));
+        }
+        if (updateRequest.getRefreshIntervalSeconds() != null) {
+            cachedTable.setRefreshIntervalSeconds(updateRequest.getRefreshIntervalSeconds());
+        }
+        if (updateRequest.getEnabled() != null) {
+            cachedTable.setEnabled(updateRequest.getEnabled());
+        }
+        cachedTable.setUpdatedAt(LocalDateTime.now());
+
+        CachedTable saved = repository.save(cachedTable);
+        columnarTableCache.reload();
+        return saved;
+    }
+
+    public boolean deleteCachedTable(String connectionId, String cachedTableId) {
+        if (findCachedTable(connectionId, cachedTableId).isEmpty()) {
+            return false;
+        }
+        repository.deleteById(cachedTableId);
+        columnarTableCache.reload();
+        return true;
+    }
+
+    /**
+     * 删除连接时清理其全部缓存表
+     */
+    public void deleteByConnection(String connectionId) {
+        repository.deleteByConnectionId(connectionId);
+        columnarTableCache.reload();
+    }
+
+    private Optional<CachedTable> findCachedTable(String connectionId, String cachedTableId) {
+        return repository.findById(cachedTableId).filter(table -> connectionId.equals(table.getConnectionId()));
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+}
@@ -6,10 +6,14 @@ import com.chatbi.model.SemanticSQL;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.chatbi.repository.ChatMessageRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class ChatMessageService {
@@ -22,6 +26,9 @@ public class ChatMessageService {
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
+    @Value("${chatbi.result-buffer.inline-rows:1000}")
+    private int inlineRows;
+
     public List<ChatMessage> listMessages(ChatSession session) {
         return chatMessageRepository.findBySessionOrderByCreatedAtAsc(session);
     }
@@ -62,7 +69,7 @@ public class ChatMessageService {
                 message.setSqlQuery(sqlQuery);
             }
             if (executionResult != null) {
-                message.setExecutionResult(OBJECT_MAPPER.writeValueAsString(executionResult));
+                message.setExecutionResult(OBJECT_MAPPER.writeValueAsString(inline(executionResult)));
             }
             if (debugInfo != null) {
                 message.setDebugInfo(OBJECT_MAPPER.writeValueAsString(debugInfo));
@@ -74,21 +81,60 @@ public class ChatMessageService {
     }
 
     public void appendExecutionResultToLastAssistant(ChatSession session, java.util.Map<String, Object> executionResult) {
+        findLastAssistantMessage(session).ifPresent(msg -> {
+            try {
+                if (executionResult != null) {
+                    msg.setExecutionResult(OBJECT_MAPPER.writeValueAsString(inline(executionResult)));
+                }
+            } catch (Exception ignored) {}
+            chatMessageRepository.save(msg);
+            chatSessionService.touchUpdatedAt(session);
+        });
+    }
+
+    public Optional<ChatMessage> findById(Long messageId) {
+        return chatMessageRepository.findById(messageId);
+    }
+
+    public Optional<ChatMessage> findLastAssistantMessage(ChatSession session) {
         List<ChatMessage> messages = chatMessageRepository.findBySessionOrderByCreatedAtAsc(session);
         for (int i = messages.size() - 1; i >= 0; i--) {
-            ChatMessage msg = messages.get(i);
-            if ("assistant".equals(msg.getRole())) {
-                try {
-                    if (executionResult != null) {
-                        msg.setExecutionResult(OBJECT_MAPPER.writeValueAsString(executionResult));
-                    }
-                } catch (Exception ignored) {}
-                chatMessageRepository.save(msg);
-                chatSessionService.touchUpdatedAt(session);
-                break;
+            if ("assistant".equals(messages.get(i).getRole())) {
+                return Optional.of(messages.get(i));
             }
         }
+        return Optional.empty();
     }
-}
 
+    /**
+     * 将执行结果写入指定消息（异步任务完成时使用）
+     */
+    public void updateExecutionResult(Long messageId, java.util.Map<String, Object> executionResult) {
+        chatMessageRepository.findById(messageId).ifPresent(msg -> {
+            try {
+                msg.setExecutionResult(OBJECT_MAPPER.writeValueAsString(executionResult));
+            } catch (Exception ignored) {}
+            chatMessageRepository.save(msg);
+        });
+    }
 
+    /**
+     * 消息里只内联前 inline-rows 行：大结果可能已落盘，整体序列化会重新全部读回堆内
+     */
+    private java.util.Map<String, Object> inline(java.util.Map<String, Object> executionResult) {
+        if (!(executionResult.get("data") instanceof List<?> data) || data.size() <= inlineRows) {
+            return executionResult;
+        }
+        java.util.Map<String, Object> inlined = new LinkedHashMap<>(executionResult);
+        List<Object> rows = new ArrayList<>(inlineRows);
+        for (Object row : data) {
+            if (rows.size() == inlineRows) {
+                break;
+            }
+            rows.add(row);
+        }
+        inlined.put("data", rows);
+        inlined.put("truncated", true);
+        return inlined;
+    }
+}
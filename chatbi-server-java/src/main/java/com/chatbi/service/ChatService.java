@@ -20,10 +20,16 @@ public class ChatService {
     private MySQLSQLGenerator mysqlSQLGenerator;
     
     @Autowired
-    private DatabaseManager databaseManager;
+    private DatabaseConnectionService databaseConnectionService;
     
     @Autowired
-    private DatabaseConnectionService databaseConnectionService;
+    private DatabaseConnectionGroupService databaseConnectionGroupService;
+    
+    @Autowired
+    private QueryCostGate queryCostGate;
+    
+    @Autowired
+    private RollupService rollupService;
     
     private final Map<String, List<Map<String, Object>>> conversations = new ConcurrentHashMap<>();
 
@@ -39,7 +45,11 @@ public class ChatService {
             }
             
             // Get database connection
-            DatabaseConnection selectedConnection = getSelectedConnection(request.getDatabaseConnectionId());
+            DatabaseConnection selectedConnection = request.getConnectionGroupId() != null
+                && !request.getConnectionGroupId().trim().isEmpty()
+                ? getGroupConnection(request.getConnectionGroupId())
+                : getSelectedConnection(request.getDatabaseConnectionId());
+            List<DatabaseConnection> federatedConnections = getFederatedConnections(request.getFederatedConnectionIds());
             
             // Initialize conversation history
             if (!conversations.containsKey(conversationId)) {
@@ -69,15 +79,44 @@ public class ChatService {
                     }
                 }
             }
-            SemanticSQL semanticSQL = semanticSQLConverter.convertToSemanticSQL(shortContextInput, selectedConnection);
+            SemanticSQL semanticSQL = federatedConnections != null
+                ? semanticSQLConverter.convertToSemanticSQL(shortContextInput, federatedConnections)
+                : semanticSQLConverter.convertToSemanticSQL(shortContextInput, selectedConnection);
             Map<String, Object> debugOllama = semanticSQLConverter.getLastDebug();
             
-            // Generate MySQL SQL statement
-            String mysqlSQL = mysqlSQLGenerator.generateMySQLSQL(semanticSQL);
-            logger.info("Generated MySQL SQL: cid={} sql={}", conversationId, mysqlSQL);
+            // Read a matching rollup instead of scanning the base table; shards and federated joins keep the original
+            String rolledUpTable = null;
+            if (federatedConnections == null && (request.getConnectionGroupId() == null
+                || request.getConnectionGroupId().trim().isEmpty())) {
+                SemanticSQL rewritten = rollupService.rewrite(semanticSQL, selectedConnection);
+                if (rewritten != null) {
+                    rolledUpTable = semanticSQL.getTables().get(0);
+                    semanticSQL = rewritten;
+                }
+            }
+            
+            // Generate MySQL SQL statement: placeholders for execution, rendered text for display
+            ParameterizedSQL parameterizedSQL = mysqlSQLGenerator.generate(semanticSQL);
+            logger.info("Generated MySQL SQL: cid={} sql={} params={}", conversationId,
+                parameterizedSQL.getSql(), parameterizedSQL.getParameters().size());
+            
+            // Estimate the cost up front so the user sees it before choosing to execute
+            QueryOptions costOptions = QueryOptions.defaults();
+            costOptions.setParameters(parameterizedSQL.getParameters());
+            // A cross-connection statement cannot be explained by any single database
+            QueryCostEstimate costEstimate = federatedConnections != null ? null
+                : queryCostGate.evaluate(parameterizedSQL.getSql(), selectedConnection, costOptions);
+            parameterizedSQL.setSql(queryCostGate.applyLimit(parameterizedSQL.getSql(), costEstimate));
+            String mysqlSQL = parameterizedSQL.render();
             
             // Generate response message
             String responseMessage = generateResponseMessage(request.getMessage(), semanticSQL, mysqlSQL);
+            if (rolledUpTable != null) {
+                responseMessage += "\n\n本次查询改写为读取 " + rolledUpTable + " 的预聚合汇总表，数据截至该汇总表上次刷新。";
+            }
+            if (costEstimate != null && costEstimate.getMessage() != null) {
+                responseMessage += "\n\n**注意：**" + costEstimate.getMessage();
+            }
             
             // Add assistant reply to conversation history
             Map<String, Object> assistantMessage = new HashMap<>();
@@ -85,9 +124,10 @@ public class ChatService {
             assistantMessage.put("content", responseMessage);
             assistantMessage.put("semantic_sql", semanticSQL);
             assistantMessage.put("mysql_sql", mysqlSQL);
+            assistantMessage.put("parameterized_sql", parameterizedSQL);
             conversations.get(conversationId).add(assistantMessage);
             
-            return new ChatResponse(
+            ChatResponse chatResponse = new ChatResponse(
                 responseMessage,
                 mysqlSQL,
                 semanticSQL,
@@ -95,6 +135,9 @@ public class ChatService {
                 null,
                 debugOllama
             );
+            chatResponse.setParameterizedSql(parameterizedSQL);
+            chatResponse.setCostEstimate(costEstimate);
+            return chatResponse;
             
         } catch (Exception e) {
             logger.error("process_chat_message error: {}", e.getMessage(), e);
@@ -112,46 +155,62 @@ public class ChatService {
         }
     }
 
-    public Map<String, Object> executeSqlAndUpdateResponse(String conversationId, String sql) {
-        try {
-            // Get current active database connection
-            DatabaseConnection activeConnection = databaseConnectionService.getActiveConnection();
-            
-            // Execute SQL query
-            SQLExecutionResponse executionResult;
-            if (activeConnection != null) {
-                executionResult = databaseManager.executeQuery(sql, activeConnection);
-            } else {
-                executionResult = databaseManager.executeQuery(sql);
+    /**
+     * 用已完成的执行句柄更新会话历史中最后一条助手消息，不再重复执行SQL
+     */
+    public void recordExecution(String conversationId, QueryExecution execution) {
+        List<Map<String, Object>> history = conversations.get(conversationId);
+        if (history == null || history.isEmpty()) {
+            return;
+        }
+        Map<String, Object> lastMessage = history.get(history.size() - 1);
+        if ("assistant".equals(lastMessage.get("role"))) {
+            lastMessage.put("execution_id", execution.getId());
+            lastMessage.put("execution_result", execution.getResult());
+        }
+    }
+
+    /**
+     * 客户端回传的SQL与会话中最近一次生成的展示SQL一致时，返回其参数化形式，
+     * 这样未改动的生成SQL走预编译语句执行；用户手工修改过的SQL按原文执行
+     */
+    public Optional<ParameterizedSQL> findParameterizedSql(String conversationId, String sql) {
+        return findGeneratedMessage(conversationId, sql)
+            .map(message -> message.get("parameterized_sql"))
+            .filter(ParameterizedSQL.class::isInstance)
+            .map(ParameterizedSQL.class::cast);
+    }
+
+    /**
+     * 同上，返回生成该SQL的语义SQL；生成后又被改写过（例如代价检查追加了LIMIT）时返回空
+     */
+    public Optional<SemanticSQL> findSemanticSql(String conversationId, String sql) {
+        return findGeneratedMessage(conversationId, sql).flatMap(message -> {
+            if (message.get("semantic_sql") instanceof SemanticSQL semanticSQL
+                && message.get("parameterized_sql") instanceof ParameterizedSQL parameterized
+                && mysqlSQLGenerator.generate(semanticSQL).getSql().equals(parameterized.getSql())) {
+                return Optional.of(semanticSQL);
             }
-            
-            // Update the last assistant message in conversation history
-            if (conversations.containsKey(conversationId) && 
-                !conversations.get(conversationId).isEmpty()) {
-                
-                List<Map<String, Object>> history = conversations.get(conversationId);
-                Map<String, Object> lastMessage = history.get(history.size() - 1);
-                
-                if ("assistant".equals(lastMessage.get("role"))) {
-                    lastMessage.put("execution_result", executionResult);
+            return Optional.empty();
+        });
+    }
+
+    private Optional<Map<String, Object>> findGeneratedMessage(String conversationId, String sql) {
+        List<Map<String, Object>> history = conversations.get(conversationId);
+        if (history == null || sql == null) {
+            return Optional.empty();
+        }
+        for (int i = history.size() - 1; i >= 0; i--) {
+            Map<String, Object> message = history.get(i);
+            if ("assistant".equals(message.get("role"))) {
+                Object rendered = message.get("mysql_sql");
+                if (rendered != null && SqlText.normalize(rendered.toString()).equals(SqlText.normalize(sql))) {
+                    return Optional.of(message);
                 }
+                return Optional.empty();
             }
-            
-            return Map.of(
-                "success", executionResult.isSuccess(),
-                "data", executionResult.getData(),
-                "error", executionResult.getError(),
-                "row_count", executionResult.getRowCount()
-            );
-            
-        } catch (Exception e) {
-            logger.error("Error executing SQL and updating response: {}", e.getMessage(), e);
-            return Map.of(
-                "success", false,
-                "error", e.getMessage(),
-                "row_count", 0
-            );
         }
+        return Optional.empty();
     }
 
     public List<Map<String, Object>> getConversationHistory(String conversationId) {
@@ -162,6 +221,40 @@ public class ChatService {
         conversations.remove(conversationId);
     }
 
+    /**
+     * 分片结构相同，生成SQL和代价估算都以组内第一个分片为准
+     */
+    private DatabaseConnection getGroupConnection(String groupId) {
+        Optional<DatabaseConnection> shard = databaseConnectionGroupService.getGroup(groupId)
+            .flatMap(group -> databaseConnectionGroupService.getMembers(group).stream().findFirst());
+        if (shard.isPresent()) {
+            logger.info("Using first shard of connection group {}: {} ({})",
+                groupId, shard.get().getName(), shard.get().getId());
+            return shard.get();
+        }
+        logger.warn("Connection group not found or empty: {}", groupId);
+        return getSelectedConnection(null);
+    }
+
+    /**
+     * 跨库联合查询的连接；少于两个有效连接时返回null，按单库处理
+     */
+    private List<DatabaseConnection> getFederatedConnections(List<String> connectionIds) {
+        if (connectionIds == null || connectionIds.size() < 2) {
+            return null;
+        }
+        List<DatabaseConnection> connections = new ArrayList<>();
+        for (String connectionId : connectionIds) {
+            Optional<DatabaseConnection> connection = databaseConnectionService.getConnection(connectionId);
+            if (connection.isPresent()) {
+                connections.add(connection.get());
+            } else {
+                logger.warn("Federated database connection not found: {}", connectionId);
+            }
+        }
+        return connections.size() >= 2 ? connections : null;
+    }
+
     private DatabaseConnection getSelectedConnection(String databaseConnectionId) {
         if (databaseConnectionId != null && !databaseConnectionId.trim().isEmpty()) {
             Optional<DatabaseConnection> connection = databaseConnectionService.getConnection(databaseConnectionId);
@@ -0,0 +1,526 @@
+package com.chatbi.service;
+
+import com.chatbi.model.ColumnProfile;
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.repository.ColumnProfileRepository;
+import com.chatbi.repository.DatabaseConnectionRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSetMetaData;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 后台统计各连接的字段画像并保存到 column_profile，元数据构建只读取画像，对话请求不再查询业务表。
+ * 每张表扫描最多 max-rows 行，一次扫描中算出每个字段的空值比例、最小/最大值、HyperLogLog 估算的不同值数、
+ * Space-Saving 近似 top-k 高频值和蓄水池抽样的样例值。
+ * 没有画像、画像超过 refresh-interval-seconds 或表结构检测发现结构变化的表会被统计；只有数据变化的表
+ * 距上次统计至少 min-interval-seconds 才重新统计。统计完成后增量刷新缓存的元数据。
+ */
+@Service
+public class ColumnProfiler {
+    private static final Logger logger = LoggerFactory.getLogger(ColumnProfiler.class);
+
+    private static final String TABLES_SQL =
+        "SELECT TABLE_NAME FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE()";
+
+    private static final int HLL_PRECISION = 12;
+    private static final int TRACKED_VALUES = 64;
+    private static final int ALL_VALUES_LIMIT = 20;
+    private static final int MAX_VALUE_LENGTH = 64;
+
+    @Autowired
+    private DatabaseConnectionRepository connectionRepository;
+
+    @Autowired
+    private ColumnProfileRepository columnProfileRepository;
+
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+
+    @Autowired
+    private QueryRegistry queryRegistry;
+
+    @Autowired
+    private SchemaMetadataBuilder schemaMetadataBuilder;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${chatbi.profile.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chatbi.profile.check-interval-seconds:60}")
+    private int checkIntervalSeconds;
+
+    @Value("${chatbi.profile.refresh-interval-seconds:21600}")
+    private long refreshIntervalSeconds;
+
+    @Value("${chatbi.profile.min-interval-seconds:600}")
+    private long minIntervalSeconds;
+
+    @Value("${chatbi.profile.max-rows:100000}")
+    private int maxRows;
+
+    @Value("${chatbi.profile.parallelism:2}")
+    private int parallelism;
+
+    @Value("${chatbi.profile.table-timeout-seconds:60}")
+    private int tableTimeoutSeconds;
+
+    @Value("${chatbi.profile.top-k:5}")
+    private int topK;
+
+    @Value("${chatbi.profile.samples:3}")
+    private int sampleCount;
+
+    @Value("${chatbi.streaming.fetch-size:1000}")
+    private int fetchSize;
+
+    @Value("${chatbi.rollup.table-prefix:chatbi_rollup_}")
+    private String rollupTablePrefix;
+
+    private final Map<String, ConnectionState> states = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chatbi-profile");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService profilers = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("chatbi-profile-", 0).factory());
+
+    private static final class ConnectionState {
+        final Set<String> forced = ConcurrentHashMap.newKeySet();
+        final Set<String> changed = ConcurrentHashMap.newKeySet();
+        final Map<String, LocalDateTime> failedAt = new ConcurrentHashMap<>();
+        final AtomicBoolean all = new AtomicBoolean();
+        final AtomicBoolean running = new AtomicBoolean();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::checkAll, 5, checkIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        profilers.shutdownNow();
+    }
+
+    /**
+     * 该连接已保存的字段画像，按表名和字段顺序排列
+     */
+    public List<ColumnProfile> getProfiles(String connectionId) {
+        List<ColumnProfile> profiles = new ArrayList<>(columnProfileRepository.findByConnectionId(connectionId));
+        profiles.sort(Comparator.comparing(ColumnProfile::getTableName)
+            .thenComparing(ColumnProfile::getOrdinalPosition));
+        return profiles;
+    }
+
+    /**
+     * 表结构检测发现变化的表：结构变化的表在下一轮立即重新统计，只有数据变化的表遵守最小间隔
+     */
+    public void requestProfile(String connectionId, Collection<String> tables, boolean structural) {
+        if (tables.isEmpty()) {
+            return;
+        }
+        ConnectionState state = states.computeIfAbsent(connectionId, id -> new ConnectionState());
+        (structural ? state.forced : state.changed).addAll(tables);
+    }
+
+    /**
+     * 立即在后台重新统计该连接的全部表
+     */
+    public void profileNow(DatabaseConnection connection) {
+        states.computeIfAbsent(connection.getId(), id -> new ConnectionState()).all.set(true);
+        submit(connection);
+    }
+
+    private void checkAll() {
+        try {
+            Set<String> ids = new HashSet<>();
+            for (DatabaseConnection connection : connectionRepository.findByIsActiveTrue()) {
+                ids.add(connection.getId());
+                submit(connection);
+            }
+            states.keySet().retainAll(ids);
+        } catch (Exception e) {
+            logger.warn("Failed to schedule column profiling: {}", e.getMessage());
+        }
+    }
+
+    private void submit(DatabaseConnection connection) {
+        ConnectionState state = states.computeIfAbsent(connection.getId(), id -> new ConnectionState());
+        if (state.running.compareAndSet(false, true)) {
+            profilers.submit(() -> {
+                try {
+                    profileConnection(connection, state);
+                } finally {
+                    state.running.set(false);
+                }
+            });
+        }
+    }
+
+    private void profileConnection(DatabaseConnection connection, ConnectionState state) {
+        try {
+            DatabaseConnection reader = replicaRouter.routeRead(connection);
+            JdbcTemplate template = dataSourceRegistry.getJdbcTemplate(reader);
+            Set<String> tables = new LinkedHashSet<>();
+            try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
+                for (String table : template.queryForList(TABLES_SQL, String.class)) {
+                    if (!table.toLowerCase(Locale.ROOT).startsWith(rollupTablePrefix)) {
+                        tables.add(table);
+                    }
+                }
+            }
+
+            Map<String, LocalDateTime> profiledAt = new HashMap<>();
+            List<String> orphans = new ArrayList<>();
+            for (ColumnProfile profile : columnProfileRepository.findByConnectionId(connection.getId())) {
+                if (!tables.contains(profile.getTableName())) {
+                    orphans.add(profile.getId());
+                } else if (profile.getProfiledAt() != null) {
+                    profiledAt.merge(profile.getTableName(), profile.getProfiledAt(),
+                        (a, b) -> a.isBefore(b) ? a : b);
+                }
+            }
+            if (!orphans.isEmpty()) {
+                columnProfileRepository.deleteAllById(orphans);
+            }
+
+            List<String> due = dueTables(state, tables, profiledAt);
+            if (due.isEmpty()) {
+                return;
+            }
+            long started = System.currentTimeMillis();
+            Semaphore slots = new Semaphore(Math.max(1, parallelism));
+            List<Future<?>> futures = new ArrayList<>();
+            for (String table : due) {
+                futures.add(profilers.submit(() -> {
+                    slots.acquire();
+                    try {
+                        profileTable(connection, reader, template, table);
+                        return null;
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            }
+            List<String> profiled = new ArrayList<>();
+            for (int i = 0; i < due.size(); i++) {
+                String table = due.get(i);
+                try {
+                    futures.get(i).get();
+                    profiled.add(table);
+                    state.failedAt.remove(table);
+                } catch (ExecutionException e) {
+                    state.failedAt.put(table, LocalDateTime.now());
+                    logger.warn("Failed to profile table {}.{}: {}", connection.getId(), table,
+                        e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                }
+            }
+            if (!profiled.isEmpty()) {
+                schemaMetadataBuilder.refreshTables(connection, profiled, List.of());
+            }
+            logger.info("Profiled {} of {} tables on connection {} in {} ms", profiled.size(), due.size(),
+                connection.getId(), System.currentTimeMillis() - started);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Column profiling failed for connection {}: {}", connection.getId(), e.getMessage());
+        }
+    }
+
+    private List<String> dueTables(ConnectionState state, Set<String> tables, Map<String, LocalDateTime> profiledAt) {
+        boolean all = state.all.getAndSet(false);
+        LocalDateTime now = LocalDateTime.now();
+        List<String> due = new ArrayList<>();
+        for (String table : tables) {
+            LocalDateTime at = profiledAt.get(table);
+            LocalDateTime failed = state.failedAt.get(table);
+            boolean forced = all || state.forced.remove(table);
+            // A table that keeps timing out is retried at the minimum interval, not on every check
+            if (!forced && failed != null && failed.isAfter(now.minusSeconds(minIntervalSeconds))) {
+                continue;
+            }
+            if (forced || at == null || at.isBefore(now.minusSeconds(refreshIntervalSeconds))) {
+                due.add(table);
+                state.changed.remove(table);
+            } else if (state.changed.contains(table) && at.isBefore(now.minusSeconds(minIntervalSeconds))) {
+                due.add(table);
+                state.changed.remove(table);
+            }
+        }
+        state.forced.retainAll(tables);
+        state.changed.retainAll(tables);
+        return due;
+    }
+
+    private void profileTable(DatabaseConnection connection, DatabaseConnection reader, JdbcTemplate template,
+                              String table) throws JsonProcessingException {
+        String sql = "SELECT * FROM " + AggregatePlan.quote(table) + " LIMIT " + maxRows;
+        JdbcTemplate streaming = new JdbcTemplate(template.getDataSource());
+        streaming.setFetchSize(fetchSize);
+        List<ColumnStats> columns;
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection);
+             QueryRegistry.TrackedQuery query = queryRegistry.register(
+                 reader, sql, QueryRegistry.SOURCE_PROFILE, tableTimeoutSeconds)) {
+            try {
+                columns = streaming.query(query.statementCreator(), (ResultSetExtractor<List<ColumnStats>>) rs -> {
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    List<ColumnStats> stats = new ArrayList<>();
+                    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                        stats.add(new ColumnStats(metaData.getColumnLabel(i), i, sampleCount));
+                    }
+                    while (rs.next()) {
+                        for (int i = 0; i < stats.size(); i++) {
+                            stats.get(i).add(rs.getObject(i + 1));
+                        }
+                    }
+                    return stats;
+                });
+            } catch (RuntimeException e) {
+                throw new IllegalStateException(query.failureMessage(e), e);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Set<String> ids = new HashSet<>();
+        List<ColumnProfile> profiles = new ArrayList<>();
+        // Hitting the LIMIT means the rest of the table was never read
+        boolean sampled = !columns.isEmpty() && columns.get(0).rows >= maxRows;
+        for (ColumnStats column : columns) {
+            ColumnProfile profile = column.toProfile(objectMapper, topK, sampled);
+            profile.setId(profileId(connection.getId(), table, column.name));
+            profile.setConnectionId(connection.getId());
+            profile.setTableName(table);
+            profile.setProfiledAt(now);
+            ids.add(profile.getId());
+            profiles.add(profile);
+        }
+        // Ids are stable per column, so saving overwrites in place; only dropped columns need deleting
+        List<String> dropped = new ArrayList<>();
+        for (ColumnProfile existing : columnProfileRepository.findByConnectionIdAndTableNameIn(
+                connection.getId(), List.of(table))) {
+            if (!ids.contains(existing.getId())) {
+                dropped.add(existing.getId());
+            }
+        }
+        if (!dropped.isEmpty()) {
+            columnProfileRepository.deleteAllById(dropped);
+        }
+        columnProfileRepository.saveAll(profiles);
+    }
+
+    private static String profileId(String connectionId, String table, String column) {
+        return UUID.nameUUIDFromBytes((connectionId + '\u0000' + table + '\u0000' + column)
+            .getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * 单个字段在一次扫描中的统计量；值统一按截断后的文本计数和抽样
+     */
+    static final class ColumnStats {
+        final String name;
+        final int position;
+        final HyperLogLog distinct = new HyperLogLog(HLL_PRECISION);
+        final Map<String, long[]> counters = new HashMap<>();
+        final String[] reservoir;
+        final SplittableRandom random;
+        long rows;
+        long nulls;
+        long nonNull;
+        boolean evicted;
+        Object min;
+        Object max;
+        Object minValue;
+        Object maxValue;
+
+        ColumnStats(String name, int position, int samples) {
+            this.name = name;
+            this.position = position;
+            this.reservoir = new String[Math.max(0, samples)];
+            // Fixed seed: the same data gives the same samples, so re-profiling does not churn the prompt
+            this.random = new SplittableRandom(position);
+        }
+
+        void add(Object value) {
+            rows++;
+            if (value == null) {
+                nulls++;
+                return;
+            }
+            if (value instanceof byte[] || value instanceof Blob || value instanceof Clob) {
+                return;
+            }
+            String text = value.toString();
+            if (text.length() > MAX_VALUE_LENGTH) {
+                text = text.substring(0, MAX_VALUE_LENGTH);
+            }
+            nonNull++;
+            distinct.add(text);
+            track(text);
+            if (nonNull <= reservoir.length) {
+                reservoir[(int) nonNull - 1] = text;
+            } else {
+                long slot = random.nextLong(nonNull);
+                if (slot < reservoir.length) {
+                    reservoir[(int) slot] = text;
+                }
+            }
+            updateRange(value);
+        }
+
+        /**
+         * Space-Saving：计数器满时新值替换计数最小的值并继承其计数，高频值的计数偏大但不会被漏掉。
+         * 从未替换过时计数器就是全部不同值及其准确次数
+         */
+        private void track(String text) {
+            long[] counter = counters.get(text);
+            if (counter != null) {
+                counter[0]++;
+                return;
+            }
+            if (counters.size() < TRACKED_VALUES) {
+                counters.put(text, new long[]{1});
+                return;
+            }
+            String smallest = null;
+            long smallestCount = Long.MAX_VALUE;
+            for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+                if (entry.getValue()[0] < smallestCount) {
+                    smallest = entry.getKey();
+                    smallestCount = entry.getValue()[0];
+                }
+            }
+            counters.remove(smallest);
+            counters.put(text, new long[]{smallestCount + 1});
+            evicted = true;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void updateRange(Object value) {
+            Object key = value;
+            if (value instanceof Number number) {
+                // BigDecimal keeps DECIMAL and BIGINT UNSIGNED exact and compares across numeric types
+                try {
+                    key = new BigDecimal(number.toString());
+                } catch (NumberFormatException e) {
+                    return;
+                }
+            } else if (!(value instanceof Comparable)) {
+                return;
+            }
+            if (min == null) {
+                min = key;
+                max = key;
+                minValue = value;
+                maxValue = value;
+                return;
+            }
+            if (min.getClass() != key.getClass()) {
+                return;
+            }
+            if (((Comparable) key).compareTo(min) < 0) {
+                min = key;
+                minValue = value;
+            }
+            if (((Comparable) key).compareTo(max) > 0) {
+                max = key;
+                maxValue = value;
+            }
+        }
+
+        ColumnProfile toProfile(ObjectMapper objectMapper, int topK, boolean sampled) throws JsonProcessingException {
+            ColumnProfile profile = new ColumnProfile();
+            profile.setColumnName(name);
+            profile.setOrdinalPosition(position);
+            profile.setRowCount(rows);
+            profile.setNullRatio(rows > 0 ? (double) nulls / rows : null);
+            profile.setMinValue(text(minValue));
+            profile.setMaxValue(text(maxValue));
+            profile.setDistinctCount(evicted ? Math.min(distinct.estimate(), nonNull) : counters.size());
+            profile.setSampled(sampled);
+
+            // Without evictions the counters hold every value, so a short list is the whole value set
+            boolean complete = !evicted && counters.size() <= ALL_VALUES_LIMIT;
+            profile.setCompleteValues(complete);
+            List<Map<String, Object>> top = new ArrayList<>();
+            counters.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]))
+                .limit(complete ? counters.size() : topK)
+                .forEach(entry -> {
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("value", entry.getKey());
+                    item.put("count", entry.getValue()[0]);
+                    top.add(item);
+                });
+            profile.setTopValues(objectMapper.writeValueAsString(top));
+
+            Set<String> samples = new LinkedHashSet<>();
+            for (String sample : reservoir) {
+                if (sample != null) {
+                    samples.add(sample);
+                }
+            }
+            profile.setSampleValues(objectMapper.writeValueAsString(samples));
+            return profile;
+        }
+
+        private static String text(Object value) {
+            if (value == null) {
+                return null;
+            }
+            String text = value.toString();
+            return text.length() > MAX_VALUE_LENGTH ? text.substring(0, MAX_VALUE_LENGTH) : text;
+        }
+    }
+}
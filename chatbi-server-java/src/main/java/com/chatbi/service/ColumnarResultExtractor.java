@@ -0,0 +1,202 @@
+package com.chatbi.service;
+
+import com.chatbi.model.ColumnarResult;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 将ResultSet直接读入列式结构，数值列写入原始类型数组，避免逐行Map和装箱
+ */
+public class ColumnarResultExtractor implements ResultSetExtractor<ColumnarResult> {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int maxRows;
+    private final boolean startOnCurrentRow;
+
+    public ColumnarResultExtractor() {
+        this(Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * @param maxRows           最多读取的行数，读完后ResultSet停留在最后读取的行上
+     * @param startOnCurrentRow ResultSet已定位在一行上时（分页预读），从当前行开始读取
+     */
+    public ColumnarResultExtractor(int maxRows, boolean startOnCurrentRow) {
+        this.maxRows = maxRows;
+        this.startOnCurrentRow = startOnCurrentRow;
+    }
+
+    @Override
+    public ColumnarResult extractData(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+
+        List<ColumnarResult.ColumnHeader> headers = new ArrayList<>(columnCount);
+        ColumnBuilder[] builders = new ColumnBuilder[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            String encoding = encodingFor(metaData, i);
+            headers.add(new ColumnarResult.ColumnHeader(
+                JdbcUtils.lookupColumnName(metaData, i),
+                metaData.getColumnType(i),
+                metaData.getColumnTypeName(i),
+                encoding));
+            builders[i - 1] = switch (encoding) {
+                case ColumnarResult.ENCODING_INT64 -> new LongColumnBuilder();
+                case ColumnarResult.ENCODING_FLOAT64 -> new DoubleColumnBuilder();
+                default -> new DictionaryColumnBuilder();
+            };
+        }
+
+        int rowCount = 0;
+        boolean onRow = startOnCurrentRow;
+        while (rowCount < maxRows && (onRow || rs.next())) {
+            onRow = false;
+            for (int i = 1; i <= columnCount; i++) {
+                builders[i - 1].append(rs, i, rowCount);
+            }
+            afterRow(rs);
+            rowCount++;
+        }
+
+        List<ColumnarResult.ColumnVector> vectors = new ArrayList<>(columnCount);
+        for (ColumnBuilder builder : builders) {
+            vectors.add(builder.build(rowCount));
+        }
+        return new ColumnarResult(headers, vectors, rowCount);
+    }
+
+    /**
+     * 每读完一行后调用，此时ResultSet仍定位在该行上
+     */
+    protected void afterRow(ResultSet rs) throws SQLException {
+    }
+
+    static String encodingFor(ResultSetMetaData metaData, int column) throws SQLException {
+        switch (metaData.getColumnType(column)) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return ColumnarResult.ENCODING_INT64;
+            case Types.BIGINT:
+                // BIGINT UNSIGNED may exceed the long range
+                return metaData.isSigned(column) ? ColumnarResult.ENCODING_INT64 : ColumnarResult.ENCODING_DICTIONARY;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return ColumnarResult.ENCODING_FLOAT64;
+            default:
+                return ColumnarResult.ENCODING_DICTIONARY;
+        }
+    }
+
+    private interface ColumnBuilder {
+        void append(ResultSet rs, int column, int row) throws SQLException;
+
+        ColumnarResult.ColumnVector build(int rowCount);
+    }
+
+    private static final class LongColumnBuilder implements ColumnBuilder {
+        private long[] values = new long[INITIAL_CAPACITY];
+        private final IntList nulls = new IntList();
+
+        @Override
+        public void append(ResultSet rs, int column, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, values.length + (values.length >> 1));
+            }
+            long value = rs.getLong(column);
+            if (rs.wasNull()) {
+                nulls.add(row);
+            }
+            values[row] = value;
+        }
+
+        @Override
+        public ColumnarResult.ColumnVector build(int rowCount) {
+            return ColumnarResult.ColumnVector.numeric(Arrays.copyOf(values, rowCount), nulls.toArray());
+        }
+    }
+
+    private static final class DoubleColumnBuilder implements ColumnBuilder {
+        private double[] values = new double[INITIAL_CAPACITY];
+        private final IntList nulls = new IntList();
+
+        @Override
+        public void append(ResultSet rs, int column, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, values.length + (values.length >> 1));
+            }
+            double value = rs.getDouble(column);
+            if (rs.wasNull()) {
+                nulls.add(row);
+            }
+            values[row] = value;
+        }
+
+        @Override
+        public ColumnarResult.ColumnVector build(int rowCount) {
+            return ColumnarResult.ColumnVector.numeric(Arrays.copyOf(values, rowCount), nulls.toArray());
+        }
+    }
+
+    private static final class DictionaryColumnBuilder implements ColumnBuilder {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+        private int[] codes = new int[INITIAL_CAPACITY];
+
+        @Override
+        public void append(ResultSet rs, int column, int row) throws SQLException {
+            if (row == codes.length) {
+                codes = Arrays.copyOf(codes, codes.length + (codes.length >> 1));
+            }
+            Object value = JdbcUtils.getResultSetValue(rs, column);
+            if (value == null) {
+                codes[row] = -1;
+                return;
+            }
+            String text = value.toString();
+            Integer code = index.get(text);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(text);
+                index.put(text, code);
+            }
+            codes[row] = code;
+        }
+
+        @Override
+        public ColumnarResult.ColumnVector build(int rowCount) {
+            return ColumnarResult.ColumnVector.dictionary(dictionary, Arrays.copyOf(codes, rowCount));
+        }
+    }
+
+    private static final class IntList {
+        private int[] items = new int[0];
+        private int size;
+
+        void add(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, Math.max(16, size * 2));
+            }
+            items[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+}
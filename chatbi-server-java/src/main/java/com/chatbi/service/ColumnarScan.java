@@ -0,0 +1,725 @@
+package com.chatbi.service;
+
+import com.chatbi.model.SemanticSQL;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 在 ColumnarTable 上执行单表语义SQL：条件逐列过滤得到选择向量（行号数组），
+ * 整数/浮点列直接在基本类型数组上比较，字符列的条件先对字典求值一次再按编码扫描；
+ * 无分组的聚合在选择向量上按列循环累加，分组聚合与排序、LIMIT 复用 AggregatePlan 的合并逻辑。
+ * 遇到不能保证与数据库结果一致的写法（表达式、非二进制排序规则下的字符排序等）返回null，由调用方查询数据库。
+ */
+final class ColumnarScan {
+    private static final Pattern ALIASED = Pattern.compile("^(.+?)\\s+AS\\s+`?(\\w+)`?$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INTEGER_LITERAL = Pattern.compile("^-?\\d+$");
+
+    private final ColumnarTable table;
+    private final SemanticSQL semanticSQL;
+
+    private ColumnarScan(ColumnarTable table, SemanticSQL semanticSQL) {
+        this.table = table;
+        this.semanticSQL = semanticSQL;
+    }
+
+    /**
+     * 执行查询；不支持时返回null
+     */
+    static List<Map<String, Object>> execute(ColumnarTable table, SemanticSQL semanticSQL) {
+        try {
+            return new ColumnarScan(table, semanticSQL).run();
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private List<Map<String, Object>> run() {
+        int[] selection = new int[table.rowCount()];
+        for (int i = 0; i < selection.length; i++) {
+            selection[i] = i;
+        }
+        if (semanticSQL.getConditions() != null) {
+            for (Map<String, Object> condition : semanticSQL.getConditions()) {
+                Object value = condition.get("value");
+                Object column = condition.get("column");
+                if (column == null || value == null) {
+                    // The SQL generator drops these conditions too
+                    continue;
+                }
+                ColumnarTable.Column target = column(String.valueOf(column));
+                if (target == null) {
+                    return null;
+                }
+                String operator = String.valueOf(condition.getOrDefault("operator", "=")).trim()
+                    .toUpperCase(Locale.ROOT).replaceAll("\\s+", " ");
+                selection = filter(target, operator, value, selection);
+                if (selection == null) {
+                    return null;
+                }
+            }
+        }
+        return AggregatePlan.isAggregate(semanticSQL) ? aggregate(selection) : project(selection);
+    }
+
+    private ColumnarTable.Column column(String expression) {
+        String name = AggregatePlan.columnName(expression, table.name());
+        return name != null ? table.column(name) : null;
+    }
+
+    // ---- Filters ------------------------------------------------------------------------------------------
+
+    private int[] filter(ColumnarTable.Column column, String operator, Object value, int[] selection) {
+        if (column instanceof ColumnarTable.LongColumn longColumn) {
+            return filterLong(longColumn, operator, value, selection);
+        }
+        if (column instanceof ColumnarTable.DoubleColumn doubleColumn) {
+            return filterDouble(doubleColumn, operator, value, selection);
+        }
+        if (column instanceof ColumnarTable.StringColumn stringColumn) {
+            return filterString(stringColumn, operator, value, selection);
+        }
+        return filterObject((ColumnarTable.ObjectColumn) column, operator, value, selection);
+    }
+
+    private static int[] filterLong(ColumnarTable.LongColumn column, String operator, Object value, int[] selection) {
+        long[] values = column.values;
+        int[] out = new int[selection.length];
+        int n = 0;
+        switch (operator) {
+            case "IN", "NOT IN" -> {
+                List<?> items = value instanceof List<?> list ? list : List.of(value);
+                long[] set = new long[items.size()];
+                for (int i = 0; i < set.length; i++) {
+                    Long item = exactLong(items.get(i));
+                    if (item == null) {
+                        return null;
+                    }
+                    set[i] = item;
+                }
+                Arrays.sort(set);
+                boolean negate = operator.startsWith("NOT");
+                for (int row : selection) {
+                    if (!column.isNull(row) && (Arrays.binarySearch(set, values[row]) >= 0) != negate) {
+                        out[n++] = row;
+                    }
+                }
+            }
+            case "BETWEEN" -> {
+                Long low = value instanceof List<?> list && list.size() == 2 ? exactLong(list.get(0)) : null;
+                Long high = value instanceof List<?> list && list.size() == 2 ? exactLong(list.get(1)) : null;
+                if (low == null || high == null) {
+                    return null;
+                }
+                for (int row : selection) {
+                    long v = values[row];
+                    if (v >= low && v <= high && !column.isNull(row)) {
+                        out[n++] = row;
+                    }
+                }
+            }
+            default -> {
+                Long literal = exactLong(value);
+                if (literal == null) {
+                    return null;
+                }
+                long x = literal;
+                for (int row : selection) {
+                    long v = values[row];
+                    boolean match = switch (operator) {
+                        case "=" -> v == x;
+                        case "!=", "<>" -> v != x;
+                        case "<" -> v < x;
+                        case "<=" -> v <= x;
+                        case ">" -> v > x;
+                        case ">=" -> v >= x;
+                        default -> throw new UnsupportedOperationException(operator);
+                    };
+                    if (match && !column.isNull(row)) {
+                        out[n++] = row;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static int[] filterDouble(ColumnarTable.DoubleColumn column, String operator, Object value,
+                                      int[] selection) {
+        double[] values = column.values;
+        int[] out = new int[selection.length];
+        int n = 0;
+        switch (operator) {
+            case "IN", "NOT IN" -> {
+                List<?> items = value instanceof List<?> list ? list : List.of(value);
+                Set<Double> set = new HashSet<>();
+                for (Object item : items) {
+                    BigDecimal number = number(item);
+                    if (number == null) {
+                        return null;
+                    }
+                    set.add(number.doubleValue());
+                }
+                boolean negate = operator.startsWith("NOT");
+                for (int row : selection) {
+                    if (!column.isNull(row) && set.contains(values[row]) != negate) {
+                        out[n++] = row;
+                    }
+                }
+            }
+            case "BETWEEN" -> {
+                BigDecimal low = value instanceof List<?> list && list.size() == 2 ? number(list.get(0)) : null;
+                BigDecimal high = value instanceof List<?> list && list.size() == 2 ? number(list.get(1)) : null;
+                if (low == null || high == null) {
+                    return null;
+                }
+                double lo = low.doubleValue();
+                double hi = high.doubleValue();
+                for (int row : selection) {
+                    double v = values[row];
+                    if (v >= lo && v <= hi && !column.isNull(row)) {
+                        out[n++] = row;
+                    }
+                }
+            }
+            default -> {
+                BigDecimal literal = number(value);
+                if (literal == null) {
+                    return null;
+                }
+                double x = literal.doubleValue();
+                for (int row : selection) {
+                    double v = values[row];
+                    boolean match = switch (operator) {
+                        case "=" -> v == x;
+                        case "!=", "<>" -> v != x;
+                        case "<" -> v < x;
+                        case "<=" -> v <= x;
+                        case ">" -> v > x;
+                        case ">=" -> v >= x;
+                        default -> throw new UnsupportedOperationException(operator);
+                    };
+                    if (match && !column.isNull(row)) {
+                        out[n++] = row;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * 字符列：条件对每个字典项求值一次，再按编码查表过滤
+     */
+    private int[] filterString(ColumnarTable.StringColumn column, String operator, Object value, int[] selection) {
+        String[] dictionary = column.dictionary;
+        boolean[] matches = new boolean[dictionary.length];
+        switch (operator) {
+            case "=", "!=", "<>", "IN", "NOT IN" -> {
+                List<?> items = value instanceof List<?> list ? list : List.of(value);
+                Set<String> set = new HashSet<>();
+                for (Object item : items) {
+                    if (!(item instanceof String text)) {
+                        // MySQL would compare a string column with a number numerically
+                        return null;
+                    }
+                    set.add(table.fold(text));
+                }
+                boolean negate = operator.startsWith("NOT") || operator.equals("!=") || operator.equals("<>");
+                for (int i = 0; i < dictionary.length; i++) {
+                    matches[i] = set.contains(table.fold(dictionary[i])) != negate;
+                }
+            }
+            case "LIKE", "NOT LIKE" -> {
+                if (!(value instanceof String pattern)) {
+                    return null;
+                }
+                // LIKE compares without padding, so fold only case and accents
+                Pattern like = likePattern(table.foldCase(pattern));
+                boolean negate = operator.startsWith("NOT");
+                for (int i = 0; i < dictionary.length; i++) {
+                    matches[i] = like.matcher(table.foldCase(dictionary[i])).matches() != negate;
+                }
+            }
+            default -> {
+                // Range comparisons on strings depend on the collation order
+                return null;
+            }
+        }
+        int[] codes = column.codes;
+        int[] out = new int[selection.length];
+        int n = 0;
+        for (int row : selection) {
+            int code = codes[row];
+            if (code >= 0 && matches[code]) {
+                out[n++] = row;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * DECIMAL、日期时间等对象列：字面量先转换为列的类型再比较
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int[] filterObject(ColumnarTable.ObjectColumn column, String operator, Object value,
+                                      int[] selection) {
+        Object[] values = column.values;
+        Class<?> type = null;
+        for (Object v : values) {
+            if (v != null) {
+                type = v.getClass();
+                break;
+            }
+        }
+        if (type == null) {
+            // All NULL: no comparison can be true
+            return new int[0];
+        }
+        List<?> items = operator.equals("BETWEEN") || operator.endsWith("IN")
+            ? (value instanceof List<?> list ? list : List.of(value)) : List.of(value);
+        if (operator.equals("BETWEEN") && items.size() != 2) {
+            return null;
+        }
+        Comparable[] literals = new Comparable[items.size()];
+        for (int i = 0; i < literals.length; i++) {
+            literals[i] = coerce(items.get(i), type);
+            if (literals[i] == null) {
+                return null;
+            }
+        }
+        int[] out = new int[selection.length];
+        int n = 0;
+        for (int row : selection) {
+            Object v = values[row];
+            if (v == null) {
+                continue;
+            }
+            Comparable c = (Comparable) v;
+            boolean match;
+            switch (operator) {
+                case "=" -> match = c.compareTo(literals[0]) == 0;
+                case "!=", "<>" -> match = c.compareTo(literals[0]) != 0;
+                case "<" -> match = c.compareTo(literals[0]) < 0;
+                case "<=" -> match = c.compareTo(literals[0]) <= 0;
+                case ">" -> match = c.compareTo(literals[0]) > 0;
+                case ">=" -> match = c.compareTo(literals[0]) >= 0;
+                case "BETWEEN" -> match = c.compareTo(literals[0]) >= 0 && c.compareTo(literals[1]) <= 0;
+                case "IN", "NOT IN" -> {
+                    boolean found = false;
+                    for (Comparable literal : literals) {
+                        if (c.compareTo(literal) == 0) {
+                            found = true;
+                            break;
+                        }
+                    }
+                    match = found != operator.startsWith("NOT");
+                }
+                default -> {
+                    return null;
+                }
+            }
+            if (match) {
+                out[n++] = row;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * 把条件字面量转换为列值的类型；无法精确转换时返回null
+     */
+    private static Comparable<?> coerce(Object literal, Class<?> type) {
+        try {
+            if (type == BigDecimal.class) {
+                return number(literal);
+            }
+            if (!(literal instanceof String text)) {
+                return null;
+            }
+            String trimmed = text.trim();
+            if (type == java.sql.Date.class) {
+                return java.sql.Date.valueOf(LocalDate.parse(trimmed));
+            }
+            if (type == LocalDate.class) {
+                return LocalDate.parse(trimmed);
+            }
+            if (type == Timestamp.class || type == LocalDateTime.class) {
+                LocalDateTime time = trimmed.length() == 10
+                    ? LocalDate.parse(trimmed).atStartOfDay() : LocalDateTime.parse(trimmed.replace(' ', 'T'));
+                return type == Timestamp.class ? Timestamp.valueOf(time) : time;
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return null;
+    }
+
+    private static BigDecimal number(Object value) {
+        if (value instanceof BigDecimal decimal) {
+            return decimal;
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return BigDecimal.valueOf(((Number) value).doubleValue());
+        }
+        if (value instanceof BigInteger integer) {
+            return new BigDecimal(integer);
+        }
+        if (value instanceof String text) {
+            try {
+                return new BigDecimal(text.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 整数列只和整数字面量比较；小数字面量的边界语义留给数据库
+     */
+    private static Long exactLong(Object value) {
+        BigDecimal number = number(value);
+        if (number == null) {
+            return null;
+        }
+        try {
+            return number.longValueExact();
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    private static Pattern likePattern(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char ch = pattern.charAt(i);
+            if (ch == '\\' && i + 1 < pattern.length()) {
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+            } else if (ch == '%') {
+                regex.append(".*");
+            } else if (ch == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(ch)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    // ---- Aggregation --------------------------------------------------------------------------------------
+
+    private List<Map<String, Object>> aggregate(int[] selection) {
+        AggregatePlan plan = AggregatePlan.parseJoined(semanticSQL, expression -> {
+            ColumnarTable.Column column = column(expression);
+            return column != null ? column.name.toLowerCase(Locale.ROOT) : null;
+        });
+        if (plan == null) {
+            return null;
+        }
+        ColumnarTable.Column[] groups = new ColumnarTable.Column[plan.groupCount()];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = table.column(plan.groupColumn(i));
+        }
+        ColumnarTable.Column[] arguments = new ColumnarTable.Column[plan.partialCount()];
+        Object[] constants = new Object[plan.partialCount()];
+        for (int i = 0; i < arguments.length; i++) {
+            String argument = plan.partialArgument(i).trim();
+            AggregatePlan.Function function = plan.partialFunction(i);
+            if ("*".equals(argument)) {
+                constants[i] = 1L;
+            } else if (INTEGER_LITERAL.matcher(argument).matches()) {
+                constants[i] = Long.parseLong(argument);
+            } else {
+                arguments[i] = column(argument);
+                if (arguments[i] == null) {
+                    return null;
+                }
+                boolean ordered = function == AggregatePlan.Function.MIN || function == AggregatePlan.Function.MAX;
+                if (arguments[i] instanceof ColumnarTable.StringColumn
+                    && (function == AggregatePlan.Function.SUM || ordered && !table.binaryCollation())) {
+                    return null;
+                }
+            }
+        }
+
+        AggregatePlan.AggregateTable result = plan.newTable();
+        if (groups.length == 0) {
+            // One output row even when nothing matched, as in SQL
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = arguments[i] != null
+                    ? reduce(plan.partialFunction(i), arguments[i], selection)
+                    : constantPartial(plan.partialFunction(i), constants[i], selection.length);
+            }
+            result.accumulate(new Object[0], values);
+            return plan.finish(result);
+        }
+
+        // Character group keys collapse to one representative per collation-equal value
+        int[][] canonical = new int[groups.length][];
+        for (int i = 0; i < groups.length; i++) {
+            if (groups[i] instanceof ColumnarTable.StringColumn stringColumn) {
+                canonical[i] = canonicalCodes(stringColumn);
+            }
+        }
+        Object[] key = new Object[groups.length];
+        Object[] values = new Object[arguments.length];
+        for (int row : selection) {
+            for (int i = 0; i < key.length; i++) {
+                if (canonical[i] != null) {
+                    int code = ((ColumnarTable.StringColumn) groups[i]).codes[row];
+                    key[i] = code < 0 ? null : ((ColumnarTable.StringColumn) groups[i]).dictionary[canonical[i][code]];
+                } else {
+                    key[i] = groups[i].get(row);
+                }
+            }
+            for (int i = 0; i < values.length; i++) {
+                Object value = arguments[i] != null ? arguments[i].get(row) : constants[i];
+                values[i] = plan.partialFunction(i) == AggregatePlan.Function.COUNT
+                    ? (value != null ? 1L : null) : value;
+            }
+            result.accumulate(key, values);
+        }
+        return plan.finish(result);
+    }
+
+    private int[] canonicalCodes(ColumnarTable.StringColumn column) {
+        int[] canonical = new int[column.dictionary.length];
+        Map<String, Integer> first = new HashMap<>();
+        for (int i = 0; i < canonical.length; i++) {
+            int code = i;
+            canonical[i] = first.computeIfAbsent(table.fold(column.dictionary[i]), folded -> code);
+        }
+        return canonical;
+    }
+
+    private static Object constantPartial(AggregatePlan.Function function, Object constant, int rows) {
+        if (function == AggregatePlan.Function.COUNT) {
+            return (long) rows;
+        }
+        if (rows == 0) {
+            return null;
+        }
+        return function == AggregatePlan.Function.SUM
+            ? BigDecimal.valueOf(((Number) constant).longValue()).multiply(BigDecimal.valueOf(rows)) : constant;
+    }
+
+    /**
+     * 对选择向量上的一列做一个部分聚合（COUNT/SUM/MIN/MAX），整数和浮点列在基本类型数组上循环
+     */
+    private static Object reduce(AggregatePlan.Function function, ColumnarTable.Column column, int[] selection) {
+        if (column instanceof ColumnarTable.LongColumn longColumn) {
+            long[] values = longColumn.values;
+            long count = 0;
+            long acc = function == AggregatePlan.Function.MIN ? Long.MAX_VALUE
+                : function == AggregatePlan.Function.MAX ? Long.MIN_VALUE : 0;
+            BigDecimal overflow = null;
+            for (int row : selection) {
+                if (longColumn.isNull(row)) {
+                    continue;
+                }
+                long v = values[row];
+                count++;
+                switch (function) {
+                    case SUM -> {
+                        long sum = acc + v;
+                        if (((acc ^ sum) & (v ^ sum)) < 0) {
+                            // Carry the exact total once a long would overflow
+                            overflow = (overflow != null ? overflow : BigDecimal.ZERO).add(BigDecimal.valueOf(acc))
+                                .add(BigDecimal.valueOf(v));
+                            acc = 0;
+                        } else {
+                            acc = sum;
+                        }
+                    }
+                    case MIN -> acc = Math.min(acc, v);
+                    case MAX -> acc = Math.max(acc, v);
+                    default -> {
+                    }
+                }
+            }
+            if (function == AggregatePlan.Function.COUNT) {
+                return count;
+            }
+            if (count == 0) {
+                return null;
+            }
+            if (function == AggregatePlan.Function.SUM && overflow != null) {
+                return overflow.add(BigDecimal.valueOf(acc));
+            }
+            return acc;
+        }
+        if (column instanceof ColumnarTable.DoubleColumn doubleColumn) {
+            double[] values = doubleColumn.values;
+            long count = 0;
+            double acc = function == AggregatePlan.Function.MIN ? Double.POSITIVE_INFINITY
+                : function == AggregatePlan.Function.MAX ? Double.NEGATIVE_INFINITY : 0;
+            for (int row : selection) {
+                if (doubleColumn.isNull(row)) {
+                    continue;
+                }
+                double v = values[row];
+                count++;
+                switch (function) {
+                    case SUM -> acc += v;
+                    case MIN -> acc = Math.min(acc, v);
+                    case MAX -> acc = Math.max(acc, v);
+                    default -> {
+                    }
+                }
+            }
+            if (function == AggregatePlan.Function.COUNT) {
+                return count;
+            }
+            return count == 0 ? null : acc;
+        }
+        // Dictionary and object columns: fold the boxed values
+        Object acc = null;
+        long count = 0;
+        for (int row : selection) {
+            Object v = column.get(row);
+            if (v == null) {
+                continue;
+            }
+            count++;
+            if (function == AggregatePlan.Function.SUM) {
+                BigDecimal number = number(v);
+                if (number == null) {
+                    throw new UnsupportedOperationException("SUM over " + v.getClass().getSimpleName());
+                }
+                acc = acc == null ? number : ((BigDecimal) acc).add(number);
+            } else if (function == AggregatePlan.Function.MIN || function == AggregatePlan.Function.MAX) {
+                int c = acc == null ? 0 : AggregatePlan.compare(v, acc);
+                if (acc == null || (function == AggregatePlan.Function.MIN ? c < 0 : c > 0)) {
+                    acc = v;
+                }
+            }
+        }
+        return function == AggregatePlan.Function.COUNT ? (Object) count : acc;
+    }
+
+    // ---- Row queries --------------------------------------------------------------------------------------
+
+    private List<Map<String, Object>> project(int[] selection) {
+        List<String> labels = new ArrayList<>();
+        List<ColumnarTable.Column> outputs = new ArrayList<>();
+        List<String> columns = semanticSQL.getColumns();
+        if (columns == null || columns.isEmpty() || columns.size() == 1 && columns.get(0).trim().equals("*")) {
+            for (ColumnarTable.Column column : table.columns()) {
+                labels.add(column.name);
+                outputs.add(column);
+            }
+        } else {
+            for (String raw : columns) {
+                String item = raw.trim();
+                Matcher aliased = ALIASED.matcher(item);
+                String expression = aliased.matches() ? aliased.group(1) : item;
+                ColumnarTable.Column column = column(expression);
+                if (column == null) {
+                    return null;
+                }
+                labels.add(aliased.matches() ? aliased.group(2) : AggregatePlan.unqualified(expression));
+                outputs.add(column);
+            }
+        }
+
+        int[] rows = selection;
+        if (semanticSQL.getOrderBy() != null && !semanticSQL.getOrderBy().isEmpty()) {
+            Comparator<Integer> order = null;
+            for (Map<String, String> item : semanticSQL.getOrderBy()) {
+                String name = item.get("column");
+                if (name == null) {
+                    continue;
+                }
+                ColumnarTable.Column column = null;
+                for (int i = 0; i < labels.size(); i++) {
+                    if (labels.get(i).equalsIgnoreCase(name.trim())) {
+                        column = outputs.get(i);
+                        break;
+                    }
+                }
+                if (column == null) {
+                    column = column(name);
+                }
+                if (column == null || column instanceof ColumnarTable.StringColumn && !table.binaryCollation()) {
+                    return null;
+                }
+                Comparator<Integer> next = comparator(column);
+                if ("DESC".equalsIgnoreCase(item.getOrDefault("direction", "ASC"))) {
+                    next = next.reversed();
+                }
+                order = order == null ? next : order.thenComparing(next);
+            }
+            if (order != null) {
+                Integer[] boxed = new Integer[rows.length];
+                for (int i = 0; i < boxed.length; i++) {
+                    boxed[i] = rows[i];
+                }
+                // Stable sort: ties keep table order
+                Arrays.sort(boxed, order);
+                rows = new int[boxed.length];
+                for (int i = 0; i < boxed.length; i++) {
+                    rows[i] = boxed[i];
+                }
+            }
+        }
+
+        int limit = semanticSQL.getLimit() != null ? Math.max(0, Math.min(semanticSQL.getLimit(), rows.length))
+            : rows.length;
+        List<Map<String, Object>> result = new ArrayList<>(limit);
+        for (int i = 0; i < limit; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int c = 0; c < labels.size(); c++) {
+                row.put(labels.get(c), outputs.get(c).get(rows[i]));
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    /**
+     * 行号比较器，NULL 排在最前（与 MySQL 的升序一致）
+     */
+    private static Comparator<Integer> comparator(ColumnarTable.Column column) {
+        if (column instanceof ColumnarTable.LongColumn longColumn) {
+            return (a, b) -> {
+                boolean na = longColumn.isNull(a);
+                boolean nb = longColumn.isNull(b);
+                if (na || nb) {
+                    return na == nb ? 0 : na ? -1 : 1;
+                }
+                return Long.compare(longColumn.values[a], longColumn.values[b]);
+            };
+        }
+        if (column instanceof ColumnarTable.DoubleColumn doubleColumn) {
+            return (a, b) -> {
+                boolean na = doubleColumn.isNull(a);
+                boolean nb = doubleColumn.isNull(b);
+                if (na || nb) {
+                    return na == nb ? 0 : na ? -1 : 1;
+                }
+                return Double.compare(doubleColumn.values[a], doubleColumn.values[b]);
+            };
+        }
+        return (a, b) -> AggregatePlan.compare(column.get(a), column.get(b));
+    }
+}
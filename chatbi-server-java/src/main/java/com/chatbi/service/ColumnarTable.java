@@ -0,0 +1,364 @@
+package com.chatbi.service;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 一张表的不可变列式副本。整数列保存为 long[]，DOUBLE 列保存为 double[]，
+ * 字符列做字典编码（int[] 编码 + 去重后的字符串表），其余类型（DECIMAL、日期等）按JDBC对象保存；
+ * NULL 记录在各列的位图中。取值时按原JDBC类型装箱，与直接查询数据库得到的行一致。
+ * 字符比较按表的排序规则近似：_ci 排序规则忽略大小写和重音，非 0900 排序规则忽略尾部空格。
+ */
+final class ColumnarTable {
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final String name;
+    private final Column[] columns;
+    private final Map<String, Column> byName;
+    private final int rowCount;
+    private final boolean caseInsensitive;
+    private final boolean padSpace;
+    private final Map<String, Long> columnBytes = new LinkedHashMap<>();
+    private final long memoryBytes;
+
+    private ColumnarTable(String name, Column[] columns, int rowCount, String collation) {
+        this.name = name;
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.byName = new HashMap<>();
+        long total = 0;
+        for (Column column : columns) {
+            byName.put(column.name.toLowerCase(Locale.ROOT), column);
+            long bytes = column.memoryBytes();
+            columnBytes.put(column.name, bytes);
+            total += bytes;
+        }
+        this.memoryBytes = total;
+        String lower = collation != null ? collation.toLowerCase(Locale.ROOT) : "";
+        this.caseInsensitive = !lower.endsWith("_bin") && !lower.endsWith("_cs");
+        this.padSpace = !lower.contains("0900");
+    }
+
+    String name() {
+        return name;
+    }
+
+    int rowCount() {
+        return rowCount;
+    }
+
+    Column[] columns() {
+        return columns;
+    }
+
+    /**
+     * 按小写列名查找列，不存在时返回null
+     */
+    Column column(String lowerName) {
+        return byName.get(lowerName);
+    }
+
+    /**
+     * 字符串按 Java 自然顺序比较的结果是否与数据库一致（只有二进制排序规则）
+     */
+    boolean binaryCollation() {
+        return !caseInsensitive && padSpace;
+    }
+
+    /**
+     * 按排序规则规范化的比较形式：相等判断和分组都使用该形式
+     */
+    String fold(String value) {
+        return foldCase(padSpace ? value.stripTrailing() : value);
+    }
+
+    /**
+     * 只忽略大小写和重音、保留尾部空格的比较形式（LIKE 不做尾部空格填充）
+     */
+    String foldCase(String value) {
+        if (!caseInsensitive) {
+            return value;
+        }
+        return COMBINING_MARKS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("")
+            .toLowerCase(Locale.ROOT);
+    }
+
+    long memoryBytes() {
+        return memoryBytes;
+    }
+
+    Map<String, Long> columnBytes() {
+        return columnBytes;
+    }
+
+    abstract static class Column {
+        final String name;
+        BitSet nulls;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        boolean isNull(int row) {
+            return nulls != null && nulls.get(row);
+        }
+
+        abstract Object get(int row);
+
+        abstract long memoryBytes();
+
+        long nullBytes() {
+            return nulls != null ? nulls.size() / 8 : 0;
+        }
+    }
+
+    /**
+     * 整数列；boxed 为JDBC返回的类型（Integer、Long 等），取值时按它装箱
+     */
+    static final class LongColumn extends Column {
+        final Class<?> boxed;
+        long[] values;
+
+        LongColumn(String name, Class<?> boxed) {
+            super(name);
+            this.boxed = boxed;
+        }
+
+        @Override
+        Object get(int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            long value = values[row];
+            if (boxed == Integer.class) {
+                return (int) value;
+            }
+            if (boxed == Short.class) {
+                return (short) value;
+            }
+            if (boxed == Byte.class) {
+                return (byte) value;
+            }
+            return value;
+        }
+
+        @Override
+        long memoryBytes() {
+            return 16 + values.length * 8L + nullBytes();
+        }
+    }
+
+    static final class DoubleColumn extends Column {
+        double[] values;
+
+        DoubleColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        long memoryBytes() {
+            return 16 + values.length * 8L + nullBytes();
+        }
+    }
+
+    /**
+     * 字典编码的字符列：codes[row] 为 dictionary 下标，NULL 为 -1
+     */
+    static final class StringColumn extends Column {
+        int[] codes;
+        String[] dictionary;
+
+        StringColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return codes[row] < 0;
+        }
+
+        @Override
+        Object get(int row) {
+            int code = codes[row];
+            return code < 0 ? null : dictionary[code];
+        }
+
+        @Override
+        long memoryBytes() {
+            long bytes = 16 + codes.length * 4L + 16 + dictionary.length * 8L;
+            for (String value : dictionary) {
+                bytes += QueryResultCache.estimateValueBytes(value);
+            }
+            return bytes;
+        }
+    }
+
+    static final class ObjectColumn extends Column {
+        Object[] values;
+
+        ObjectColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return values[row] == null;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        long memoryBytes() {
+            long bytes = 16 + values.length * 8L;
+            for (Object value : values) {
+                if (value != null) {
+                    bytes += QueryResultCache.estimateValueBytes(value);
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * 从结果集逐行构建；数组按倍数增长，build() 时裁剪到实际行数
+     */
+    static final class Builder {
+        private final String name;
+        private final String collation;
+        private final Column[] columns;
+        private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+        private final List<List<String>> dictionaryValues = new ArrayList<>();
+        private int rows;
+        private int capacity = 1024;
+
+        Builder(String name, String collation, ResultSetMetaData metaData) throws SQLException {
+            this.name = name;
+            this.collation = collation;
+            columns = new Column[metaData.getColumnCount()];
+            for (int i = 0; i < columns.length; i++) {
+                String label = JdbcUtils.lookupColumnName(metaData, i + 1);
+                String className = metaData.getColumnClassName(i + 1);
+                Column column = switch (className != null ? className : "") {
+                    case "java.lang.Long" -> new LongColumn(label, Long.class);
+                    case "java.lang.Integer" -> new LongColumn(label, Integer.class);
+                    case "java.lang.Short" -> new LongColumn(label, Short.class);
+                    case "java.lang.Byte" -> new LongColumn(label, Byte.class);
+                    case "java.lang.Double" -> new DoubleColumn(label);
+                    case "java.lang.String" -> new StringColumn(label);
+                    default -> new ObjectColumn(label);
+                };
+                allocate(column, capacity);
+                columns[i] = column;
+                dictionaries.add(column instanceof StringColumn ? new HashMap<>() : null);
+                dictionaryValues.add(column instanceof StringColumn ? new ArrayList<>() : null);
+            }
+        }
+
+        int rowCount() {
+            return rows;
+        }
+
+        void add(ResultSet rs) throws SQLException {
+            if (rows == capacity) {
+                capacity = capacity * 2;
+                for (Column column : columns) {
+                    grow(column, capacity);
+                }
+            }
+            for (int i = 0; i < columns.length; i++) {
+                int index = i + 1;
+                Column column = columns[i];
+                if (column instanceof LongColumn longColumn) {
+                    longColumn.values[rows] = rs.getLong(index);
+                    if (rs.wasNull()) {
+                        markNull(column, rows);
+                    }
+                } else if (column instanceof DoubleColumn doubleColumn) {
+                    doubleColumn.values[rows] = rs.getDouble(index);
+                    if (rs.wasNull()) {
+                        markNull(column, rows);
+                    }
+                } else if (column instanceof StringColumn stringColumn) {
+                    String value = rs.getString(index);
+                    if (value == null) {
+                        stringColumn.codes[rows] = -1;
+                    } else {
+                        List<String> values = dictionaryValues.get(i);
+                        stringColumn.codes[rows] = dictionaries.get(i).computeIfAbsent(value, v -> {
+                            values.add(v);
+                            return values.size() - 1;
+                        });
+                    }
+                } else {
+                    // Same conversion as ColumnMapRowMapper, so rows match a database query
+                    ((ObjectColumn) column).values[rows] = JdbcUtils.getResultSetValue(rs, index);
+                }
+            }
+            rows++;
+        }
+
+        ColumnarTable build() {
+            for (int i = 0; i < columns.length; i++) {
+                Column column = columns[i];
+                grow(column, rows);
+                if (column instanceof StringColumn stringColumn) {
+                    stringColumn.dictionary = dictionaryValues.get(i).toArray(new String[0]);
+                }
+            }
+            return new ColumnarTable(name, columns, rows, collation);
+        }
+
+        private static void markNull(Column column, int row) {
+            if (column.nulls == null) {
+                column.nulls = new BitSet();
+            }
+            column.nulls.set(row);
+        }
+
+        private static void allocate(Column column, int size) {
+            if (column instanceof LongColumn longColumn) {
+                longColumn.values = new long[size];
+            } else if (column instanceof DoubleColumn doubleColumn) {
+                doubleColumn.values = new double[size];
+            } else if (column instanceof StringColumn stringColumn) {
+                stringColumn.codes = new int[size];
+            } else {
+                ((ObjectColumn) column).values = new Object[size];
+            }
+        }
+
+        private static void grow(Column column, int size) {
+            if (column instanceof LongColumn longColumn) {
+                longColumn.values = Arrays.copyOf(longColumn.values, size);
+            } else if (column instanceof DoubleColumn doubleColumn) {
+                doubleColumn.values = Arrays.copyOf(doubleColumn.values, size);
+            } else if (column instanceof StringColumn stringColumn) {
+                stringColumn.codes = Arrays.copyOf(stringColumn.codes, size);
+            } else {
+                ObjectColumn objectColumn = (ObjectColumn) column;
+                objectColumn.values = Arrays.copyOf(objectColumn.values, size);
+            }
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.chatbi.service;
+
+import com.chatbi.model.CachedTable;
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryOptions;
+import com.chatbi.model.SQLExecutionResponse;
+import com.chatbi.model.SemanticSQL;
+import com.chatbi.repository.CachedTableRepository;
+import com.chatbi.repository.DatabaseConnectionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的列式表缓存。
+ * 按 CachedTable 配置把整张表加载为 ColumnarTable，定时检查数据版本——设置了 watermark 列时为
+ * MAX(watermark) 与行数，否则为 information_schema.TABLES.UPDATE_TIME（为空时每个刷新间隔都重新加载）——
+ * 版本变化后重新加载并整体替换。对话生成的单表查询命中已加载的表时由 ColumnarScan 在内存中计算，不访问数据库；
+ * 经本服务执行的写操作会让该连接的缓存表立即失效，直到重新加载完成。
+ */
+@Service
+public class ColumnarTableCache {
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarTableCache.class);
+
+    public static final String SERVED_FROM = "table_cache";
+
+    private static final String TABLE_INFO_SQL = "SELECT UPDATE_TIME, TABLE_COLLATION FROM information_schema.TABLES "
+        + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+
+    @Autowired
+    private CachedTableRepository cachedTableRepository;
+
+    @Autowired
+    private DatabaseConnectionRepository connectionRepository;
+
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+
+    @Autowired
+    private QueryRegistry queryRegistry;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${chatbi.table-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chatbi.table-cache.check-interval-seconds:10}")
+    private int checkIntervalSeconds;
+
+    @Value("${chatbi.table-cache.refresh-interval-seconds:300}")
+    private int defaultRefreshIntervalSeconds;
+
+    @Value("${chatbi.table-cache.max-rows:2000000}")
+    private int maxRows;
+
+    @Value("${chatbi.table-cache.max-total-bytes:536870912}")
+    private long maxTotalBytes;
+
+    @Value("${chatbi.streaming.fetch-size:1000}")
+    private int fetchSize;
+
+    private volatile Map<String, Entry> entries = Map.of();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chatbi-table-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService loaders = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("chatbi-table-load-", 0).factory());
+
+    private static final class Entry {
+        volatile CachedTable config;
+        volatile ColumnarTable table;
+        volatile String version;
+        volatile boolean stale;
+        volatile long nextCheckNanos;
+        volatile String lastError;
+        volatile LocalDateTime loadedAt;
+        volatile long loadMs;
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong invalidations = new AtomicLong();
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(CachedTable config) {
+            this.config = config;
+            this.nextCheckNanos = System.nanoTime();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : new SimpleMeterRegistry();
+        Gauge.builder("chatbi.table.cache.bytes", this, ColumnarTableCache::totalBytes).register(registry);
+        if (!enabled) {
+            return;
+        }
+        reload();
+        scheduler.scheduleWithFixedDelay(this::checkAll, checkIntervalSeconds, checkIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        loaders.shutdownNow();
+    }
+
+    /**
+     * 重新读取缓存表配置；表名或 watermark 列变化的表重新加载，其余保留已加载的数据
+     */
+    public synchronized void reload() {
+        if (!enabled) {
+            return;
+        }
+        Map<String, Entry> loaded = new HashMap<>();
+        for (CachedTable config : cachedTableRepository.findByEnabledTrue()) {
+            Entry entry = entries.get(config.getId());
+            if (entry == null || !entry.config.getTableName().equals(config.getTableName())
+                || !Objects.equals(entry.config.getWatermarkColumn(), config.getWatermarkColumn())) {
+                entry = new Entry(config);
+            } else {
+                entry.config = config;
+            }
+            loaded.put(config.getId(), entry);
+        }
+        entries = loaded;
+        checkAll();
+    }
+
+    /**
+     * 语义SQL只涉及一张已加载的缓存表时在内存中计算；不适用或写法不支持时返回null，由调用方查询数据库
+     */
+    public SQLExecutionResponse execute(SemanticSQL semanticSQL, DatabaseConnection connection, QueryOptions options) {
+        if (!enabled || semanticSQL == null || connection == null || connection.getId() == null
+            || options.isColumnar()) {
+            return null;
+        }
+        String tableName = AggregatePlan.singleTable(semanticSQL);
+        if (tableName == null) {
+            return null;
+        }
+        Entry entry = find(connection.getId(), tableName);
+        ColumnarTable table = entry != null && !entry.stale ? entry.table : null;
+        if (table == null) {
+            return null;
+        }
+        long started = System.nanoTime();
+        List<Map<String, Object>> rows = ColumnarScan.execute(table, semanticSQL);
+        if (rows == null) {
+            logger.debug("Query on cached table {} is not supported in memory, using the database", tableName);
+            return null;
+        }
+        entry.hits.incrementAndGet();
+        logger.info("Answered from table cache {} ({} rows): {} rows in {} us", tableName, table.rowCount(),
+            rows.size(), (System.nanoTime() - started) / 1_000);
+        SQLExecutionResponse response = new SQLExecutionResponse(true, rows, null, rows.size());
+        response.setServedFrom(SERVED_FROM);
+        return response;
+    }
+
+    /**
+     * 通过本服务对该连接执行了写操作：缓存表不再使用，并立即检查是否需要重新加载
+     */
+    public void invalidateConnection(String connectionId) {
+        boolean any = false;
+        for (Entry entry : entries.values()) {
+            if (connectionId.equals(entry.config.getConnectionId())) {
+                entry.invalidations.incrementAndGet();
+                entry.stale = true;
+                entry.nextCheckNanos = System.nanoTime();
+                any = true;
+            }
+        }
+        if (any) {
+            checkAll();
+        }
+    }
+
+    /**
+     * 填充缓存表的运行时状态，供管理接口展示
+     */
+    public List<CachedTable> describe(List<CachedTable> cachedTables) {
+        Map<String, Entry> current = entries;
+        for (CachedTable cachedTable : cachedTables) {
+            Entry entry = current.get(cachedTable.getId());
+            if (entry == null) {
+                continue;
+            }
+            ColumnarTable table = entry.table;
+            cachedTable.setLoaded(table != null && !entry.stale);
+            if (table != null) {
+                cachedTable.setRowCount(table.rowCount());
+                cachedTable.setMemoryBytes(table.memoryBytes());
+                cachedTable.setColumnBytes(table.columnBytes());
+            }
+            cachedTable.setDataVersion(entry.version);
+            cachedTable.setLoadedAt(entry.loadedAt);
+            cachedTable.setLoadMs(entry.loadMs);
+            cachedTable.setHits(entry.hits.get());
+            cachedTable.setLastError(entry.lastError);
+        }
+        return cachedTables;
+    }
+
+    /**
+     * 所有已加载缓存表的估算内存占用
+     */
+    public long totalBytes() {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            ColumnarTable table = entry.table;
+            if (table != null) {
+                total += table.memoryBytes();
+            }
+        }
+        return total;
+    }
+
+    private Entry find(String connectionId, String tableName) {
+        for (Entry entry : entries.values()) {
+            CachedTable config = entry.config;
+            if (connectionId.equals(config.getConnectionId()) && tableName.equalsIgnoreCase(config.getTableName())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void checkAll() {
+        try {
+            long now = System.nanoTime();
+            for (Entry entry : entries.values()) {
+                if (now - entry.nextCheckNanos >= 0 && entry.refreshing.compareAndSet(false, true)) {
+                    loaders.submit(() -> {
+                        try {
+                            refresh(entry);
+                        } finally {
+                            // A write during the load left the entry stale; retry on the next check
+                            Integer interval = entry.stale ? Integer.valueOf(checkIntervalSeconds)
+                                : entry.config.getRefreshIntervalSeconds();
+                            entry.nextCheckNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(
+                                interval != null ? interval : defaultRefreshIntervalSeconds);
+                            entry.refreshing.set(false);
+                        }
+                    });
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to schedule table cache refresh: {}", e.getMessage());
+        }
+    }
+
+    private void refresh(Entry entry) {
+        CachedTable config = entry.config;
+        long invalidations = entry.invalidations.get();
+        try {
+            DatabaseConnection primary = connectionRepository.findById(config.getConnectionId()).orElse(null);
+            if (primary == null) {
+                entry.lastError = "数据库连接不存在";
+                return;
+            }
+            DatabaseConnection reader = replicaRouter.routeRead(primary);
+            JdbcTemplate template = dataSourceRegistry.getJdbcTemplate(reader);
+            try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(primary)) {
+                List<Map<String, Object>> info = template.queryForList(TABLE_INFO_SQL, config.getTableName());
+                if (info.isEmpty()) {
+                    entry.table = null;
+                    entry.lastError = "表不存在: " + config.getTableName();
+                    return;
+                }
+                String version = version(template, config, info.get(0).get("UPDATE_TIME"));
+                if (entry.table != null && !entry.stale && version != null && version.equals(entry.version)) {
+                    entry.lastError = null;
+                    return;
+                }
+                long started = System.currentTimeMillis();
+                ColumnarTable table = load(template, reader, config.getTableName(),
+                    (String) info.get(0).get("TABLE_COLLATION"));
+                long others = totalBytes() - (entry.table != null ? entry.table.memoryBytes() : 0);
+                if (others + table.memoryBytes() > maxTotalBytes) {
+                    entry.table = null;
+                    entry.lastError = "缓存总大小将超过 max-total-bytes（" + maxTotalBytes + " 字节），未加载";
+                    return;
+                }
+                entry.table = table;
+                entry.version = version;
+                entry.loadedAt = LocalDateTime.now();
+                entry.loadMs = System.currentTimeMillis() - started;
+                entry.lastError = null;
+                // A write while loading may not be in the snapshot; keep it stale for the next round
+                if (entry.invalidations.get() == invalidations) {
+                    entry.stale = false;
+                }
+                logger.info("Loaded table cache {}.{}: {} rows, {} bytes in {} ms (version {})",
+                    config.getConnectionId(), config.getTableName(), table.rowCount(), table.memoryBytes(),
+                    entry.loadMs, version);
+            }
+        } catch (Exception e) {
+            entry.lastError = e.getMessage();
+            logger.warn("Failed to refresh table cache {}.{}: {}", config.getConnectionId(), config.getTableName(),
+                e.getMessage());
+        }
+    }
+
+    /**
+     * 数据版本；无法判断（UPDATE_TIME 为空）时返回null，此时每次检查都重新加载
+     */
+    private static String version(JdbcTemplate template, CachedTable config, Object updateTime) {
+        if (config.getWatermarkColumn() == null) {
+            return updateTime != null ? String.valueOf(updateTime) : null;
+        }
+        // Row count catches deletes, which never move the watermark
+        Map<String, Object> row = template.queryForMap("SELECT MAX(" + AggregatePlan.quote(config.getWatermarkColumn())
+            + ") AS watermark, COUNT(*) AS row_count FROM " + AggregatePlan.quote(config.getTableName()));
+        return row.get("watermark") + "/" + row.get("row_count");
+    }
+
+    private ColumnarTable load(JdbcTemplate template, DatabaseConnection reader, String tableName, String collation) {
+        String sql = "SELECT * FROM " + AggregatePlan.quote(tableName);
+        JdbcTemplate streaming = new JdbcTemplate(template.getDataSource());
+        streaming.setFetchSize(fetchSize);
+        try (QueryRegistry.TrackedQuery query = queryRegistry.register(
+                reader, sql, QueryRegistry.SOURCE_TABLE_CACHE, null)) {
+            return streaming.query(query.statementCreator(), (ResultSetExtractor<ColumnarTable>) rs -> {
+                ColumnarTable.Builder builder = new ColumnarTable.Builder(tableName, collation, rs.getMetaData());
+                while (rs.next()) {
+                    if (builder.rowCount() >= maxRows) {
+                        // Stop the server side instead of draining the rest of the table
+                        query.cancel();
+                        throw new IllegalStateException("表的行数超过 max-rows（" + maxRows + "），未加载");
+                    }
+                    builder.add(rs);
+                }
+                return builder.build();
+            });
+        }
+    }
+}
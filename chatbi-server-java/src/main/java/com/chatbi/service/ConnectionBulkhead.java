@@ -0,0 +1,165 @@
+package com.chatbi.service;
+
+import com.chatbi.exception.BulkheadRejectedException;
+import com.chatbi.model.DatabaseConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每个目标数据库一个舱壁：限制同时执行的语句数，超出的请求按FIFO公平排队，
+ * 排队超过最大等待时间或队列已满时立即拒绝，避免单个慢查询拖住该连接上的所有会话。
+ */
+@Service
+public class ConnectionBulkhead {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionBulkhead.class);
+
+    private static final String DEFAULT_KEY = "default";
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${chatbi.bulkhead.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chatbi.bulkhead.max-concurrent:8}")
+    private int defaultMaxConcurrent;
+
+    @Value("${chatbi.bulkhead.max-queue-depth:50}")
+    private int maxQueueDepth;
+
+    @Value("${chatbi.bulkhead.max-wait-ms:5000}")
+    private long maxWaitMs;
+
+    private MeterRegistry registry;
+
+    private final Map<String, Compartment> compartments = new ConcurrentHashMap<>();
+
+    private static final Permit NO_OP = () -> {};
+
+    /**
+     * 执行许可，使用 try-with-resources 释放
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final class Compartment {
+        final String key;
+        final int limit;
+        final Semaphore semaphore;
+        final AtomicInteger waiting = new AtomicInteger();
+        final Timer waitTimer;
+        final Counter rejections;
+
+        Compartment(String key, int limit) {
+            this.key = key;
+            this.limit = limit;
+            this.semaphore = new Semaphore(limit, true);
+            this.waitTimer = Timer.builder("chatbi.bulkhead.wait")
+                .tag("connection", key)
+                .register(registry);
+            this.rejections = Counter.builder("chatbi.bulkhead.rejections")
+                .tag("connection", key)
+                .register(registry);
+        }
+
+        int active() {
+            return limit - semaphore.availablePermits();
+        }
+    }
+
+    @PostConstruct
+    public void initMetrics() {
+        registry = meterRegistry != null ? meterRegistry : new SimpleMeterRegistry();
+    }
+
+    public Permit acquire(DatabaseConnection connection) {
+        return acquire(connection, maxWaitMs);
+    }
+
+    /**
+     * 获取执行许可；等待超过 waitMs 或队列已满时抛出 BulkheadRejectedException
+     */
+    public Permit acquire(DatabaseConnection connection, long waitMs) {
+        if (!enabled) {
+            return NO_OP;
+        }
+        Compartment compartment = compartmentFor(connection);
+        if (compartment.waiting.get() >= maxQueueDepth) {
+            compartment.rejections.increment();
+            throw new BulkheadRejectedException("数据库连接繁忙（排队请求已达" + maxQueueDepth + "），请稍后重试");
+        }
+        compartment.waiting.incrementAndGet();
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            // The timed tryAcquire honours the fair FIFO order; the untimed one would barge
+            acquired = compartment.semaphore.tryAcquire(waitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BulkheadRejectedException("等待数据库连接时被中断");
+        } finally {
+            compartment.waiting.decrementAndGet();
+            compartment.waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (!acquired) {
+            compartment.rejections.increment();
+            logger.warn("Bulkhead rejected query on connection {} after waiting {} ms", compartment.key, waitMs);
+            throw new BulkheadRejectedException("数据库连接繁忙，排队超过" + waitMs + "毫秒，请稍后重试");
+        }
+        return release(compartment);
+    }
+
+    private Permit release(Compartment compartment) {
+        AtomicInteger released = new AtomicInteger();
+        return () -> {
+            if (released.getAndIncrement() == 0) {
+                compartment.semaphore.release();
+            }
+        };
+    }
+
+    private Compartment compartmentFor(DatabaseConnection connection) {
+        String key = connection != null ? connection.getId() : DEFAULT_KEY;
+        int limit = connection != null && connection.getMaxConcurrentQueries() != null && connection.getMaxConcurrentQueries() > 0
+            ? connection.getMaxConcurrentQueries() : defaultMaxConcurrent;
+        Compartment current = compartments.get(key);
+        if (current != null && current.limit == limit) {
+            return current;
+        }
+        // Limit changed: new callers use a fresh compartment, in-flight permits drain from the old one
+        return compartments.compute(key, (k, existing) -> {
+            if (existing != null && existing.limit == limit) {
+                return existing;
+            }
+            Compartment created = new Compartment(k, limit);
+            if (existing == null) {
+                Gauge.builder("chatbi.bulkhead.queue.depth", compartments,
+                        map -> map.containsKey(k) ? map.get(k).waiting.get() : 0)
+                    .tag("connection", k)
+                    .register(registry);
+                Gauge.builder("chatbi.bulkhead.active", compartments,
+                        map -> map.containsKey(k) ? map.get(k).active() : 0)
+                    .tag("connection", k)
+                    .register(registry);
+            }
+            return created;
+        });
+    }
+}
@@ -0,0 +1,94 @@
+package com.chatbi.service;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+
+/**
+ * RFC 4180 CSV。带UTF-8 BOM，便于Excel直接打开中文内容；二进制列按Base64写出。
+ */
+class CsvExportWriter implements ExportWriter {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter TIMESTAMP_MICROS_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+
+    private final Writer writer;
+
+    CsvExportWriter(OutputStream out) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    @Override
+    public void start(ResultSetMetaData metaData) throws IOException, SQLException {
+        writer.write('\uFEFF');
+        String[] header = new String[metaData.getColumnCount()];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = JdbcUtils.lookupColumnName(metaData, i + 1);
+        }
+        writeLine(header);
+    }
+
+    @Override
+    public void writeRow(ResultSet rs, Object[] values) throws IOException, SQLException {
+        ExportWriter.readValues(rs, values);
+        writeLine(values);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.flush();
+    }
+
+    private void writeLine(Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            Object value = values[i];
+            if (value != null) {
+                writeField(format(value));
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private void writeField(String text) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(text);
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static String format(Object value) {
+        if (value instanceof BigDecimal decimal) {
+            return decimal.toPlainString();
+        }
+        if (value instanceof Timestamp timestamp) {
+            return (timestamp.getNanos() == 0 ? TIMESTAMP_FORMAT : TIMESTAMP_MICROS_FORMAT)
+                .format(timestamp.toLocalDateTime());
+        }
+        if (value instanceof byte[] bytes) {
+            return Base64.getEncoder().encodeToString(bytes);
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,185 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按 DatabaseConnection.id 维护的连接池注册表
+ * 连接配置变更或删除时由 DatabaseConnectionService 触发重建/关闭
+ */
+@Service
+public class DataSourceRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceRegistry.class);
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${chatbi.datasource-pool.maximum-pool-size:10}")
+    private int maximumPoolSize;
+
+    @Value("${chatbi.datasource-pool.minimum-idle:0}")
+    private int minimumIdle;
+
+    @Value("${chatbi.datasource-pool.idle-timeout-ms:300000}")
+    private long idleTimeoutMs;
+
+    @Value("${chatbi.datasource-pool.max-lifetime-ms:1800000}")
+    private long maxLifetimeMs;
+
+    @Value("${chatbi.datasource-pool.connection-timeout-ms:10000}")
+    private long connectionTimeoutMs;
+
+    @Value("${chatbi.datasource-pool.leak-detection-threshold-ms:60000}")
+    private long leakDetectionThresholdMs;
+
+    @Value("${chatbi.datasource-pool.server-prepared-statements:true}")
+    private boolean serverPreparedStatements;
+
+    @Value("${chatbi.datasource-pool.prepared-statement-cache-size:250}")
+    private int preparedStatementCacheSize;
+
+    private final Map<String, PooledEntry> pools = new ConcurrentHashMap<>();
+
+    private static final class PooledEntry {
+        final String fingerprint;
+        final HikariDataSource dataSource;
+        final JdbcTemplate jdbcTemplate;
+
+        PooledEntry(String fingerprint, HikariDataSource dataSource) {
+            this.fingerprint = fingerprint;
+            this.dataSource = dataSource;
+            this.jdbcTemplate = new JdbcTemplate(dataSource);
+        }
+    }
+
+    public static String buildJdbcUrl(DatabaseConnection connection) {
+        return String.format("jdbc:mariadb://%s:%d/%s?useUnicode=true&characterEncoding=%s&useSSL=false&serverTimezone=UTC",
+            connection.getHost(), connection.getPort(), connection.getDatabaseName(), connection.getCharsetName());
+    }
+
+    public HikariDataSource getDataSource(DatabaseConnection connection) {
+        return getEntry(connection).dataSource;
+    }
+
+    public JdbcTemplate getJdbcTemplate(DatabaseConnection connection) {
+        return getEntry(connection).jdbcTemplate;
+    }
+
+    private PooledEntry getEntry(DatabaseConnection connection) {
+        String fingerprint = fingerprint(connection);
+        PooledEntry entry = pools.compute(connection.getId(), (id, existing) -> {
+            if (existing != null && existing.fingerprint.equals(fingerprint) && !existing.dataSource.isClosed()) {
+                return existing;
+            }
+            if (existing != null) {
+                // 配置已变化（例如其他节点更新了连接），旧池关闭后重建
+                closeQuietly(id, existing);
+            }
+            return new PooledEntry(fingerprint, createDataSource(connection));
+        });
+        return entry;
+    }
+
+    /**
+     * 关闭并移除指定连接的连接池（包括其只读副本的连接池），下次使用时按最新配置重建
+     */
+    public void evict(String connectionId) {
+        PooledEntry entry = pools.remove(connectionId);
+        if (entry != null) {
+            closeQuietly(connectionId, entry);
+        }
+        String replicaPrefix = connectionId + "#";
+        pools.keySet().removeIf(id -> {
+            if (!id.startsWith(replicaPrefix)) {
+                return false;
+            }
+            PooledEntry replica = pools.get(id);
+            if (replica != null) {
+                closeQuietly(id, replica);
+            }
+            return true;
+        });
+    }
+
+    public Map<String, Object> getPoolStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        pools.forEach((id, entry) -> {
+            Map<String, Object> pool = new LinkedHashMap<>();
+            pool.put("pool_name", entry.dataSource.getPoolName());
+            pool.put("maximum_pool_size", entry.dataSource.getMaximumPoolSize());
+            HikariPoolMXBean mxBean = entry.dataSource.getHikariPoolMXBean();
+            if (mxBean != null) {
+                pool.put("active", mxBean.getActiveConnections());
+                pool.put("idle", mxBean.getIdleConnections());
+                pool.put("total", mxBean.getTotalConnections());
+                pool.put("pending", mxBean.getThreadsAwaitingConnection());
+            }
+            stats.put(id, pool);
+        });
+        return stats;
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        pools.forEach(this::closeQuietly);
+        pools.clear();
+    }
+
+    private HikariDataSource createDataSource(DatabaseConnection connection) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("chatbi-" + connection.getId());
+        config.setJdbcUrl(buildJdbcUrl(connection));
+        config.setUsername(connection.getUsername());
+        config.setPassword(connection.getPassword());
+        config.setDriverClassName("org.mariadb.jdbc.Driver");
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(minimumIdle);
+        config.setIdleTimeout(idleTimeoutMs);
+        config.setMaxLifetime(maxLifetimeMs);
+        config.setConnectionTimeout(connectionTimeoutMs);
+        config.setLeakDetectionThreshold(leakDetectionThresholdMs);
+        // 服务端预编译：参数化语句在每个物理连接上只解析一次，由驱动按连接缓存
+        config.addDataSourceProperty("useServerPrepStmts", String.valueOf(serverPreparedStatements));
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(preparedStatementCacheSize));
+        if (meterRegistry != null) {
+            config.setMetricRegistry(meterRegistry);
+        }
+        logger.info("Creating connection pool for {} ({}:{}/{})",
+            connection.getName(), connection.getHost(), connection.getPort(), connection.getDatabaseName());
+        return new HikariDataSource(config);
+    }
+
+    private void closeQuietly(String connectionId, PooledEntry entry) {
+        try {
+            entry.dataSource.close();
+            logger.info("Closed connection pool for {}", connectionId);
+        } catch (Exception e) {
+            logger.warn("Failed to close connection pool for {}: {}", connectionId, e.getMessage());
+        }
+    }
+
+    private String fingerprint(DatabaseConnection connection) {
+        return String.join("|",
+            String.valueOf(connection.getHost()),
+            String.valueOf(connection.getPort()),
+            String.valueOf(connection.getDatabaseName()),
+            String.valueOf(connection.getUsername()),
+            String.valueOf(connection.getCharsetName()),
+            Integer.toHexString(String.valueOf(connection.getPassword()).hashCode()));
+    }
+}
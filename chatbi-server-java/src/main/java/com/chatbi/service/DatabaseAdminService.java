@@ -1,16 +1,17 @@
 package com.chatbi.service;
 
+import com.chatbi.exception.BulkheadRejectedException;
 import com.chatbi.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -23,13 +24,32 @@ public class DatabaseAdminService {
     private DatabaseConnectionService databaseConnectionService;
     
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private DataSourceRegistry dataSourceRegistry;
+    
+    @Autowired
+    private QueryResultCache queryResultCache;
+    
+    @Autowired
+    private ColumnarTableCache columnarTableCache;
+    
+    @Autowired
+    private SchemaMetadataCache schemaMetadataCache;
+    
+    @Autowired
+    private QueryRegistry queryRegistry;
+    
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+    
+    @Autowired
+    private ReplicaRouter replicaRouter;
 
     public List<TableInfo> getTables(String connectionId) {
         DatabaseConnection connection = databaseConnectionService.getConnection(connectionId)
             .orElseThrow(() -> new IllegalArgumentException("Database connection " + connectionId + " not found"));
         
-        try (Connection conn = createConnection(connection)) {
+        JdbcTemplate jdbcTemplate = dataSourceRegistry.getJdbcTemplate(connection);
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
             String sql = """
                 SELECT 
                     TABLE_NAME as table_name,
@@ -57,7 +77,7 @@ public class DatabaseAdminService {
                 return tableInfo;
             }, connection.getDatabaseName());
             
-        } catch (SQLException e) {
+        } catch (CannotGetJdbcConnectionException e) {
             logger.error("Database connection error for {}: {}", connection.getName(), e.getMessage(), e);
             throw new RuntimeException("数据库连接失败: " + e.getMessage());
         }
@@ -67,7 +87,8 @@ public class DatabaseAdminService {
         DatabaseConnection connection = databaseConnectionService.getConnection(connectionId)
             .orElseThrow(() -> new IllegalArgumentException("Database connection " + connectionId + " not found"));
         
-        try (Connection conn = createConnection(connection)) {
+        JdbcTemplate jdbcTemplate = dataSourceRegistry.getJdbcTemplate(connection);
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
             // Get table comment
             String tableCommentSql = """
                 SELECT TABLE_COMMENT as table_comment
@@ -114,7 +135,7 @@ public class DatabaseAdminService {
             
             return tableSchema;
             
-        } catch (SQLException e) {
+        } catch (CannotGetJdbcConnectionException e) {
             logger.error("Database connection error for {}: {}", connection.getName(), e.getMessage(), e);
             throw new RuntimeException("数据库连接失败: " + e.getMessage());
         }
@@ -124,7 +145,8 @@ public class DatabaseAdminService {
         DatabaseConnection connection = databaseConnectionService.getConnection(connectionId)
             .orElseThrow(() -> new IllegalArgumentException("Database connection " + connectionId + " not found"));
         
-        try (Connection conn = createConnection(connection)) {
+        JdbcTemplate jdbcTemplate = dataSourceRegistry.getJdbcTemplate(connection);
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
             String sql;
             
             if (commentUpdate.getColumnName() != null) {
@@ -163,36 +185,62 @@ public class DatabaseAdminService {
             }
             
             jdbcTemplate.execute(sql);
+            queryResultCache.invalidateConnection(connectionId);
+            // Comments feed the prompt, so the next chat must see the new text
+            schemaMetadataCache.invalidate(connectionId);
             return true;
             
-        } catch (SQLException e) {
+        } catch (CannotGetJdbcConnectionException e) {
             logger.error("Error updating comment: {}", e.getMessage(), e);
             throw new RuntimeException("更新注释失败: " + e.getMessage());
         }
     }
 
     public Map<String, Object> executeCustomSql(String connectionId, String sql) {
+        return executeCustomSql(connectionId, sql, null);
+    }
+
+    public Map<String, Object> executeCustomSql(String connectionId, String sql, Integer timeoutSeconds) {
         DatabaseConnection connection = databaseConnectionService.getConnection(connectionId)
             .orElseThrow(() -> new IllegalArgumentException("Database connection " + connectionId + " not found"));
         
-        try (Connection conn = createConnection(connection)) {
-            if (sql.trim().toUpperCase().startsWith("SELECT")) {
-                List<Map<String, Object>> data = jdbcTemplate.queryForList(sql);
-                return Map.of(
-                    "success", true,
-                    "data", data,
-                    "row_count", data.size()
-                );
-            } else {
-                int rowCount = jdbcTemplate.update(sql);
+        // SELECT goes to a read replica when one is healthy; writes always stay on the primary
+        boolean select = sql.trim().toUpperCase().startsWith("SELECT");
+        DatabaseConnection target = select ? replicaRouter.routeRead(connection) : connection;
+        JdbcTemplate jdbcTemplate = dataSourceRegistry.getJdbcTemplate(target);
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection);
+             QueryRegistry.TrackedQuery query = queryRegistry.register(
+                target, sql, QueryRegistry.SOURCE_ADMIN, timeoutSeconds)) {
+            try {
+                if (select) {
+                    List<Map<String, Object>> data = jdbcTemplate.query(query.statementCreator(), new ColumnMapRowMapper());
+                    return Map.of(
+                        "success", true,
+                        "data", data,
+                        "row_count", data.size()
+                    );
+                } else {
+                    try {
+                        int rowCount = jdbcTemplate.update(query.statementCreator());
+                        Map<String, Object> result = new HashMap<>();
+                        result.put("success", true);
+                        result.put("data", null);
+                        result.put("row_count", rowCount);
+                        return result;
+                    } finally {
+                        queryResultCache.invalidateConnection(connectionId);
+                        columnarTableCache.invalidateConnection(connectionId);
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Error executing SQL: {}", e.getMessage(), e);
                 return Map.of(
-                    "success", true,
-                    "data", null,
-                    "row_count", rowCount
+                    "success", false,
+                    "error", query.failureMessage(e),
+                    "row_count", 0
                 );
             }
-        } catch (Exception e) {
-            logger.error("Error executing SQL: {}", e.getMessage(), e);
+        } catch (BulkheadRejectedException e) {
             return Map.of(
                 "success", false,
                 "error", e.getMessage(),
@@ -204,11 +252,4 @@ public class DatabaseAdminService {
     public Optional<DatabaseConnection> getConnection(String connectionId) {
         return databaseConnectionService.getConnection(connectionId);
     }
-
-    private Connection createConnection(DatabaseConnection connection) throws SQLException {
-        String url = String.format("jdbc:mariadb://%s:%d/%s?useUnicode=true&characterEncoding=%s&useSSL=false",
-            connection.getHost(), connection.getPort(), connection.getDatabaseName(), connection.getCharsetName());
-        
-        return DriverManager.getConnection(url, connection.getUsername(), connection.getPassword());
-    }
 }
@@ -0,0 +1,115 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.DatabaseConnectionGroup;
+import com.chatbi.model.DatabaseConnectionGroupCreate;
+import com.chatbi.model.DatabaseConnectionGroupUpdate;
+import com.chatbi.repository.DatabaseConnectionGroupRepository;
+import com.chatbi.repository.DatabaseConnectionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 分片连接组的增删改查
+ */
+@Service
+public class DatabaseConnectionGroupService {
+
+    @Autowired
+    private DatabaseConnectionGroupRepository repository;
+
+    @Autowired
+    private DatabaseConnectionRepository connectionRepository;
+
+    public List<DatabaseConnectionGroup> getGroups() {
+        return repository.findAll();
+    }
+
+    public Optional<DatabaseConnectionGroup> getGroup(String groupId) {
+        return repository.findById(groupId);
+    }
+
+    /**
+     * 组内各分片的连接，按分片顺序；已删除的连接被跳过
+     */
+    public List<DatabaseConnection> getMembers(DatabaseConnectionGroup group) {
+        List<DatabaseConnection> members = new ArrayList<>();
+        for (String connectionId : group.getConnectionIds()) {
+            connectionRepository.findById(connectionId).ifPresent(members::add);
+        }
+        return members;
+    }
+
+    /**
+     * 列表中不存在的连接ID，用于创建/更新前校验
+     */
+    public List<String> findMissingConnections(List<String> connectionIds) {
+        return connectionIds.stream().filter(id -> !connectionRepository.existsById(id)).toList();
+    }
+
+    public DatabaseConnectionGroup createGroup(DatabaseConnectionGroupCreate createRequest) {
+        LocalDateTime now = LocalDateTime.now();
+        DatabaseConnectionGroup group = new DatabaseConnectionGroup();
+        group.setId(UUID.randomUUID().toString());
+        group.setName(createRequest.getName());
+        group.setDescription(createRequest.getDescription());
+        group.setConnectionIds(distinct(createRequest.getConnectionIds()));
+        group.setShardTimeoutSeconds(createRequest.getShardTimeoutSeconds());
+        group.setCreatedAt(now);
+        group.setUpdatedAt(now);
+        return repository.save(group);
+    }
+
+    public DatabaseConnectionGroup updateGroup(String groupId, DatabaseConnectionGroupUpdate updateRequest) {
+        Optional<DatabaseConnectionGroup> optionalGroup = repository.findById(groupId);
+        if (optionalGroup.isEmpty()) {
+            return null;
+        }
+
+        DatabaseConnectionGroup group = optionalGroup.get();
+        if (updateRequest.getName() != null) {
+            group.setName(updateRequest.getName());
+        }
+        if (updateRequest.getDescription() != null) {
+            group.setDescription(updateRequest.getDescription());
+        }
+        if (updateRequest.getConnectionIds() != null && !updateRequest.getConnectionIds().isEmpty()) {
+            group.setConnectionIds(distinct(updateRequest.getConnectionIds()));
+        }
+        if (updateRequest.getShardTimeoutSeconds() != null) {
+            group.setShardTimeoutSeconds(updateRequest.getShardTimeoutSeconds());
+        }
+        group.setUpdatedAt(LocalDateTime.now());
+        return repository.save(group);
+    }
+
+    public boolean deleteGroup(String groupId) {
+        if (!repository.existsById(groupId)) {
+            return false;
+        }
+        repository.deleteById(groupId);
+        return true;
+    }
+
+    /**
+     * 删除连接时把它从所在的组中移除
+     */
+    public void removeConnection(String connectionId) {
+        for (DatabaseConnectionGroup group : repository.findByConnectionIdsContaining(connectionId)) {
+            group.getConnectionIds().removeIf(connectionId::equals);
+            group.setUpdatedAt(LocalDateTime.now());
+            repository.save(group);
+        }
+    }
+
+    private static List<String> distinct(List<String> connectionIds) {
+        return new ArrayList<>(new LinkedHashSet<>(connectionIds));
+    }
+}
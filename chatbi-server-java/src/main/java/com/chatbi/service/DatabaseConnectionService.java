@@ -1,6 +1,7 @@
 package com.chatbi.service;
 
 import com.chatbi.model.*;
+import com.chatbi.repository.ColumnProfileRepository;
 import com.chatbi.repository.DatabaseConnectionRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +25,30 @@ public class DatabaseConnectionService {
     @Autowired
     private DatabaseConnectionRepository repository;
     
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+    
+    @Autowired
+    private QueryResultCache queryResultCache;
+    
+    @Autowired
+    private DatabaseReplicaService databaseReplicaService;
+    
+    @Autowired
+    private DatabaseConnectionGroupService databaseConnectionGroupService;
+    
+    @Autowired
+    private CachedTableService cachedTableService;
+    
+    @Autowired
+    private RollupService rollupService;
+    
+    @Autowired
+    private SchemaMetadataCache schemaMetadataCache;
+    
+    @Autowired
+    private ColumnProfileRepository columnProfileRepository;
+    
     
     @Value("${spring.datasource.url}")
     private String datasourceUrl;
@@ -83,6 +108,11 @@ public class DatabaseConnectionService {
             now,
             now
         );
+        connection.setQueryTimeoutSeconds(createRequest.getQueryTimeoutSeconds());
+        connection.setMaxConcurrentQueries(createRequest.getMaxConcurrentQueries());
+        connection.setCostWarnRows(createRequest.getCostWarnRows());
+        connection.setCostLimitRows(createRequest.getCostLimitRows());
+        connection.setCostBlockRows(createRequest.getCostBlockRows());
         
         return repository.save(connection);
     }
@@ -146,10 +176,30 @@ public class DatabaseConnectionService {
         if (updateRequest.getIsActive() != null) {
             connection.setIsActive(updateRequest.getIsActive());
         }
+        if (updateRequest.getQueryTimeoutSeconds() != null) {
+            connection.setQueryTimeoutSeconds(updateRequest.getQueryTimeoutSeconds());
+        }
+        if (updateRequest.getMaxConcurrentQueries() != null) {
+            connection.setMaxConcurrentQueries(updateRequest.getMaxConcurrentQueries());
+        }
+        if (updateRequest.getCostWarnRows() != null) {
+            connection.setCostWarnRows(updateRequest.getCostWarnRows());
+        }
+        if (updateRequest.getCostLimitRows() != null) {
+            connection.setCostLimitRows(updateRequest.getCostLimitRows());
+        }
+        if (updateRequest.getCostBlockRows() != null) {
+            connection.setCostBlockRows(updateRequest.getCostBlockRows());
+        }
         
         connection.setUpdatedAt(LocalDateTime.now());
         
-        return repository.save(connection);
+        DatabaseConnection saved = repository.save(connection);
+        // 连接配置可能已变化，关闭旧连接池，下次使用时按新配置重建
+        dataSourceRegistry.evict(connectionId);
+        queryResultCache.invalidateConnection(connectionId);
+        schemaMetadataCache.invalidate(connectionId);
+        return saved;
     }
 
     public boolean deleteConnection(String connectionId) {
@@ -170,6 +220,14 @@ public class DatabaseConnectionService {
         }
         
         repository.deleteById(connectionId);
+        databaseReplicaService.deleteByConnection(connectionId);
+        databaseConnectionGroupService.removeConnection(connectionId);
+        cachedTableService.deleteByConnection(connectionId);
+        rollupService.deleteByConnection(connectionId);
+        columnProfileRepository.deleteByConnectionId(connectionId);
+        dataSourceRegistry.evict(connectionId);
+        queryResultCache.invalidateConnection(connectionId);
+        schemaMetadataCache.invalidate(connectionId);
         return true;
     }
 
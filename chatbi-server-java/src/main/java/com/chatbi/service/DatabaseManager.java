@@ -1,16 +1,29 @@
 package com.chatbi.service;
 
+import com.chatbi.model.ColumnarResult;
 import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryCostEstimate;
+import com.chatbi.model.QueryExecution;
+import com.chatbi.model.QueryOptions;
 import com.chatbi.model.SQLExecutionResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
@@ -24,35 +37,95 @@ public class DatabaseManager {
     
     @Autowired
     private DatabaseConnectionService databaseConnectionService;
+    
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private QueryResultCache queryResultCache;
+    
+    @Autowired
+    private QueryRegistry queryRegistry;
+    
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+    
+    @Autowired
+    private ReplicaRouter replicaRouter;
+    
+    @Autowired
+    private QueryCostGate queryCostGate;
+    
+    @Autowired
+    private ResultBufferFactory resultBufferFactory;
+    
+    @Autowired
+    private ParallelAggregateExecutor parallelAggregateExecutor;
+    
+    @Autowired
+    private ColumnarTableCache columnarTableCache;
+    
+    @Value("${chatbi.streaming.fetch-size:1000}")
+    private int streamingFetchSize;
+    
+    @Value("${chatbi.streaming.flush-rows:200}")
+    private int streamingFlushRows;
 
     public SQLExecutionResponse executeQuery(String sql, DatabaseConnection connection) {
+        return executeQuery(sql, connection, QueryOptions.defaults());
+    }
+
+    /**
+     * 执行一次查询并返回执行句柄，connection为空时使用当前活动连接
+     */
+    public QueryExecution execute(String sql, DatabaseConnection connection, QueryOptions options) {
+        DatabaseConnection target = connection != null ? connection : databaseConnectionService.getActiveConnection();
+        QueryExecution execution = QueryExecution.start(sql, target != null ? target.getId() : null);
+        return execution.complete(executeQuery(sql, target, options));
+    }
+
+    public SQLExecutionResponse executeQuery(String sql, DatabaseConnection connection, QueryOptions options) {
+        if (options.getSemanticSql() != null) {
+            // Answered in memory, so there is no database cost to gate
+            SQLExecutionResponse cached = columnarTableCache.execute(options.getSemanticSql(), connection, options);
+            if (cached != null) {
+                logger.info("Served SQL query from table cache: {}", sql);
+                return cached;
+            }
+        }
+        QueryCostEstimate estimate = options.isCostGate() ? queryCostGate.evaluate(sql, connection, options) : null;
+        if (estimate == null) {
+            return runQuery(sql, connection, options);
+        }
+        if (estimate.isBlocked()) {
+            logger.warn("Blocked SQL query by cost gate ({} rows estimated): {}", estimate.getEstimatedRows(), sql);
+            SQLExecutionResponse blocked = new SQLExecutionResponse(false, null, estimate.getMessage(), 0);
+            blocked.setCostEstimate(estimate);
+            return blocked;
+        }
+        String limited = queryCostGate.applyLimit(sql, estimate);
+        if (!limited.equals(sql) && options.getParallelAggregate() != null) {
+            // The semantic form no longer describes the statement that will run
+            options.setParallelAggregate(null);
+        }
+        return runQuery(limited, connection, options).withCostEstimate(estimate);
+    }
+
+    private SQLExecutionResponse runQuery(String sql, DatabaseConnection connection, QueryOptions options) {
         try {
             logger.info("Executing SQL query: {}", sql);
             
-            JdbcTemplate template;
-            if (connection != null) {
-                // Create a new JdbcTemplate with the specific connection's datasource
-                String url = String.format("jdbc:mariadb://%s:%d/%s?useUnicode=true&characterEncoding=%s&useSSL=false&serverTimezone=UTC",
-                    connection.getHost(), connection.getPort(), connection.getDatabaseName(), connection.getCharsetName());
-                
-                DriverManagerDataSource dataSource = new DriverManagerDataSource();
-                dataSource.setUrl(url);
-                dataSource.setUsername(connection.getUsername());
-                dataSource.setPassword(connection.getPassword());
-                dataSource.setDriverClassName("org.mariadb.jdbc.Driver");
-                
-                template = new JdbcTemplate(dataSource);
-            } else {
-                // Use default JdbcTemplate
-                template = jdbcTemplate;
-            }
-            
             if (sql.trim().toUpperCase().startsWith("SELECT")) {
-                List<Map<String, Object>> data = template.queryForList(sql);
-                return new SQLExecutionResponse(true, data, null, data.size());
+                if (options.isUseCache()) {
+                    return queryResultCache.getOrLoad(connection, sql, options,
+                        reader -> runSelect(connection, reader, sql, options));
+                }
+                return runSelect(connection, replicaRouter.routeRead(connection), sql, options);
             } else {
-                int rowCount = template.update(sql);
-                return new SQLExecutionResponse(true, null, null, rowCount);
+                return runUpdate(getTemplate(connection), connection, sql, options);
             }
         } catch (Exception e) {
             logger.error("Error executing SQL query: {}", e.getMessage(), e);
@@ -60,35 +133,278 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * SELECT优先发往只读副本；副本不可用时标记下线并在主库上重试一次。
+     * 请求了并行聚合且可以拆分时按主键范围并行执行
+     */
+    private SQLExecutionResponse runSelect(DatabaseConnection connection, DatabaseConnection reader,
+                                           String sql, QueryOptions options) {
+        if (options.getParallelAggregate() != null) {
+            SQLExecutionResponse parallel = parallelAggregateExecutor.execute(
+                options.getParallelAggregate(), connection, reader, options);
+            if (parallel != null) {
+                return parallel;
+            }
+        }
+        if (reader != connection) {
+            try {
+                return runSelect(getTemplate(reader), connection, reader, sql, options);
+            } catch (RuntimeException e) {
+                if (!ReplicaRouter.isUnavailable(e)) {
+                    throw e;
+                }
+                replicaRouter.reportFailure(reader, e);
+                logger.warn("Replica {} unavailable, retrying on primary: {}", reader.getId(), e.getMessage());
+            }
+        }
+        return runSelect(getTemplate(connection), connection, connection, sql, options);
+    }
+
+    private SQLExecutionResponse runSelect(JdbcTemplate template, DatabaseConnection connection,
+                                           DatabaseConnection reader, String sql, QueryOptions options) {
+        // The bulkhead guards the logical connection; the registry tracks where the statement actually runs
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection);
+             QueryRegistry.TrackedQuery query = queryRegistry.register(
+                reader, sql, QueryRegistry.SOURCE_EXECUTE, options.getTimeoutSeconds())) {
+            try {
+                if (options.isColumnar()) {
+                    ColumnarResult columnar = template.query(query.statementCreator(options.bindValues()), new ColumnarResultExtractor());
+                    return SQLExecutionResponse.ofColumnar(columnar);
+                }
+                List<Map<String, Object>> data = readRows(template, query, options);
+                return new SQLExecutionResponse(true, data, null, data.size());
+            } catch (Exception e) {
+                if (reader != connection && !query.isCancelled()
+                    && e instanceof RuntimeException unavailable && ReplicaRouter.isUnavailable(e)) {
+                    throw unavailable;
+                }
+                logger.error("Error executing SQL query: {}", e.getMessage(), e);
+                return new SQLExecutionResponse(false, null, query.failureMessage(e), 0);
+            }
+        }
+    }
+
+    /**
+     * 以流式fetch读取结果行到结果缓冲，超过阈值的结果落盘，返回只读的行视图
+     */
+    private List<Map<String, Object>> readRows(JdbcTemplate template, QueryRegistry.TrackedQuery query,
+                                               QueryOptions options) throws IOException {
+        JdbcTemplate streaming = new JdbcTemplate(template.getDataSource());
+        streaming.setFetchSize(streamingFetchSize);
+        ColumnMapRowMapper rowMapper = new ColumnMapRowMapper();
+        ResultBuffer buffer = resultBufferFactory.create();
+        try {
+            streaming.query(query.statementCreator(options.bindValues()), (RowCallbackHandler) rs -> {
+                try {
+                    buffer.add(rowMapper.mapRow(rs, rs.getRow()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            buffer.finish();
+        } catch (RuntimeException | IOException e) {
+            buffer.close();
+            throw e;
+        }
+        return buffer.asRows();
+    }
+
+    private SQLExecutionResponse runUpdate(JdbcTemplate template, DatabaseConnection connection,
+                                           String sql, QueryOptions options) {
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection);
+             QueryRegistry.TrackedQuery query = queryRegistry.register(
+                connection, sql, QueryRegistry.SOURCE_EXECUTE, options.getTimeoutSeconds())) {
+            try {
+                int rowCount = template.update(query.statementCreator(options.bindValues()));
+                return new SQLExecutionResponse(true, null, null, rowCount);
+            } catch (Exception e) {
+                logger.error("Error executing SQL query: {}", e.getMessage(), e);
+                return new SQLExecutionResponse(false, null, query.failureMessage(e), 0);
+            } finally {
+                // Even a failed or cancelled write may have changed data
+                if (connection != null) {
+                    queryResultCache.invalidateConnection(connection.getId());
+                    columnarTableCache.invalidateConnection(connection.getId());
+                }
+            }
+        }
+    }
+
     public SQLExecutionResponse executeQuery(String sql) {
+        return executeQuery(sql, QueryOptions.defaults());
+    }
+
+    public SQLExecutionResponse executeQuery(String sql, QueryOptions options) {
         DatabaseConnection activeConnection = databaseConnectionService.getActiveConnection();
         if (activeConnection != null) {
-            return executeQuery(sql, activeConnection);
+            return executeQuery(sql, activeConnection, options);
         } else {
-            return executeQuery(sql, null);
+            return executeQuery(sql, null, options);
+        }
+    }
+
+    /**
+     * 以NDJSON逐行写出查询结果：驱动按fetch size分批拉取，内存占用与结果集大小无关。
+     * 输出依次为 columns 行、若干 row 行，最后是 end 或 error 行。
+     */
+    public void streamQuery(String sql, DatabaseConnection connection, QueryOptions options, OutputStream out) throws IOException {
+        logger.info("Streaming SQL query: {}", sql);
+        
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        generator.setRootValueSeparator(null);
+        
+        // Rows may already be on the wire, so a streamed SELECT is not retried on the primary
+        DatabaseConnection target = SqlText.isSelect(sql) ? replicaRouter.routeRead(connection) : connection;
+        QueryRegistry.TrackedQuery query = queryRegistry.register(
+            target, sql, QueryRegistry.SOURCE_STREAM, options.getTimeoutSeconds());
+        ConnectionBulkhead.Permit permit = null;
+        try {
+            permit = connectionBulkhead.acquire(connection);
+            JdbcTemplate template = new JdbcTemplate(getTemplate(target).getDataSource());
+            template.setFetchSize(streamingFetchSize);
+            
+            if (!sql.trim().toUpperCase().startsWith("SELECT")) {
+                try {
+                    int rowCount = template.update(query.statementCreator(options.bindValues()));
+                    writeEndLine(generator, rowCount);
+                } finally {
+                    if (connection != null) {
+                        queryResultCache.invalidateConnection(connection.getId());
+                        columnarTableCache.invalidateConnection(connection.getId());
+                    }
+                }
+                return;
+            }
+            
+            Long rowCount = template.query(query.statementCreator(options.bindValues()), (ResultSetExtractor<Long>) rs -> {
+                try {
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    int columnCount = metaData.getColumnCount();
+                    String[] labels = new String[columnCount];
+                    
+                    generator.writeStartObject();
+                    generator.writeStringField("type", "columns");
+                    generator.writeArrayFieldStart("columns");
+                    for (int i = 1; i <= columnCount; i++) {
+                        labels[i - 1] = JdbcUtils.lookupColumnName(metaData, i);
+                        generator.writeString(labels[i - 1]);
+                    }
+                    generator.writeEndArray();
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                    generator.flush();
+                    
+                    long rows = 0;
+                    while (rs.next()) {
+                        generator.writeStartObject();
+                        generator.writeStringField("type", "row");
+                        generator.writeObjectFieldStart("data");
+                        for (int i = 1; i <= columnCount; i++) {
+                            generator.writeFieldName(labels[i - 1]);
+                            generator.writeObject(JdbcUtils.getResultSetValue(rs, i));
+                        }
+                        generator.writeEndObject();
+                        generator.writeEndObject();
+                        generator.writeRaw('\n');
+                        rows++;
+                        // First row goes out immediately, then flush in batches
+                        if (rows == 1 || rows % streamingFlushRows == 0) {
+                            generator.flush();
+                        }
+                    }
+                    return rows;
+                } catch (IOException e) {
+                    // Client went away: cancel while the result set is still open, since closing it
+                    // makes the driver read the rest of the cursor first
+                    query.cancel();
+                    throw new UncheckedIOException(e);
+                }
+            });
+            
+            writeEndLine(generator, rowCount != null ? rowCount : 0);
+        } catch (UncheckedIOException e) {
+            logger.warn("Streaming aborted by client: {}", e.getMessage());
+            throw e.getCause();
+        } catch (Exception e) {
+            logger.error("Error streaming SQL query: {}", e.getMessage(), e);
+            generator.writeStartObject();
+            generator.writeStringField("type", "error");
+            generator.writeStringField("error", query.failureMessage(e));
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+            generator.flush();
+        } finally {
+            if (permit != null) {
+                permit.close();
+            }
+            query.close();
+        }
+    }
+
+    /**
+     * 以流式fetch执行SELECT并把结果集交给extractor逐行处理（导出等），内存占用与结果集大小无关。
+     * 结果可能已部分写给客户端，因此副本失败时不在主库重试
+     */
+    public <T> T queryStreaming(String sql, DatabaseConnection connection, QueryOptions options, String source,
+                                ResultSetExtractor<T> extractor) {
+        return queryStreaming(sql, connection, options, source, (rs, query) -> extractor.extractData(rs));
+    }
+
+    /**
+     * 同上；extractor 同时拿到登记的查询，提前停止读取时可先取消语句，
+     * 否则关闭结果集时驱动会把剩余的行读完
+     */
+    public <T> T queryStreaming(String sql, DatabaseConnection connection, QueryOptions options, String source,
+                                TrackedResultSetExtractor<T> extractor) {
+        DatabaseConnection target = replicaRouter.routeRead(connection);
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection);
+             QueryRegistry.TrackedQuery query = queryRegistry.register(
+                target, sql, source, options.getTimeoutSeconds())) {
+            JdbcTemplate template = new JdbcTemplate(getTemplate(target).getDataSource());
+            template.setFetchSize(streamingFetchSize);
+            return template.query(query.statementCreator(options.bindValues()), (ResultSetExtractor<T>) rs -> {
+                try {
+                    return extractor.extractData(rs, query);
+                } catch (UncheckedIOException e) {
+                    // Client went away: cancel while the result set is still open, since closing it
+                    // makes the driver read the rest of the cursor first
+                    query.cancel();
+                    throw e;
+                }
+            });
         }
     }
 
+    @FunctionalInterface
+    public interface TrackedResultSetExtractor<T> {
+        T extractData(ResultSet rs, QueryRegistry.TrackedQuery query) throws SQLException;
+    }
+
+    public void streamQuery(String sql, DatabaseConnection connection, OutputStream out) throws IOException {
+        streamQuery(sql, connection, QueryOptions.defaults(), out);
+    }
+
+    public void streamQuery(String sql, QueryOptions options, OutputStream out) throws IOException {
+        streamQuery(sql, databaseConnectionService.getActiveConnection(), options, out);
+    }
+
+    private void writeEndLine(JsonGenerator generator, long rowCount) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "end");
+        generator.writeNumberField("row_count", rowCount);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        generator.flush();
+    }
+
     public List<String> getAllTables(DatabaseConnection connection) {
         try {
             String sql = "SHOW TABLES";
-            JdbcTemplate template;
-            if (connection != null) {
-                // Create a new JdbcTemplate with the specific connection's datasource
-                String url = String.format("jdbc:mariadb://%s:%d/%s?useUnicode=true&characterEncoding=%s&useSSL=false&serverTimezone=UTC",
-                    connection.getHost(), connection.getPort(), connection.getDatabaseName(), connection.getCharsetName());
-                
-                DriverManagerDataSource dataSource = new DriverManagerDataSource();
-                dataSource.setUrl(url);
-                dataSource.setUsername(connection.getUsername());
-                dataSource.setPassword(connection.getPassword());
-                dataSource.setDriverClassName("org.mariadb.jdbc.Driver");
-                
-                template = new JdbcTemplate(dataSource);
-            } else {
-                template = jdbcTemplate;
+            JdbcTemplate template = getReadTemplate(connection);
+            try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
+                return template.queryForList(sql, String.class);
             }
-            return template.queryForList(sql, String.class);
         } catch (Exception e) {
             logger.error("Error getting tables: {}", e.getMessage(), e);
             return List.of();
@@ -103,23 +419,10 @@ public class DatabaseManager {
     public List<Map<String, Object>> getTableSchema(String tableName, DatabaseConnection connection) {
         try {
             String sql = "DESCRIBE " + tableName;
-            JdbcTemplate template;
-            if (connection != null) {
-                // Create a new JdbcTemplate with the specific connection's datasource
-                String url = String.format("jdbc:mariadb://%s:%d/%s?useUnicode=true&characterEncoding=%s&useSSL=false&serverTimezone=UTC",
-                    connection.getHost(), connection.getPort(), connection.getDatabaseName(), connection.getCharsetName());
-                
-                DriverManagerDataSource dataSource = new DriverManagerDataSource();
-                dataSource.setUrl(url);
-                dataSource.setUsername(connection.getUsername());
-                dataSource.setPassword(connection.getPassword());
-                dataSource.setDriverClassName("org.mariadb.jdbc.Driver");
-                
-                template = new JdbcTemplate(dataSource);
-            } else {
-                template = jdbcTemplate;
+            JdbcTemplate template = getReadTemplate(connection);
+            try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
+                return template.queryForList(sql);
             }
-            return template.queryForList(sql);
         } catch (Exception e) {
             logger.error("Error getting schema for table {}: {}", tableName, e.getMessage(), e);
             return List.of();
@@ -134,4 +437,28 @@ public class DatabaseManager {
     public JdbcTemplate getJdbcTemplate() {
         return jdbcTemplate;
     }
+
+    /**
+     * 获取指定连接的池化JdbcTemplate，connection为空时使用系统默认数据源
+     */
+    public JdbcTemplate getTemplate(DatabaseConnection connection) {
+        if (connection == null) {
+            return jdbcTemplate;
+        }
+        return dataSourceRegistry.getJdbcTemplate(connection);
+    }
+
+    /**
+     * 只读语句使用的数据源：有健康的只读副本时为副本视图，否则为连接本身
+     */
+    public DatabaseConnection routeRead(DatabaseConnection connection) {
+        return replicaRouter.routeRead(connection);
+    }
+
+    /**
+     * 只读语句（元数据、分页读取等）使用的JdbcTemplate，优先路由到只读副本
+     */
+    public JdbcTemplate getReadTemplate(DatabaseConnection connection) {
+        return getTemplate(replicaRouter.routeRead(connection));
+    }
 }
\ No newline at end of file
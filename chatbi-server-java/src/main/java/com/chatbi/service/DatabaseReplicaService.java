@@ -0,0 +1,111 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseReplica;
+import com.chatbi.model.DatabaseReplicaCreate;
+import com.chatbi.model.DatabaseReplicaUpdate;
+import com.chatbi.repository.DatabaseReplicaRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 只读副本的增删改查，变更后通知 ReplicaRouter 重新加载
+ */
+@Service
+public class DatabaseReplicaService {
+
+    @Autowired
+    private DatabaseReplicaRepository repository;
+
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+
+    public List<DatabaseReplica> getReplicas(String connectionId) {
+        return replicaRouter.describe(repository.findByConnectionId(connectionId));
+    }
+
+    public DatabaseReplica createReplica(String connectionId, DatabaseReplicaCreate createRequest) {
+        LocalDateTime now = LocalDateTime.now();
+        DatabaseReplica replica = new DatabaseReplica();
+        replica.setId(UUID.randomUUID().toString());
+        replica.setConnectionId(connectionId);
+        replica.setHost(createRequest.getHost());
+        replica.setPort(createRequest.getPort());
+        replica.setUsername(createRequest.getUsername());
+        replica.setPassword(createRequest.getPassword());
+        replica.setWeight(createRequest.getWeight() != null ? createRequest.getWeight() : 1);
+        replica.setMaxLagSeconds(createRequest.getMaxLagSeconds());
+        replica.setEnabled(createRequest.getEnabled() != null ? createRequest.getEnabled() : true);
+        replica.setCreatedAt(now);
+        replica.setUpdatedAt(now);
+
+        DatabaseReplica saved = repository.save(replica);
+        replicaRouter.reload();
+        return saved;
+    }
+
+    public DatabaseReplica updateReplica(String connectionId, String replicaId, DatabaseReplicaUpdate updateRequest) {
+        Optional<DatabaseReplica> optionalReplica = findReplica(connectionId, replicaId);
+        if (optionalReplica.isEmpty()) {
+            return null;
+        }
+
+        DatabaseReplica replica = optionalReplica.get();
+        if (updateRequest.getHost() != null) {
+            replica.setHost(updateRequest.getHost());
+        }
+        if (updateRequest.getPort() != null) {
+            replica.setPort(updateRequest.getPort());
+        }
+        if (updateRequest.getUsername() != null) {
+            replica.setUsername(updateRequest.getUsername());
+        }
+        if (updateRequest.getPassword() != null) {
+            replica.setPassword(updateRequest.getPassword());
+        }
+        if (updateRequest.getWeight() != null) {
+            replica.setWeight(updateRequest.getWeight());
+        }
+        if (updateRequest.getMaxLagSeconds() != null) {
+            replica.setMaxLagSeconds(updateRequest.getMaxLagSeconds());
+        }
+        if (updateRequest.getEnabled() != null) {
+            replica.setEnabled(updateRequest.getEnabled());
+        }
+        replica.setUpdatedAt(LocalDateTime.now());
+
+        DatabaseReplica saved = repository.save(replica);
+        // 地址或账号可能已变化，关闭旧连接池
+        dataSourceRegistry.evict(ReplicaRouter.viewId(connectionId, replicaId));
+        replicaRouter.reload();
+        return saved;
+    }
+
+    public boolean deleteReplica(String connectionId, String replicaId) {
+        if (findReplica(connectionId, replicaId).isEmpty()) {
+            return false;
+        }
+        repository.deleteById(replicaId);
+        replicaRouter.reload();
+        return true;
+    }
+
+    /**
+     * 删除连接时清理其全部副本
+     */
+    public void deleteByConnection(String connectionId) {
+        repository.deleteByConnectionId(connectionId);
+        replicaRouter.reload();
+    }
+
+    private Optional<DatabaseReplica> findReplica(String connectionId, String replicaId) {
+        return repository.findById(replicaId).filter(replica -> connectionId.equals(replica.getConnectionId()));
+    }
+}
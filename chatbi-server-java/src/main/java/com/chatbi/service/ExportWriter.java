@@ -0,0 +1,40 @@
+package com.chatbi.service;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * 导出格式的逐行写出器。start 在读取第一行之前调用，finish 在最后一行之后调用；
+ * 实现只能缓冲有限的数据（一个行组、一个窗口），不得持有整个结果集。
+ */
+interface ExportWriter {
+
+    void start(ResultSetMetaData metaData) throws IOException, SQLException;
+
+    /**
+     * 写出结果集的当前行。values 是按列数分配、逐行复用的缓冲区；
+     * 按对象写出的格式用 readValues 填充它，列式格式可以直接按基本类型读取，避免装箱
+     */
+    void writeRow(ResultSet rs, Object[] values) throws IOException, SQLException;
+
+    void finish() throws IOException;
+
+    /**
+     * 逐列取出当前行的对象值
+     */
+    static void readValues(ResultSet rs, Object[] values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = JdbcUtils.getResultSetValue(rs, i + 1);
+        }
+    }
+
+    /**
+     * 出错或客户端断开时释放临时资源，不再写出任何内容
+     */
+    default void abort() {
+    }
+}
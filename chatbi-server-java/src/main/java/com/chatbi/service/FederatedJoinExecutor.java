@@ -0,0 +1,804 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.FederatedJoinCost;
+import com.chatbi.model.ParameterizedSQL;
+import com.chatbi.model.QueryOptions;
+import com.chatbi.model.SQLExecutionResponse;
+import com.chatbi.model.SemanticSQL;
+import com.chatbi.model.SqlParameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 跨连接的联合查询：两张表分别位于不同的数据库连接时，各侧只下推本侧的条件和需要的列，
+ * 以流式游标读出后在JVM内做哈希连接（较小的一侧或 LEFT JOIN 的可空侧作为构建侧）。
+ * 构建侧估算大小超过 build-memory-bytes 时按连接键哈希分区写入临时文件，探测侧同样分区后逐个分区连接。
+ * 只支持两张表之间由 AND 连接的等值条件；结果附带各阶段的行数、字节数和耗时（join_cost）。
+ */
+@Service
+public class FederatedJoinExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(FederatedJoinExecutor.class);
+
+    private static final Pattern IDENTIFIER = Pattern.compile("^`?(\\w+)`?(?:\\.`?(\\w+)`?)?$");
+    private static final Pattern ALIASED = Pattern.compile("^(.+?)\\s+AS\\s+`?(\\w+)`?$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern EQUALITY = Pattern.compile("^\\s*(\\S+?)\\s*=\\s*(\\S+?)\\s*$");
+    private static final Pattern AND = Pattern.compile("\\s+AND\\s+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INTEGER_LITERAL = Pattern.compile("^-?\\d+$");
+    private static final String TABLE_ROWS_SQL =
+        "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+
+    @Autowired
+    private DatabaseManager databaseManager;
+
+    @Autowired
+    private ResultBufferFactory resultBufferFactory;
+
+    @Autowired
+    private MySQLSQLGenerator mysqlSQLGenerator;
+
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+
+    @Value("${chatbi.federation.build-memory-bytes:67108864}")
+    private long buildMemoryBytes;
+
+    @Value("${chatbi.federation.partitions:16}")
+    private int partitionCount;
+
+    /**
+     * 连接的一侧：所在连接、已有的列，以及需要取回的列（按取回顺序，对应 SQL 中的 c0..cN）
+     */
+    private static final class Side {
+        final String table;
+        final DatabaseConnection connection;
+        final Set<String> columns;
+        final List<String> fetched = new ArrayList<>();
+        final List<Map<String, Object>> conditions = new ArrayList<>();
+        int[] keys;
+
+        Side(String table, DatabaseConnection connection, Set<String> columns) {
+            this.table = table;
+            this.connection = connection;
+            this.columns = columns;
+        }
+
+        int fetch(String column) {
+            int index = fetched.indexOf(column);
+            if (index < 0) {
+                fetched.add(column);
+                index = fetched.size() - 1;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 连接后一行中的某个值：side 0 为左表，1 为右表
+     */
+    private record Ref(int side, int index) {
+        Object of(Object[] left, Object[] right) {
+            Object[] row = side == 0 ? left : right;
+            return row != null ? row[index] : null;
+        }
+    }
+
+    /**
+     * 连接结果的消费方
+     */
+    private interface JoinSink {
+        void accept(Object[] left, Object[] right) throws IOException;
+
+        List<Map<String, Object>> finish() throws IOException;
+
+        default boolean isFull() {
+            return false;
+        }
+
+        default void close() {
+        }
+    }
+
+    /**
+     * 执行跨连接查询。语义SQL中的表按在各连接中出现的先后归属连接；全部位于同一连接时直接在该连接执行
+     */
+    public SQLExecutionResponse execute(SemanticSQL semanticSQL, List<DatabaseConnection> connections,
+                                        QueryOptions options) {
+        long started = System.nanoTime();
+        try {
+            List<String> tables = tableNames(semanticSQL);
+            Side[] sides = locate(tables, connections);
+            if (Arrays.stream(sides).allMatch(side -> side.connection.getId().equals(sides[0].connection.getId()))) {
+                ParameterizedSQL generated = mysqlSQLGenerator.generate(semanticSQL);
+                QueryOptions single = QueryOptions.defaults();
+                single.setTimeoutSeconds(options.getTimeoutSeconds());
+                single.setParameters(generated.getParameters());
+                return databaseManager.executeQuery(generated.getSql(), sides[0].connection, single);
+            }
+            if (sides.length != 2) {
+                return failure("跨库查询目前只支持两张表之间的连接");
+            }
+            return join(semanticSQL, sides[0], sides[1], options, started);
+        } catch (IllegalArgumentException e) {
+            return failure(e.getMessage());
+        } catch (Exception e) {
+            logger.error("Federated join failed", e);
+            return failure("跨库查询执行失败: " + e.getMessage());
+        }
+    }
+
+    private SQLExecutionResponse join(SemanticSQL semanticSQL, Side left, Side right, QueryOptions options,
+                                      long started) throws IOException {
+        Side[] sides = {left, right};
+        if (semanticSQL.getJoins() == null || semanticSQL.getJoins().size() != 1) {
+            throw new IllegalArgumentException("跨库查询需要两张表之间恰好一个JOIN");
+        }
+        Map<String, String> joinSpec = semanticSQL.getJoins().get(0);
+        String type = joinSpec.getOrDefault("type", "INNER").trim().toUpperCase(Locale.ROOT)
+            .replace(" OUTER", "");
+        if (type.isEmpty()) {
+            type = "INNER";
+        }
+        if ("RIGHT".equals(type)) {
+            // RIGHT JOIN is a LEFT JOIN with the sides swapped
+            sides = new Side[] {right, left};
+            type = "LEFT";
+        }
+        if (!"INNER".equals(type) && !"LEFT".equals(type)) {
+            throw new IllegalArgumentException("跨库查询不支持 " + type + " JOIN");
+        }
+        parseJoinCondition(joinSpec.get("condition"), sides);
+
+        if (semanticSQL.getConditions() != null) {
+            for (Map<String, Object> condition : semanticSQL.getConditions()) {
+                Object column = condition.get("column");
+                if (column == null) {
+                    throw new IllegalArgumentException("无法下推没有列的条件");
+                }
+                sides[sideOf(String.valueOf(column), sides)].conditions.add(condition);
+            }
+        }
+        if ("LEFT".equals(type) && !sides[1].conditions.isEmpty()) {
+            // A filter on the nullable side rejects the null-extended rows, so the join is inner
+            type = "INNER";
+        }
+
+        JoinSink sink = AggregatePlan.isAggregate(semanticSQL)
+            ? aggregateSink(semanticSQL, sides) : rowSink(semanticSQL, sides);
+
+        FederatedJoinCost cost = new FederatedJoinCost();
+        cost.setJoinType(type);
+        List<SqlParameter> leftParameters = new ArrayList<>();
+        List<SqlParameter> rightParameters = new ArrayList<>();
+        String leftSql = sideSql(sides[0], leftParameters);
+        String rightSql = sideSql(sides[1], rightParameters);
+
+        boolean buildLeft = "INNER".equals(type)
+            && tableRows(sides[0]) < tableRows(sides[1]);
+        int build = buildLeft ? 0 : 1;
+        int probe = 1 - build;
+        boolean preserveProbe = "LEFT".equals(type);
+        String buildSql = build == 0 ? leftSql : rightSql;
+        String probeSql = probe == 0 ? leftSql : rightSql;
+        cost.setBuildTable(sides[build].table);
+        cost.setBuildConnectionId(sides[build].connection.getId());
+        cost.setProbeTable(sides[probe].table);
+        cost.setProbeConnectionId(sides[probe].connection.getId());
+        cost.getPushedSql().put(sides[0].table, leftSql);
+        cost.getPushedSql().put(sides[1].table, rightSql);
+
+        HashTable hashTable = new HashTable(sides[build].keys);
+        try {
+            long buildStarted = System.nanoTime();
+            stream(buildSql, sides[build], build == 0 ? leftParameters : rightParameters, options, row -> {
+                hashTable.add(row);
+                return true;
+            });
+            hashTable.finish();
+            cost.setBuildMs((System.nanoTime() - buildStarted) / 1_000_000);
+            cost.setBuildRows(hashTable.rows);
+            cost.setBuildBytes(hashTable.bytes);
+            cost.setSpilled(hashTable.partitions != null);
+            cost.setPartitions(hashTable.partitions != null ? hashTable.partitions.length : 0);
+
+            long probeStarted = System.nanoTime();
+            int[] probeKeys = sides[probe].keys;
+            long[] probeRows = {0};
+            if (hashTable.partitions == null) {
+                stream(probeSql, sides[probe], probe == 0 ? leftParameters : rightParameters, options, row -> {
+                    probeRows[0]++;
+                    probeRow(row, hashTable.map.get(key(row, probeKeys)), probe, preserveProbe, sink);
+                    return !sink.isFull();
+                });
+            } else {
+                ResultBuffer[] probePartitions = new ResultBuffer[hashTable.partitions.length];
+                try {
+                    for (int i = 0; i < probePartitions.length; i++) {
+                        probePartitions[i] = resultBufferFactory.create(0);
+                    }
+                    stream(probeSql, sides[probe], probe == 0 ? leftParameters : rightParameters, options, row -> {
+                        probeRows[0]++;
+                        List<Object> key = key(row, probeKeys);
+                        if (key == null) {
+                            probeRow(row, null, probe, preserveProbe, sink);
+                        } else {
+                            probePartitions[partition(key, probePartitions.length)].add(toMap(row));
+                        }
+                        return !sink.isFull();
+                    });
+                    for (int i = 0; i < probePartitions.length && !sink.isFull(); i++) {
+                        probePartitions[i].finish();
+                        Map<List<Object>, List<Object[]>> partition = hashTable.load(i);
+                        for (Map<String, Object> stored : probePartitions[i].asRows()) {
+                            Object[] row = stored.values().toArray();
+                            probeRow(row, partition.get(key(row, probeKeys)), probe, preserveProbe, sink);
+                            if (sink.isFull()) {
+                                break;
+                            }
+                        }
+                    }
+                } finally {
+                    for (ResultBuffer buffer : probePartitions) {
+                        closeQuietly(buffer);
+                    }
+                }
+            }
+            List<Map<String, Object>> rows = sink.finish();
+            cost.setProbeMs((System.nanoTime() - probeStarted) / 1_000_000);
+            cost.setProbeRows(probeRows[0]);
+            cost.setOutputRows(rows.size());
+            cost.setTotalMs((System.nanoTime() - started) / 1_000_000);
+            logger.info("Federated {} join {} x {}: build {} rows ({} bytes, spilled {}), probe {} rows, {} rows in {} ms",
+                type, sides[build].table, sides[probe].table, cost.getBuildRows(), cost.getBuildBytes(),
+                cost.isSpilled(), cost.getProbeRows(), rows.size(), cost.getTotalMs());
+
+            SQLExecutionResponse response = new SQLExecutionResponse(true, rows, null, rows.size());
+            response.setJoinCost(cost);
+            return response;
+        } finally {
+            hashTable.close();
+            sink.close();
+        }
+    }
+
+    /**
+     * 删除一个落盘分区；失败只记录日志，不影响其余分区的清理
+     */
+    private static void closeQuietly(ResultBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            buffer.close();
+        } catch (IOException e) {
+            logger.warn("Failed to delete join spill partition {}: {}", buffer.getFile(), e.getMessage());
+        }
+    }
+
+    private static void probeRow(Object[] row, List<Object[]> matches, int probe, boolean preserve, JoinSink sink)
+            throws IOException {
+        if (matches == null) {
+            if (preserve) {
+                emit(row, null, probe, sink);
+            }
+            return;
+        }
+        for (Object[] match : matches) {
+            emit(row, match, probe, sink);
+            if (sink.isFull()) {
+                return;
+            }
+        }
+    }
+
+    private static void emit(Object[] probeRow, Object[] buildRow, int probe, JoinSink sink) throws IOException {
+        if (probe == 0) {
+            sink.accept(probeRow, buildRow);
+        } else {
+            sink.accept(buildRow, probeRow);
+        }
+    }
+
+    /**
+     * 构建侧的哈希表；超过内存上限后按连接键哈希分区落盘
+     */
+    private final class HashTable {
+        final int[] keys;
+        Map<List<Object>, List<Object[]>> map = new HashMap<>();
+        ResultBuffer[] partitions;
+        long rows;
+        long bytes;
+
+        HashTable(int[] keys) {
+            this.keys = keys;
+        }
+
+        void add(Object[] row) throws IOException {
+            List<Object> key = key(row, keys);
+            if (key == null) {
+                // NULL never equals anything, and the build side is never the preserved side
+                return;
+            }
+            rows++;
+            long rowBytes = 48;
+            for (Object value : row) {
+                rowBytes += QueryResultCache.estimateValueBytes(value);
+            }
+            bytes += rowBytes;
+            if (partitions != null) {
+                partitions[partition(key, partitions.length)].add(toMap(row));
+                return;
+            }
+            map.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+            if (bytes > buildMemoryBytes) {
+                spill();
+            }
+        }
+
+        private void spill() throws IOException {
+            int count = Math.max(2, partitionCount);
+            partitions = new ResultBuffer[count];
+            for (int i = 0; i < count; i++) {
+                partitions[i] = resultBufferFactory.create(0);
+            }
+            for (Map.Entry<List<Object>, List<Object[]>> entry : map.entrySet()) {
+                ResultBuffer partition = partitions[partition(entry.getKey(), count)];
+                for (Object[] row : entry.getValue()) {
+                    partition.add(toMap(row));
+                }
+            }
+            map = null;
+            logger.info("Federated join build side exceeded {} bytes, partitioned into {} spill files",
+                buildMemoryBytes, count);
+        }
+
+        void finish() throws IOException {
+            if (partitions != null) {
+                for (ResultBuffer partition : partitions) {
+                    partition.finish();
+                }
+            }
+        }
+
+        /**
+         * 读回一个落盘分区的哈希表
+         */
+        Map<List<Object>, List<Object[]>> load(int index) {
+            Map<List<Object>, List<Object[]>> partition = new HashMap<>();
+            for (Map<String, Object> stored : partitions[index].asRows()) {
+                Object[] row = stored.values().toArray();
+                partition.computeIfAbsent(key(row, keys), k -> new ArrayList<>(1)).add(row);
+            }
+            return partition;
+        }
+
+        void close() {
+            if (partitions != null) {
+                for (ResultBuffer partition : partitions) {
+                    closeQuietly(partition);
+                }
+            }
+        }
+    }
+
+    private JoinSink aggregateSink(SemanticSQL semanticSQL, Side[] sides) {
+        AggregatePlan plan = AggregatePlan.parseJoined(semanticSQL, expression -> {
+            try {
+                Ref ref = resolve(expression, sides);
+                return sides[ref.side()].table.toLowerCase(Locale.ROOT) + "."
+                    + sides[ref.side()].fetched.get(ref.index());
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        });
+        if (plan == null) {
+            throw new IllegalArgumentException("跨库查询中的聚合只支持 COUNT/SUM/AVG/MIN/MAX 和按列分组");
+        }
+        Ref[] groups = new Ref[plan.groupCount()];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = resolve(plan.groupColumn(i), sides);
+        }
+        Ref[] arguments = new Ref[plan.partialCount()];
+        Object[] constants = new Object[plan.partialCount()];
+        for (int i = 0; i < arguments.length; i++) {
+            String argument = plan.partialArgument(i).trim();
+            if ("*".equals(argument)) {
+                constants[i] = 1L;
+            } else if (INTEGER_LITERAL.matcher(argument).matches()) {
+                constants[i] = Long.parseLong(argument);
+            } else {
+                arguments[i] = resolve(argument, sides);
+            }
+        }
+        AggregatePlan.AggregateTable table = plan.newTable();
+        Object[] key = new Object[groups.length];
+        Object[] values = new Object[arguments.length];
+        return new JoinSink() {
+            @Override
+            public void accept(Object[] left, Object[] right) {
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = groups[i].of(left, right);
+                }
+                for (int i = 0; i < values.length; i++) {
+                    Object value = arguments[i] != null ? arguments[i].of(left, right) : constants[i];
+                    // Each joined row is a partial of its own: COUNT contributes 1 for a non-null value
+                    values[i] = plan.partialFunction(i) == AggregatePlan.Function.COUNT
+                        ? (value != null ? 1L : null) : value;
+                }
+                table.accumulate(key, values);
+            }
+
+            @Override
+            public List<Map<String, Object>> finish() {
+                return plan.finish(table);
+            }
+        };
+    }
+
+    private JoinSink rowSink(SemanticSQL semanticSQL, Side[] sides) {
+        if (semanticSQL.getColumns() == null || semanticSQL.getColumns().isEmpty()) {
+            throw new IllegalArgumentException("跨库查询需要明确列出查询的列");
+        }
+        List<String> labels = new ArrayList<>();
+        List<Ref> outputs = new ArrayList<>();
+        for (String raw : semanticSQL.getColumns()) {
+            String item = raw.trim();
+            Matcher aliased = ALIASED.matcher(item);
+            String expression = aliased.matches() ? aliased.group(1) : item;
+            outputs.add(resolve(expression, sides));
+            labels.add(aliased.matches() ? aliased.group(2) : AggregatePlan.unqualified(expression));
+        }
+
+        List<Ref> sortRefs = new ArrayList<>();
+        List<Boolean> descending = new ArrayList<>();
+        if (semanticSQL.getOrderBy() != null) {
+            for (Map<String, String> order : semanticSQL.getOrderBy()) {
+                String column = order.get("column");
+                if (column == null) {
+                    continue;
+                }
+                int label = -1;
+                for (int i = 0; i < labels.size(); i++) {
+                    if (labels.get(i).equalsIgnoreCase(column.trim())) {
+                        label = i;
+                        break;
+                    }
+                }
+                sortRefs.add(label >= 0 ? outputs.get(label) : resolve(column, sides));
+                descending.add("DESC".equalsIgnoreCase(order.getOrDefault("direction", "ASC")));
+            }
+        }
+        Integer limit = semanticSQL.getLimit();
+
+        if (sortRefs.isEmpty()) {
+            ResultBuffer buffer = resultBufferFactory.create();
+            return new JoinSink() {
+                @Override
+                public void accept(Object[] left, Object[] right) throws IOException {
+                    if (!isFull()) {
+                        buffer.add(project(labels, outputs, left, right));
+                    }
+                }
+
+                @Override
+                public boolean isFull() {
+                    return limit != null && buffer.getRowCount() >= limit;
+                }
+
+                @Override
+                public List<Map<String, Object>> finish() throws IOException {
+                    buffer.finish();
+                    return buffer.asRows();
+                }
+            };
+        }
+
+        // Sorted rows carry their sort key and arrival order, so equal keys keep a stable order
+        record Ranked(Map<String, Object> row, Object[] sortKey, long sequence) {
+        }
+        Comparator<Ranked> order = (a, b) -> {
+            for (int i = 0; i < sortRefs.size(); i++) {
+                int c = AggregatePlan.compare(a.sortKey()[i], b.sortKey()[i]);
+                if (c != 0) {
+                    return descending.get(i) ? -c : c;
+                }
+            }
+            return Long.compare(a.sequence(), b.sequence());
+        };
+        // With a LIMIT only the best rows are kept: a max-heap of size LIMIT evicts the worst
+        PriorityQueue<Ranked> heap = limit != null ? new PriorityQueue<>(Math.max(1, limit), order.reversed()) : null;
+        List<Ranked> all = limit == null ? new ArrayList<>() : null;
+        long[] sequence = {0};
+        return new JoinSink() {
+            @Override
+            public void accept(Object[] left, Object[] right) {
+                Object[] sortKey = new Object[sortRefs.size()];
+                for (int i = 0; i < sortKey.length; i++) {
+                    sortKey[i] = sortRefs.get(i).of(left, right);
+                }
+                Ranked ranked = new Ranked(null, sortKey, sequence[0]++);
+                if (heap != null) {
+                    if (limit <= 0) {
+                        return;
+                    }
+                    if (heap.size() == limit && order.compare(ranked, heap.peek()) >= 0) {
+                        return;
+                    }
+                    heap.add(new Ranked(project(labels, outputs, left, right), sortKey, ranked.sequence()));
+                    if (heap.size() > limit) {
+                        heap.poll();
+                    }
+                } else {
+                    all.add(new Ranked(project(labels, outputs, left, right), sortKey, ranked.sequence()));
+                }
+            }
+
+            @Override
+            public List<Map<String, Object>> finish() {
+                List<Ranked> ranked = heap != null ? new ArrayList<>(heap) : all;
+                ranked.sort(order);
+                List<Map<String, Object>> rows = new ArrayList<>(ranked.size());
+                ranked.forEach(entry -> rows.add(entry.row()));
+                return rows;
+            }
+        };
+    }
+
+    private static Map<String, Object> project(List<String> labels, List<Ref> outputs, Object[] left, Object[] right) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < labels.size(); i++) {
+            row.put(labels.get(i), outputs.get(i).of(left, right));
+        }
+        return row;
+    }
+
+    private void parseJoinCondition(String condition, Side[] sides) {
+        if (condition == null || condition.isBlank()) {
+            throw new IllegalArgumentException("跨库查询的JOIN需要连接条件");
+        }
+        List<Integer> leftKeys = new ArrayList<>();
+        List<Integer> rightKeys = new ArrayList<>();
+        for (String part : AND.split(condition.trim())) {
+            Matcher equality = EQUALITY.matcher(part);
+            if (!equality.matches()) {
+                throw new IllegalArgumentException("跨库查询的连接条件只支持列之间的等值比较: " + part);
+            }
+            Ref a = resolve(equality.group(1), sides);
+            Ref b = resolve(equality.group(2), sides);
+            if (a.side() == b.side()) {
+                throw new IllegalArgumentException("连接条件两边需要分别引用两张表的列: " + part);
+            }
+            leftKeys.add(a.side() == 0 ? a.index() : b.index());
+            rightKeys.add(a.side() == 0 ? b.index() : a.index());
+        }
+        sides[0].keys = leftKeys.stream().mapToInt(Integer::intValue).toArray();
+        sides[1].keys = rightKeys.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * 列引用所属的一侧（表名前缀或列名唯一归属），无法确定时抛出 IllegalArgumentException
+     */
+    private static int sideOf(String expression, Side[] sides) {
+        Matcher matcher = IDENTIFIER.matcher(expression.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("跨库查询只支持直接引用列: " + expression);
+        }
+        String table = matcher.group(2) != null ? matcher.group(1) : null;
+        String column = (matcher.group(2) != null ? matcher.group(2) : matcher.group(1)).toLowerCase(Locale.ROOT);
+        int found = -1;
+        for (int i = 0; i < sides.length; i++) {
+            boolean matches = table != null ? sides[i].table.equalsIgnoreCase(table) : sides[i].columns.contains(column);
+            if (!matches) {
+                continue;
+            }
+            if (found >= 0) {
+                throw new IllegalArgumentException("列 " + expression + " 在两张表中都存在，请加上表名前缀");
+            }
+            found = i;
+        }
+        if (found < 0 || !sides[found].columns.contains(column)) {
+            throw new IllegalArgumentException("无法识别的列: " + expression);
+        }
+        return found;
+    }
+
+    private static Ref resolve(String expression, Side[] sides) {
+        int side = sideOf(expression, sides);
+        return new Ref(side, sides[side].fetch(AggregatePlan.unqualified(expression.trim()).toLowerCase(Locale.ROOT)));
+    }
+
+    private String sideSql(Side side, List<SqlParameter> parameters) {
+        List<String> select = new ArrayList<>(side.fetched.size());
+        for (int i = 0; i < side.fetched.size(); i++) {
+            select.add(AggregatePlan.quote(side.fetched.get(i)) + " AS c" + i);
+        }
+        StringBuilder sql = new StringBuilder("SELECT ").append(String.join(", ", select))
+            .append(" FROM ").append(AggregatePlan.quote(side.table));
+        if (!side.conditions.isEmpty()) {
+            SemanticSQL filter = new SemanticSQL();
+            filter.setConditions(side.conditions);
+            sql.append(" WHERE ").append(mysqlSQLGenerator.buildWhereClause(filter, parameters));
+        }
+        return sql.toString();
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+        /**
+         * 处理一行；返回 false 时停止读取
+         */
+        boolean handle(Object[] row) throws IOException;
+    }
+
+    private void stream(String sql, Side side, List<SqlParameter> parameters, QueryOptions options,
+                        RowHandler handler) {
+        QueryOptions sideOptions = QueryOptions.defaults();
+        sideOptions.setTimeoutSeconds(options.getTimeoutSeconds());
+        sideOptions.setParameters(parameters);
+        int columns = side.fetched.size();
+        databaseManager.queryStreaming(sql, side.connection, sideOptions, QueryRegistry.SOURCE_EXECUTE,
+            (rs, query) -> {
+                try {
+                    while (rs.next()) {
+                        Object[] row = new Object[columns];
+                        for (int i = 0; i < columns; i++) {
+                            row[i] = JdbcUtils.getResultSetValue(rs, i + 1);
+                        }
+                        if (!handler.handle(row)) {
+                            // Closing the result set would read the rest of the side first
+                            query.cancel();
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+    }
+
+    /**
+     * 每张表归属第一个包含它的连接
+     */
+    private Side[] locate(List<String> tables, List<DatabaseConnection> connections) {
+        Side[] sides = new Side[tables.size()];
+        for (DatabaseConnection connection : connections) {
+            JdbcTemplate template = databaseManager.getReadTemplate(connection);
+            String placeholders = String.join(", ", tables.stream().map(table -> "?").toList());
+            List<Map<String, Object>> columns;
+            try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
+                columns = template.queryForList("SELECT TABLE_NAME, COLUMN_NAME FROM information_schema.COLUMNS "
+                    + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME IN (" + placeholders + ")", tables.toArray());
+            }
+            for (int i = 0; i < tables.size(); i++) {
+                if (sides[i] != null) {
+                    continue;
+                }
+                Set<String> names = new LinkedHashSet<>();
+                for (Map<String, Object> column : columns) {
+                    if (tables.get(i).equalsIgnoreCase(String.valueOf(column.get("TABLE_NAME")))) {
+                        names.add(String.valueOf(column.get("COLUMN_NAME")).toLowerCase(Locale.ROOT));
+                    }
+                }
+                if (!names.isEmpty()) {
+                    sides[i] = new Side(tables.get(i), connection, names);
+                }
+            }
+        }
+        for (int i = 0; i < sides.length; i++) {
+            if (sides[i] == null) {
+                throw new IllegalArgumentException("在所选连接中找不到表: " + tables.get(i));
+            }
+        }
+        return sides;
+    }
+
+    private long tableRows(Side side) {
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(side.connection)) {
+            Long rows = databaseManager.getReadTemplate(side.connection).query(TABLE_ROWS_SQL,
+                (ResultSetExtractor<Long>) rs -> rs.next() ? rs.getLong(1) : null, side.table);
+            return rows != null ? rows : Long.MAX_VALUE;
+        }
+    }
+
+    private static List<String> tableNames(SemanticSQL semanticSQL) {
+        List<String> tables = new ArrayList<>();
+        if (semanticSQL.getTables() != null) {
+            for (String table : semanticSQL.getTables()) {
+                Matcher matcher = IDENTIFIER.matcher(table.trim());
+                if (!matcher.matches() || matcher.group(2) != null) {
+                    throw new IllegalArgumentException("跨库查询不支持该表引用: " + table);
+                }
+                if (tables.stream().noneMatch(matcher.group(1)::equalsIgnoreCase)) {
+                    tables.add(matcher.group(1));
+                }
+            }
+        }
+        if (tables.isEmpty()) {
+            throw new IllegalArgumentException("语义SQL中没有表");
+        }
+        return tables;
+    }
+
+    /**
+     * 连接键：各库返回的数值类型可能不同（INT 与 BIGINT、DECIMAL(10,0)），统一后才能按值相等匹配；
+     * 任一键列为 NULL 时返回null
+     */
+    private static List<Object> key(Object[] row, int[] keys) {
+        Object[] key = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            Object value = normalize(row[keys[i]]);
+            if (value == null) {
+                return null;
+            }
+            key[i] = value;
+        }
+        return Arrays.asList(key);
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof BigInteger integer) {
+            return integer.bitLength() < 64 ? (Object) integer.longValue() : integer;
+        }
+        if (value instanceof BigDecimal decimal) {
+            BigDecimal stripped = decimal.stripTrailingZeros();
+            if (stripped.scale() <= 0 && stripped.precision() - stripped.scale() < 19) {
+                return stripped.longValueExact();
+            }
+            return stripped;
+        }
+        if (value instanceof Float number) {
+            return number.doubleValue();
+        }
+        if (value instanceof byte[] bytes) {
+            return ByteBuffer.wrap(bytes);
+        }
+        return value;
+    }
+
+    private static int partition(List<Object> key, int count) {
+        // Spread the hash so partitions do not follow the HashMap bucket order
+        int h = key.hashCode() * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), count);
+    }
+
+    private static Map<String, Object> toMap(Object[] row) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < row.length; i++) {
+            map.put("c" + i, row[i]);
+        }
+        return map;
+    }
+
+    private static SQLExecutionResponse failure(String message) {
+        return new SQLExecutionResponse(false, null, message, 0);
+    }
+}
@@ -1,6 +1,8 @@
 package com.chatbi.service;
 
+import com.chatbi.model.ParameterizedSQL;
 import com.chatbi.model.SemanticSQL;
+import com.chatbi.model.SqlParameter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -13,13 +15,25 @@ import java.util.Map;
 public class MySQLSQLGenerator {
     private static final Logger logger = LoggerFactory.getLogger(MySQLSQLGenerator.class);
 
+    /**
+     * 生成可直接展示/执行的SQL文本（参数已代入）
+     */
     public String generateMySQLSQL(SemanticSQL semanticSQL) {
+        return generate(semanticSQL).render();
+    }
+
+    /**
+     * 生成带 ? 占位符的SQL：条件中的字面量全部作为绑定参数，
+     * 只有字面量不同的问题得到同一条语句文本，可复用服务端预编译语句和结果缓存
+     */
+    public ParameterizedSQL generate(SemanticSQL semanticSQL) {
         try {
             if (semanticSQL.getTables() == null || semanticSQL.getTables().isEmpty()) {
-                return "SELECT 1; -- No tables specified";
+                return new ParameterizedSQL("SELECT 1; -- No tables specified", new ArrayList<>());
             }
             
             List<String> sqlParts = new ArrayList<>();
+            List<SqlParameter> parameters = new ArrayList<>();
             
             // SELECT clause
             String selectClause = buildSelectClause(semanticSQL);
@@ -37,7 +51,7 @@ public class MySQLSQLGenerator {
             
             // WHERE clause
             if (semanticSQL.getConditions() != null && !semanticSQL.getConditions().isEmpty()) {
-                String whereClause = buildWhereClause(semanticSQL);
+                String whereClause = buildWhereClause(semanticSQL, parameters);
                 sqlParts.add("WHERE " + whereClause);
             }
             
@@ -58,11 +72,11 @@ public class MySQLSQLGenerator {
                 sqlParts.add("LIMIT " + semanticSQL.getLimit());
             }
             
-            return String.join(" ", sqlParts);
+            return new ParameterizedSQL(String.join(" ", sqlParts), parameters);
             
         } catch (Exception e) {
             logger.error("Error generating MySQL SQL: {}", e.getMessage(), e);
-            return "SELECT 1; -- Error generating SQL: " + e.getMessage();
+            return new ParameterizedSQL("SELECT 1; -- Error generating SQL: " + e.getMessage(), new ArrayList<>());
         }
     }
 
@@ -104,7 +118,7 @@ public class MySQLSQLGenerator {
         return joinClauses;
     }
 
-    private String buildWhereClause(SemanticSQL semanticSQL) {
+    String buildWhereClause(SemanticSQL semanticSQL, List<SqlParameter> parameters) {
         List<String> conditions = new ArrayList<>();
         for (Map<String, Object> condition : semanticSQL.getConditions()) {
             String column = (String) condition.get("column");
@@ -112,34 +126,34 @@ public class MySQLSQLGenerator {
             Object value = condition.get("value");
             
             if (column != null && value != null) {
-                String valueStr = sqlQuote(value);
+                String placeholder;
                 
                 // Handle different operators
-                if ("IN".equalsIgnoreCase(operator)) {
-                    if (value instanceof List) {
-                        @SuppressWarnings("unchecked")
-                        List<Object> valueList = (List<Object>) value;
-                        String inValues = valueList.stream()
-                            .map(this::sqlQuote)
-                            .reduce((a, b) -> a + ", " + b)
-                            .orElse("");
-                        valueStr = "(" + inValues + ")";
-                    } else {
-                        valueStr = "(" + valueStr + ")";
-                    }
-                } else if ("BETWEEN".equalsIgnoreCase(operator)) {
+                if ("IN".equalsIgnoreCase(operator) || "NOT IN".equalsIgnoreCase(operator)) {
                     if (value instanceof List) {
                         @SuppressWarnings("unchecked")
                         List<Object> valueList = (List<Object>) value;
-                        if (valueList.size() == 2) {
-                            valueStr = sqlQuote(valueList.get(0)) + " AND " + sqlQuote(valueList.get(1));
+                        List<String> marks = new ArrayList<>();
+                        for (Object item : valueList) {
+                            parameters.add(SqlParameter.of(item));
+                            marks.add("?");
                         }
+                        placeholder = "(" + String.join(", ", marks) + ")";
+                    } else {
+                        parameters.add(SqlParameter.of(value));
+                        placeholder = "(?)";
                     }
-                } else if ("LIKE".equalsIgnoreCase(operator)) {
-                    valueStr = sqlQuote(value);
+                } else if ("BETWEEN".equalsIgnoreCase(operator)
+                    && value instanceof List<?> valueList && valueList.size() == 2) {
+                    parameters.add(SqlParameter.of(valueList.get(0)));
+                    parameters.add(SqlParameter.of(valueList.get(1)));
+                    placeholder = "? AND ?";
+                } else {
+                    parameters.add(SqlParameter.of(value));
+                    placeholder = "?";
                 }
                 
-                conditions.add(column + " " + operator + " " + valueStr);
+                conditions.add(column + " " + operator + " " + placeholder);
             }
         }
         return String.join(" AND ", conditions);
@@ -160,11 +174,4 @@ public class MySQLSQLGenerator {
         }
         return String.join(", ", orderItems);
     }
-
-    private String sqlQuote(Object value) {
-        if (value instanceof String) {
-            return "'" + ((String) value).replace("'", "''") + "'";
-        }
-        return String.valueOf(value);
-    }
 }
\ No newline at end of file
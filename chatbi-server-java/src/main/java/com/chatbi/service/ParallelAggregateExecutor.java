@@ -0,0 +1,219 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryOptions;
+import com.chatbi.model.SQLExecutionResponse;
+import com.chatbi.model.SemanticSQL;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 大表聚合的并行执行。
+ * 对话生成的单表聚合按整数主键范围切成N片，各片在连接池的不同连接上并发执行得到部分聚合，
+ * 再由 AggregatePlan 在JVM内合并。
+ * 为保证与单条SQL结果一致，分组列和MIN/MAX参数只能是非字符类型的列（字符比较依赖排序规则）；
+ * 任何条件不满足或执行失败都返回null，由调用方按原SQL执行。
+ */
+@Service
+public class ParallelAggregateExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelAggregateExecutor.class);
+
+    private static final String COLUMNS_SQL =
+        "SELECT COLUMN_NAME, DATA_TYPE, COLUMN_KEY FROM information_schema.COLUMNS "
+            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+    private static final String TABLE_ROWS_SQL =
+        "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+
+    @Autowired
+    private QueryRegistry queryRegistry;
+
+    @Autowired
+    private MySQLSQLGenerator mysqlSQLGenerator;
+
+    @Value("${chatbi.parallel-aggregate.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chatbi.parallel-aggregate.slices:4}")
+    private int slices;
+
+    @Value("${chatbi.parallel-aggregate.min-rows:1000000}")
+    private long minRows;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("chatbi-slice-", 0).factory());
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 并行执行；reader为调用方已路由的读库。不适用（非单表聚合、无整数主键、表太小等）或执行失败时返回null
+     */
+    public SQLExecutionResponse execute(SemanticSQL semanticSQL, DatabaseConnection connection,
+                                        DatabaseConnection reader, QueryOptions options) {
+        if (!enabled || slices < 2 || options.isColumnar()) {
+            return null;
+        }
+        String table = AggregatePlan.singleTable(semanticSQL);
+        if (table == null) {
+            return null;
+        }
+        try {
+            JdbcTemplate template = reader != null ? dataSourceRegistry.getJdbcTemplate(reader) : jdbcTemplate;
+
+            Map<String, String> columnTypes = new HashMap<>();
+            List<String> primaryKey = new ArrayList<>();
+            List<Map<String, Object>> columns;
+            try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
+                columns = template.queryForList(COLUMNS_SQL, table);
+            }
+            for (Map<String, Object> column : columns) {
+                String name = String.valueOf(column.get("COLUMN_NAME")).toLowerCase(Locale.ROOT);
+                columnTypes.put(name, String.valueOf(column.get("DATA_TYPE")).toLowerCase(Locale.ROOT));
+                if ("PRI".equals(column.get("COLUMN_KEY"))) {
+                    primaryKey.add(name);
+                }
+            }
+            if (primaryKey.size() != 1 || !AggregatePlan.INTEGER_TYPES.contains(columnTypes.get(primaryKey.get(0)))) {
+                return null;
+            }
+            AggregatePlan plan = AggregatePlan.parse(semanticSQL, mysqlSQLGenerator, columnTypes);
+            if (plan == null) {
+                return null;
+            }
+            long[][] ranges = ranges(table, primaryKey.get(0), template, connection);
+            if (ranges == null) {
+                return null;
+            }
+            long started = System.currentTimeMillis();
+            List<AggregatePlan.AggregateTable> partials =
+                runSlices(plan, primaryKey.get(0), ranges, template, connection, reader, options);
+            List<Map<String, Object>> rows = plan.finish(plan.merge(partials));
+            logger.info("Parallel aggregate on {} over {} slices: {} groups in {} ms",
+                table, ranges.length, rows.size(), System.currentTimeMillis() - started);
+            return new SQLExecutionResponse(true, rows, null, rows.size());
+        } catch (Exception e) {
+            logger.warn("Parallel aggregate failed, falling back to a single query: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 主键范围均分为切片（闭区间）；表行数不足阈值时返回null
+     */
+    private long[][] ranges(String table, String primaryKey, JdbcTemplate template, DatabaseConnection connection) {
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
+            Long tableRows = template.query(TABLE_ROWS_SQL,
+                (ResultSetExtractor<Long>) rs -> rs.next() ? rs.getLong(1) : null, table);
+            if (tableRows == null || tableRows < minRows) {
+                return null;
+            }
+            String pk = AggregatePlan.quote(primaryKey);
+            long[] bounds = template.query(
+                "SELECT MIN(" + pk + "), MAX(" + pk + ") FROM " + AggregatePlan.quote(table),
+                (ResultSetExtractor<long[]>) rs -> {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    long min = rs.getLong(1);
+                    return rs.wasNull() ? null : new long[] {min, rs.getLong(2)};
+                });
+            if (bounds == null) {
+                return null;
+            }
+            long min = bounds[0];
+            long max = bounds[1];
+            long span = Math.addExact(Math.subtractExact(max, min), 1);
+            int count = (int) Math.min(slices, span);
+            long width = (span + count - 1) / count;
+            long[][] ranges = new long[count][];
+            for (int i = 0; i < count; i++) {
+                long low = min + width * i;
+                long high = i == count - 1 ? max : low + width - 1;
+                ranges[i] = new long[] {low, high};
+            }
+            return ranges;
+        } catch (ArithmeticException e) {
+            // Key span does not fit in a long (unsigned BIGINT)
+            return null;
+        }
+    }
+
+    private List<AggregatePlan.AggregateTable> runSlices(AggregatePlan plan, String primaryKey, long[][] ranges,
+                                                         JdbcTemplate template, DatabaseConnection connection,
+                                                         DatabaseConnection reader, QueryOptions options)
+            throws Exception {
+        String sql = plan.partialSql(AggregatePlan.quote(primaryKey) + " BETWEEN ? AND ?");
+        List<QueryRegistry.TrackedQuery> running = new CopyOnWriteArrayList<>();
+        List<Future<AggregatePlan.AggregateTable>> futures = new ArrayList<>(ranges.length);
+        for (long[] range : ranges) {
+            futures.add(executor.submit(() -> {
+                Object[] args = plan.bindValues(range[0], range[1]);
+                try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection);
+                     QueryRegistry.TrackedQuery query = queryRegistry.register(
+                        reader, sql, QueryRegistry.SOURCE_EXECUTE, options.getTimeoutSeconds())) {
+                    running.add(query);
+                    try {
+                        return template.query(query.statementCreator(args),
+                            (ResultSetExtractor<AggregatePlan.AggregateTable>) rs -> {
+                                AggregatePlan.AggregateTable table = plan.newTable();
+                                Object[] key = new Object[plan.groupCount()];
+                                Object[] values = new Object[plan.partialCount()];
+                                while (rs.next()) {
+                                    for (int i = 0; i < key.length; i++) {
+                                        key[i] = rs.getObject(i + 1);
+                                    }
+                                    for (int i = 0; i < values.length; i++) {
+                                        values[i] = rs.getObject(key.length + i + 1);
+                                    }
+                                    table.accumulate(key, values);
+                                }
+                                return table;
+                            });
+                    } finally {
+                        running.remove(query);
+                    }
+                }
+            }));
+        }
+        List<AggregatePlan.AggregateTable> partials = new ArrayList<>(futures.size());
+        try {
+            for (Future<AggregatePlan.AggregateTable> future : futures) {
+                partials.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            // One slice failed: the combined result is useless, so stop the others
+            running.forEach(QueryRegistry.TrackedQuery::cancel);
+            futures.forEach(future -> future.cancel(true));
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+        return partials;
+    }
+}
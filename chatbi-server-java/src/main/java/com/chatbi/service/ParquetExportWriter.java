@@ -0,0 +1,259 @@
+package com.chatbi.service;
+
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.Types;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Parquet 导出。列类型由结果集元数据映射（整数、浮点、DECIMAL、DATE、本地时间戳、布尔、二进制，其余为UTF-8字符串），
+ * 所有列可空。写入器只缓冲一个行组（row-group-bytes），写满即刷到响应流；
+ * 输出端是只追加的流，不需要临时文件。
+ */
+class ParquetExportWriter implements ExportWriter {
+    private static final int MAX_DECIMAL_PRECISION = 38;
+
+    private enum Kind { BOOLEAN, INT32, INT64, FLOAT, DOUBLE, DECIMAL, DATE, TIMESTAMP, BINARY, STRING }
+
+    private final OutputStream out;
+    private final long rowGroupBytes;
+
+    private Kind[] kinds;
+    private int[] scales;
+    private SimpleGroupFactory groups;
+    private ParquetWriter<Group> writer;
+
+    ParquetExportWriter(OutputStream out, long rowGroupBytes) {
+        this.out = out;
+        this.rowGroupBytes = rowGroupBytes;
+    }
+
+    @Override
+    public void start(ResultSetMetaData metaData) throws IOException, SQLException {
+        int columnCount = metaData.getColumnCount();
+        kinds = new Kind[columnCount];
+        scales = new int[columnCount];
+        Set<String> names = new HashSet<>();
+        Types.MessageTypeBuilder schema = Types.buildMessage();
+        for (int i = 0; i < columnCount; i++) {
+            String name = JdbcUtils.lookupColumnName(metaData, i + 1);
+            // Joins may repeat a label; Parquet field names must be unique
+            String unique = name;
+            for (int n = 2; !names.add(unique); n++) {
+                unique = name + "_" + n;
+            }
+            schema.addField(field(metaData, i, unique));
+        }
+        MessageType messageType = schema.named("result");
+        groups = new SimpleGroupFactory(messageType);
+        writer = ExampleParquetWriter.builder(new StreamOutputFile(out))
+            .withType(messageType)
+            .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+            .withCompressionCodec(CompressionCodecName.SNAPPY)
+            .withRowGroupSize(rowGroupBytes)
+            .build();
+    }
+
+    @Override
+    public void writeRow(ResultSet rs, Object[] values) throws IOException, SQLException {
+        ExportWriter.readValues(rs, values);
+        Group group = groups.newGroup();
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                continue;
+            }
+            switch (kinds[i]) {
+                case BOOLEAN -> group.add(i, toBoolean(value));
+                case INT32 -> group.add(i, ((Number) value).intValue());
+                case INT64 -> group.add(i, ((Number) value).longValue());
+                case FLOAT -> group.add(i, ((Number) value).floatValue());
+                case DOUBLE -> group.add(i, ((Number) value).doubleValue());
+                case DECIMAL -> group.add(i, Binary.fromConstantByteArray(
+                    toDecimal(value).setScale(scales[i], RoundingMode.HALF_UP).unscaledValue().toByteArray()));
+                case DATE -> group.add(i, (int) toLocalDate(value).toEpochDay());
+                case TIMESTAMP -> group.add(i, toMicros(value));
+                case BINARY -> group.add(i, Binary.fromConstantByteArray((byte[]) value));
+                case STRING -> group.add(i, value.toString());
+            }
+        }
+        writer.write(group);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.close();
+        out.flush();
+    }
+
+    @Override
+    public void abort() {
+        // Nothing is spooled to disk; dropping the writer discards the buffered row group
+        writer = null;
+    }
+
+    private Type field(ResultSetMetaData metaData, int i, String name) throws SQLException {
+        int column = i + 1;
+        boolean signed = metaData.isSigned(column);
+        Kind kind = switch (metaData.getColumnType(column)) {
+            case java.sql.Types.BIT, java.sql.Types.BOOLEAN -> Kind.BOOLEAN;
+            case java.sql.Types.TINYINT, java.sql.Types.SMALLINT -> Kind.INT32;
+            // Unsigned values need the next wider type
+            case java.sql.Types.INTEGER -> signed ? Kind.INT32 : Kind.INT64;
+            case java.sql.Types.BIGINT -> signed ? Kind.INT64 : Kind.STRING;
+            case java.sql.Types.REAL, java.sql.Types.FLOAT -> Kind.FLOAT;
+            case java.sql.Types.DOUBLE -> Kind.DOUBLE;
+            case java.sql.Types.DECIMAL, java.sql.Types.NUMERIC -> {
+                int precision = metaData.getPrecision(column);
+                int scale = metaData.getScale(column);
+                yield precision > 0 && precision <= MAX_DECIMAL_PRECISION && scale >= 0 && scale <= precision
+                    ? Kind.DECIMAL : Kind.STRING;
+            }
+            case java.sql.Types.DATE -> Kind.DATE;
+            case java.sql.Types.TIMESTAMP -> Kind.TIMESTAMP;
+            case java.sql.Types.BINARY, java.sql.Types.VARBINARY, java.sql.Types.LONGVARBINARY,
+                 java.sql.Types.BLOB -> Kind.BINARY;
+            default -> Kind.STRING;
+        };
+        kinds[i] = kind;
+        return switch (kind) {
+            case BOOLEAN -> Types.optional(PrimitiveTypeName.BOOLEAN).named(name);
+            case INT32 -> Types.optional(PrimitiveTypeName.INT32).named(name);
+            case INT64 -> Types.optional(PrimitiveTypeName.INT64).named(name);
+            case FLOAT -> Types.optional(PrimitiveTypeName.FLOAT).named(name);
+            case DOUBLE -> Types.optional(PrimitiveTypeName.DOUBLE).named(name);
+            case DECIMAL -> {
+                scales[i] = metaData.getScale(column);
+                yield Types.optional(PrimitiveTypeName.BINARY)
+                    .as(LogicalTypeAnnotation.decimalType(scales[i], metaData.getPrecision(column)))
+                    .named(name);
+            }
+            case DATE -> Types.optional(PrimitiveTypeName.INT32).as(LogicalTypeAnnotation.dateType()).named(name);
+            case TIMESTAMP -> Types.optional(PrimitiveTypeName.INT64)
+                .as(LogicalTypeAnnotation.timestampType(false, LogicalTypeAnnotation.TimeUnit.MICROS))
+                .named(name);
+            case BINARY -> Types.optional(PrimitiveTypeName.BINARY).named(name);
+            case STRING -> Types.optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named(name);
+        };
+    }
+
+    private static boolean toBoolean(Object value) {
+        if (value instanceof Boolean bool) {
+            return bool;
+        }
+        if (value instanceof byte[] bits) {
+            // BIT(n) with n > 1 comes back as raw bytes
+            for (byte b : bits) {
+                if (b != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return ((Number) value).intValue() != 0;
+    }
+
+    private static BigDecimal toDecimal(Object value) {
+        return value instanceof BigDecimal decimal ? decimal : new BigDecimal(value.toString());
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        if (value instanceof java.sql.Date date) {
+            return date.toLocalDate();
+        }
+        return value instanceof LocalDate localDate ? localDate : LocalDate.parse(value.toString());
+    }
+
+    private static long toMicros(Object value) {
+        LocalDateTime time = value instanceof Timestamp timestamp ? timestamp.toLocalDateTime()
+            : value instanceof LocalDateTime localDateTime ? localDateTime
+            : LocalDateTime.parse(value.toString().replace(' ', 'T'));
+        // Wall-clock time, stored as if it were UTC (isAdjustedToUTC = false)
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000;
+    }
+
+    /**
+     * 把响应流包装成 Parquet 的输出文件：只追加写并记录位置，关闭时不关闭底层流
+     */
+    private static final class StreamOutputFile implements OutputFile {
+        private final OutputStream out;
+
+        StreamOutputFile(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) {
+            return createOrOverwrite(blockSizeHint);
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+            return new PositionOutputStream() {
+                private long position;
+
+                @Override
+                public long getPos() {
+                    return position;
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    position++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    position += len;
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.flush();
+                }
+            };
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return false;
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryCostEstimate;
+import com.chatbi.model.QueryOptions;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 生成SQL执行前的代价检查。
+ * 用 EXPLAIN FORMAT=JSON 估算扫描行数、全表扫描和文件排序，按连接配置（或全局默认）的阈值
+ * 决定放行、提示、自动追加LIMIT或拒绝。EXPLAIN本身失败时放行，不影响正常查询。
+ * 同时兼容 MariaDB（rows/filtered、filesort、temporary_table 节点）和 MySQL
+ * （rows_examined_per_scan、using_filesort、using_temporary_table）的输出格式。
+ */
+@Service
+public class QueryCostGate {
+    private static final Logger logger = LoggerFactory.getLogger(QueryCostGate.class);
+
+    private static final Pattern HAS_LIMIT = Pattern.compile("\\bLIMIT\\s+\\d+", Pattern.CASE_INSENSITIVE);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${chatbi.cost-gate.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chatbi.cost-gate.warn-rows:1000000}")
+    private long defaultWarnRows;
+
+    @Value("${chatbi.cost-gate.limit-rows:10000000}")
+    private long defaultLimitRows;
+
+    @Value("${chatbi.cost-gate.block-rows:100000000}")
+    private long defaultBlockRows;
+
+    @Value("${chatbi.cost-gate.full-scan-warn-rows:100000}")
+    private long fullScanWarnRows;
+
+    @Value("${chatbi.cost-gate.auto-limit:10000}")
+    private int autoLimit;
+
+    /**
+     * 估算并给出处理决定；未启用、非SELECT或EXPLAIN失败时返回null（放行）
+     */
+    public QueryCostEstimate evaluate(String sql, DatabaseConnection connection, QueryOptions options) {
+        if (!enabled || !SqlText.isSelect(sql)) {
+            return null;
+        }
+        QueryCostEstimate estimate;
+        try {
+            estimate = explain(sql, connection, options);
+        } catch (Exception e) {
+            logger.debug("EXPLAIN failed, skipping cost gate: {}", e.getMessage());
+            return null;
+        }
+        decide(estimate, sql, connection);
+        return estimate;
+    }
+
+    /**
+     * action 为 limit 时返回追加了LIMIT的SQL，否则原样返回
+     */
+    public String applyLimit(String sql, QueryCostEstimate estimate) {
+        if (estimate == null || estimate.getAppliedLimit() == null) {
+            return sql;
+        }
+        return SqlText.stripTrailingSemicolon(sql) + " LIMIT " + estimate.getAppliedLimit();
+    }
+
+    private QueryCostEstimate explain(String sql, DatabaseConnection connection, QueryOptions options) throws Exception {
+        String explainSql = "EXPLAIN FORMAT=JSON " + SqlText.stripTrailingSemicolon(sql);
+        Object[] args = options != null ? options.bindValues() : new Object[0];
+        String plan;
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
+            // EXPLAIN is read-only, so it may go to a replica like the query itself
+            JdbcTemplate template = connection != null
+                ? dataSourceRegistry.getJdbcTemplate(replicaRouter.routeRead(connection)) : jdbcTemplate;
+            List<Map<String, Object>> rows = template.queryForList(explainSql, args);
+            if (rows.isEmpty()) {
+                throw new IllegalStateException("EXPLAIN returned no rows");
+            }
+            plan = String.valueOf(rows.get(0).values().iterator().next());
+        }
+
+        QueryCostEstimate estimate = new QueryCostEstimate();
+        List<JsonNode> tables = new ArrayList<>();
+        collect(objectMapper.readTree(plan), estimate, tables);
+
+        // Rows examined along the join order: each table is read once per row surviving the tables before it
+        double prefix = 1;
+        double examined = 0;
+        for (JsonNode table : tables) {
+            double rows = number(table, "rows_examined_per_scan", number(table, "rows", 0));
+            double filtered = number(table, "filtered", 100) / 100.0;
+            examined += prefix * rows;
+            prefix *= Math.max(rows * filtered, 1);
+            if ("ALL".equalsIgnoreCase(table.path("access_type").asText())) {
+                estimate.getFullScanTables().add(table.path("table_name").asText());
+            }
+        }
+        estimate.setEstimatedRows((long) Math.min(examined, Long.MAX_VALUE));
+        return estimate;
+    }
+
+    private void collect(JsonNode node, QueryCostEstimate estimate, List<JsonNode> tables) {
+        if (node.isArray()) {
+            for (JsonNode item : node) {
+                collect(item, estimate, tables);
+            }
+            return;
+        }
+        if (!node.isObject()) {
+            return;
+        }
+        if (node.has("table_name") && (node.has("rows") || node.has("rows_examined_per_scan"))) {
+            tables.add(node);
+        }
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = field.getKey();
+            if ("filesort".equals(name) || "read_sorted_file".equals(name)
+                || ("using_filesort".equals(name) && field.getValue().asBoolean())) {
+                estimate.setFilesort(true);
+            }
+            if ("temporary_table".equals(name)
+                || ("using_temporary_table".equals(name) && field.getValue().asBoolean())) {
+                estimate.setTemporaryTable(true);
+            }
+            collect(field.getValue(), estimate, tables);
+        }
+    }
+
+    private void decide(QueryCostEstimate estimate, String sql, DatabaseConnection connection) {
+        long warnRows = threshold(connection != null ? connection.getCostWarnRows() : null, defaultWarnRows);
+        long limitRows = threshold(connection != null ? connection.getCostLimitRows() : null, defaultLimitRows);
+        long blockRows = threshold(connection != null ? connection.getCostBlockRows() : null, defaultBlockRows);
+        long rows = estimate.getEstimatedRows();
+        String rowsText = String.format("%,d", rows);
+
+        if (rows >= blockRows) {
+            estimate.setAction(QueryCostEstimate.ACTION_BLOCK);
+            estimate.setMessage("预计扫描约 " + rowsText + " 行，超过上限 " + String.format("%,d", blockRows)
+                + " 行，已拒绝执行。请增加筛选条件后重试");
+            return;
+        }
+        if (rows >= limitRows) {
+            if (!HAS_LIMIT.matcher(sql).find()) {
+                estimate.setAction(QueryCostEstimate.ACTION_LIMIT);
+                estimate.setAppliedLimit(autoLimit);
+                estimate.setMessage("预计扫描约 " + rowsText + " 行，已自动追加 LIMIT " + autoLimit);
+                return;
+            }
+            // Already limited: nothing more to add, so fall through to a warning
+        }
+        boolean largeFullScan = !estimate.getFullScanTables().isEmpty() && rows >= fullScanWarnRows;
+        if (rows >= warnRows || largeFullScan) {
+            estimate.setAction(QueryCostEstimate.ACTION_WARN);
+            List<String> reasons = new ArrayList<>();
+            reasons.add("预计扫描约 " + rowsText + " 行");
+            if (!estimate.getFullScanTables().isEmpty()) {
+                reasons.add("全表扫描: " + String.join(", ", estimate.getFullScanTables()));
+            }
+            if (estimate.isFilesort()) {
+                reasons.add("需要文件排序");
+            }
+            estimate.setMessage(String.join("，", reasons) + "，执行可能较慢");
+            return;
+        }
+        estimate.setAction(QueryCostEstimate.ACTION_ALLOW);
+    }
+
+    private static long threshold(Long configured, long fallback) {
+        return configured != null && configured > 0 ? configured : fallback;
+    }
+
+    private static double number(JsonNode node, String field, double fallback) {
+        JsonNode value = node.get(field);
+        if (value == null || value.isNull()) {
+            return fallback;
+        }
+        // MySQL reports some estimates as strings
+        return value.isNumber() ? value.asDouble() : value.asDouble(fallback);
+    }
+}
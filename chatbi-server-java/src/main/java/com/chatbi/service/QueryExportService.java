@@ -0,0 +1,156 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryCostEstimate;
+import com.chatbi.model.QueryOptions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSetMetaData;
+import java.util.Set;
+
+/**
+ * 查询结果导出（CSV / XLSX / Parquet），以及执行接口的 Arrow IPC 响应。
+ * 结果从JDBC游标按fetch size分批读取并逐行交给对应格式的写出器，直接写入响应流，
+ * 内存占用只取决于写出器的缓冲（XLSX窗口、Parquet行组、Arrow记录批），与结果行数无关。
+ */
+@Service
+public class QueryExportService {
+    private static final Logger logger = LoggerFactory.getLogger(QueryExportService.class);
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_XLSX = "xlsx";
+    public static final String FORMAT_PARQUET = "parquet";
+    public static final String FORMAT_ARROW = "arrow";
+
+    public static final String ARROW_STREAM_MEDIA_TYPE = "application/vnd.apache.arrow.stream";
+
+    private static final Set<String> FORMATS = Set.of(FORMAT_CSV, FORMAT_XLSX, FORMAT_PARQUET, FORMAT_ARROW);
+
+    @Autowired
+    private DatabaseManager databaseManager;
+
+    @Autowired
+    private DatabaseConnectionService databaseConnectionService;
+
+    @Autowired
+    private QueryCostGate queryCostGate;
+
+    @Value("${chatbi.export.timeout-seconds:3600}")
+    private int timeoutSeconds;
+
+    @Value("${chatbi.export.parquet-row-group-bytes:33554432}")
+    private long parquetRowGroupBytes;
+
+    @Value("${chatbi.arrow.batch-size:8192}")
+    private int arrowBatchSize;
+
+    @Value("${chatbi.arrow.max-memory-bytes:536870912}")
+    private long arrowMaxMemoryBytes;
+
+    private BufferAllocator arrowAllocator;
+
+    @PostConstruct
+    public void init() {
+        // Shared by all Arrow responses; each response takes a child allocator and releases it when done
+        arrowAllocator = new RootAllocator(arrowMaxMemoryBytes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        arrowAllocator.close();
+    }
+
+    public static boolean isSupported(String format) {
+        return format != null && FORMATS.contains(format);
+    }
+
+    public static String contentType(String format) {
+        return switch (format) {
+            case FORMAT_CSV -> "text/csv; charset=UTF-8";
+            case FORMAT_XLSX -> "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+            case FORMAT_ARROW -> ARROW_STREAM_MEDIA_TYPE;
+            default -> "application/vnd.apache.parquet";
+        };
+    }
+
+    /**
+     * 导出一条SELECT的完整结果，connection为空时使用当前活动连接；返回导出的行数
+     */
+    public long export(String sql, DatabaseConnection connection, String format, OutputStream out) throws IOException {
+        QueryOptions options = QueryOptions.defaults();
+        options.setTimeoutSeconds(timeoutSeconds);
+        return export(sql, connection, options, format, out);
+    }
+
+    /**
+     * 按给定选项（超时、绑定参数、代价检查）把SELECT结果写成指定格式。
+     * 代价检查拒绝时抛出 IllegalStateException，此时尚未写出任何内容
+     */
+    public long export(String sql, DatabaseConnection connection, QueryOptions options, String format,
+                       OutputStream out) throws IOException {
+        DatabaseConnection target = connection != null ? connection : databaseConnectionService.getActiveConnection();
+        if (options.isCostGate()) {
+            QueryCostEstimate estimate = queryCostGate.evaluate(sql, target, options);
+            if (estimate != null && estimate.isBlocked()) {
+                throw new IllegalStateException(estimate.getMessage());
+            }
+            sql = queryCostGate.applyLimit(sql, estimate);
+        }
+        logger.info("Exporting SQL query as {}: {}", format, sql);
+
+        ExportWriter writer = newWriter(format, out);
+        try {
+            String source = FORMAT_ARROW.equals(format) ? QueryRegistry.SOURCE_EXECUTE : QueryRegistry.SOURCE_EXPORT;
+            Long rows = databaseManager.queryStreaming(sql, target, options, source,
+                (ResultSetExtractor<Long>) rs -> {
+                    try {
+                        ResultSetMetaData metaData = rs.getMetaData();
+                        int columnCount = metaData.getColumnCount();
+                        writer.start(metaData);
+                        Object[] values = new Object[columnCount];
+                        long count = 0;
+                        while (rs.next()) {
+                            writer.writeRow(rs, values);
+                            count++;
+                        }
+                        writer.finish();
+                        return count;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            logger.info("Exported {} rows as {}", rows, format);
+            return rows != null ? rows : 0;
+        } catch (UncheckedIOException e) {
+            writer.abort();
+            logger.warn("Export aborted: {}", e.getMessage());
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+    }
+
+    private ExportWriter newWriter(String format, OutputStream out) {
+        return switch (format) {
+            case FORMAT_CSV -> new CsvExportWriter(out);
+            case FORMAT_XLSX -> new XlsxExportWriter(out);
+            case FORMAT_PARQUET -> new ParquetExportWriter(out, parquetRowGroupBytes);
+            case FORMAT_ARROW -> new ArrowExportWriter(out,
+                arrowAllocator.newChildAllocator("arrow-response", 0, arrowMaxMemoryBytes), arrowBatchSize);
+            default -> throw new IllegalArgumentException("Unsupported export format: " + format);
+        };
+    }
+}
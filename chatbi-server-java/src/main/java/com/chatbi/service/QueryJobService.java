@@ -0,0 +1,440 @@
+package com.chatbi.service;
+
+import com.chatbi.model.ChatSession;
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryJob;
+import com.chatbi.model.QueryJobPage;
+import com.chatbi.repository.QueryJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步查询任务。
+ * 任务在虚拟线程上执行，同一数据库连接同时运行的任务数受信号量限制，其余任务排队等待；
+ * 结果超过阈值后落盘，可按页读取或通过SSE订阅状态变化。完成后结果写回关联的会话消息。
+ */
+@Service
+public class QueryJobService {
+    private static final Logger logger = LoggerFactory.getLogger(QueryJobService.class);
+
+    private static final String DEFAULT_CONNECTION_KEY = "__default__";
+
+    @Autowired
+    private QueryJobRepository queryJobRepository;
+
+    @Autowired
+    private DatabaseManager databaseManager;
+
+    @Autowired
+    private DatabaseConnectionService databaseConnectionService;
+
+    @Autowired
+    private QueryRegistry queryRegistry;
+
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Autowired
+    private ColumnarTableCache columnarTableCache;
+
+    @Autowired
+    private ChatSessionService chatSessionService;
+
+    @Autowired
+    private ChatMessageService chatMessageService;
+
+    @Value("${chatbi.jobs.max-concurrent-per-connection:2}")
+    private int maxConcurrentPerConnection;
+
+    @Value("${chatbi.jobs.spill-threshold-bytes:8388608}")
+    private long spillThresholdBytes;
+
+    @Value("${chatbi.jobs.spill-dir:${java.io.tmpdir}/chatbi-jobs}")
+    private String spillDir;
+
+    @Value("${chatbi.jobs.inline-rows:1000}")
+    private int inlineRows;
+
+    @Value("${chatbi.jobs.fetch-size:1000}")
+    private int fetchSize;
+
+    @Value("${chatbi.jobs.bulkhead-wait-ms:600000}")
+    private long bulkheadWaitMs;
+
+    @Value("${chatbi.jobs.retention-hours:24}")
+    private long retentionHours;
+
+    @Value("${chatbi.jobs.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("chatbi-job-", 0).factory());
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chatbi-job-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+    private final Map<String, JobState> jobs = new ConcurrentHashMap<>();
+
+    private static final class JobState {
+        final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        volatile QueryJob job;
+        volatile ResultBuffer result;
+        volatile QueryRegistry.TrackedQuery query;
+        volatile boolean cancelRequested;
+
+        JobState(QueryJob job) {
+            this.job = job;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // Jobs that were in flight when the service stopped can never finish
+        List<QueryJob> interrupted = queryJobRepository.findByStatusIn(
+            List.of(QueryJob.STATUS_PENDING, QueryJob.STATUS_RUNNING));
+        for (QueryJob job : interrupted) {
+            job.setStatus(QueryJob.STATUS_FAILED);
+            job.setErrorMessage("服务重启，任务已中断");
+            job.setFinishedAt(OffsetDateTime.now());
+        }
+        queryJobRepository.saveAll(interrupted);
+        sweeper.scheduleWithFixedDelay(this::purgeExpired, 10, 10, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        jobs.values().forEach(state -> {
+            state.cancelRequested = true;
+            QueryRegistry.TrackedQuery query = state.query;
+            if (query != null) {
+                query.cancel();
+            }
+        });
+        executor.shutdownNow();
+    }
+
+    public QueryJob submit(String sql, DatabaseConnection connection, Long sessionId, String userId, Integer timeoutSeconds) {
+        DatabaseConnection target = connection != null ? connection : databaseConnectionService.getActiveConnection();
+
+        QueryJob job = new QueryJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setUserId(userId);
+        job.setConnectionId(target != null ? target.getId() : null);
+        job.setSqlQuery(sql);
+        if (sessionId != null) {
+            Optional<ChatSession> session = userId != null
+                ? chatSessionService.getByIdForUser(sessionId, userId)
+                : chatSessionService.getById(sessionId);
+            session.ifPresent(s -> {
+                job.setSessionId(s.getId());
+                chatMessageService.findLastAssistantMessage(s).ifPresent(m -> job.setMessageId(m.getId()));
+            });
+        }
+        QueryJob saved = queryJobRepository.save(job);
+
+        JobState state = new JobState(saved);
+        jobs.put(saved.getId(), state);
+        executor.submit(() -> run(state, target, timeoutSeconds));
+        return saved;
+    }
+
+    public Optional<QueryJob> getJob(String jobId) {
+        JobState state = jobs.get(jobId);
+        if (state != null) {
+            return Optional.of(state.job);
+        }
+        return queryJobRepository.findById(jobId);
+    }
+
+    public List<QueryJob> listBySession(Long sessionId) {
+        return queryJobRepository.findBySessionIdOrderByCreatedAtDesc(sessionId);
+    }
+
+    /**
+     * 读取已完成任务的一页结果；任务未完成或结果已清理时返回空
+     */
+    public Optional<QueryJobPage> readResults(String jobId, long offset, int limit) throws IOException {
+        QueryJob job = getJob(jobId).orElse(null);
+        if (job == null || !QueryJob.STATUS_SUCCEEDED.equals(job.getStatus())) {
+            return Optional.empty();
+        }
+        ResultBuffer result = resultOf(job);
+        if (result == null) {
+            return Optional.empty();
+        }
+        List<Map<String, Object>> rows = result.readPage(offset, limit);
+        QueryJobPage page = new QueryJobPage();
+        page.setJobId(jobId);
+        page.setOffset(offset);
+        page.setData(rows);
+        page.setRowCount(rows.size());
+        page.setTotalRows(result.getRowCount());
+        long next = offset + rows.size();
+        page.setNextOffset(next < result.getRowCount() ? next : null);
+        return Optional.of(page);
+    }
+
+    public boolean cancel(String jobId) {
+        JobState state = jobs.get(jobId);
+        if (state == null || state.job.isFinished()) {
+            return false;
+        }
+        state.cancelRequested = true;
+        QueryRegistry.TrackedQuery query = state.query;
+        if (query != null) {
+            query.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * 订阅任务状态，立即推送当前状态；任务结束后推送最终状态并关闭
+     */
+    public Optional<SseEmitter> subscribe(String jobId) {
+        QueryJob job = getJob(jobId).orElse(null);
+        if (job == null) {
+            return Optional.empty();
+        }
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        JobState state = jobs.get(jobId);
+        if (state != null && !state.job.isFinished()) {
+            state.emitters.add(emitter);
+            emitter.onCompletion(() -> state.emitters.remove(emitter));
+            emitter.onTimeout(() -> state.emitters.remove(emitter));
+            emitter.onError(e -> state.emitters.remove(emitter));
+            // Re-read after registering so a transition in between is not lost
+            job = state.job;
+        }
+        try {
+            emitter.send(SseEmitter.event().name("status").data(job));
+            if (job.isFinished()) {
+                emitter.complete();
+            }
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return Optional.of(emitter);
+    }
+
+    private void run(JobState state, DatabaseConnection connection, Integer timeoutSeconds) {
+        Semaphore semaphore = permits.computeIfAbsent(
+            connection != null ? connection.getId() : DEFAULT_CONNECTION_KEY,
+            key -> new Semaphore(maxConcurrentPerConnection, true));
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(state, QueryJob.STATUS_CANCELLED, null, null, "任务已取消");
+            return;
+        }
+        try {
+            if (state.cancelRequested) {
+                finish(state, QueryJob.STATUS_CANCELLED, null, null, "任务已取消");
+                return;
+            }
+            QueryJob job = state.job;
+            job.setStatus(QueryJob.STATUS_RUNNING);
+            job.setStartedAt(OffsetDateTime.now());
+            publish(state, queryJobRepository.save(job));
+
+            ResultBuffer buffer = new ResultBuffer(
+                Paths.get(spillDir, job.getId() + ResultBufferFactory.FILE_SUFFIX), spillThresholdBytes);
+            // Jobs are already asynchronous, so they may queue on the bulkhead much longer than interactive queries
+            boolean select = SqlText.isSelect(job.getSqlQuery());
+            DatabaseConnection target = select ? databaseManager.routeRead(connection) : connection;
+            try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection, bulkheadWaitMs);
+                 QueryRegistry.TrackedQuery query = queryRegistry.register(
+                    target, job.getSqlQuery(), QueryRegistry.SOURCE_JOB, timeoutSeconds)) {
+                state.query = query;
+                try {
+                    JdbcTemplate template = new JdbcTemplate(databaseManager.getTemplate(target).getDataSource());
+                    template.setFetchSize(fetchSize);
+                    if (select) {
+                        ColumnMapRowMapper rowMapper = new ColumnMapRowMapper();
+                        template.query(query.statementCreator(), (RowCallbackHandler) rs -> {
+                            try {
+                                buffer.add(rowMapper.mapRow(rs, rs.getRow()));
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+                        buffer.finish();
+                        state.result = buffer;
+                        finish(state, QueryJob.STATUS_SUCCEEDED, buffer, buffer.getRowCount(), null);
+                    } else {
+                        try {
+                            int rowCount = template.update(query.statementCreator());
+                            buffer.finish();
+                            state.result = buffer;
+                            finish(state, QueryJob.STATUS_SUCCEEDED, buffer, (long) rowCount, null);
+                        } finally {
+                            if (connection != null) {
+                                queryResultCache.invalidateConnection(connection.getId());
+                                columnarTableCache.invalidateConnection(connection.getId());
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    closeQuietly(buffer);
+                    boolean cancelled = state.cancelRequested || query.isCancelled();
+                    logger.warn("Query job {} failed: {}", job.getId(), e.getMessage());
+                    finish(state, cancelled ? QueryJob.STATUS_CANCELLED : QueryJob.STATUS_FAILED, null, null,
+                        cancelled ? "任务已取消" : query.failureMessage(e));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Query job {} crashed: {}", state.job.getId(), e.getMessage(), e);
+            finish(state, QueryJob.STATUS_FAILED, null, null, e.getMessage());
+        } finally {
+            state.query = null;
+            semaphore.release();
+        }
+    }
+
+    private void finish(JobState state, String status, ResultBuffer result, Long rowCount, String error) {
+        QueryJob job = state.job;
+        job.setStatus(status);
+        job.setErrorMessage(error);
+        job.setRowCount(rowCount);
+        job.setFinishedAt(OffsetDateTime.now());
+        if (result != null && result.isSpilled()) {
+            job.setResultFile(result.getFile().toString());
+        }
+        QueryJob saved = queryJobRepository.save(job);
+        writeBackToMessage(saved, result);
+        publish(state, saved);
+        state.emitters.forEach(SseEmitter::complete);
+        state.emitters.clear();
+    }
+
+    /**
+     * 结果写回会话消息：不超过 inline-rows 的部分内联保存，完整结果通过 job_id 分页获取
+     */
+    private void writeBackToMessage(QueryJob job, ResultBuffer result) {
+        if (job.getMessageId() == null) {
+            return;
+        }
+        try {
+            Map<String, Object> executionResult = new HashMap<>();
+            executionResult.put("job_id", job.getId());
+            executionResult.put("success", QueryJob.STATUS_SUCCEEDED.equals(job.getStatus()));
+            executionResult.put("error", job.getErrorMessage());
+            executionResult.put("row_count", job.getRowCount() != null ? job.getRowCount() : 0);
+            if (result != null && SqlText.isSelect(job.getSqlQuery())) {
+                List<Map<String, Object>> data = result.readPage(0, inlineRows);
+                executionResult.put("data", data);
+                executionResult.put("truncated", result.getRowCount() > data.size());
+            } else {
+                executionResult.put("data", null);
+            }
+            chatMessageService.updateExecutionResult(job.getMessageId(), executionResult);
+        } catch (Exception e) {
+            logger.warn("Failed to write job {} result to message {}: {}", job.getId(), job.getMessageId(), e.getMessage());
+        }
+    }
+
+    private void publish(JobState state, QueryJob job) {
+        state.job = job;
+        for (SseEmitter emitter : state.emitters) {
+            try {
+                emitter.send(SseEmitter.event().name("status").data(job));
+            } catch (Exception e) {
+                state.emitters.remove(emitter);
+            }
+        }
+    }
+
+    private ResultBuffer resultOf(QueryJob job) {
+        JobState state = jobs.get(job.getId());
+        if (state != null && state.result != null) {
+            return state.result;
+        }
+        // Only spilled results survive a restart
+        if (job.getResultFile() != null && Files.exists(Path.of(job.getResultFile()))) {
+            JobState restored = jobs.computeIfAbsent(job.getId(), id -> new JobState(job));
+            // Reopen under the state's lock: a second instance would delete the shared file once collected
+            synchronized (restored) {
+                if (restored.result == null) {
+                    try {
+                        restored.result = ResultBuffer.reopen(Path.of(job.getResultFile()),
+                            job.getRowCount() != null ? job.getRowCount() : 0);
+                    } catch (IOException e) {
+                        // Unreadable or written in an older format: treat the result as expired
+                        logger.warn("Cannot reopen result of job {}: {}", job.getId(), e.getMessage());
+                        return null;
+                    }
+                }
+                return restored.result;
+            }
+        }
+        return null;
+    }
+
+    private void purgeExpired() {
+        try {
+            OffsetDateTime cutoff = OffsetDateTime.now().minusHours(retentionHours);
+            jobs.values().removeIf(state -> {
+                QueryJob job = state.job;
+                if (job.isFinished() && job.getFinishedAt() != null && job.getFinishedAt().isBefore(cutoff)) {
+                    closeQuietly(state.result);
+                    return true;
+                }
+                return false;
+            });
+            for (QueryJob job : queryJobRepository.findByResultFileIsNotNullAndFinishedAtBefore(cutoff)) {
+                Files.deleteIfExists(Path.of(job.getResultFile()));
+                job.setResultFile(null);
+                queryJobRepository.save(job);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to purge expired query jobs: {}", e.getMessage());
+        }
+    }
+
+    private void closeQuietly(ResultBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            buffer.close();
+        } catch (IOException e) {
+            logger.debug("Failed to delete job result {}: {}", buffer.getFile(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.RunningQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 正在执行的SQL语句登记表。
+ * 每条语句按 请求覆盖值 > 连接配置 > 全局默认 设置 Statement 超时，
+ * 可通过 Statement.cancel 取消，驱动取消失败时按线程ID执行 KILL QUERY。
+ */
+@Service
+public class QueryRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(QueryRegistry.class);
+
+    public static final String SOURCE_EXECUTE = "execute";
+    public static final String SOURCE_STREAM = "stream";
+    public static final String SOURCE_ADMIN = "admin";
+    public static final String SOURCE_JOB = "job";
+    public static final String SOURCE_EXPORT = "export";
+    public static final String SOURCE_TABLE_CACHE = "table_cache";
+    public static final String SOURCE_ROLLUP = "rollup";
+    public static final String SOURCE_PROFILE = "profile";
+
+    /**
+     * 语句超时时 failureMessage 返回信息的开头
+     */
+    public static final String TIMEOUT_MESSAGE = "查询超时";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+
+    @Value("${chatbi.query.default-timeout-seconds:300}")
+    private int defaultTimeoutSeconds;
+
+    @Value("${chatbi.query.max-timeout-seconds:3600}")
+    private int maxTimeoutSeconds;
+
+    private final Map<String, TrackedQuery> running = new ConcurrentHashMap<>();
+
+    /**
+     * 登记一条即将执行的语句，使用完毕后必须 close（try-with-resources）
+     */
+    public TrackedQuery register(DatabaseConnection connection, String sql, String source, Integer timeoutOverride) {
+        TrackedQuery query = new TrackedQuery(connection, sql, source, resolveTimeout(connection, timeoutOverride));
+        running.put(query.id, query);
+        return query;
+    }
+
+    /**
+     * 登记一条不设超时的语句，用于跨多次分页、中间可能长时间空闲的持有游标
+     */
+    public TrackedQuery registerUntimed(DatabaseConnection connection, String sql, String source) {
+        TrackedQuery query = new TrackedQuery(connection, sql, source, 0);
+        running.put(query.id, query);
+        return query;
+    }
+
+    public int resolveTimeout(DatabaseConnection connection, Integer timeoutOverride) {
+        int timeout;
+        if (timeoutOverride != null && timeoutOverride > 0) {
+            timeout = timeoutOverride;
+        } else if (connection != null && connection.getQueryTimeoutSeconds() != null && connection.getQueryTimeoutSeconds() > 0) {
+            timeout = connection.getQueryTimeoutSeconds();
+        } else {
+            timeout = defaultTimeoutSeconds;
+        }
+        return maxTimeoutSeconds > 0 ? Math.min(timeout, maxTimeoutSeconds) : timeout;
+    }
+
+    public List<RunningQuery> list() {
+        return running.values().stream()
+            .map(TrackedQuery::snapshot)
+            .sorted(Comparator.comparing(RunningQuery::getStartedAt))
+            .toList();
+    }
+
+    /**
+     * 取消指定语句；语句不存在（已结束）时返回false
+     */
+    public boolean cancel(String id) {
+        TrackedQuery query = running.get(id);
+        if (query == null) {
+            return false;
+        }
+        query.cancel();
+        return true;
+    }
+
+    private void kill(TrackedQuery query) {
+        if (query.threadId == null) {
+            return;
+        }
+        try {
+            JdbcTemplate template = query.connection != null
+                ? dataSourceRegistry.getJdbcTemplate(query.connection) : jdbcTemplate;
+            template.execute("KILL QUERY " + query.threadId);
+            logger.info("Killed query {} (thread {})", query.id, query.threadId);
+        } catch (Exception e) {
+            logger.warn("KILL QUERY {} failed: {}", query.threadId, e.getMessage());
+        }
+    }
+
+    private static Long threadIdOf(Connection connection) {
+        try {
+            if (connection.isWrapperFor(org.mariadb.jdbc.Connection.class)) {
+                return connection.unwrap(org.mariadb.jdbc.Connection.class).getThreadId();
+            }
+        } catch (SQLException e) {
+            logger.debug("Failed to read connection thread id: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    public final class TrackedQuery implements AutoCloseable {
+        private final String id = UUID.randomUUID().toString();
+        private final DatabaseConnection connection;
+        private final String sql;
+        private final String source;
+        private final int timeoutSeconds;
+        private final OffsetDateTime startedAt = OffsetDateTime.now();
+        private final long startedNanos = System.nanoTime();
+        private volatile Statement statement;
+        private volatile Long threadId;
+        private volatile boolean cancelled;
+
+        private TrackedQuery(DatabaseConnection connection, String sql, String source, int timeoutSeconds) {
+            this.connection = connection;
+            this.sql = sql;
+            this.source = source;
+            this.timeoutSeconds = timeoutSeconds;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * 供 JdbcTemplate 使用的语句创建器，创建时设置超时并登记语句
+         */
+        public PreparedStatementCreator statementCreator() {
+            return statementCreator(null);
+        }
+
+        /**
+         * 同上，并按顺序绑定 ? 占位符参数
+         */
+        public PreparedStatementCreator statementCreator(Object[] args) {
+            return con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                if (args != null) {
+                    for (int i = 0; i < args.length; i++) {
+                        ps.setObject(i + 1, args[i]);
+                    }
+                }
+                attach(con, ps);
+                return ps;
+            };
+        }
+
+        public void attach(Connection con, Statement st) throws SQLException {
+            if (timeoutSeconds > 0) {
+                st.setQueryTimeout(timeoutSeconds);
+            }
+            threadId = threadIdOf(con);
+            statement = st;
+            if (cancelled) {
+                // Cancelled before the statement existed
+                st.cancel();
+            }
+        }
+
+        public void cancel() {
+            cancelled = true;
+            Statement st = statement;
+            if (st == null) {
+                return;
+            }
+            try {
+                st.cancel();
+                logger.info("Cancelled query {}", id);
+            } catch (SQLException e) {
+                logger.warn("Statement.cancel failed for query {}: {}, falling back to KILL QUERY", id, e.getMessage());
+                kill(this);
+            }
+        }
+
+        /**
+         * 执行失败时返回给调用方的错误信息，区分取消与超时
+         */
+        public String failureMessage(Exception e) {
+            if (cancelled) {
+                return "查询已被取消";
+            }
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof QueryTimeoutException || t instanceof SQLTimeoutException) {
+                    return TIMEOUT_MESSAGE + "（超过" + timeoutSeconds + "秒）";
+                }
+            }
+            return e.getMessage();
+        }
+
+        RunningQuery snapshot() {
+            RunningQuery info = new RunningQuery();
+            info.setId(id);
+            info.setConnectionId(connection != null ? connection.getId() : null);
+            info.setSql(sql);
+            info.setSource(source);
+            info.setStartedAt(startedAt);
+            info.setElapsedMs((System.nanoTime() - startedNanos) / 1_000_000);
+            info.setTimeoutSeconds(timeoutSeconds);
+            info.setThreadId(threadId);
+            info.setCancelled(cancelled);
+            return info;
+        }
+
+        @Override
+        public void close() {
+            running.remove(id, this);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.chatbi.service;
+
+import com.chatbi.exception.BulkheadRejectedException;
+import com.chatbi.model.ColumnarResult;
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryOptions;
+import com.chatbi.model.SqlParameter;
+import com.chatbi.model.SQLExecutionResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 已执行SQL的结果缓存。
+ * 键为连接ID + schema 版本 + 结果格式 + 规范化SQL；按估算字节数做LRU淘汰，每个条目有TTL。
+ * 命中时按间隔校验引用表的 information_schema.TABLES 签名（CREATE_TIME/UPDATE_TIME/行数/数据长度），
+ * 签名变化即失效；经本服务执行的写语句会直接失效该连接下的全部条目。
+ */
+@Service
+public class QueryResultCache {
+    private static final Logger logger = LoggerFactory.getLogger(QueryResultCache.class);
+
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    @Autowired
+    private SchemaMetadataCache schemaMetadataCache;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${chatbi.result-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chatbi.result-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${chatbi.result-cache.max-entry-bytes:8388608}")
+    private long maxEntryBytes;
+
+    @Value("${chatbi.result-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${chatbi.result-cache.validation-interval-ms:1000}")
+    private long validationIntervalMs;
+
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter evictions;
+    private Counter invalidations;
+
+    private static final class CacheEntry {
+        final String connectionId;
+        final SQLExecutionResponse response;
+        final long bytes;
+        final long expiresAt;
+        final Map<String, String> tableSignatures;
+        volatile long validatedAt;
+
+        CacheEntry(String connectionId, SQLExecutionResponse response, long bytes, long expiresAt,
+                   Map<String, String> tableSignatures) {
+            this.connectionId = connectionId;
+            this.response = response;
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+            this.tableSignatures = tableSignatures;
+            this.validatedAt = System.currentTimeMillis();
+        }
+    }
+
+    @PostConstruct
+    public void initMetrics() {
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : new SimpleMeterRegistry();
+        hits = Counter.builder("chatbi.result.cache.gets").tag("result", "hit").register(registry);
+        misses = Counter.builder("chatbi.result.cache.gets").tag("result", "miss").register(registry);
+        evictions = Counter.builder("chatbi.result.cache.evictions").register(registry);
+        invalidations = Counter.builder("chatbi.result.cache.invalidations").register(registry);
+        Gauge.builder("chatbi.result.cache.size.bytes", this, QueryResultCache::getTotalBytes).register(registry);
+        Gauge.builder("chatbi.result.cache.entries", this, QueryResultCache::getEntryCount).register(registry);
+    }
+
+    /**
+     * 命中且有效时直接返回缓存结果，否则调用loader执行查询并缓存成功的结果。
+     * 读请求先路由到副本，表签名与查询本身都在loader收到的同一数据源上读取，
+     * 避免用主库的新签名缓存滞后副本上的旧结果。
+     */
+    public SQLExecutionResponse getOrLoad(DatabaseConnection connection, String sql, QueryOptions options,
+                                          Function<DatabaseConnection, SQLExecutionResponse> loader) {
+        DatabaseConnection reader = replicaRouter.routeRead(connection);
+        if (!enabled || connection == null || SqlText.isNonDeterministic(sql)) {
+            return loader.apply(reader);
+        }
+        Set<String> tables = SqlText.referencedTables(sql);
+        if (tables.isEmpty()) {
+            return loader.apply(reader);
+        }
+
+        // A schema change retires every entry of the connection without scanning the cache
+        String key = connection.getId() + '\u0000' + schemaMetadataCache.schemaVersion(connection.getId())
+            + '\u0000' + options.getResultFormat() + '\u0000' + SqlText.normalize(sql)
+            + parameterKey(options);
+        CacheEntry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null && isValid(entry, connection, reader, tables)) {
+            hits.increment();
+            return entry.response;
+        }
+        if (entry != null) {
+            remove(key, entry);
+            invalidations.increment();
+        }
+        misses.increment();
+
+        // Capture signatures before running the query so a concurrent write is never masked
+        Map<String, String> signatures = fetchSignatures(connection, reader, tables);
+        SQLExecutionResponse response = loader.apply(reader);
+        if (response.isSuccess() && signatures != null) {
+            put(key, new CacheEntry(connection.getId(), response, estimateBytes(response),
+                System.currentTimeMillis() + ttlSeconds * 1000, signatures));
+        }
+        return response;
+    }
+
+    /**
+     * 绑定参数参与缓存键：同一条参数化语句、不同参数值是不同的结果
+     */
+    private static String parameterKey(QueryOptions options) {
+        if (!options.hasParameters()) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder();
+        for (SqlParameter parameter : options.getParameters()) {
+            key.append('\u0000').append(parameter.getType()).append(':').append(parameter.getSqlLiteral());
+        }
+        return key.toString();
+    }
+
+    public synchronized void invalidateConnection(String connectionId) {
+        Iterator<CacheEntry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            CacheEntry entry = iterator.next();
+            if (entry.connectionId.equals(connectionId)) {
+                totalBytes -= entry.bytes;
+                iterator.remove();
+                invalidations.increment();
+            }
+        }
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private boolean isValid(CacheEntry entry, DatabaseConnection connection, DatabaseConnection reader,
+                            Set<String> tables) {
+        long now = System.currentTimeMillis();
+        if (now >= entry.expiresAt) {
+            return false;
+        }
+        if (now - entry.validatedAt < validationIntervalMs) {
+            return true;
+        }
+        Map<String, String> current = fetchSignatures(connection, reader, tables);
+        if (current == null || !current.equals(entry.tableSignatures)) {
+            return false;
+        }
+        entry.validatedAt = now;
+        return true;
+    }
+
+    private Map<String, String> fetchSignatures(DatabaseConnection connection, DatabaseConnection reader,
+                                                Set<String> tables) {
+        // Rejection propagates: the query itself would be rejected by the same bulkhead
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
+            List<String> predicates = new ArrayList<>();
+            List<Object> params = new ArrayList<>();
+            for (String table : tables) {
+                int dot = table.indexOf('.');
+                if (dot > 0) {
+                    predicates.add("(TABLE_SCHEMA = ? AND TABLE_NAME = ?)");
+                    params.add(table.substring(0, dot));
+                    params.add(table.substring(dot + 1));
+                } else {
+                    predicates.add("(TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?)");
+                    params.add(table);
+                }
+            }
+            String sql = "SELECT CONCAT(TABLE_SCHEMA, '.', TABLE_NAME) AS table_key, "
+                + "CONCAT_WS('|', CREATE_TIME, UPDATE_TIME, TABLE_ROWS, DATA_LENGTH) AS signature "
+                + "FROM information_schema.TABLES WHERE " + String.join(" OR ", predicates);
+            List<Map<String, Object>> rows = dataSourceRegistry.getJdbcTemplate(reader).queryForList(sql, params.toArray());
+            Map<String, String> signatures = new HashMap<>();
+            for (Map<String, Object> row : rows) {
+                signatures.put(String.valueOf(row.get("table_key")), String.valueOf(row.get("signature")));
+            }
+            return signatures;
+        } catch (BulkheadRejectedException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.debug("Failed to read table signatures: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized void put(String key, CacheEntry entry) {
+        if (entry.bytes > maxEntryBytes || entry.bytes > maxBytes) {
+            return;
+        }
+        CacheEntry previous = entries.put(key, entry);
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+        totalBytes += entry.bytes;
+
+        Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+        long now = System.currentTimeMillis();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, CacheEntry> eldest = iterator.next();
+            if (eldest.getValue() == entry) {
+                continue;
+            }
+            totalBytes -= eldest.getValue().bytes;
+            iterator.remove();
+            if (eldest.getValue().expiresAt > now) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private synchronized void remove(String key, CacheEntry entry) {
+        if (entries.remove(key, entry)) {
+            totalBytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * 结果集占用堆内存的粗略估算
+     */
+    static long estimateBytes(SQLExecutionResponse response) {
+        long bytes = 128;
+        long bufferBytes = response.getData() != null ? ResultBuffer.heapBytesOf(response.getData()) : -1;
+        if (bufferBytes >= 0) {
+            // Spilled rows live in a mapped file; only the buffer's index stays on heap
+            bytes += bufferBytes;
+        } else if (response.getData() != null) {
+            for (Map<String, Object> row : response.getData()) {
+                bytes += estimateRowBytes(row);
+            }
+        }
+        ColumnarResult columnar = response.getColumnar();
+        if (columnar != null) {
+            for (ColumnarResult.ColumnVector vector : columnar.getVectors()) {
+                if (vector.getValues() instanceof long[] values) {
+                    bytes += 16 + values.length * 8L;
+                } else if (vector.getValues() instanceof double[] values) {
+                    bytes += 16 + values.length * 8L;
+                }
+                if (vector.getCodes() != null) {
+                    bytes += 16 + vector.getCodes().length * 4L;
+                }
+                if (vector.getNulls() != null) {
+                    bytes += 16 + vector.getNulls().length * 4L;
+                }
+                if (vector.getDictionary() != null) {
+                    for (String value : vector.getDictionary()) {
+                        bytes += 8 + estimateValueBytes(value);
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    static long estimateRowBytes(Map<String, Object> row) {
+        long bytes = 64;
+        for (Map.Entry<String, Object> field : row.entrySet()) {
+            bytes += 48 + estimateValueBytes(field.getKey()) + estimateValueBytes(field.getValue());
+        }
+        return bytes;
+    }
+
+    static long estimateValueBytes(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String text) {
+            return 40 + text.length() * 2L;
+        }
+        if (value instanceof byte[] binary) {
+            return 16 + binary.length;
+        }
+        return 24;
+    }
+}
@@ -0,0 +1,373 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.DatabaseReplica;
+import com.chatbi.repository.DatabaseConnectionRepository;
+import com.chatbi.repository.DatabaseReplicaRepository;
+import com.zaxxer.hikari.pool.HikariPool;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 只读副本路由。
+ * 定时检查每个副本的可用性与复制延迟（SHOW SLAVE STATUS 的 Seconds_Behind_Master），
+ * 健康分按指数滑动平均更新；读请求按 权重 × 健康分 随机选择一个可用副本，
+ * 无可用副本时回落到主库。延迟未知或超过上限的副本不参与路由。
+ * 路由结果是主库配置的一个副本视图，id 为 主库id#副本id，由 DataSourceRegistry 单独建池。
+ */
+@Service
+public class ReplicaRouter {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRouter.class);
+
+    private static final char VIEW_SEPARATOR = '#';
+    private static final double SCORE_ALPHA = 0.3;
+    private static final double MIN_SCORE = 0.05;
+
+    @Autowired
+    private DatabaseReplicaRepository replicaRepository;
+
+    @Autowired
+    private DatabaseConnectionRepository connectionRepository;
+
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${chatbi.replica.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chatbi.replica.health-check-interval-ms:5000}")
+    private long healthCheckIntervalMs;
+
+    @Value("${chatbi.replica.health-check-timeout-seconds:3}")
+    private int healthCheckTimeoutSeconds;
+
+    @Value("${chatbi.replica.max-lag-seconds:30}")
+    private int defaultMaxLagSeconds;
+
+    private volatile Map<String, List<ReplicaHealth>> replicasByConnection = Map.of();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chatbi-replica-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // One virtual thread per check so a hung replica never delays the others
+    private final ExecutorService checkers = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("chatbi-replica-check-", 0).factory());
+
+    private static final class ReplicaHealth {
+        volatile DatabaseReplica replica;
+        final AtomicBoolean checking = new AtomicBoolean();
+        volatile boolean up;
+        volatile Long lagSeconds;
+        volatile double score;
+        volatile String lastError;
+        volatile LocalDateTime checkedAt;
+
+        ReplicaHealth(DatabaseReplica replica) {
+            this.replica = replica;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        reload();
+        scheduler.scheduleWithFixedDelay(this::checkAll, healthCheckIntervalMs, healthCheckIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        checkers.shutdownNow();
+    }
+
+    /**
+     * 重新加载副本配置并立即检查一次；副本增删改后调用
+     */
+    public synchronized void reload() {
+        Map<String, ReplicaHealth> previous = new HashMap<>();
+        replicasByConnection.values().forEach(list -> list.forEach(h -> previous.put(h.replica.getId(), h)));
+
+        Map<String, List<ReplicaHealth>> loaded = new HashMap<>();
+        for (DatabaseReplica replica : replicaRepository.findByEnabledTrue()) {
+            ReplicaHealth health = previous.remove(replica.getId());
+            if (health == null) {
+                health = new ReplicaHealth(replica);
+            } else {
+                health.replica = replica;
+            }
+            loaded.computeIfAbsent(replica.getConnectionId(), id -> new ArrayList<>()).add(health);
+        }
+        replicasByConnection = loaded;
+
+        // Removed or disabled replicas no longer need a pool
+        for (ReplicaHealth removed : previous.values()) {
+            dataSourceRegistry.evict(viewId(removed.replica.getConnectionId(), removed.replica.getId()));
+        }
+        checkAll();
+    }
+
+    /**
+     * 为读请求选择数据源：返回某个健康副本的连接视图，没有可用副本时返回主库本身
+     */
+    public DatabaseConnection routeRead(DatabaseConnection primary) {
+        if (!enabled || primary == null || primary.getId() == null) {
+            return primary;
+        }
+        List<ReplicaHealth> candidates = replicasByConnection.get(primary.getId());
+        if (candidates == null || candidates.isEmpty()) {
+            return primary;
+        }
+
+        double total = 0;
+        double[] weights = new double[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            ReplicaHealth health = candidates.get(i);
+            if (isEligible(health)) {
+                int weight = health.replica.getWeight() != null ? health.replica.getWeight() : 1;
+                weights[i] = weight * Math.max(health.score, MIN_SCORE);
+                total += weights[i];
+            }
+        }
+        if (total <= 0) {
+            countRoute(primary, "primary");
+            return primary;
+        }
+        double pick = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < candidates.size(); i++) {
+            if (weights[i] <= 0) {
+                continue;
+            }
+            pick -= weights[i];
+            if (pick < 0) {
+                countRoute(primary, "replica");
+                return view(primary, candidates.get(i).replica);
+            }
+        }
+        countRoute(primary, "primary");
+        return primary;
+    }
+
+    /**
+     * 读请求在副本上因连接失败而出错时调用：该副本立即下线，等待下一次健康检查恢复
+     */
+    public void reportFailure(DatabaseConnection view, Throwable error) {
+        String replicaId = replicaIdOf(view);
+        if (replicaId == null) {
+            return;
+        }
+        List<ReplicaHealth> candidates = replicasByConnection.get(primaryIdOf(view));
+        if (candidates == null) {
+            return;
+        }
+        for (ReplicaHealth health : candidates) {
+            if (health.replica.getId().equals(replicaId)) {
+                health.up = false;
+                health.score *= 1 - SCORE_ALPHA;
+                health.lastError = error.getMessage();
+                logger.warn("Replica {} marked down after read failure: {}", replicaId, error.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 填充副本的运行时健康信息，供管理接口展示
+     */
+    public List<DatabaseReplica> describe(List<DatabaseReplica> replicas) {
+        Map<String, ReplicaHealth> healthById = new HashMap<>();
+        replicasByConnection.values().forEach(list -> list.forEach(h -> healthById.put(h.replica.getId(), h)));
+        for (DatabaseReplica replica : replicas) {
+            ReplicaHealth health = healthById.get(replica.getId());
+            if (health == null) {
+                continue;
+            }
+            replica.setHealthy(isEligible(health));
+            replica.setLagSeconds(health.lagSeconds);
+            replica.setHealthScore(health.score);
+            replica.setLastError(health.lastError);
+            replica.setCheckedAt(health.checkedAt);
+        }
+        return replicas;
+    }
+
+    public static boolean isReplicaView(DatabaseConnection connection) {
+        return connection != null && connection.getId() != null && connection.getId().indexOf(VIEW_SEPARATOR) > 0;
+    }
+
+    /**
+     * 是否为数据源不可用类错误（连不上、连接中断），这类错误可以换到主库重试；SQL本身的错误不重试
+     */
+    public static boolean isUnavailable(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof DataAccessResourceFailureException
+                || t instanceof HikariPool.PoolInitializationException
+                || t instanceof SQLTransientConnectionException
+                || t instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isEligible(ReplicaHealth health) {
+        if (!health.up || health.lagSeconds == null) {
+            return false;
+        }
+        return health.lagSeconds <= maxLagSeconds(health.replica);
+    }
+
+    private int maxLagSeconds(DatabaseReplica replica) {
+        return replica.getMaxLagSeconds() != null ? replica.getMaxLagSeconds() : defaultMaxLagSeconds;
+    }
+
+    private void checkAll() {
+        try {
+            Map<String, DatabaseConnection> primaries = new HashMap<>();
+            replicasByConnection.forEach((connectionId, list) -> {
+                DatabaseConnection primary = primaries.computeIfAbsent(connectionId,
+                    id -> connectionRepository.findById(id).orElse(null));
+                if (primary == null) {
+                    return;
+                }
+                for (ReplicaHealth health : list) {
+                    if (health.checking.compareAndSet(false, true)) {
+                        checkers.submit(() -> {
+                            try {
+                                check(health, primary);
+                            } finally {
+                                health.checking.set(false);
+                            }
+                        });
+                    }
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("Failed to schedule replica health checks: {}", e.getMessage());
+        }
+    }
+
+    private void check(ReplicaHealth health, DatabaseConnection primary) {
+        DatabaseReplica replica = health.replica;
+        double sample;
+        try {
+            JdbcTemplate template = new JdbcTemplate(dataSourceRegistry.getDataSource(view(primary, replica)));
+            template.setQueryTimeout(healthCheckTimeoutSeconds);
+            Long lag = readLag(template);
+            health.up = true;
+            health.lagSeconds = lag;
+            if (lag == null) {
+                health.lastError = "未检测到运行中的复制";
+                sample = 0;
+            } else {
+                health.lastError = null;
+                int maxLag = maxLagSeconds(replica);
+                sample = lag > maxLag ? 0 : 1.0 - 0.5 * lag / Math.max(maxLag, 1);
+            }
+        } catch (Exception e) {
+            health.up = false;
+            health.lastError = e.getMessage();
+            sample = 0;
+            logger.debug("Health check failed for replica {} ({}:{}): {}",
+                replica.getId(), replica.getHost(), replica.getPort(), e.getMessage());
+        }
+        // A replica starts at score 0 and ramps up, so a freshly recovered node takes load gradually
+        health.score = SCORE_ALPHA * sample + (1 - SCORE_ALPHA) * health.score;
+        health.checkedAt = LocalDateTime.now();
+    }
+
+    /**
+     * 复制延迟（秒）；未配置复制或复制线程未运行时返回 null
+     */
+    private Long readLag(JdbcTemplate template) {
+        List<Map<String, Object>> rows;
+        try {
+            rows = template.queryForList("SHOW SLAVE STATUS");
+        } catch (Exception e) {
+            if (isUnavailable(e)) {
+                throw e;
+            }
+            // MySQL 8.4 only knows the REPLICA spelling
+            rows = template.queryForList("SHOW REPLICA STATUS");
+        }
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Long maxLag = null;
+        // Multi-source replication returns one row per channel; the slowest one counts
+        for (Map<String, Object> row : rows) {
+            Object value = row.containsKey("Seconds_Behind_Master")
+                ? row.get("Seconds_Behind_Master") : row.get("Seconds_Behind_Source");
+            if (value == null) {
+                return null;
+            }
+            long lag = ((Number) value).longValue();
+            maxLag = maxLag == null ? lag : Math.max(maxLag, lag);
+        }
+        return maxLag;
+    }
+
+    private DatabaseConnection view(DatabaseConnection primary, DatabaseReplica replica) {
+        DatabaseConnection view = new DatabaseConnection();
+        view.setId(viewId(primary.getId(), replica.getId()));
+        view.setName(primary.getName() + "@" + replica.getHost());
+        view.setHost(replica.getHost());
+        view.setPort(replica.getPort() != null ? replica.getPort() : primary.getPort());
+        boolean ownCredentials = replica.getUsername() != null && !replica.getUsername().isBlank();
+        view.setUsername(ownCredentials ? replica.getUsername() : primary.getUsername());
+        view.setPassword(ownCredentials ? replica.getPassword() : primary.getPassword());
+        view.setDatabaseName(primary.getDatabaseName());
+        view.setCharsetName(primary.getCharsetName());
+        view.setDescription(primary.getDescription());
+        view.setIsActive(primary.getIsActive());
+        view.setQueryTimeoutSeconds(primary.getQueryTimeoutSeconds());
+        view.setMaxConcurrentQueries(primary.getMaxConcurrentQueries());
+        view.setCreatedAt(primary.getCreatedAt());
+        view.setUpdatedAt(primary.getUpdatedAt());
+        return view;
+    }
+
+    static String viewId(String connectionId, String replicaId) {
+        return connectionId + VIEW_SEPARATOR + replicaId;
+    }
+
+    private static String primaryIdOf(DatabaseConnection view) {
+        return view.getId().substring(0, view.getId().indexOf(VIEW_SEPARATOR));
+    }
+
+    private static String replicaIdOf(DatabaseConnection view) {
+        return isReplicaView(view) ? view.getId().substring(view.getId().indexOf(VIEW_SEPARATOR) + 1) : null;
+    }
+
+    private void countRoute(DatabaseConnection primary, String target) {
+        if (meterRegistry != null) {
+            meterRegistry.counter("chatbi.replica.reads", "connection", primary.getId(), "target", target).increment();
+        }
+    }
+}
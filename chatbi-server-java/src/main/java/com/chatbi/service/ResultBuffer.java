@@ -0,0 +1,524 @@
+package com.chatbi.service;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 查询结果缓冲：估算大小未超过阈值时保存在堆内；超过后整体写入紧凑的二进制临时文件，之后的行直接追加。
+ * 文件头保存列名，每行按列写 类型标记 + 值；每 INDEX_STRIDE 行记录一次文件偏移，
+ * 读取时只把覆盖所需行的区间映射到内存（MappedByteBuffer），结果不占用堆也不进入老年代。
+ * 写入由单个线程完成，finish() 之后可并发读取；asRows() 返回只读的 List 视图，可直接作为响应数据。
+ * 显式 close() 或缓冲不再可达（例如被缓存淘汰）时删除临时文件。
+ */
+class ResultBuffer implements Closeable {
+    private static final int MAGIC = 0x43425242; // "CBRB"
+    private static final byte VERSION = 1;
+    private static final int INDEX_STRIDE = 64;
+    private static final int ITERATOR_PAGE = 1024;
+
+    private static final byte T_NULL = 0;
+    private static final byte T_INT = 1;
+    private static final byte T_LONG = 2;
+    private static final byte T_DOUBLE = 3;
+    private static final byte T_FLOAT = 4;
+    private static final byte T_DECIMAL = 5;
+    private static final byte T_BIGINT = 6;
+    private static final byte T_STRING = 7;
+    private static final byte T_BOOLEAN = 8;
+    private static final byte T_BYTES = 9;
+    private static final byte T_TIMESTAMP = 10;
+    private static final byte T_DATE = 11;
+    private static final byte T_TIME = 12;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final AtomicLong SPILLED_BYTES = new AtomicLong();
+
+    private final Path file;
+    private final long thresholdBytes;
+    private final FileState state;
+    private final Cleaner.Cleanable cleanable;
+
+    private List<Map<String, Object>> rows = new ArrayList<>();
+    private long heapBytes;
+    private volatile long rowCount;
+
+    private String[] columns;
+    private DataOutputStream out;
+    private long written;
+    private long dataStart;
+    private long[] index = new long[16];
+    private volatile int indexSize;
+
+    /**
+     * 临时文件的删除动作，不能引用缓冲本身，否则缓冲永远不可达
+     */
+    private static final class FileState implements Runnable {
+        final Path file;
+        volatile FileChannel channel;
+        volatile long bytes;
+
+        FileState(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // Best effort; the spill directory is swept on restart
+            }
+            SPILLED_BYTES.addAndGet(-bytes);
+            bytes = 0;
+        }
+    }
+
+    ResultBuffer(Path file, long thresholdBytes) {
+        this.file = file;
+        this.thresholdBytes = thresholdBytes;
+        this.state = new FileState(file);
+        this.cleanable = CLEANER.register(this, state);
+    }
+
+    /**
+     * 重新打开已落盘的结果（例如服务重启后），列名从文件头读取，索引在首次读取时重建
+     */
+    static ResultBuffer reopen(Path file, long rowCount) throws IOException {
+        ResultBuffer buffer = new ResultBuffer(file, 0);
+        buffer.rows = null;
+        buffer.rowCount = rowCount;
+        buffer.readHeader();
+        return buffer;
+    }
+
+    /**
+     * 所有缓冲当前占用的临时文件字节数
+     */
+    static long spilledBytes() {
+        return SPILLED_BYTES.get();
+    }
+
+    /**
+     * 行列表如果是落盘缓冲的视图，返回其堆内占用；否则返回 -1，由调用方自行估算
+     */
+    static long heapBytesOf(List<?> rows) {
+        return rows instanceof RowView view ? view.buffer.getHeapBytes() : -1;
+    }
+
+    void add(Map<String, Object> row) throws IOException {
+        if (rows != null) {
+            rows.add(row);
+            heapBytes += QueryResultCache.estimateRowBytes(row);
+            if (heapBytes > thresholdBytes) {
+                spill();
+            }
+        } else {
+            writeRow(row, rowCount);
+        }
+        rowCount++;
+    }
+
+    void finish() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+            state.bytes = written;
+            SPILLED_BYTES.addAndGet(written);
+        }
+    }
+
+    long getRowCount() {
+        return rowCount;
+    }
+
+    boolean isSpilled() {
+        return rows == null;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * 堆内占用的估算字节数；落盘后只剩索引
+     */
+    long getHeapBytes() {
+        return rows != null ? heapBytes : 64 + index.length * 8L;
+    }
+
+    /**
+     * 只读的行视图：随机访问按页映射读取，迭代按页顺序读取
+     */
+    List<Map<String, Object>> asRows() {
+        if (rows != null) {
+            return Collections.unmodifiableList(rows);
+        }
+        return new RowView(this);
+    }
+
+    List<Map<String, Object>> readPage(long offset, int limit) throws IOException {
+        if (offset >= rowCount || limit <= 0) {
+            return List.of();
+        }
+        if (rows != null) {
+            int from = (int) offset;
+            int to = (int) Math.min(rowCount, offset + limit);
+            return new ArrayList<>(rows.subList(from, to));
+        }
+        synchronized (this) {
+            if (indexSize == 0) {
+                rebuildIndex();
+            }
+        }
+        long end = Math.min(rowCount, offset + limit);
+        int startSlot = (int) Math.min(offset / INDEX_STRIDE, indexSize - 1);
+        int endSlot = (int) ((end + INDEX_STRIDE - 1) / INDEX_STRIDE);
+        long from = index[startSlot];
+        long to = endSlot < indexSize ? index[endSlot] : channel().size();
+
+        MappedByteBuffer mapped = channel().map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        long skip = offset - (long) startSlot * INDEX_STRIDE;
+        for (long i = 0; i < skip; i++) {
+            skipRow(mapped);
+        }
+        List<Map<String, Object>> page = new ArrayList<>((int) (end - offset));
+        for (long i = offset; i < end; i++) {
+            page.add(readRow(mapped));
+        }
+        return page;
+    }
+
+    private void spill() throws IOException {
+        Files.createDirectories(file.getParent());
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        columns = rows.get(0).keySet().toArray(new String[0]);
+        writeHeader();
+        long n = 0;
+        for (Map<String, Object> row : rows) {
+            writeRow(row, n++);
+        }
+        rows = null;
+        heapBytes = 0;
+    }
+
+    private void writeHeader() throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(columns.length);
+        written = 9;
+        for (String column : columns) {
+            written += writeString(column);
+        }
+        dataStart = written;
+    }
+
+    private void readHeader() throws IOException {
+        FileChannel channel = channel();
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 1 << 20));
+        if (header.remaining() < 9 || header.getInt() != MAGIC || header.get() != VERSION) {
+            throw new IOException("Not a result buffer file: " + file);
+        }
+        columns = new String[header.getInt()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = readString(header);
+        }
+        dataStart = header.position();
+    }
+
+    private void writeRow(Map<String, Object> row, long rowIndex) throws IOException {
+        if (rowIndex % INDEX_STRIDE == 0) {
+            addIndex(written);
+        }
+        if (row.size() != columns.length) {
+            throw new IllegalArgumentException("Row has " + row.size() + " columns, expected " + columns.length);
+        }
+        for (String column : columns) {
+            written += writeValue(row.get(column));
+        }
+    }
+
+    private int writeValue(Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(T_NULL);
+            return 1;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(T_INT);
+            out.writeInt(((Number) value).intValue());
+            return 5;
+        }
+        if (value instanceof Long longValue) {
+            out.writeByte(T_LONG);
+            out.writeLong(longValue);
+            return 9;
+        }
+        if (value instanceof Double doubleValue) {
+            out.writeByte(T_DOUBLE);
+            out.writeDouble(doubleValue);
+            return 9;
+        }
+        if (value instanceof Float floatValue) {
+            out.writeByte(T_FLOAT);
+            out.writeFloat(floatValue);
+            return 5;
+        }
+        if (value instanceof Boolean bool) {
+            out.writeByte(T_BOOLEAN);
+            out.writeBoolean(bool);
+            return 2;
+        }
+        if (value instanceof Timestamp timestamp) {
+            out.writeByte(T_TIMESTAMP);
+            out.writeLong(timestamp.getTime());
+            out.writeInt(timestamp.getNanos());
+            return 13;
+        }
+        if (value instanceof java.sql.Date date) {
+            out.writeByte(T_DATE);
+            out.writeLong(date.getTime());
+            return 9;
+        }
+        if (value instanceof Time time) {
+            out.writeByte(T_TIME);
+            out.writeLong(time.getTime());
+            return 9;
+        }
+        if (value instanceof byte[] bytes) {
+            out.writeByte(T_BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            return 5 + bytes.length;
+        }
+        if (value instanceof BigDecimal decimal) {
+            out.writeByte(T_DECIMAL);
+            return 1 + writeString(decimal.toString());
+        }
+        if (value instanceof BigInteger integer) {
+            out.writeByte(T_BIGINT);
+            return 1 + writeString(integer.toString());
+        }
+        // Anything else (LocalDateTime, UUID, ...) is kept as its text form
+        out.writeByte(T_STRING);
+        return 1 + writeString(value.toString());
+    }
+
+    private int writeString(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        return 4 + bytes.length;
+    }
+
+    private Map<String, Object> readRow(ByteBuffer buffer) {
+        Map<String, Object> row = new LinkedHashMap<>(columns.length * 2);
+        for (String column : columns) {
+            row.put(column, readValue(buffer));
+        }
+        return row;
+    }
+
+    private void skipRow(ByteBuffer buffer) {
+        for (int i = 0; i < columns.length; i++) {
+            byte type = buffer.get();
+            switch (type) {
+                case T_NULL -> { }
+                case T_INT, T_FLOAT -> buffer.position(buffer.position() + 4);
+                case T_LONG, T_DOUBLE, T_DATE, T_TIME -> buffer.position(buffer.position() + 8);
+                case T_TIMESTAMP -> buffer.position(buffer.position() + 12);
+                case T_BOOLEAN -> buffer.position(buffer.position() + 1);
+                default -> {
+                    int length = buffer.getInt();
+                    buffer.position(buffer.position() + length);
+                }
+            }
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte type = buffer.get();
+        return switch (type) {
+            case T_NULL -> null;
+            case T_INT -> buffer.getInt();
+            case T_LONG -> buffer.getLong();
+            case T_DOUBLE -> buffer.getDouble();
+            case T_FLOAT -> buffer.getFloat();
+            case T_BOOLEAN -> buffer.get() != 0;
+            case T_TIMESTAMP -> {
+                Timestamp timestamp = new Timestamp(buffer.getLong());
+                timestamp.setNanos(buffer.getInt());
+                yield timestamp;
+            }
+            case T_DATE -> new java.sql.Date(buffer.getLong());
+            case T_TIME -> new Time(buffer.getLong());
+            case T_BYTES -> {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                yield bytes;
+            }
+            case T_DECIMAL -> new BigDecimal(readString(buffer));
+            case T_BIGINT -> new BigInteger(readString(buffer));
+            case T_STRING -> readString(buffer);
+            default -> throw new IllegalStateException("Unknown value type " + type);
+        };
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void addIndex(long position) {
+        if (indexSize == index.length) {
+            index = Arrays.copyOf(index, indexSize * 2);
+        }
+        index[indexSize++] = position;
+    }
+
+    private void rebuildIndex() throws IOException {
+        FileChannel channel = channel();
+        long size = channel.size();
+        long position = dataStart;
+        long row = 0;
+        // Walk the file in windows; a row never exceeds the window because windows restart at row boundaries
+        while (position < size && row < rowCount) {
+            long window = Math.min(size - position, 64L << 20);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+            int lastRowStart = 0;
+            try {
+                while (mapped.hasRemaining() && row < rowCount) {
+                    lastRowStart = mapped.position();
+                    if (row % INDEX_STRIDE == 0) {
+                        addIndex(position + lastRowStart);
+                    }
+                    skipRow(mapped);
+                    row++;
+                }
+                position += mapped.position();
+            } catch (RuntimeException e) {
+                // Row straddles the window end: drop its index entry and continue from its start
+                if (row % INDEX_STRIDE == 0 && indexSize > 0 && index[indexSize - 1] == position + lastRowStart) {
+                    indexSize--;
+                }
+                if (lastRowStart == 0) {
+                    throw new IOException("Corrupt result buffer file: " + file, e);
+                }
+                position += lastRowStart;
+            }
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        FileChannel channel = state.channel;
+        if (channel == null) {
+            synchronized (state) {
+                channel = state.channel;
+                if (channel == null) {
+                    channel = FileChannel.open(file, StandardOpenOption.READ);
+                    state.channel = channel;
+                }
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * 释放内存并删除落盘文件
+     */
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        rows = null;
+        cleanable.clean();
+    }
+
+    /**
+     * 落盘结果的只读视图。持有缓冲的引用，视图可达时文件不会被清理
+     */
+    private static final class RowView extends AbstractList<Map<String, Object>> {
+        private final ResultBuffer buffer;
+
+        RowView(ResultBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Map<String, Object> get(int i) {
+            if (i < 0 || i >= size()) {
+                throw new IndexOutOfBoundsException(i);
+            }
+            try {
+                return buffer.readPage(i, 1).get(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(buffer.getRowCount(), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public Iterator<Map<String, Object>> iterator() {
+            return new Iterator<>() {
+                private long next;
+                private List<Map<String, Object>> page = List.of();
+                private int pageIndex;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size();
+                }
+
+                @Override
+                public Map<String, Object> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    if (pageIndex >= page.size()) {
+                        try {
+                            page = buffer.readPage(next, ITERATOR_PAGE);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        pageIndex = 0;
+                    }
+                    next++;
+                    return page.get(pageIndex++);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.chatbi.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+/**
+ * 创建查询结果缓冲。小结果留在堆内，超过 spill-threshold-bytes 后落盘到 spill-dir；
+ * 落盘文件随缓冲关闭或不再被引用（会话历史、结果缓存淘汰）时删除，启动时清理上次遗留的文件。
+ */
+@Service
+public class ResultBufferFactory {
+    private static final Logger logger = LoggerFactory.getLogger(ResultBufferFactory.class);
+
+    static final String FILE_SUFFIX = ".rb";
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${chatbi.result-buffer.spill-threshold-bytes:8388608}")
+    private long spillThresholdBytes;
+
+    @Value("${chatbi.result-buffer.spill-dir:${java.io.tmpdir}/chatbi-results}")
+    private String spillDir;
+
+    @PostConstruct
+    public void init() {
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : new SimpleMeterRegistry();
+        Gauge.builder("chatbi.result.buffer.spilled.bytes", ResultBuffer::spilledBytes).register(registry);
+
+        // Buffers never outlive the process, so anything left here is from a previous run
+        Path dir = Paths.get(spillDir);
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to clean result buffer directory {}: {}", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * 新建一个使用默认阈值和目录的缓冲
+     */
+    ResultBuffer create() {
+        return create(spillThresholdBytes);
+    }
+
+    /**
+     * 指定落盘阈值的缓冲；阈值为 0 时第一行就写入文件
+     */
+    ResultBuffer create(long thresholdBytes) {
+        return new ResultBuffer(Paths.get(spillDir, UUID.randomUUID() + FILE_SUFFIX), thresholdBytes);
+    }
+}
@@ -0,0 +1,552 @@
+package com.chatbi.service;
+
+import com.chatbi.exception.BulkheadRejectedException;
+import com.chatbi.model.ColumnarResult;
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryCostEstimate;
+import com.chatbi.model.QueryOptions;
+import com.chatbi.model.SQLExecutionResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 查询结果分页游标。
+ * 单表简单查询且存在主键/非空唯一键时使用keyset分页，每页都是一次索引范围查询；
+ * 其他查询退化为持有服务端流式游标，按页继续读取，不会从offset 0重新执行。
+ * 持有游标的连接会把 net_write_timeout 调到空闲超时以上，否则服务端在两页之间写阻塞超过
+ * 默认60秒就会断开连接；空闲超过 idle-timeout-seconds 的游标由后台任务关闭。
+ */
+@Service
+public class ResultCursorService {
+    private static final Logger logger = LoggerFactory.getLogger(ResultCursorService.class);
+    private static final String KEY_ALIAS_PREFIX = "__chatbi_k";
+
+    public static final String MODE_KEYSET = "keyset";
+    public static final String MODE_HELD_CURSOR = "held_cursor";
+
+    @Autowired
+    private DatabaseManager databaseManager;
+
+    @Autowired
+    private DatabaseConnectionService databaseConnectionService;
+
+    @Autowired
+    private QueryRegistry queryRegistry;
+
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+
+    @Autowired
+    private QueryCostGate queryCostGate;
+
+    @Value("${chatbi.cursor.idle-timeout-seconds:300}")
+    private long idleTimeoutSeconds;
+
+    @Value("${chatbi.cursor.max-held-cursors:20}")
+    private int maxHeldCursors;
+
+    private final Map<String, CursorState> cursors = new ConcurrentHashMap<>();
+
+    private final AtomicInteger heldCursors = new AtomicInteger();
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chatbi-cursor-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        sweeper.scheduleWithFixedDelay(this::closeExpired, 30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 执行查询并返回第一页，结果未读完时携带 next_cursor
+     */
+    public SQLExecutionResponse openCursor(String sql, DatabaseConnection connection, QueryOptions options, int pageSize) {
+        DatabaseConnection target = connection != null ? connection : databaseConnectionService.getActiveConnection();
+        QueryCostEstimate estimate = options.isCostGate() ? queryCostGate.evaluate(sql, target, options) : null;
+        if (estimate != null && estimate.isBlocked()) {
+            SQLExecutionResponse blocked = new SQLExecutionResponse(false, null, estimate.getMessage(), 0);
+            blocked.setCostEstimate(estimate);
+            return blocked;
+        }
+        String statement = queryCostGate.applyLimit(sql, estimate);
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(target)) {
+            KeysetCursor keyset = tryKeyset(statement, target, options, pageSize);
+            SQLExecutionResponse firstPage = keyset != null
+                ? nextPage(register(keyset))
+                : nextPage(register(openHeldCursor(statement, target, options, pageSize)));
+            firstPage.setCostEstimate(estimate);
+            return firstPage;
+        } catch (Exception e) {
+            logger.error("Error opening result cursor: {}", e.getMessage(), e);
+            return new SQLExecutionResponse(false, null, e.getMessage(), 0);
+        }
+    }
+
+    public Optional<SQLExecutionResponse> fetchNext(String cursorId) {
+        CursorState state = cursors.get(cursorId);
+        if (state == null) {
+            return Optional.empty();
+        }
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(state.target)) {
+            return Optional.of(nextPage(state));
+        } catch (BulkheadRejectedException e) {
+            // Cursor stays open; the client can retry the same page
+            return Optional.of(new SQLExecutionResponse(false, null, e.getMessage(), 0));
+        } catch (Exception e) {
+            logger.error("Error fetching cursor {}: {}", cursorId, e.getMessage(), e);
+            close(cursorId);
+            return Optional.of(new SQLExecutionResponse(false, null, e.getMessage(), 0));
+        }
+    }
+
+    public boolean close(String cursorId) {
+        CursorState state = cursors.remove(cursorId);
+        if (state == null) {
+            return false;
+        }
+        state.close();
+        if (state instanceof HeldCursor) {
+            heldCursors.decrementAndGet();
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        cursors.keySet().forEach(this::close);
+    }
+
+    private CursorState register(CursorState state) {
+        cursors.put(state.id, state);
+        return state;
+    }
+
+    private SQLExecutionResponse nextPage(CursorState state) throws SQLException {
+        Page page;
+        synchronized (state) {
+            state.touch();
+            page = state.readPage();
+        }
+        SQLExecutionResponse response = page.columnar != null
+            ? SQLExecutionResponse.ofColumnar(page.columnar)
+            : new SQLExecutionResponse(true, page.rows, null, page.rows.size());
+        response.setPaginationMode(state.mode());
+        if (page.hasMore) {
+            response.setNextCursor(state.id);
+        } else {
+            close(state.id);
+        }
+        return response;
+    }
+
+    private void closeExpired() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+        cursors.forEach((id, state) -> {
+            if (state.lastAccess < cutoff) {
+                logger.info("Closing idle result cursor {}", id);
+                close(id);
+            }
+        });
+    }
+
+    private KeysetCursor tryKeyset(String sql, DatabaseConnection connection, QueryOptions options, int pageSize) {
+        SqlText.SimpleSelect select = SqlText.parseSimpleSelect(sql);
+        if (select == null) {
+            return null;
+        }
+        List<String> keyColumns = findUniqueKey(select.getTable(), connection);
+        if (keyColumns.isEmpty()) {
+            return null;
+        }
+        return new KeysetCursor(select, options.bindValues(), keyColumns, connection, options.getTimeoutSeconds(),
+            options.isColumnar(), pageSize);
+    }
+
+    /**
+     * 主键优先，其次是列全部非空的唯一索引
+     */
+    private List<String> findUniqueKey(String table, DatabaseConnection connection) {
+        String unquoted = SqlText.unquoteIdentifier(table);
+        String schema = null;
+        String tableName = unquoted;
+        int dot = unquoted.indexOf('.');
+        if (dot > 0) {
+            schema = unquoted.substring(0, dot);
+            tableName = unquoted.substring(dot + 1);
+        }
+        String sql = """
+            SELECT s.INDEX_NAME AS index_name, s.COLUMN_NAME AS column_name, c.IS_NULLABLE AS is_nullable
+            FROM information_schema.STATISTICS s
+            JOIN information_schema.COLUMNS c
+              ON c.TABLE_SCHEMA = s.TABLE_SCHEMA AND c.TABLE_NAME = s.TABLE_NAME AND c.COLUMN_NAME = s.COLUMN_NAME
+            WHERE s.TABLE_SCHEMA = COALESCE(?, DATABASE()) AND s.TABLE_NAME = ? AND s.NON_UNIQUE = 0
+            ORDER BY s.INDEX_NAME = 'PRIMARY' DESC, s.INDEX_NAME, s.SEQ_IN_INDEX
+        """;
+        List<Map<String, Object>> rows = databaseManager.getReadTemplate(connection).queryForList(sql, schema, tableName);
+
+        String currentIndex = null;
+        List<String> columns = new ArrayList<>();
+        boolean usable = true;
+        for (Map<String, Object> row : rows) {
+            String indexName = (String) row.get("index_name");
+            if (!indexName.equals(currentIndex)) {
+                if (currentIndex != null && usable) {
+                    return columns;
+                }
+                currentIndex = indexName;
+                columns = new ArrayList<>();
+                usable = true;
+            }
+            columns.add((String) row.get("column_name"));
+            usable &= "NO".equals(row.get("is_nullable"));
+        }
+        return currentIndex != null && usable ? columns : List.of();
+    }
+
+    private HeldCursor openHeldCursor(String sql, DatabaseConnection connection, QueryOptions options, int pageSize) throws SQLException {
+        // Reserve the slot before opening so concurrent opens cannot overshoot the cap
+        if (heldCursors.incrementAndGet() > maxHeldCursors) {
+            heldCursors.decrementAndGet();
+            throw new IllegalStateException("服务端游标数量已达上限(" + maxHeldCursors + ")，请稍后重试");
+        }
+        Connection jdbcConnection = null;
+        QueryRegistry.TrackedQuery query = null;
+        try {
+            // 独立连接：游标可能长时间打开，不占用连接池
+            DatabaseConnection source = databaseManager.routeRead(connection);
+            jdbcConnection = DriverManager.getConnection(
+                DataSourceRegistry.buildJdbcUrl(source), source.getUsername(), source.getPassword());
+            try (Statement session = jdbcConnection.createStatement()) {
+                // The server blocks writing the rest of the result between pages; keep it from
+                // dropping the connection before the idle sweeper would close the cursor anyway
+                session.execute("SET SESSION net_write_timeout = " + heldNetWriteTimeoutSeconds());
+            }
+            String statementSql = SqlText.stripTrailingSemicolon(sql);
+            // Stays registered while the cursor is open, so it can be listed and cancelled between pages.
+            // No statement timeout: the cursor sits idle between pages and is closed by the idle sweeper
+            query = queryRegistry.registerUntimed(source, statementSql, QueryRegistry.SOURCE_EXECUTE);
+            PreparedStatement statement = jdbcConnection.prepareStatement(
+                statementSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(pageSize);
+            Object[] params = options.bindValues();
+            for (int i = 0; i < params.length; i++) {
+                statement.setObject(i + 1, params[i]);
+            }
+            query.attach(jdbcConnection, statement);
+            ResultSet resultSet = statement.executeQuery();
+            return new HeldCursor(connection, jdbcConnection, statement, resultSet, query, options.isColumnar(), pageSize);
+        } catch (SQLException | RuntimeException e) {
+            heldCursors.decrementAndGet();
+            if (query != null) {
+                query.close();
+            }
+            if (jdbcConnection != null) {
+                jdbcConnection.close();
+            }
+            if (query != null && e instanceof SQLException) {
+                throw new SQLException(query.failureMessage(e), e);
+            }
+            throw e;
+        }
+    }
+
+    private long heldNetWriteTimeoutSeconds() {
+        // Sweeper runs every 30s, so a cursor may live up to that long past its idle timeout
+        return idleTimeoutSeconds + 60;
+    }
+
+    private static Page readPage(ResultSet rs, int limit, boolean columnar, boolean startOnCurrentRow) throws SQLException {
+        return readPage(rs, limit, columnar, startOnCurrentRow, 0);
+    }
+
+    /**
+     * @param keyCount 结果末尾的keyset键列数；读取每行时记录键值，读到结果末尾后ResultSet不再可读
+     */
+    private static Page readPage(ResultSet rs, int limit, boolean columnar, boolean startOnCurrentRow,
+                                 int keyCount) throws SQLException {
+        Object[][] lastKey = new Object[1][];
+        if (columnar) {
+            ColumnarResult result = new ColumnarResultExtractor(limit, startOnCurrentRow) {
+                @Override
+                protected void afterRow(ResultSet row) throws SQLException {
+                    if (keyCount > 0) {
+                        lastKey[0] = readKey(row, keyCount);
+                    }
+                }
+            }.extractData(rs);
+            Page page = new Page(null, result, result.getRowCount());
+            page.lastKey = lastKey[0];
+            return page;
+        }
+        ColumnMapRowMapper rowMapper = new ColumnMapRowMapper();
+        List<Map<String, Object>> rows = new ArrayList<>();
+        boolean onRow = startOnCurrentRow;
+        while (rows.size() < limit && (onRow || rs.next())) {
+            onRow = false;
+            rows.add(rowMapper.mapRow(rs, rows.size()));
+            if (keyCount > 0) {
+                lastKey[0] = readKey(rs, keyCount);
+            }
+        }
+        Page page = new Page(rows, null, rows.size());
+        page.lastKey = lastKey[0];
+        return page;
+    }
+
+    private static Object[] readKey(ResultSet rs, int keyCount) throws SQLException {
+        int firstKey = rs.getMetaData().getColumnCount() - keyCount + 1;
+        Object[] key = new Object[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            key[i] = rs.getObject(firstKey + i);
+        }
+        return key;
+    }
+
+    private static final class Page {
+        final List<Map<String, Object>> rows;
+        final ColumnarResult columnar;
+        final int size;
+        boolean hasMore;
+        Object[] lastKey;
+
+        Page(List<Map<String, Object>> rows, ColumnarResult columnar, int size) {
+            this.rows = rows;
+            this.columnar = columnar;
+            this.size = size;
+        }
+    }
+
+    private abstract static class CursorState {
+        final String id = UUID.randomUUID().toString();
+        final DatabaseConnection target;
+        final boolean columnar;
+        final int pageSize;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        CursorState(DatabaseConnection target, boolean columnar, int pageSize) {
+            this.target = target;
+            this.columnar = columnar;
+            this.pageSize = pageSize;
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        abstract String mode();
+
+        abstract Page readPage() throws SQLException;
+
+        void close() {}
+    }
+
+    private final class KeysetCursor extends CursorState {
+        final SqlText.SimpleSelect select;
+        final Object[] queryParams;
+        final List<String> keyColumns;
+        final Integer timeoutSeconds;
+        Object[] lastKey;
+
+        KeysetCursor(SqlText.SimpleSelect select, Object[] queryParams, List<String> keyColumns,
+                     DatabaseConnection connection, Integer timeoutSeconds, boolean columnar, int pageSize) {
+            super(connection, columnar, pageSize);
+            this.select = select;
+            this.queryParams = queryParams;
+            this.keyColumns = keyColumns;
+            this.timeoutSeconds = timeoutSeconds;
+        }
+
+        @Override
+        String mode() {
+            return MODE_KEYSET;
+        }
+
+        @Override
+        Page readPage() throws SQLException {
+            DatabaseConnection reader = databaseManager.routeRead(target);
+            JdbcTemplate template = databaseManager.getTemplate(reader);
+            String sql = buildPageSql();
+            Object[] params = buildParams();
+            int keyCount = keyColumns.size();
+            Page page;
+            // Each page is its own statement, tracked and timed out like any other execution
+            try (QueryRegistry.TrackedQuery query = queryRegistry.register(
+                    reader, sql, QueryRegistry.SOURCE_EXECUTE, timeoutSeconds)) {
+                try {
+                    page = queryPage(template, query, params, keyCount);
+                } catch (RuntimeException e) {
+                    throw new SQLException(query.failureMessage(e), e);
+                }
+            }
+            stripKeyColumns(page, keyCount);
+            return page;
+        }
+
+        private Page queryPage(JdbcTemplate template, QueryRegistry.TrackedQuery query, Object[] params, int keyCount) {
+            return template.query(query.statementCreator(params), (ResultSetExtractor<Page>) rs -> {
+                Page read = ResultCursorService.readPage(rs, pageSize, columnar, false, keyCount);
+                if (read.lastKey != null) {
+                    lastKey = read.lastKey;
+                }
+                // A short page has already run past the last row
+                read.hasMore = read.size == pageSize && rs.next();
+                return read;
+            });
+        }
+
+        private String buildPageSql() {
+            String qualifier = select.getQualifier();
+            StringBuilder sql = new StringBuilder("SELECT ").append(select.getSelectList());
+            for (int i = 0; i < keyColumns.size(); i++) {
+                sql.append(", ").append(qualifier).append(".`").append(keyColumns.get(i)).append("` AS ")
+                    .append(KEY_ALIAS_PREFIX).append(i);
+            }
+            sql.append(" FROM ").append(select.getTable());
+            if (select.getAlias() != null) {
+                sql.append(" ").append(select.getAlias());
+            }
+
+            List<String> predicates = new ArrayList<>();
+            if (select.getWhere() != null && !select.getWhere().isEmpty()) {
+                predicates.add("(" + select.getWhere() + ")");
+            }
+            if (lastKey != null) {
+                predicates.add(keysetPredicate(qualifier));
+            }
+            if (!predicates.isEmpty()) {
+                sql.append(" WHERE ").append(String.join(" AND ", predicates));
+            }
+
+            List<String> orderItems = new ArrayList<>();
+            for (String column : keyColumns) {
+                orderItems.add(qualifier + ".`" + column + "` ASC");
+            }
+            sql.append(" ORDER BY ").append(String.join(", ", orderItems));
+            sql.append(" LIMIT ").append(pageSize + 1);
+            return sql.toString();
+        }
+
+        /**
+         * (k1 > ?) OR (k1 = ? AND k2 > ?) ...，展开形式便于优化器走索引范围扫描
+         */
+        private String keysetPredicate(String qualifier) {
+            List<String> disjuncts = new ArrayList<>();
+            for (int i = 0; i < keyColumns.size(); i++) {
+                List<String> conjuncts = new ArrayList<>();
+                for (int j = 0; j < i; j++) {
+                    conjuncts.add(qualifier + ".`" + keyColumns.get(j) + "` = ?");
+                }
+                conjuncts.add(qualifier + ".`" + keyColumns.get(i) + "` > ?");
+                disjuncts.add("(" + String.join(" AND ", conjuncts) + ")");
+            }
+            return "(" + String.join(" OR ", disjuncts) + ")";
+        }
+
+        private Object[] buildParams() {
+            // Placeholders of the original query all precede the keyset predicate
+            List<Object> params = new ArrayList<>(Arrays.asList(queryParams));
+            if (lastKey == null) {
+                return params.toArray();
+            }
+            for (int i = 0; i < keyColumns.size(); i++) {
+                for (int j = 0; j <= i; j++) {
+                    params.add(lastKey[j]);
+                }
+            }
+            return params.toArray();
+        }
+
+        private void stripKeyColumns(Page page, int keyCount) {
+            if (page.rows != null) {
+                for (Map<String, Object> row : page.rows) {
+                    for (int i = 0; i < keyCount; i++) {
+                        row.remove(KEY_ALIAS_PREFIX + i);
+                    }
+                }
+            } else if (page.columnar != null) {
+                int keep = page.columnar.getColumns().size() - keyCount;
+                page.columnar.setColumns(new ArrayList<>(page.columnar.getColumns().subList(0, keep)));
+                page.columnar.setVectors(new ArrayList<>(page.columnar.getVectors().subList(0, keep)));
+            }
+        }
+    }
+
+    private static final class HeldCursor extends CursorState {
+        final Connection connection;
+        final PreparedStatement statement;
+        final ResultSet resultSet;
+        final QueryRegistry.TrackedQuery query;
+        boolean onRow;
+
+        HeldCursor(DatabaseConnection target, Connection connection, PreparedStatement statement, ResultSet resultSet,
+                   QueryRegistry.TrackedQuery query, boolean columnar, int pageSize) {
+            super(target, columnar, pageSize);
+            this.connection = connection;
+            this.statement = statement;
+            this.resultSet = resultSet;
+            this.query = query;
+        }
+
+        @Override
+        String mode() {
+            return MODE_HELD_CURSOR;
+        }
+
+        @Override
+        Page readPage() throws SQLException {
+            try {
+                Page page = ResultCursorService.readPage(resultSet, pageSize, columnar, onRow);
+                // Look one row ahead; the cursor stays positioned on it for the next page
+                onRow = page.size == pageSize && resultSet.next();
+                page.hasMore = onRow;
+                return page;
+            } catch (SQLException e) {
+                throw new SQLException(query.failureMessage(e), e);
+            }
+        }
+
+        @Override
+        void close() {
+            query.close();
+            try {
+                // Stop the server from sending the rest of the result before closing
+                statement.cancel();
+            } catch (SQLException ignored) {}
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.debug("Failed to close held cursor connection: {}", e.getMessage());
+            }
+        }
+    }
+}
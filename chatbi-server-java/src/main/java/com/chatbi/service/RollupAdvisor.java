@@ -0,0 +1,184 @@
+package com.chatbi.service;
+
+import com.chatbi.model.ChatMessage;
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.RollupProposal;
+import com.chatbi.model.RollupTable;
+import com.chatbi.model.SemanticSQL;
+import com.chatbi.repository.ChatMessageRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 从已保存的对话消息中挖掘高频聚合查询，给出汇总表建议。
+ * 每条生成了SQL的助手消息按其语义SQL归纳为指纹：源表、分组与条件用到的维度、需要的部分聚合；
+ * 字面量不同的同类问题得到同一个指纹。已有汇总表能回答的查询不再计入。
+ */
+@Service
+public class RollupAdvisor {
+    private static final Logger logger = LoggerFactory.getLogger(RollupAdvisor.class);
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private RollupService rollupService;
+
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${chatbi.rollup.mining-window-days:30}")
+    private int miningWindowDays;
+
+    @Value("${chatbi.rollup.mining-max-messages:5000}")
+    private int miningMaxMessages;
+
+    @Value("${chatbi.rollup.min-proposal-count:3}")
+    private int minProposalCount;
+
+    @Value("${chatbi.rollup.table-prefix:chatbi_rollup_}")
+    private String tablePrefix;
+
+    private record Fingerprint(String table, Set<String> dimensions, Set<String> measures,
+                               OffsetDateTime askedAt, String sql) {
+    }
+
+    /**
+     * 针对该连接上存在的表给出建议，按能回答的历史查询数从多到少排列
+     */
+    public List<RollupProposal> propose(DatabaseConnection connection, int limit) {
+        Set<String> tables = new HashSet<>();
+        for (String table : dataSourceRegistry.getJdbcTemplate(connection).queryForList(
+                "SELECT TABLE_NAME FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE()", String.class)) {
+            tables.add(table.toLowerCase(Locale.ROOT));
+        }
+        List<RollupTable> existing = rollupService.getRollups(connection.getId());
+
+        List<Fingerprint> fingerprints = new ArrayList<>();
+        List<ChatMessage> messages = chatMessageRepository
+            .findByRoleAndSqlQueryIsNotNullAndCreatedAtAfterOrderByCreatedAtDesc(
+                "assistant", OffsetDateTime.now().minusDays(miningWindowDays), PageRequest.of(0, miningMaxMessages));
+        for (ChatMessage message : messages) {
+            SemanticSQL semanticSQL = parse(message.getSemanticSql());
+            if (semanticSQL == null || !AggregatePlan.isAggregate(semanticSQL)) {
+                continue;
+            }
+            String table = AggregatePlan.singleTable(semanticSQL);
+            if (table == null || !tables.contains(table.toLowerCase(Locale.ROOT))
+                || table.toLowerCase(Locale.ROOT).startsWith(tablePrefix)) {
+                continue;
+            }
+            if (existing.stream().anyMatch(rollup -> Boolean.TRUE.equals(rollup.getEnabled())
+                    && RollupPlan.rewrite(semanticSQL, rollup) != null)) {
+                continue;
+            }
+            Fingerprint fingerprint = fingerprint(semanticSQL, table, message);
+            if (fingerprint != null) {
+                fingerprints.add(fingerprint);
+            }
+        }
+
+        // One candidate per distinct dimension set; it answers every query whose dimensions and measures it covers
+        Map<String, Fingerprint> candidates = new LinkedHashMap<>();
+        for (Fingerprint fingerprint : fingerprints) {
+            String key = fingerprint.table().toLowerCase(Locale.ROOT) + "|" + new TreeSet<>(fingerprint.dimensions());
+            candidates.merge(key, fingerprint, (a, b) -> {
+                Set<String> measures = new LinkedHashSet<>(a.measures());
+                measures.addAll(b.measures());
+                return new Fingerprint(a.table(), a.dimensions(), measures, a.askedAt(), a.sql());
+            });
+        }
+        List<RollupProposal> proposals = new ArrayList<>();
+        for (Fingerprint candidate : candidates.values()) {
+            int count = 0;
+            for (Fingerprint fingerprint : fingerprints) {
+                if (fingerprint.table().equalsIgnoreCase(candidate.table())
+                    && candidate.dimensions().containsAll(fingerprint.dimensions())
+                    && candidate.measures().containsAll(fingerprint.measures())) {
+                    count++;
+                }
+            }
+            if (count < minProposalCount) {
+                continue;
+            }
+            RollupProposal proposal = new RollupProposal();
+            proposal.setSourceTable(candidate.table());
+            proposal.setDimensions(new ArrayList<>(candidate.dimensions()));
+            proposal.setMeasures(new ArrayList<>(candidate.measures()));
+            proposal.setQueryCount(count);
+            proposal.setLastAskedAt(candidate.askedAt());
+            proposal.setSampleSql(candidate.sql());
+            proposals.add(proposal);
+        }
+        proposals.sort(Comparator.comparing(RollupProposal::getQueryCount).reversed()
+            .thenComparing(proposal -> proposal.getDimensions().size()));
+        logger.info("Mined {} aggregate queries from {} messages into {} rollup proposals for connection {}",
+            fingerprints.size(), messages.size(), proposals.size(), connection.getId());
+        return proposals.size() > limit ? proposals.subList(0, limit) : proposals;
+    }
+
+    /**
+     * 查询需要的维度（分组列和条件列）与部分聚合；包含汇总表不支持的表达式时返回null
+     */
+    private static Fingerprint fingerprint(SemanticSQL semanticSQL, String table, ChatMessage message) {
+        AggregatePlan plan = AggregatePlan.parseJoined(semanticSQL, expression -> RollupPlan.normalize(expression, table));
+        if (plan == null) {
+            return null;
+        }
+        try {
+            Set<String> dimensions = new LinkedHashSet<>();
+            for (int i = 0; i < plan.groupCount(); i++) {
+                dimensions.add(RollupPlan.dimension(plan.groupColumn(i), table));
+            }
+            if (semanticSQL.getConditions() != null) {
+                for (Map<String, Object> condition : semanticSQL.getConditions()) {
+                    Object column = condition.get("column");
+                    if (column == null) {
+                        return null;
+                    }
+                    dimensions.add(RollupPlan.dimension(column.toString(), table));
+                }
+            }
+            Set<String> measures = new LinkedHashSet<>();
+            for (int i = 0; i < plan.partialCount(); i++) {
+                String argument = plan.partialArgument(i);
+                measures.add(RollupPlan.measure(plan.partialFunction(i).name() + "(" + argument + ")", table));
+            }
+            return new Fingerprint(table, dimensions, measures, message.getCreatedAt(), message.getSqlQuery());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private SemanticSQL parse(String json) {
+        if (json == null || json.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, SemanticSQL.class);
+        } catch (Exception e) {
+            logger.debug("Skipping unreadable semantic SQL: {}", e.getMessage());
+            return null;
+        }
+    }
+}
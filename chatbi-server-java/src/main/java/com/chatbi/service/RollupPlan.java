@@ -0,0 +1,250 @@
+package com.chatbi.service;
+
+import com.chatbi.model.RollupTable;
+import com.chatbi.model.SemanticSQL;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 汇总表的维度/度量规范化、生成刷新语句，以及把聚合查询改写为读取汇总表。
+ * 维度和度量都以规范形式保存：去掉反引号、空白和源表前缀，引号外小写。
+ * 汇总表的列依次为 d0..dn（维度）和 m0..mk（度量的部分聚合值）。
+ */
+final class RollupPlan {
+    private static final Pattern IDENTIFIER = Pattern.compile("\\w+");
+    private static final Pattern DIMENSION = Pattern.compile(
+        "^(?:(\\w+)|(date|year|month|quarter|week|day|hour|date_format)\\((\\w+)(?:,('[^'\\\\]*'))?\\))$");
+    private static final Pattern MEASURE = Pattern.compile("^(count|sum|min|max)\\((\\*|\\w+)\\)$");
+
+    private RollupPlan() {
+    }
+
+    /**
+     * 表达式的规范形式：引号内原样保留，引号外去掉空白和反引号并转小写，去掉 table. 前缀
+     */
+    static String normalize(String expression, String table) {
+        StringBuilder normalized = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+                normalized.append(c);
+            } else if (quoted) {
+                normalized.append(c);
+            } else if (c != '`' && !Character.isWhitespace(c)) {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        String result = normalized.toString();
+        if (table != null) {
+            result = result.replaceAll("(?<![\\w.'])" + Pattern.quote(table.toLowerCase(Locale.ROOT)) + "\\.", "");
+        }
+        return result;
+    }
+
+    /**
+     * 校验并规范化维度；只接受列名或作用于单列的时间粒度函数
+     */
+    static String dimension(String expression, String table) {
+        String normalized = normalize(expression, table);
+        if (!DIMENSION.matcher(normalized).matches()) {
+            throw new IllegalArgumentException("不支持的汇总维度: " + expression);
+        }
+        return normalized;
+    }
+
+    /**
+     * 校验并规范化度量；AVG 需要拆成 SUM 与 COUNT
+     */
+    static String measure(String expression, String table) {
+        String normalized = normalize(expression, table);
+        Matcher matcher = MEASURE.matcher(normalized);
+        if (!matcher.matches() || ("*".equals(matcher.group(2)) && !"count".equals(matcher.group(1)))) {
+            throw new IllegalArgumentException("不支持的汇总度量: " + expression);
+        }
+        return normalized;
+    }
+
+    static String identifier(String name, String what) {
+        String trimmed = name.trim().replace("`", "");
+        if (!IDENTIFIER.matcher(trimmed).matches()) {
+            throw new IllegalArgumentException("无效的" + what + ": " + name);
+        }
+        return trimmed;
+    }
+
+    /**
+     * 把查询改写为读取汇总表；用到汇总表之外的维度或度量时返回null
+     */
+    static SemanticSQL rewrite(SemanticSQL semanticSQL, RollupTable rollup) {
+        String table = AggregatePlan.singleTable(semanticSQL);
+        if (table == null || !table.equalsIgnoreCase(rollup.getSourceTable())) {
+            return null;
+        }
+        AggregatePlan plan = AggregatePlan.parseJoined(semanticSQL, expression -> normalize(expression, table));
+        if (plan == null) {
+            return null;
+        }
+        Map<String, Integer> dimensions = indexOf(rollup.getDimensions());
+        Map<String, Integer> measures = indexOf(rollup.getMeasures());
+
+        List<String> groupBy = new ArrayList<>();
+        for (int i = 0; i < plan.groupCount(); i++) {
+            Integer dimension = dimensions.get(plan.groupColumn(i));
+            if (dimension == null) {
+                return null;
+            }
+            groupBy.add(AggregatePlan.quote("d" + dimension));
+        }
+
+        List<Map<String, Object>> conditions = new ArrayList<>();
+        if (semanticSQL.getConditions() != null) {
+            for (Map<String, Object> condition : semanticSQL.getConditions()) {
+                Object column = condition.get("column");
+                Integer dimension = column != null ? dimensions.get(normalize(column.toString(), table)) : null;
+                if (dimension == null) {
+                    return null;
+                }
+                Map<String, Object> rewritten = new HashMap<>(condition);
+                rewritten.put("column", AggregatePlan.quote("d" + dimension));
+                conditions.add(rewritten);
+            }
+        }
+
+        List<String> columns = new ArrayList<>();
+        for (AggregatePlan.Output output : plan.outputs()) {
+            String expression;
+            if (output.isGroup()) {
+                expression = groupBy.get(output.groupIndex());
+            } else if (output.function() == AggregatePlan.Function.AVG) {
+                String sum = partialColumn(plan, output.partial(), table, measures);
+                String count = partialColumn(plan, output.partial() + 1, table, measures);
+                if (sum == null || count == null) {
+                    return null;
+                }
+                expression = "SUM(" + sum + ") / SUM(" + count + ")";
+            } else {
+                String partial = partialColumn(plan, output.partial(), table, measures);
+                if (partial == null) {
+                    return null;
+                }
+                expression = switch (output.function()) {
+                    // Keep COUNT integral and 0 on an empty input, as the original query returns
+                    case COUNT -> "CAST(COALESCE(SUM(" + partial + "), 0) AS SIGNED)";
+                    case SUM -> "SUM(" + partial + ")";
+                    case MIN -> "MIN(" + partial + ")";
+                    default -> "MAX(" + partial + ")";
+                };
+            }
+            // The original labels keep the result columns unchanged
+            columns.add(expression + " AS " + AggregatePlan.quote(output.label()));
+        }
+
+        List<Map<String, String>> orderBy = new ArrayList<>();
+        for (AggregatePlan.Order order : plan.orderBy()) {
+            Map<String, String> item = new LinkedHashMap<>();
+            item.put("column", AggregatePlan.quote(plan.outputs().get(order.output()).label()));
+            item.put("direction", order.descending() ? "DESC" : "ASC");
+            orderBy.add(item);
+        }
+
+        return new SemanticSQL(List.of(AggregatePlan.quote(rollup.getTableName())), columns, conditions,
+            new ArrayList<>(), new ArrayList<>(), orderBy, groupBy, semanticSQL.getLimit());
+    }
+
+    /**
+     * 从源表计算部分聚合的查询；condition 不为空时作为 WHERE 条件
+     */
+    static String sourceSelect(RollupTable rollup, String condition) {
+        List<String> select = new ArrayList<>();
+        List<String> groupBy = new ArrayList<>();
+        for (int i = 0; i < rollup.getDimensions().size(); i++) {
+            String dimension = dimensionSql(rollup.getDimensions().get(i));
+            select.add(dimension + " AS " + AggregatePlan.quote("d" + i));
+            groupBy.add(dimension);
+        }
+        for (int i = 0; i < rollup.getMeasures().size(); i++) {
+            select.add(measureSql(rollup.getMeasures().get(i)) + " AS " + AggregatePlan.quote("m" + i));
+        }
+        StringBuilder sql = new StringBuilder("SELECT ").append(String.join(", ", select))
+            .append(" FROM ").append(AggregatePlan.quote(rollup.getSourceTable()));
+        if (condition != null) {
+            sql.append(" WHERE ").append(condition);
+        }
+        if (!groupBy.isEmpty()) {
+            sql.append(" GROUP BY ").append(String.join(", ", groupBy));
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 把多次增量合并留下的同组多行重新聚合为一行
+     */
+    static String compactSelect(RollupTable rollup) {
+        List<String> select = new ArrayList<>();
+        List<String> groupBy = new ArrayList<>();
+        for (int i = 0; i < rollup.getDimensions().size(); i++) {
+            String column = AggregatePlan.quote("d" + i);
+            select.add(column);
+            groupBy.add(column);
+        }
+        for (int i = 0; i < rollup.getMeasures().size(); i++) {
+            String column = AggregatePlan.quote("m" + i);
+            Matcher matcher = MEASURE.matcher(rollup.getMeasures().get(i));
+            String combine = matcher.matches() && !"count".equals(matcher.group(1))
+                ? matcher.group(1).toUpperCase(Locale.ROOT) : "SUM";
+            select.add(combine + "(" + column + ") AS " + column);
+        }
+        StringBuilder sql = new StringBuilder("SELECT ").append(String.join(", ", select))
+            .append(" FROM ").append(AggregatePlan.quote(rollup.getTableName()));
+        if (!groupBy.isEmpty()) {
+            sql.append(" GROUP BY ").append(String.join(", ", groupBy));
+        }
+        return sql.toString();
+    }
+
+    private static String partialColumn(AggregatePlan plan, int partial, String table, Map<String, Integer> measures) {
+        String argument = plan.partialArgument(partial);
+        String key = plan.partialFunction(partial).name().toLowerCase(Locale.ROOT)
+            + "(" + ("*".equals(argument) ? "*" : normalize(argument, table)) + ")";
+        Integer measure = measures.get(key);
+        return measure != null ? AggregatePlan.quote("m" + measure) : null;
+    }
+
+    private static String dimensionSql(String dimension) {
+        Matcher matcher = DIMENSION.matcher(dimension);
+        if (!matcher.matches()) {
+            throw new IllegalStateException("Invalid rollup dimension: " + dimension);
+        }
+        if (matcher.group(1) != null) {
+            return AggregatePlan.quote(matcher.group(1));
+        }
+        return matcher.group(2).toUpperCase(Locale.ROOT) + "(" + AggregatePlan.quote(matcher.group(3))
+            + (matcher.group(4) != null ? ", " + matcher.group(4) : "") + ")";
+    }
+
+    private static String measureSql(String measure) {
+        Matcher matcher = MEASURE.matcher(measure);
+        if (!matcher.matches()) {
+            throw new IllegalStateException("Invalid rollup measure: " + measure);
+        }
+        String argument = "*".equals(matcher.group(2)) ? "*" : AggregatePlan.quote(matcher.group(2));
+        return matcher.group(1).toUpperCase(Locale.ROOT) + "(" + argument + ")";
+    }
+
+    private static Map<String, Integer> indexOf(List<String> values) {
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            index.putIfAbsent(values.get(i), i);
+        }
+        return index;
+    }
+}
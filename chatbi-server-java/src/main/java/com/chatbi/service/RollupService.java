@@ -0,0 +1,512 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.RollupTable;
+import com.chatbi.model.RollupTableCreate;
+import com.chatbi.model.RollupTableUpdate;
+import com.chatbi.model.SemanticSQL;
+import com.chatbi.repository.DatabaseConnectionRepository;
+import com.chatbi.repository.RollupTableRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 汇总表的管理、刷新与查询改写。
+ * 刷新在源表所在的主库上执行：首次（或 rebuild、无 watermark 列时每次）用 CREATE TABLE ... SELECT 整表重建后
+ * RENAME 替换；有 watermark 列时只把 (上次水位, 当前 MAX] 之间的新行按维度聚合后追加，
+ * 查询时再聚合一次，因此同一组出现多行不影响结果，追加次数达到 compact-every-refreshes 后合并一次。
+ * 增量只适用于只插入的水位列（自增主键、created_at）：源表行被更新或删除、或提交时水位已不大于上次水位的行，
+ * 要通过 rebuild 整表重建才能反映。
+ * 汇总表与水位不在同一个库中，无法在一个事务里更新：修改汇总表前先清除已保存的水位，刷新中断后下次整表重建。
+ */
+@Service
+public class RollupService {
+    private static final Logger logger = LoggerFactory.getLogger(RollupService.class);
+
+    @Autowired
+    private RollupTableRepository repository;
+
+    @Autowired
+    private DatabaseConnectionRepository connectionRepository;
+
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+
+    @Autowired
+    private QueryRegistry queryRegistry;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Value("${chatbi.rollup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chatbi.rollup.check-interval-seconds:30}")
+    private int checkIntervalSeconds;
+
+    @Value("${chatbi.rollup.refresh-interval-seconds:600}")
+    private int defaultRefreshIntervalSeconds;
+
+    @Value("${chatbi.rollup.max-staleness-seconds:3600}")
+    private long maxStalenessSeconds;
+
+    @Value("${chatbi.rollup.compact-every-refreshes:24}")
+    private int compactEveryRefreshes;
+
+    @Value("${chatbi.rollup.statement-timeout-seconds:600}")
+    private int statementTimeoutSeconds;
+
+    @Value("${chatbi.rollup.table-prefix:chatbi_rollup_}")
+    private String tablePrefix;
+
+    private static final Set<String> WATERMARK_TYPES = Set.of(
+        "tinyint", "smallint", "mediumint", "int", "bigint", "date", "datetime", "timestamp");
+
+    private volatile List<RollupTable> active = List.of();
+
+    private final Map<String, Usage> usage = new ConcurrentHashMap<>();
+    private final Map<String, Long> nextRefreshNanos = new ConcurrentHashMap<>();
+    private final Map<String, Integer> incrementsSinceCompaction = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chatbi-rollup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService refreshers = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("chatbi-rollup-refresh-", 0).factory());
+
+    private static final class Usage {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        reload();
+        scheduler.scheduleWithFixedDelay(this::checkAll, checkIntervalSeconds, checkIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        refreshers.shutdownNow();
+    }
+
+    public List<RollupTable> getRollups(String connectionId) {
+        return describe(repository.findByConnectionId(connectionId));
+    }
+
+    public RollupTable createRollup(String connectionId, RollupTableCreate createRequest) {
+        String sourceTable = RollupPlan.identifier(createRequest.getSourceTable(), "源表名");
+        List<String> dimensions = new ArrayList<>();
+        for (String dimension : createRequest.getDimensions()) {
+            String normalized = RollupPlan.dimension(dimension, sourceTable);
+            if (!dimensions.contains(normalized)) {
+                dimensions.add(normalized);
+            }
+        }
+        List<String> measures = new ArrayList<>();
+        for (String measure : createRequest.getMeasures()) {
+            String normalized = RollupPlan.measure(measure, sourceTable);
+            if (!measures.contains(normalized)) {
+                measures.add(normalized);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        RollupTable rollup = new RollupTable();
+        rollup.setId(UUID.randomUUID().toString());
+        rollup.setConnectionId(connectionId);
+        rollup.setSourceTable(sourceTable);
+        rollup.setTableName(physicalName(sourceTable, rollup.getId()));
+        rollup.setDimensions(dimensions);
+        rollup.setMeasures(measures);
+        if (createRequest.getWatermarkColumn() != null && !createRequest.getWatermarkColumn().trim().isEmpty()) {
+            String watermarkColumn = RollupPlan.identifier(createRequest.getWatermarkColumn(), "水位列");
+            checkWatermarkColumn(connectionId, sourceTable, watermarkColumn);
+            rollup.setWatermarkColumn(watermarkColumn);
+        }
+        rollup.setRefreshIntervalSeconds(createRequest.getRefreshIntervalSeconds());
+        rollup.setEnabled(createRequest.getEnabled() != null ? createRequest.getEnabled() : true);
+        rollup.setStatus(RollupTable.STATUS_PENDING);
+        rollup.setCreatedAt(now);
+        rollup.setUpdatedAt(now);
+
+        RollupTable saved = repository.save(rollup);
+        reload();
+        return saved;
+    }
+
+    /**
+     * 增量刷新只追加 (上次水位, 当前 MAX] 的新行，不会扣除旧值：水位列必须在插入时确定且之后不再修改，
+     * 如自增主键或只在插入时写入的 created_at。带 ON UPDATE 的列（如 updated_at）会让更新过的行被重复累计，
+     * 非整数/时间类型的列没有可靠的顺序，均拒绝
+     */
+    private void checkWatermarkColumn(String connectionId, String sourceTable, String watermarkColumn) {
+        DatabaseConnection connection = connectionRepository.findById(connectionId).orElse(null);
+        if (connection == null) {
+            return;
+        }
+        List<Map<String, Object>> columns = dataSourceRegistry.getJdbcTemplate(connection).queryForList(
+            "SELECT DATA_TYPE AS data_type, EXTRA AS extra FROM information_schema.COLUMNS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?",
+            sourceTable, watermarkColumn);
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("水位列不存在: " + sourceTable + "." + watermarkColumn);
+        }
+        String dataType = String.valueOf(columns.get(0).get("data_type")).toLowerCase(Locale.ROOT);
+        String extra = String.valueOf(columns.get(0).get("extra")).toLowerCase(Locale.ROOT);
+        if (extra.contains("on update")) {
+            throw new IllegalArgumentException("水位列 " + watermarkColumn
+                + " 会在行更新时改变，增量刷新会重复累计更新过的行；请使用自增主键或只在插入时写入的列（如 created_at）");
+        }
+        if (!WATERMARK_TYPES.contains(dataType)) {
+            throw new IllegalArgumentException("水位列 " + watermarkColumn + " 的类型 " + dataType
+                + " 不适合作为水位，需为整数或日期时间类型");
+        }
+    }
+
+    public RollupTable updateRollup(String connectionId, String rollupId, RollupTableUpdate updateRequest) {
+        Optional<RollupTable> optionalRollup = findRollup(connectionId, rollupId);
+        if (optionalRollup.isEmpty()) {
+            return null;
+        }
+
+        RollupTable rollup = optionalRollup.get();
+        if (updateRequest.getRefreshIntervalSeconds() != null) {
+            rollup.setRefreshIntervalSeconds(updateRequest.getRefreshIntervalSeconds());
+        }
+        if (updateRequest.getEnabled() != null) {
+            rollup.setEnabled(updateRequest.getEnabled());
+        }
+        rollup.setUpdatedAt(LocalDateTime.now());
+
+        RollupTable saved = repository.save(rollup);
+        reload();
+        return saved;
+    }
+
+    /**
+     * 删除配置并删除库中的汇总表
+     */
+    public boolean deleteRollup(String connectionId, String rollupId) {
+        Optional<RollupTable> rollup = findRollup(connectionId, rollupId);
+        if (rollup.isEmpty()) {
+            return false;
+        }
+        repository.deleteById(rollupId);
+        reload();
+        connectionRepository.findById(connectionId).ifPresent(connection -> {
+            try {
+                execute(dataSourceRegistry.getJdbcTemplate(connection), connection,
+                    "DROP TABLE IF EXISTS " + AggregatePlan.quote(rollup.get().getTableName()));
+            } catch (Exception e) {
+                logger.warn("Failed to drop rollup table {}: {}", rollup.get().getTableName(), e.getMessage());
+            }
+        });
+        usage.remove(rollupId);
+        return true;
+    }
+
+    /**
+     * 下次检查时从源表整表重建（源表有更新或删除、或需要立即合并时使用）
+     */
+    public RollupTable rebuildRollup(String connectionId, String rollupId) {
+        Optional<RollupTable> rollup = findRollup(connectionId, rollupId);
+        if (rollup.isEmpty()) {
+            return null;
+        }
+        RollupTable saved = updateState(rollupId, current -> current.setLastWatermark(null));
+        nextRefreshNanos.put(rollupId, System.nanoTime());
+        scheduler.execute(this::checkAll);
+        return saved;
+    }
+
+    /**
+     * 删除连接时清理其全部汇总表配置；连接已不可用，库中的表不做处理
+     */
+    public void deleteByConnection(String connectionId) {
+        repository.deleteByConnectionId(connectionId);
+        reload();
+    }
+
+    /**
+     * 聚合查询能由该连接上某张可用的汇总表回答时，返回读取汇总表的等价语义SQL，否则返回null。
+     * 有多张可用时选行数最少的一张
+     */
+    public SemanticSQL rewrite(SemanticSQL semanticSQL, DatabaseConnection connection) {
+        if (!enabled || semanticSQL == null || connection == null || connection.getId() == null
+            || !AggregatePlan.isAggregate(semanticSQL)) {
+            return null;
+        }
+        String table = AggregatePlan.singleTable(semanticSQL);
+        if (table == null) {
+            return null;
+        }
+        RollupTable best = null;
+        SemanticSQL bestRewrite = null;
+        List<RollupTable> candidates = new ArrayList<>();
+        for (RollupTable rollup : active) {
+            if (!connection.getId().equals(rollup.getConnectionId()) || !table.equalsIgnoreCase(rollup.getSourceTable())
+                || !usable(rollup)) {
+                continue;
+            }
+            candidates.add(rollup);
+            SemanticSQL rewritten = RollupPlan.rewrite(semanticSQL, rollup);
+            if (rewritten != null && (best == null || rowCount(rollup) < rowCount(best))) {
+                best = rollup;
+                bestRewrite = rewritten;
+            }
+        }
+        for (RollupTable candidate : candidates) {
+            Usage counters = usage.computeIfAbsent(candidate.getId(), id -> new Usage());
+            if (candidate == best) {
+                counters.hits.incrementAndGet();
+            } else if (best == null) {
+                counters.misses.incrementAndGet();
+            }
+        }
+        if (best != null) {
+            logger.info("Rewrote aggregate on {} to rollup {} ({} rows)", table, best.getTableName(), best.getRowCount());
+        }
+        return bestRewrite;
+    }
+
+    /**
+     * 填充命中率和滞后时间，供管理接口展示
+     */
+    public List<RollupTable> describe(List<RollupTable> rollups) {
+        LocalDateTime now = LocalDateTime.now();
+        for (RollupTable rollup : rollups) {
+            Usage counters = usage.get(rollup.getId());
+            long hits = counters != null ? counters.hits.get() : 0;
+            long misses = counters != null ? counters.misses.get() : 0;
+            rollup.setHits(hits);
+            rollup.setMisses(misses);
+            rollup.setHitRate(hits + misses > 0 ? (double) hits / (hits + misses) : null);
+            if (rollup.getLastRefreshedAt() != null) {
+                rollup.setStalenessSeconds(Duration.between(rollup.getLastRefreshedAt(), now).toSeconds());
+            }
+        }
+        return rollups;
+    }
+
+    /**
+     * 汇总表是否已建成且未超过允许的滞后时间；最近一次刷新失败时仍使用上次的数据
+     */
+    private boolean usable(RollupTable rollup) {
+        return rollup.getLastRefreshedAt() != null
+            && !RollupTable.STATUS_PENDING.equals(rollup.getStatus())
+            && Duration.between(rollup.getLastRefreshedAt(), LocalDateTime.now()).toSeconds() <= maxStalenessSeconds;
+    }
+
+    private static long rowCount(RollupTable rollup) {
+        return rollup.getRowCount() != null ? rollup.getRowCount() : Long.MAX_VALUE;
+    }
+
+    private synchronized void reload() {
+        active = repository.findByEnabledTrue();
+    }
+
+    private void checkAll() {
+        try {
+            long now = System.nanoTime();
+            for (RollupTable rollup : active) {
+                Long due = nextRefreshNanos.computeIfAbsent(rollup.getId(), id -> firstRefresh(rollup, now));
+                if (now - due >= 0 && refreshing.add(rollup.getId())) {
+                    refreshers.submit(() -> {
+                        try {
+                            refresh(rollup.getId());
+                        } finally {
+                            nextRefreshNanos.put(rollup.getId(), System.nanoTime() + TimeUnit.SECONDS.toNanos(
+                                interval(rollup)));
+                            refreshing.remove(rollup.getId());
+                        }
+                    });
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to schedule rollup refresh: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 重启后按上次刷新时间继续原来的刷新节奏
+     */
+    private long firstRefresh(RollupTable rollup, long now) {
+        if (rollup.getLastRefreshedAt() == null) {
+            return now;
+        }
+        long elapsed = Duration.between(rollup.getLastRefreshedAt(), LocalDateTime.now()).toSeconds();
+        return now + TimeUnit.SECONDS.toNanos(Math.max(0, interval(rollup) - elapsed));
+    }
+
+    private int interval(RollupTable rollup) {
+        return rollup.getRefreshIntervalSeconds() != null ? rollup.getRefreshIntervalSeconds()
+            : defaultRefreshIntervalSeconds;
+    }
+
+    private void refresh(String rollupId) {
+        RollupTable rollup = repository.findById(rollupId).orElse(null);
+        if (rollup == null || !Boolean.TRUE.equals(rollup.getEnabled())) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try {
+            DatabaseConnection connection = connectionRepository.findById(rollup.getConnectionId()).orElse(null);
+            if (connection == null) {
+                return;
+            }
+            JdbcTemplate template = dataSourceRegistry.getJdbcTemplate(connection);
+            try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
+                String watermark = null;
+                if (rollup.getWatermarkColumn() != null) {
+                    watermark = template.queryForObject("SELECT CAST(MAX(" + AggregatePlan.quote(rollup.getWatermarkColumn())
+                        + ") AS CHAR) FROM " + AggregatePlan.quote(rollup.getSourceTable()), String.class);
+                }
+                String lastWatermark = rollup.getLastWatermark();
+                boolean full = rollup.getWatermarkColumn() == null || lastWatermark == null
+                    || !tableExists(template, rollup.getTableName());
+                if (lastWatermark != null && (full || !lastWatermark.equals(watermark))) {
+                    // The rollup table and its watermark live in different databases. Forget the watermark
+                    // until both are updated, so a refresh that dies in between is followed by a rebuild
+                    // instead of appending the same rows again
+                    updateState(rollupId, current -> current.setLastWatermark(null));
+                }
+                String mode;
+                if (full) {
+                    rebuild(template, connection, rollup, RollupPlan.sourceSelect(rollup, watermark != null
+                        ? AggregatePlan.quote(rollup.getWatermarkColumn()) + " <= ?" : null),
+                        watermark != null ? new Object[] {watermark} : new Object[0]);
+                    incrementsSinceCompaction.remove(rollupId);
+                    mode = "rebuild";
+                } else if (watermark != null && !watermark.equals(lastWatermark)) {
+                    String column = AggregatePlan.quote(rollup.getWatermarkColumn());
+                    execute(template, connection, "INSERT INTO " + AggregatePlan.quote(rollup.getTableName()) + " "
+                        + RollupPlan.sourceSelect(rollup, column + " > ? AND " + column + " <= ?"),
+                        lastWatermark, watermark);
+                    if (incrementsSinceCompaction.merge(rollupId, 1, Integer::sum) >= compactEveryRefreshes) {
+                        rebuild(template, connection, rollup, RollupPlan.compactSelect(rollup));
+                        incrementsSinceCompaction.remove(rollupId);
+                        mode = "increment+compact";
+                    } else {
+                        mode = "increment";
+                    }
+                } else {
+                    mode = "unchanged";
+                }
+                Long rowCount = template.queryForObject(
+                    "SELECT COUNT(*) FROM " + AggregatePlan.quote(rollup.getTableName()), Long.class);
+                String newWatermark = watermark;
+                updateState(rollupId, current -> {
+                    current.setStatus(RollupTable.STATUS_ACTIVE);
+                    current.setLastWatermark(newWatermark);
+                    current.setRowCount(rowCount);
+                    current.setLastRefreshedAt(LocalDateTime.now());
+                    current.setLastError(null);
+                });
+                if (!"unchanged".equals(mode)) {
+                    // Results read from the old rollup rows may still be in the result cache
+                    queryResultCache.invalidateConnection(connection.getId());
+                }
+                logger.info("Refreshed rollup {} from {} ({}): {} rows, watermark {}, {} ms", rollup.getTableName(),
+                    rollup.getSourceTable(), mode, rowCount, watermark, System.currentTimeMillis() - started);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to refresh rollup {}: {}", rollup.getTableName(), e.getMessage());
+            updateState(rollupId, current -> {
+                if (!RollupTable.STATUS_PENDING.equals(current.getStatus())) {
+                    current.setStatus(RollupTable.STATUS_FAILED);
+                }
+                current.setLastError(e.getMessage());
+            });
+        }
+    }
+
+    /**
+     * 在临时表中建好后原子替换，刷新期间查询仍读取旧表
+     */
+    private void rebuild(JdbcTemplate template, DatabaseConnection connection, RollupTable rollup,
+                         String select, Object... args) {
+        String table = AggregatePlan.quote(rollup.getTableName());
+        String building = AggregatePlan.quote(rollup.getTableName() + "__new");
+        String retired = AggregatePlan.quote(rollup.getTableName() + "__old");
+        execute(template, connection, "DROP TABLE IF EXISTS " + building);
+        execute(template, connection, "CREATE TABLE " + building + " AS " + select, args);
+        if (tableExists(template, rollup.getTableName())) {
+            execute(template, connection, "RENAME TABLE " + table + " TO " + retired + ", " + building + " TO " + table);
+            execute(template, connection, "DROP TABLE " + retired);
+        } else {
+            execute(template, connection, "RENAME TABLE " + building + " TO " + table);
+        }
+    }
+
+    private void execute(JdbcTemplate template, DatabaseConnection connection, String sql, Object... args) {
+        try (QueryRegistry.TrackedQuery query = queryRegistry.register(
+                connection, sql, QueryRegistry.SOURCE_ROLLUP, statementTimeoutSeconds)) {
+            template.update(query.statementCreator(args));
+        }
+    }
+
+    private static boolean tableExists(JdbcTemplate template, String tableName) {
+        Integer count = template.queryForObject("SELECT COUNT(*) FROM information_schema.TABLES "
+            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?", Integer.class, tableName);
+        return count != null && count > 0;
+    }
+
+    /**
+     * 在最新的持久化状态上修改，避免覆盖刷新期间管理接口做的修改
+     */
+    private RollupTable updateState(String rollupId, Consumer<RollupTable> change) {
+        RollupTable saved = repository.findById(rollupId).map(current -> {
+            change.accept(current);
+            return repository.save(current);
+        }).orElse(null);
+        reload();
+        return saved;
+    }
+
+    private String physicalName(String sourceTable, String id) {
+        String base = sourceTable.toLowerCase(Locale.ROOT);
+        if (base.length() > 30) {
+            base = base.substring(0, 30);
+        }
+        return tablePrefix + base + "_" + id.replace("-", "").substring(0, 8);
+    }
+
+    private Optional<RollupTable> findRollup(String connectionId, String rollupId) {
+        return repository.findById(rollupId).filter(rollup -> connectionId.equals(rollup.getConnectionId()));
+    }
+}
@@ -1,9 +1,14 @@
 package com.chatbi.service;
 
+import com.chatbi.model.ColumnProfile;
 import com.chatbi.model.DatabaseConnection;
+import com.chatbi.repository.ColumnProfileRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
@@ -12,17 +17,87 @@ import java.util.*;
 @Service
 public class SchemaMetadataBuilder {
     private static final Logger logger = LoggerFactory.getLogger(SchemaMetadataBuilder.class);
-    private static final int SAMPLE_ROWS_PER_TABLE = 5;
+    
+    private static final String TABLES_SQL = """
+        SELECT table_name AS table_name, table_comment AS comment
+        FROM information_schema.tables
+        WHERE table_schema = DATABASE()%s
+        ORDER BY table_name
+    """;
+    
+    private static final String COLUMNS_SQL = """
+        SELECT table_name AS table_name, column_name AS name, column_type AS type, is_nullable AS nullable,
+               column_key AS `key`, column_default AS `default`, extra AS extra, column_comment AS comment
+        FROM information_schema.columns
+        WHERE table_schema = DATABASE()%s
+        ORDER BY table_name, ordinal_position
+    """;
+    
+    private static final String STATISTICS_SQL = """
+        SELECT table_name AS table_name, index_name AS index_name, non_unique AS non_unique,
+               column_name AS column_name
+        FROM information_schema.statistics
+        WHERE table_schema = DATABASE()%s
+        ORDER BY table_name, index_name, seq_in_index
+    """;
+    
+    private static final String FOREIGN_KEYS_SQL = """
+        SELECT table_name AS table_name, constraint_name AS constraint_name, column_name AS column_name,
+               referenced_table_name AS referenced_table, referenced_column_name AS referenced_column
+        FROM information_schema.key_column_usage
+        WHERE table_schema = DATABASE() AND referenced_table_name IS NOT NULL%s
+        ORDER BY table_name, constraint_name, ordinal_position
+    """;
     
     @Autowired
     private DatabaseManager databaseManager;
     
     @Autowired
     private DatabaseConnectionService databaseConnectionService;
+    
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+    
+    @Autowired
+    private SchemaMetadataCache schemaMetadataCache;
+    
+    @Autowired
+    private ColumnProfileRepository columnProfileRepository;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${chatbi.rollup.table-prefix:chatbi_rollup_}")
+    private String rollupTablePrefix;
 
+    /**
+     * 连接的表结构元数据，优先取自缓存；返回结果中的 cache 项为缓存版本和年龄，供调试信息展示
+     */
     public Map<String, Object> buildDatabaseMetadata(DatabaseConnection databaseConnection) {
-        List<String> tables = databaseManager.getAllTables(databaseConnection);
-        
+        SchemaMetadataCache.Snapshot snapshot =
+            schemaMetadataCache.get(databaseConnection, () -> loadDatabaseMetadata(databaseConnection));
+        Map<String, Object> metadata = new HashMap<>(snapshot.metadata());
+        Map<String, Object> cache = snapshot.describe();
+        if (snapshot.metadata().get("stale_tables") instanceof List<?> staleTables && !staleTables.isEmpty()) {
+            cache.put("stale_tables", staleTables);
+        }
+        metadata.put("cache", cache);
+        return metadata;
+    }
+
+    /**
+     * 丢弃缓存并立即重新构建，返回新的缓存状态
+     */
+    public Map<String, Object> refreshDatabaseMetadata(DatabaseConnection databaseConnection) {
+        schemaMetadataCache.invalidate(databaseConnection != null ? databaseConnection.getId() : null);
+        Map<String, Object> metadata = buildDatabaseMetadata(databaseConnection);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> info = new LinkedHashMap<>((Map<String, Object>) metadata.get("cache"));
+        info.put("table_count", ((Map<?, ?>) metadata.get("tables")).size());
+        return info;
+    }
+
+    private Map<String, Object> loadDatabaseMetadata(DatabaseConnection databaseConnection) {
         Map<String, Object> metadata = new HashMap<>();
         
         // Database info
@@ -38,107 +113,255 @@ public class SchemaMetadataBuilder {
         metadata.put("db", dbInfo);
         
         // Tables metadata
-        Map<String, Object> tablesMetadata = new HashMap<>();
-        for (String tableName : tables) {
-            try {
-                Map<String, Object> tableMetadata = buildTableMetadata(tableName, databaseConnection);
-                tablesMetadata.put(tableName, tableMetadata);
-            } catch (Exception e) {
-                logger.warn("Failed to build metadata for table {}: {}", tableName, e.getMessage());
-            }
-        }
+        long started = System.currentTimeMillis();
+        Map<String, Object> tablesMetadata = loadTablesMetadata(databaseConnection, null);
+        long schemaMs = System.currentTimeMillis() - started;
+        List<String> staleTables = addProfiles(tablesMetadata, databaseConnection);
+        addPromptFragments(tablesMetadata);
         metadata.put("tables", tablesMetadata);
+        metadata.put("stale_tables", staleTables);
+        logger.info("Loaded metadata of {} tables ({} stale): information_schema in {} ms, total {} ms",
+            tablesMetadata.size(), staleTables.size(), schemaMs, System.currentTimeMillis() - started);
         
         return metadata;
     }
 
-    private Map<String, Object> buildTableMetadata(String tableName, DatabaseConnection databaseConnection) {
-        Map<String, Object> tableMetadata = new HashMap<>();
-        
-        // Get table comment
-        String tableComment = getTableComment(tableName, databaseConnection);
-        tableMetadata.put("comment", tableComment);
-        
-        // Get columns with comments
-        List<Map<String, Object>> columns = getColumnsWithComments(tableName, databaseConnection);
-        
-        // Get sample rows
-        List<Map<String, Object>> sampleRows = getSampleRows(tableName, SAMPLE_ROWS_PER_TABLE, databaseConnection);
-        
-        // Extract sample values for each column
-        Map<String, List<Object>> columnSamples = new HashMap<>();
-        for (Map<String, Object> column : columns) {
-            String columnName = (String) column.get("name");
-            columnSamples.put(columnName, new ArrayList<>());
+    /**
+     * 只重新加载变化的表（含字段画像和提示词片段）并替换缓存中的对应部分，其余表原样保留。
+     * 缓存中没有该连接的元数据时不做任何事（下次使用时整体构建）；期间缓存被重建或失效、无法替换时返回false。
+     */
+    public boolean refreshTables(DatabaseConnection databaseConnection, Collection<String> changed,
+                                 Collection<String> removed) {
+        SchemaMetadataCache.Snapshot current = schemaMetadataCache.cached(databaseConnection);
+        if (current == null) {
+            return true;
         }
+        long started = System.currentTimeMillis();
+        Map<String, Object> reloaded = changed.isEmpty()
+            ? new LinkedHashMap<>() : loadTablesMetadata(databaseConnection, changed);
+        List<String> reloadedStale = addProfiles(reloaded, databaseConnection);
+        addPromptFragments(reloaded);
         
-        for (Map<String, Object> row : sampleRows) {
-            for (Map<String, Object> column : columns) {
-                String columnName = (String) column.get("name");
-                if (row.containsKey(columnName)) {
-                    Object value = row.get(columnName);
-                    List<Object> samples = columnSamples.get(columnName);
-                    if (!samples.contains(value) && samples.size() < 5) {
-                        samples.add(value);
-                    }
+        Map<String, Object> tablesMetadata = new LinkedHashMap<>(tablesOf(current.metadata()));
+        // A changed table that no longer loads was dropped or renamed in between
+        tablesMetadata.keySet().removeAll(changed);
+        tablesMetadata.keySet().removeAll(removed);
+        tablesMetadata.putAll(reloaded);
+        List<String> staleTables = new ArrayList<>();
+        if (current.metadata().get("stale_tables") instanceof List<?> previous) {
+            for (Object tableName : previous) {
+                if (tablesMetadata.containsKey(tableName) && !reloaded.containsKey(tableName)) {
+                    staleTables.add((String) tableName);
                 }
             }
         }
+        staleTables.addAll(reloadedStale);
         
-        // Add samples to columns
-        for (Map<String, Object> column : columns) {
-            String columnName = (String) column.get("name");
-            column.put("samples", columnSamples.get(columnName));
+        Map<String, Object> metadata = new HashMap<>(current.metadata());
+        metadata.put("tables", tablesMetadata);
+        metadata.put("stale_tables", staleTables);
+        long buildMs = System.currentTimeMillis() - started;
+        boolean replaced = schemaMetadataCache.replace(databaseConnection, current.version(), metadata, buildMs);
+        logger.info("Refreshed metadata of {} changed and {} removed tables in {} ms{}", reloaded.size(),
+            removed.size(), buildMs, replaced ? "" : " (cache changed meanwhile, discarded)");
+        return replaced;
+    }
+
+    /**
+     * 合并多个连接的元数据；同名表以排在前面的连接为准，与跨库查询归属表的规则一致
+     */
+    public Map<String, Object> buildFederatedMetadata(List<DatabaseConnection> databaseConnections) {
+        Map<String, Object> metadata = new HashMap<>();
+        Map<String, Object> tablesMetadata = new LinkedHashMap<>();
+        List<String> names = new ArrayList<>();
+        Map<String, Object> cache = new LinkedHashMap<>();
+        for (DatabaseConnection databaseConnection : databaseConnections) {
+            Map<String, Object> single = buildDatabaseMetadata(databaseConnection);
+            @SuppressWarnings("unchecked")
+            Map<String, Object> tables = (Map<String, Object>) single.get("tables");
+            tables.forEach(tablesMetadata::putIfAbsent);
+            names.add(databaseConnection.getDatabaseName());
+            cache.put(databaseConnection.getId(), single.get("cache"));
         }
-        
-        tableMetadata.put("columns", columns);
-        tableMetadata.put("samples", sampleRows);
-        
-        return tableMetadata;
+        Map<String, String> dbInfo = new HashMap<>();
+        dbInfo.put("host", "federated");
+        dbInfo.put("name", String.join(",", names));
+        metadata.put("db", dbInfo);
+        metadata.put("tables", tablesMetadata);
+        metadata.put("cache", cache);
+        return metadata;
     }
 
-    private String getTableComment(String tableName, DatabaseConnection databaseConnection) {
-        try {
-            String sql = """
-                SELECT table_comment FROM information_schema.tables 
-                WHERE table_schema=? AND table_name=?
-            """;
+    /**
+     * 用四条集合查询从 information_schema 读取整个库（only 不为null时只读这些表）的表注释、字段、索引和外键，
+     * 在内存中按表归组；查询次数与表的数量无关。汇总表（chatbi.rollup.table-prefix）是内部实现，不出现在元数据中。
+     */
+    private Map<String, Object> loadTablesMetadata(DatabaseConnection databaseConnection, Collection<String> only) {
+        Map<String, Object> tablesMetadata = new LinkedHashMap<>();
+        String filter = only != null
+            ? " AND table_name IN (" + String.join(", ", Collections.nCopies(only.size(), "?")) + ")" : "";
+        Object[] args = only != null ? only.toArray() : new Object[0];
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(databaseConnection)) {
+            JdbcTemplate template = databaseManager.getReadTemplate(databaseConnection);
+            for (Map<String, Object> row : template.queryForList(TABLES_SQL.formatted(filter), args)) {
+                String tableName = (String) row.get("table_name");
+                if (tableName.toLowerCase(Locale.ROOT).startsWith(rollupTablePrefix)) {
+                    continue;
+                }
+                Map<String, Object> tableMetadata = new HashMap<>();
+                tableMetadata.put("comment", row.get("comment") != null ? row.get("comment") : "");
+                tableMetadata.put("columns", new ArrayList<Map<String, Object>>());
+                tableMetadata.put("primary_key", new ArrayList<String>());
+                tableMetadata.put("indexes", new ArrayList<Map<String, Object>>());
+                tableMetadata.put("foreign_keys", new ArrayList<Map<String, Object>>());
+                tablesMetadata.put(tableName, tableMetadata);
+            }
+            
+            for (Map<String, Object> row : template.queryForList(COLUMNS_SQL.formatted(filter), args)) {
+                Map<String, Object> tableMetadata = tableOf(tablesMetadata, row.remove("table_name"));
+                if (tableMetadata != null) {
+                    columnsOf(tableMetadata, "columns").add(new LinkedHashMap<>(row));
+                }
+            }
             
-            String dbName = databaseConnection != null ? databaseConnection.getDatabaseName() : "test_db";
-            return databaseManager.getJdbcTemplate().queryForObject(sql, String.class, dbName, tableName);
+            // Keys and indexes only enrich the prompt; a failure here must not drop the tables
+            try {
+                Map<String, Map<String, Object>> indexes = new LinkedHashMap<>();
+                for (Map<String, Object> row : template.queryForList(STATISTICS_SQL.formatted(filter), args)) {
+                    Object tableName = row.get("table_name");
+                    Map<String, Object> tableMetadata = tableOf(tablesMetadata, tableName);
+                    if (tableMetadata == null) {
+                        continue;
+                    }
+                    String indexName = (String) row.get("index_name");
+                    String columnName = (String) row.get("column_name");
+                    if ("PRIMARY".equals(indexName)) {
+                        namesOf(tableMetadata, "primary_key").add(columnName);
+                        continue;
+                    }
+                    Map<String, Object> index = indexes.computeIfAbsent(tableName + "." + indexName, key -> {
+                        Map<String, Object> created = new LinkedHashMap<>();
+                        created.put("name", indexName);
+                        created.put("unique", ((Number) row.get("non_unique")).intValue() == 0);
+                        created.put("columns", new ArrayList<String>());
+                        columnsOf(tableMetadata, "indexes").add(created);
+                        return created;
+                    });
+                    namesOf(index, "columns").add(columnName);
+                }
+                
+                Map<String, Map<String, Object>> foreignKeys = new LinkedHashMap<>();
+                for (Map<String, Object> row : template.queryForList(FOREIGN_KEYS_SQL.formatted(filter), args)) {
+                    Object tableName = row.get("table_name");
+                    Map<String, Object> tableMetadata = tableOf(tablesMetadata, tableName);
+                    if (tableMetadata == null) {
+                        continue;
+                    }
+                    String constraintName = (String) row.get("constraint_name");
+                    Map<String, Object> foreignKey = foreignKeys.computeIfAbsent(tableName + "." + constraintName, key -> {
+                        Map<String, Object> created = new LinkedHashMap<>();
+                        created.put("name", constraintName);
+                        created.put("columns", new ArrayList<String>());
+                        created.put("referenced_table", row.get("referenced_table"));
+                        created.put("referenced_columns", new ArrayList<String>());
+                        columnsOf(tableMetadata, "foreign_keys").add(created);
+                        return created;
+                    });
+                    namesOf(foreignKey, "columns").add((String) row.get("column_name"));
+                    namesOf(foreignKey, "referenced_columns").add((String) row.get("referenced_column"));
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to load keys and indexes: {}", e.getMessage());
+            }
         } catch (Exception e) {
-            logger.debug("Failed to get table comment for {}: {}", tableName, e.getMessage());
-            return "";
+            logger.error("Error loading tables from information_schema: {}", e.getMessage(), e);
+            return new LinkedHashMap<>();
         }
+        return tablesMetadata;
     }
 
-    private List<Map<String, Object>> getColumnsWithComments(String tableName, DatabaseConnection databaseConnection) {
-        try {
-            String sql = """
-                SELECT column_name, column_type, is_nullable, column_key, column_default, extra, column_comment 
-                FROM information_schema.columns 
-                WHERE table_schema=? AND table_name=? 
-                ORDER BY ordinal_position
-            """;
-            
-            String dbName = databaseConnection != null ? databaseConnection.getDatabaseName() : "test_db";
-            return databaseManager.getJdbcTemplate().queryForList(sql, dbName, tableName);
-        } catch (Exception e) {
-            logger.debug("Failed to get columns for {}: {}", tableName, e.getMessage());
-            return new ArrayList<>();
+    /**
+     * 把后台统计的字段画像（ColumnProfiler）填入元数据：样例值、空值比例、最值、近似不同值数和高频值。
+     * 只读取系统库中的画像，不查询业务表；还没有画像的表列为 stale，返回其表名。
+     */
+    private List<String> addProfiles(Map<String, Object> tablesMetadata, DatabaseConnection databaseConnection) {
+        Map<String, Map<String, ColumnProfile>> profiles = new HashMap<>();
+        if (databaseConnection != null && databaseConnection.getId() != null && !tablesMetadata.isEmpty()) {
+            try {
+                for (ColumnProfile profile : columnProfileRepository.findByConnectionId(databaseConnection.getId())) {
+                    if (tablesMetadata.containsKey(profile.getTableName())) {
+                        profiles.computeIfAbsent(profile.getTableName(), table -> new HashMap<>())
+                            .put(profile.getColumnName(), profile);
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to read column profiles: {}", e.getMessage());
+            }
+        }
+        
+        List<String> staleTables = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : tablesMetadata.entrySet()) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> tableMetadata = (Map<String, Object>) entry.getValue();
+            Map<String, ColumnProfile> tableProfiles = profiles.get(entry.getKey());
+            if (tableProfiles == null) {
+                staleTables.add(entry.getKey());
+                tableProfiles = Map.of();
+            }
+            for (Map<String, Object> column : columnsOf(tableMetadata, "columns")) {
+                ColumnProfile profile = tableProfiles.get((String) column.get("name"));
+                if (profile == null) {
+                    column.put("samples", new ArrayList<>());
+                    continue;
+                }
+                tableMetadata.putIfAbsent("profiled_at", profile.getProfiledAt());
+                column.put("samples", readJson(profile.getSampleValues(), new TypeReference<List<Object>>() {}));
+                column.put("top_values",
+                    readJson(profile.getTopValues(), new TypeReference<List<Map<String, Object>>>() {}));
+                column.put("complete_values", Boolean.TRUE.equals(profile.getCompleteValues()));
+                column.put("sampled", Boolean.TRUE.equals(profile.getSampled()));
+                column.put("null_ratio", profile.getNullRatio());
+                column.put("distinct", profile.getDistinctCount());
+                column.put("min", profile.getMinValue());
+                column.put("max", profile.getMaxValue());
+            }
         }
+        return staleTables;
     }
 
-    private List<Map<String, Object>> getSampleRows(String tableName, int limit, DatabaseConnection databaseConnection) {
+    private <T> List<T> readJson(String json, TypeReference<List<T>> type) {
+        if (json == null || json.isBlank()) {
+            return new ArrayList<>();
+        }
         try {
-            String sql = "SELECT * FROM " + tableName + " LIMIT " + limit;
-            return databaseManager.getJdbcTemplate().queryForList(sql);
+            return objectMapper.readValue(json, type);
         } catch (Exception e) {
-            logger.debug("Failed to get sample rows for {}: {}", tableName, e.getMessage());
+            logger.debug("Skipping unreadable column profile value: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> tablesOf(Map<String, Object> metadata) {
+        return metadata != null && metadata.get("tables") instanceof Map<?, ?> tables
+            ? (Map<String, Object>) tables : Map.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> tableOf(Map<String, Object> tablesMetadata, Object tableName) {
+        return (Map<String, Object>) tablesMetadata.get((String) tableName);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> columnsOf(Map<String, Object> metadata, String key) {
+        return (List<Map<String, Object>>) metadata.get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> namesOf(Map<String, Object> metadata, String key) {
+        return (List<String>) metadata.get(key);
+    }
+
     public String summarizeMetadataForPrompt(Map<String, Object> metadata) {
         try {
             StringBuilder result = new StringBuilder();
@@ -147,66 +370,10 @@ public class SchemaMetadataBuilder {
             Map<String, Object> tables = (Map<String, Object>) metadata.get("tables");
             
             for (Map.Entry<String, Object> tableEntry : tables.entrySet()) {
-                String tableName = tableEntry.getKey();
                 @SuppressWarnings("unchecked")
                 Map<String, Object> table = (Map<String, Object>) tableEntry.getValue();
-                
-                String comment = (String) table.get("comment");
-                if (comment == null || comment.trim().isEmpty()) {
-                    comment = inferTableMeaning(tableName);
-                }
-                if (comment.length() > 60) {
-                    comment = comment.substring(0, 57) + "...";
-                }
-                
-                result.append("- 表 ").append(tableName).append(": ").append(comment).append("\n");
-                
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> columns = (List<Map<String, Object>>) table.get("columns");
-                if (columns != null && !columns.isEmpty()) {
-                    List<String> columnLines = new ArrayList<>();
-                    for (int i = 0; i < Math.min(columns.size(), 12); i++) {
-                        Map<String, Object> column = columns.get(i);
-                        String columnName = (String) column.get("name");
-                        String columnType = (String) column.get("type");
-                        String columnComment = (String) column.get("comment");
-                        if (columnComment == null || columnComment.trim().isEmpty()) {
-                            columnComment = inferColumnMeaning(columnName);
-                        }
-                        if (columnComment.length() > 40) {
-                            columnComment = columnComment.substring(0, 37) + "...";
-                        }
-                        
-                        @SuppressWarnings("unchecked")
-                        List<Object> samples = (List<Object>) column.get("samples");
-                        String samplePart = "";
-                        if (samples != null && !samples.isEmpty()) {
-                            String preview = samples.stream()
-                                .limit(2)
-                                .map(Object::toString)
-                                .reduce((a, b) -> a + ", " + b)
-                                .orElse("");
-                            samplePart = "，样例: " + preview;
-                        }
-                        
-                        columnLines.add(columnName + "(" + columnType + "): " + columnComment + samplePart);
-                    }
-                    if (!columnLines.isEmpty()) {
-                        result.append("  字段: ").append(String.join("; ", columnLines)).append("\n");
-                    }
-                }
-                
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> samples = (List<Map<String, Object>>) table.get("samples");
-                if (samples != null && !samples.isEmpty()) {
-                    Map<String, Object> firstSample = samples.get(0);
-                    String sampleStr = firstSample.entrySet().stream()
-                        .limit(3)
-                        .map(entry -> entry.getKey() + "=" + entry.getValue())
-                        .reduce((a, b) -> a + ", " + b)
-                        .orElse("");
-                    result.append("  样例: ").append(sampleStr).append("\n");
-                }
+                result.append(table.get("prompt") instanceof String fragment
+                    ? fragment : summarizeTable(tableEntry.getKey(), table));
             }
             
             return result.toString();
@@ -216,6 +383,119 @@ public class SchemaMetadataBuilder {
         }
     }
 
+    /**
+     * 每张表的提示词片段随元数据一起缓存，增量刷新时只重新生成变化的表
+     */
+    private void addPromptFragments(Map<String, Object> tablesMetadata) {
+        for (Map.Entry<String, Object> entry : tablesMetadata.entrySet()) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> table = (Map<String, Object>) entry.getValue();
+            try {
+                table.put("prompt", summarizeTable(entry.getKey(), table));
+            } catch (Exception e) {
+                logger.warn("Failed to summarize table {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    private String summarizeTable(String tableName, Map<String, Object> table) {
+        StringBuilder result = new StringBuilder();
+        
+        String comment = (String) table.get("comment");
+        if (comment == null || comment.trim().isEmpty()) {
+            comment = inferTableMeaning(tableName);
+        }
+        if (comment.length() > 60) {
+            comment = comment.substring(0, 57) + "...";
+        }
+        
+        result.append("- 表 ").append(tableName).append(": ").append(comment).append("\n");
+        
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> columns = (List<Map<String, Object>>) table.get("columns");
+        if (columns != null && !columns.isEmpty()) {
+            List<String> columnLines = new ArrayList<>();
+            for (int i = 0; i < Math.min(columns.size(), 12); i++) {
+                Map<String, Object> column = columns.get(i);
+                String columnName = (String) column.get("name");
+                String columnType = (String) column.get("type");
+                String columnComment = (String) column.get("comment");
+                if (columnComment == null || columnComment.trim().isEmpty()) {
+                    columnComment = inferColumnMeaning(columnName);
+                }
+                if (columnComment.length() > 40) {
+                    columnComment = columnComment.substring(0, 37) + "...";
+                }
+                
+                columnLines.add(columnName + "(" + columnType + "): " + columnComment + profilePart(column));
+            }
+            if (!columnLines.isEmpty()) {
+                result.append("  字段: ").append(String.join("; ", columnLines)).append("\n");
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        List<String> primaryKey = (List<String>) table.get("primary_key");
+        if (primaryKey != null && !primaryKey.isEmpty()) {
+            result.append("  主键: ").append(String.join(", ", primaryKey)).append("\n");
+        }
+        
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> foreignKeys = (List<Map<String, Object>>) table.get("foreign_keys");
+        if (foreignKeys != null && !foreignKeys.isEmpty()) {
+            List<String> keyLines = new ArrayList<>();
+            for (Map<String, Object> foreignKey : foreignKeys) {
+                keyLines.add(String.join(", ", namesOf(foreignKey, "columns")) + " -> "
+                    + foreignKey.get("referenced_table") + "("
+                    + String.join(", ", namesOf(foreignKey, "referenced_columns")) + ")");
+            }
+            result.append("  外键: ").append(String.join("; ", keyLines)).append("\n");
+        }
+        
+        return result.toString();
+    }
+
+    /**
+     * 字段画像的摘要：画像含全部取值的字段列出这些值（便于写 WHERE 条件），否则给出样例、取值范围和近似不同值数。
+     * 扫描在 max-rows 处截止时，这些统计都标为样本中的结果
+     */
+    private String profilePart(Map<String, Object> column) {
+        StringBuilder part = new StringBuilder();
+        Object distinct = column.get("distinct");
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> topValues = (List<Map<String, Object>>) column.get("top_values");
+        @SuppressWarnings("unchecked")
+        List<Object> samples = (List<Object>) column.get("samples");
+        boolean sampled = Boolean.TRUE.equals(column.get("sampled"));
+        boolean complete = Boolean.TRUE.equals(column.get("complete_values")) && topValues != null
+            && !topValues.isEmpty();
+        if (complete) {
+            List<String> values = new ArrayList<>();
+            for (Map<String, Object> value : topValues) {
+                values.add(String.valueOf(value.get("value")));
+            }
+            part.append(sampled ? "，样本中的取值: " : "，取值: ").append(String.join(", ", values));
+        } else if (samples != null && !samples.isEmpty()) {
+            String preview = samples.stream()
+                .limit(2)
+                .map(Object::toString)
+                .reduce((a, b) -> a + ", " + b)
+                .orElse("");
+            part.append("，样例: ").append(preview);
+            if (column.get("min") != null && column.get("max") != null) {
+                part.append(sampled ? "，样本范围: " : "，范围: ")
+                    .append(column.get("min")).append(" ~ ").append(column.get("max"));
+            }
+        }
+        if (!complete && distinct instanceof Number count && count.longValue() > 0) {
+            part.append(sampled ? "，样本中约" : "，约").append(count.longValue()).append("个不同值");
+        }
+        if (column.get("null_ratio") instanceof Number ratio && ratio.doubleValue() >= 0.01) {
+            part.append("，空值").append(Math.round(ratio.doubleValue() * 100)).append("%");
+        }
+        return part.toString();
+    }
+
     private String inferTableMeaning(String tableName) {
         String name = tableName.toLowerCase();
         if (name.contains("user")) {
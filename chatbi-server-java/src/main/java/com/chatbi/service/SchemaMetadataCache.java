@@ -0,0 +1,186 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 按数据库连接缓存提示词用的表结构元数据。
+ * 过期（ttl-seconds）或被显式失效后，下一次请求重新构建；同一连接同时只有一次构建，其他请求等待并共用其结果。
+ * 每次构建得到递增的版本号。构建期间发生失效时，结果只返回给本次的请求，不写入缓存。
+ * 有表还没有字段画像（stale_tables）时，结果只缓存 stale-ttl-seconds。
+ * 另外为每个连接维护 schema 版本号：表结构发生变化或缓存被显式失效时递增，下游缓存可以把它作为键的一部分。
+ */
+@Service
+public class SchemaMetadataCache {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMetadataCache.class);
+
+    private static final String DEFAULT_CONNECTION_KEY = "__default__";
+
+    @Value("${chatbi.metadata-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chatbi.metadata-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${chatbi.metadata-cache.stale-ttl-seconds:30}")
+    private long staleTtlSeconds;
+
+    private final Map<String, Snapshot> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Snapshot>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> schemaVersions = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * 一次构建的结果；hit 表示本次请求直接取自缓存
+     */
+    public record Snapshot(Map<String, Object> metadata, long version, long loadedAt, long buildMs, boolean hit,
+                           long schemaVersion) {
+        Snapshot asHit() {
+            return new Snapshot(metadata, version, loadedAt, buildMs, true, schemaVersion);
+        }
+
+        long ageMs() {
+            return System.currentTimeMillis() - loadedAt;
+        }
+
+        /**
+         * 调试信息中展示的缓存状态
+         */
+        public Map<String, Object> describe() {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("version", version);
+            info.put("hit", hit);
+            info.put("age_ms", ageMs());
+            info.put("build_ms", buildMs);
+            info.put("schema_version", schemaVersion);
+            return info;
+        }
+    }
+
+    public Snapshot get(DatabaseConnection connection, Supplier<Map<String, Object>> loader) {
+        String key = key(connection);
+        Snapshot cached = entries.get(key);
+        if (enabled && cached != null && cached.ageMs() < ttlMs(cached.metadata())) {
+            return cached.asHit();
+        }
+
+        CompletableFuture<Snapshot> mine = new CompletableFuture<>();
+        CompletableFuture<Snapshot> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            return running.join();
+        }
+        long generation = generation(key).get();
+        long schemaVersion = schemaVersionOf(key).get();
+        try {
+            long started = System.currentTimeMillis();
+            Map<String, Object> metadata = Collections.unmodifiableMap(loader.get());
+            Snapshot built = new Snapshot(metadata, versions.incrementAndGet(), System.currentTimeMillis(),
+                System.currentTimeMillis() - started, false, schemaVersion);
+            // An empty schema usually means the database was unreachable; do not pin it for a whole TTL
+            if (enabled && generation(key).get() == generation && !isEmpty(metadata)) {
+                entries.put(key, built);
+            }
+            logger.info("Built schema metadata for connection {} (version {}) in {} ms", key, built.version(),
+                built.buildMs());
+            mine.complete(built);
+            return built;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * 表结构或注释已变化，丢弃该连接的缓存；正在进行的构建结果不再写入缓存
+     */
+    public void invalidate(String connectionId) {
+        String key = connectionId != null ? connectionId : DEFAULT_CONNECTION_KEY;
+        generation(key).incrementAndGet();
+        schemaVersionOf(key).incrementAndGet();
+        if (entries.remove(key) != null) {
+            logger.info("Invalidated schema metadata for connection {}", key);
+        }
+    }
+
+    /**
+     * 缓存中该连接当前的元数据，不触发构建；没有或已过期时返回null
+     */
+    public Snapshot cached(DatabaseConnection connection) {
+        Snapshot cached = entries.get(key(connection));
+        return enabled && cached != null && cached.ageMs() < ttlMs(cached.metadata()) ? cached : null;
+    }
+
+    /**
+     * 用增量刷新后的元数据替换缓存中的版本 expectedVersion，保留原来的构建时间，TTL 照常计算；
+     * 期间缓存已被重建或失效时不替换并返回false
+     */
+    public boolean replace(DatabaseConnection connection, long expectedVersion, Map<String, Object> metadata,
+                           long buildMs) {
+        String key = key(connection);
+        Map<String, Object> unmodifiable = Collections.unmodifiableMap(metadata);
+        long schemaVersion = schemaVersionOf(key).get();
+        boolean[] replaced = {false};
+        entries.computeIfPresent(key, (k, current) -> {
+            if (current.version() != expectedVersion) {
+                return current;
+            }
+            replaced[0] = true;
+            return new Snapshot(unmodifiable, versions.incrementAndGet(), current.loadedAt(), buildMs, false,
+                schemaVersion);
+        });
+        return replaced[0];
+    }
+
+    /**
+     * 该连接当前的 schema 版本号；进程内单调递增，重启后从0开始
+     */
+    public long schemaVersion(String connectionId) {
+        return schemaVersionOf(connectionId != null ? connectionId : DEFAULT_CONNECTION_KEY).get();
+    }
+
+    /**
+     * 检测到表结构变化，递增 schema 版本；不丢弃缓存，由调用方增量替换变化的表
+     */
+    public long bumpSchemaVersion(String connectionId) {
+        return schemaVersionOf(connectionId != null ? connectionId : DEFAULT_CONNECTION_KEY).incrementAndGet();
+    }
+
+    /**
+     * 有表缺少字段画像时只缓存较短时间，尽快用上后台统计的结果
+     */
+    private long ttlMs(Map<String, Object> metadata) {
+        boolean stale = metadata.get("stale_tables") instanceof List<?> tables && !tables.isEmpty();
+        return (stale ? Math.min(staleTtlSeconds, ttlSeconds) : ttlSeconds) * 1000;
+    }
+
+    private AtomicLong generation(String key) {
+        return generations.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    private AtomicLong schemaVersionOf(String key) {
+        return schemaVersions.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    private static boolean isEmpty(Map<String, Object> metadata) {
+        return metadata.get("tables") instanceof Map<?, ?> tables && tables.isEmpty();
+    }
+
+    private static String key(DatabaseConnection connection) {
+        return connection != null && connection.getId() != null ? connection.getId() : DEFAULT_CONNECTION_KEY;
+    }
+}
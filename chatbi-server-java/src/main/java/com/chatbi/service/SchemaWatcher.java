@@ -0,0 +1,227 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.repository.DatabaseConnectionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 后台检测各连接的表结构变化。
+ * 按间隔用一条查询读取每张表的廉价信号：information_schema.TABLES 的 CREATE_TIME、表注释、UPDATE_TIME，
+ * 以及 information_schema.COLUMNS 上的字段定义校验和。与上一次比较：
+ * 增删表、重建表、字段或注释变化时递增该连接的 schema 版本，并在缓存的元数据中只刷新这些表，不重建整个库；
+ * 变化的表交给 ColumnProfiler 重新统计字段画像（只有 UPDATE_TIME 变化的表遵守其最小间隔）。
+ * 第一次检查只记录基线。
+ */
+@Service
+public class SchemaWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaWatcher.class);
+
+    private static final String SIGNALS_SQL = """
+        SELECT t.table_name AS table_name,
+               CONCAT_WS('|', t.create_time, t.table_comment, c.column_count, c.column_checksum) AS structure,
+               t.update_time AS update_time
+        FROM information_schema.tables t
+        LEFT JOIN (
+            SELECT table_name, COUNT(*) AS column_count,
+                   SUM(CRC32(CONCAT_WS('|', ordinal_position, column_name, column_type, is_nullable, column_key,
+                       IFNULL(column_default, 'NULL'), extra, column_comment))) AS column_checksum
+            FROM information_schema.columns
+            WHERE table_schema = DATABASE()
+            GROUP BY table_name
+        ) c ON c.table_name = t.table_name
+        WHERE t.table_schema = DATABASE()
+    """;
+
+    @Autowired
+    private DatabaseConnectionRepository connectionRepository;
+
+    @Autowired
+    private DataSourceRegistry dataSourceRegistry;
+
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    @Autowired
+    private ConnectionBulkhead connectionBulkhead;
+
+    @Autowired
+    private SchemaMetadataCache schemaMetadataCache;
+
+    @Autowired
+    private SchemaMetadataBuilder schemaMetadataBuilder;
+
+    @Autowired
+    private ColumnProfiler columnProfiler;
+
+    @Value("${chatbi.schema-watch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chatbi.schema-watch.interval-seconds:30}")
+    private int intervalSeconds;
+
+    @Value("${chatbi.rollup.table-prefix:chatbi_rollup_}")
+    private String rollupTablePrefix;
+
+    private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chatbi-schema-watch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService checkers = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("chatbi-schema-check-", 0).factory());
+
+    private record TableSignal(String structure, String updateTime) {
+    }
+
+    private static final class Watch {
+        volatile Map<String, TableSignal> signals;
+        volatile LocalDateTime checkedAt;
+        volatile LocalDateTime changedAt;
+        volatile String lastError;
+        final AtomicBoolean checking = new AtomicBoolean();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::checkAll, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        checkers.shutdownNow();
+    }
+
+    /**
+     * 该连接的 schema 版本与最近一次检查的状态，供管理接口展示
+     */
+    public Map<String, Object> describe(String connectionId) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("schema_version", schemaMetadataCache.schemaVersion(connectionId));
+        info.put("watching", enabled);
+        Watch watch = watches.get(connectionId);
+        if (watch != null) {
+            info.put("table_count", watch.signals != null ? watch.signals.size() : null);
+            info.put("checked_at", watch.checkedAt);
+            info.put("changed_at", watch.changedAt);
+            info.put("last_error", watch.lastError);
+        }
+        return info;
+    }
+
+    private void checkAll() {
+        try {
+            List<DatabaseConnection> connections = connectionRepository.findByIsActiveTrue();
+            Set<String> ids = new LinkedHashSet<>();
+            for (DatabaseConnection connection : connections) {
+                ids.add(connection.getId());
+                Watch watch = watches.computeIfAbsent(connection.getId(), id -> new Watch());
+                if (watch.checking.compareAndSet(false, true)) {
+                    checkers.submit(() -> {
+                        try {
+                            check(connection, watch);
+                        } finally {
+                            watch.checking.set(false);
+                        }
+                    });
+                }
+            }
+            watches.keySet().retainAll(ids);
+        } catch (Exception e) {
+            logger.warn("Failed to schedule schema checks: {}", e.getMessage());
+        }
+    }
+
+    private void check(DatabaseConnection connection, Watch watch) {
+        try {
+            Map<String, TableSignal> current = readSignals(connection);
+            Map<String, TableSignal> previous = watch.signals;
+            watch.signals = current;
+            watch.checkedAt = LocalDateTime.now();
+            watch.lastError = null;
+            if (previous == null) {
+                return;
+            }
+
+            Set<String> structural = new LinkedHashSet<>();
+            Set<String> dataOnly = new LinkedHashSet<>();
+            for (Map.Entry<String, TableSignal> entry : current.entrySet()) {
+                TableSignal before = previous.get(entry.getKey());
+                if (before == null || !Objects.equals(before.structure(), entry.getValue().structure())) {
+                    structural.add(entry.getKey());
+                } else if (!Objects.equals(before.updateTime(), entry.getValue().updateTime())) {
+                    dataOnly.add(entry.getKey());
+                }
+            }
+            Set<String> removed = new LinkedHashSet<>(previous.keySet());
+            removed.removeAll(current.keySet());
+            // Data changes only make the column profiles older; the profiler decides when to redo them
+            columnProfiler.requestProfile(connection.getId(), dataOnly, false);
+            if (structural.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+
+            long version = schemaMetadataCache.bumpSchemaVersion(connection.getId());
+            watch.changedAt = watch.checkedAt;
+            logger.info("Schema of connection {} changed (version {}): changed {}, removed {}",
+                connection.getId(), version, structural, removed);
+            if (!schemaMetadataBuilder.refreshTables(connection, structural, removed)) {
+                // A full build raced with the delta; it may predate the change, so drop it
+                schemaMetadataCache.invalidate(connection.getId());
+            }
+            columnProfiler.requestProfile(connection.getId(), structural, true);
+        } catch (Exception e) {
+            watch.lastError = e.getMessage();
+            logger.warn("Schema check failed for connection {}: {}", connection.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 与元数据构建读取同一数据源，副本延迟时变化只是晚一些被发现
+     */
+    private Map<String, TableSignal> readSignals(DatabaseConnection connection) {
+        Map<String, TableSignal> signals = new HashMap<>();
+        try (ConnectionBulkhead.Permit permit = connectionBulkhead.acquire(connection)) {
+            List<Map<String, Object>> rows = dataSourceRegistry.getJdbcTemplate(replicaRouter.routeRead(connection))
+                .queryForList(SIGNALS_SQL);
+            for (Map<String, Object> row : rows) {
+                String tableName = (String) row.get("table_name");
+                if (tableName.toLowerCase(Locale.ROOT).startsWith(rollupTablePrefix)) {
+                    continue;
+                }
+                Object updateTime = row.get("update_time");
+                signals.put(tableName, new TableSignal(String.valueOf(row.get("structure")),
+                    updateTime != null ? updateTime.toString() : null));
+            }
+        }
+        return signals;
+    }
+}
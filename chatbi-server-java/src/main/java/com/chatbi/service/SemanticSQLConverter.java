@@ -14,7 +14,9 @@ import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -42,11 +44,22 @@ public class SemanticSQLConverter {
     private Map<String, Object> lastDebug;
 
     public SemanticSQL convertToSemanticSQL(String naturalLanguage, DatabaseConnection databaseConnection) {
+        return convert(naturalLanguage, () -> metadataBuilder.buildDatabaseMetadata(databaseConnection));
+    }
+
+    /**
+     * 跨库联合查询：提示中包含所有连接的表，模型可以生成跨连接的JOIN
+     */
+    public SemanticSQL convertToSemanticSQL(String naturalLanguage, List<DatabaseConnection> databaseConnections) {
+        return convert(naturalLanguage, () -> metadataBuilder.buildFederatedMetadata(databaseConnections));
+    }
+
+    private SemanticSQL convert(String naturalLanguage, Supplier<Map<String, Object>> metadataSource) {
         try {
             initializeLlm();
             
             // Build database metadata
-            Map<String, Object> metadata = metadataBuilder.buildDatabaseMetadata(databaseConnection);
+            Map<String, Object> metadata = metadataSource.get();
             String metadataSummary = metadataBuilder.summarizeMetadataForPrompt(metadata);
             
             String systemPrompt = buildSystemPrompt();
@@ -57,13 +70,17 @@ public class SemanticSQLConverter {
             String response = llm.generate(prompt);
             
             // Save debug information
-            lastDebug = Map.of(
+            Map<String, Object> debug = new HashMap<>(Map.of(
                 "provider", "ollama",
                 "base_url", ollamaBaseUrl,
                 "model", ollamaModelName,
                 "prompt", prompt,
                 "raw_response", response
-            );
+            ));
+            if (metadata.get("cache") != null) {
+                debug.put("metadata_cache", metadata.get("cache"));
+            }
+            lastDebug = debug;
             
             // Extract JSON from response
             Matcher matcher = JSON_PATTERN.matcher(response);
@@ -0,0 +1,265 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.DatabaseConnectionGroup;
+import com.chatbi.model.QueryOptions;
+import com.chatbi.model.SQLExecutionResponse;
+import com.chatbi.model.SemanticSQL;
+import com.chatbi.model.ShardResult;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 分片连接组上的 scatter-gather 执行：同一条查询并发发往组内每个分片（各自超时），
+ * 再按语义SQL合并结果——可拆分的聚合改写为部分聚合后合并（aggregate），
+ * 明细查询按 ORDER BY 做多路归并取前 LIMIT 行（top_n），其余情况直接拼接各分片结果（concat）。
+ * 部分分片失败或超时时返回其余分片的结果，并在 shards 中标明每个分片的状态和耗时。
+ */
+@Service
+public class ShardedQueryExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedQueryExecutor.class);
+
+    public static final String MERGE_AGGREGATE = "aggregate";
+    public static final String MERGE_TOP_N = "top_n";
+    public static final String MERGE_CONCAT = "concat";
+
+    @Autowired
+    private DatabaseManager databaseManager;
+
+    @Autowired
+    private DatabaseConnectionGroupService databaseConnectionGroupService;
+
+    @Autowired
+    private MySQLSQLGenerator mysqlSQLGenerator;
+
+    @Value("${chatbi.sharding.shard-timeout-seconds:30}")
+    private int defaultShardTimeoutSeconds;
+
+    /**
+     * 语句超时之外再等待的时间，覆盖排队等待连接许可的时间
+     */
+    @Value("${chatbi.sharding.grace-seconds:5}")
+    private int graceSeconds;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("chatbi-shard-", 0).factory());
+
+    private record ShardCall(DatabaseConnection connection, Future<SQLExecutionResponse> future, long startedNanos) {
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 在组内全部分片上执行SELECT。semanticSQL 为生成该SQL的语义SQL，为空时只能拼接各分片结果
+     */
+    public SQLExecutionResponse execute(String sql, DatabaseConnectionGroup group, SemanticSQL semanticSQL,
+                                        QueryOptions options) {
+        if (!SqlText.isSelect(sql)) {
+            return new SQLExecutionResponse(false, null, "分片连接组只支持执行SELECT查询", 0);
+        }
+        List<DatabaseConnection> shards = databaseConnectionGroupService.getMembers(group);
+        if (shards.isEmpty()) {
+            return new SQLExecutionResponse(false, null, "连接组中没有可用的分片", 0);
+        }
+
+        AggregatePlan plan = semanticSQL != null && AggregatePlan.isAggregate(semanticSQL)
+            ? AggregatePlan.parse(semanticSQL, mysqlSQLGenerator, null) : null;
+        String strategy = plan != null ? MERGE_AGGREGATE
+            : semanticSQL != null && !AggregatePlan.isAggregate(semanticSQL) ? MERGE_TOP_N : MERGE_CONCAT;
+
+        int timeoutSeconds = group.getShardTimeoutSeconds() != null
+            ? group.getShardTimeoutSeconds() : defaultShardTimeoutSeconds;
+        if (options.getTimeoutSeconds() != null) {
+            timeoutSeconds = Math.min(timeoutSeconds, options.getTimeoutSeconds());
+        }
+        QueryOptions shardOptions = QueryOptions.defaults();
+        shardOptions.setTimeoutSeconds(timeoutSeconds);
+        shardOptions.setUseCache(options.isUseCache());
+        String shardSql;
+        if (plan != null) {
+            shardSql = plan.partialSql(null);
+            shardOptions.setParameters(plan.parameters());
+        } else {
+            shardSql = sql;
+            shardOptions.setParameters(options.getParameters());
+        }
+        logger.info("Scatter query to {} shards of group {} ({} merge): {}", shards.size(), group.getName(),
+            strategy, shardSql);
+
+        List<ShardCall> calls = new ArrayList<>(shards.size());
+        for (DatabaseConnection shard : shards) {
+            calls.add(new ShardCall(shard,
+                executor.submit(() -> databaseManager.executeQuery(shardSql, shard, shardOptions)), System.nanoTime()));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds + graceSeconds);
+        List<ShardResult> statuses = new ArrayList<>(calls.size());
+        List<List<Map<String, Object>>> results = new ArrayList<>(calls.size());
+        for (ShardCall call : calls) {
+            ShardResult status = new ShardResult(call.connection());
+            try {
+                SQLExecutionResponse response = call.future().get(
+                    Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                status.setSuccess(response.isSuccess());
+                if (response.isSuccess()) {
+                    status.setRowCount(response.getData().size());
+                    results.add(response.getData());
+                } else {
+                    status.setError(response.getError());
+                    status.setTimedOut(response.getError() != null
+                        && response.getError().startsWith(QueryRegistry.TIMEOUT_MESSAGE));
+                }
+            } catch (TimeoutException e) {
+                call.future().cancel(true);
+                status.setTimedOut(true);
+                status.setError(QueryRegistry.TIMEOUT_MESSAGE + "（超过" + timeoutSeconds + "秒）");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                call.future().cancel(true);
+                status.setError(e.getMessage());
+            } catch (ExecutionException e) {
+                status.setError(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            }
+            status.setLatencyMs((System.nanoTime() - call.startedNanos()) / 1_000_000);
+            statuses.add(status);
+        }
+
+        long failed = statuses.stream().filter(status -> !status.isSuccess()).count();
+        SQLExecutionResponse response;
+        if (failed == statuses.size()) {
+            response = new SQLExecutionResponse(false, null, "所有分片均执行失败: " + statuses.get(0).getError(), 0);
+        } else {
+            List<Map<String, Object>> rows = switch (strategy) {
+                case MERGE_AGGREGATE -> mergeAggregates(plan, results);
+                case MERGE_TOP_N -> mergeTopN(semanticSQL, results);
+                default -> concat(results);
+            };
+            response = new SQLExecutionResponse(true, rows, null, rows.size());
+        }
+        response.setShards(statuses);
+        response.setPartial(failed > 0);
+        response.setMergeStrategy(strategy);
+        logger.info("Gathered {} rows from {}/{} shards of group {}", response.getRowCount(),
+            statuses.size() - failed, statuses.size(), group.getName());
+        return response;
+    }
+
+    private static List<Map<String, Object>> mergeAggregates(AggregatePlan plan,
+                                                             List<List<Map<String, Object>>> results) {
+        List<AggregatePlan.AggregateTable> partials = new ArrayList<>(results.size());
+        for (List<Map<String, Object>> rows : results) {
+            AggregatePlan.AggregateTable table = plan.newTable();
+            Object[] key = new Object[plan.groupCount()];
+            Object[] values = new Object[plan.partialCount()];
+            for (Map<String, Object> row : rows) {
+                // Partial columns are aliased g0..gN, p0..pM by partialSql
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = row.get("g" + i);
+                }
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = row.get("p" + i);
+                }
+                table.accumulate(key, values);
+            }
+            partials.add(table);
+        }
+        return plan.finish(plan.merge(partials));
+    }
+
+    /**
+     * 各分片结果已按 ORDER BY 排好序，多路归并取前 LIMIT 行；排序列不在结果中时退化为拼接后截取
+     */
+    private static List<Map<String, Object>> mergeTopN(SemanticSQL semanticSQL,
+                                                       List<List<Map<String, Object>>> results) {
+        Integer limit = semanticSQL.getLimit();
+        Comparator<Map<String, Object>> order = rowOrder(semanticSQL, results);
+        if (order == null) {
+            List<Map<String, Object>> rows = concat(results);
+            return limit != null && rows.size() > limit ? rows.subList(0, limit) : rows;
+        }
+
+        // Heap entries are {shard, position}; ties keep shard order so the merge is stable
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, results.size()), (a, b) -> {
+            int c = order.compare(results.get(a[0]).get(a[1]), results.get(b[0]).get(b[1]));
+            return c != 0 ? c : Integer.compare(a[0], b[0]);
+        });
+        for (int shard = 0; shard < results.size(); shard++) {
+            if (!results.get(shard).isEmpty()) {
+                heap.add(new int[] {shard, 0});
+            }
+        }
+        int max = limit != null ? limit : Integer.MAX_VALUE;
+        List<Map<String, Object>> rows = new ArrayList<>();
+        while (!heap.isEmpty() && rows.size() < max) {
+            int[] head = heap.poll();
+            List<Map<String, Object>> shardRows = results.get(head[0]);
+            rows.add(shardRows.get(head[1]));
+            if (head[1] + 1 < shardRows.size()) {
+                heap.add(new int[] {head[0], head[1] + 1});
+            }
+        }
+        return rows;
+    }
+
+    private static Comparator<Map<String, Object>> rowOrder(SemanticSQL semanticSQL,
+                                                            List<List<Map<String, Object>>> results) {
+        if (semanticSQL.getOrderBy() == null || semanticSQL.getOrderBy().isEmpty()) {
+            return null;
+        }
+        Map<String, Object> sample = results.stream().filter(rows -> !rows.isEmpty())
+            .map(rows -> rows.get(0)).findFirst().orElse(null);
+        if (sample == null) {
+            return null;
+        }
+        Comparator<Map<String, Object>> comparator = null;
+        for (Map<String, String> order : semanticSQL.getOrderBy()) {
+            if (order.get("column") == null) {
+                continue;
+            }
+            String label = findLabel(sample, AggregatePlan.unqualified(order.get("column")));
+            if (label == null) {
+                return null;
+            }
+            Comparator<Map<String, Object>> next = (a, b) -> AggregatePlan.compare(a.get(label), b.get(label));
+            if ("DESC".equalsIgnoreCase(order.getOrDefault("direction", "ASC"))) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    private static String findLabel(Map<String, Object> row, String column) {
+        for (String label : row.keySet()) {
+            if (label.equalsIgnoreCase(column)) {
+                return label;
+            }
+        }
+        return null;
+    }
+
+    private static List<Map<String, Object>> concat(List<List<Map<String, Object>>> results) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        results.forEach(rows::addAll);
+        return rows;
+    }
+}
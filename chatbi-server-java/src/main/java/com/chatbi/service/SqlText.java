@@ -0,0 +1,175 @@
+package com.chatbi.service;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQL文本的轻量解析工具，只覆盖MySQLSQLGenerator生成的简单SELECT形态
+ */
+public final class SqlText {
+    private static final Pattern SIMPLE_SELECT = Pattern.compile(
+        "^\\s*SELECT\\s+(?<select>.+?)\\s+FROM\\s+(?<table>`?[\\w$]+`?(?:\\.`?[\\w$]+`?)?)"
+            + "(?:\\s+(?:AS\\s+)?(?<alias>(?!WHERE\\b|ORDER\\b|GROUP\\b|LIMIT\\b|HAVING\\b|JOIN\\b|INNER\\b|LEFT\\b|RIGHT\\b|CROSS\\b|NATURAL\\b|STRAIGHT_JOIN\\b)[\\w$]+))?"
+            + "(?<rest>.*)$",
+        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern UNSUPPORTED_CLAUSE = Pattern.compile(
+        "\\b(JOIN|GROUP\\s+BY|HAVING|UNION|LIMIT|ORDER\\s+BY|FOR\\s+UPDATE|INTO)\\b|\\(\\s*SELECT\\b",
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern AGGREGATE_OR_DISTINCT = Pattern.compile(
+        "\\b(DISTINCT|COUNT|SUM|AVG|MIN|MAX|GROUP_CONCAT)\\b",
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern FROM_CLAUSE = Pattern.compile(
+        "\\bFROM\\s+(.+?)(?=\\bWHERE\\b|\\bGROUP\\b|\\bORDER\\b|\\bLIMIT\\b|\\bHAVING\\b|\\bUNION\\b"
+            + "|\\b(?:INNER|LEFT|RIGHT|CROSS|NATURAL|STRAIGHT_JOIN|FULL)\\b|\\bJOIN\\b|\\)|$)",
+        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern JOIN_TABLE = Pattern.compile(
+        "\\bJOIN\\s+(`?[\\w$]+`?(?:\\.`?[\\w$]+`?)?)",
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern TABLE_REF = Pattern.compile("^(`?[\\w$]+`?(?:\\.`?[\\w$]+`?)?)");
+
+    private static final Pattern NON_DETERMINISTIC = Pattern.compile(
+        "\\b(NOW|CURDATE|CURTIME|CURRENT_DATE|CURRENT_TIME|CURRENT_TIMESTAMP|SYSDATE|UNIX_TIMESTAMP|UTC_DATE|UTC_TIMESTAMP"
+            + "|RAND|UUID|UUID_SHORT|LAST_INSERT_ID|CONNECTION_ID|FOUND_ROWS|SLEEP)\\b",
+        Pattern.CASE_INSENSITIVE);
+
+    private SqlText() {}
+
+    /**
+     * 用于缓存键的规范化：引号外的连续空白合并为一个空格，去掉末尾分号。
+     * 不改变大小写，避免影响字符串字面量。
+     */
+    public static String normalize(String sql) {
+        String statement = stripTrailingSemicolon(sql);
+        StringBuilder normalized = new StringBuilder(statement.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < statement.length(); i++) {
+            char c = statement.charAt(i);
+            if (quote != 0) {
+                normalized.append(c);
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '\\' && i + 1 < statement.length()) {
+                    normalized.append(statement.charAt(++i));
+                }
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            }
+            normalized.append(c);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * FROM/JOIN 中引用的表名（去掉反引号），无法识别时返回空集合
+     */
+    public static Set<String> referencedTables(String sql) {
+        Set<String> tables = new LinkedHashSet<>();
+        Matcher fromMatcher = FROM_CLAUSE.matcher(sql);
+        while (fromMatcher.find()) {
+            for (String item : fromMatcher.group(1).split(",")) {
+                Matcher ref = TABLE_REF.matcher(item.trim());
+                if (ref.find()) {
+                    tables.add(unquoteIdentifier(ref.group(1)));
+                }
+            }
+        }
+        Matcher joinMatcher = JOIN_TABLE.matcher(sql);
+        while (joinMatcher.find()) {
+            tables.add(unquoteIdentifier(joinMatcher.group(1)));
+        }
+        return tables;
+    }
+
+    /**
+     * 是否调用了结果随时间/会话变化的函数，这类查询结果不可缓存
+     */
+    public static boolean isNonDeterministic(String sql) {
+        return NON_DETERMINISTIC.matcher(sql).find();
+    }
+
+    public static boolean isSelect(String sql) {
+        return sql != null && sql.trim().toUpperCase(Locale.ROOT).startsWith("SELECT");
+    }
+
+    public static String stripTrailingSemicolon(String sql) {
+        String trimmed = sql.trim();
+        while (trimmed.endsWith(";")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+
+    public static String unquoteIdentifier(String identifier) {
+        return identifier.replace("`", "");
+    }
+
+    /**
+     * 单表、无聚合/排序/LIMIT的SELECT，可在其上追加keyset条件；其余形态返回null
+     */
+    public static SimpleSelect parseSimpleSelect(String sql) {
+        String statement = stripTrailingSemicolon(sql);
+        Matcher matcher = SIMPLE_SELECT.matcher(statement);
+        if (!matcher.matches()) {
+            return null;
+        }
+        String select = matcher.group("select");
+        String rest = matcher.group("rest").trim();
+        if (AGGREGATE_OR_DISTINCT.matcher(select).find() || UNSUPPORTED_CLAUSE.matcher(rest).find()) {
+            return null;
+        }
+        String where = null;
+        if (!rest.isEmpty()) {
+            if (!rest.regionMatches(true, 0, "WHERE", 0, 5)) {
+                // e.g. "FROM a, b"
+                return null;
+            }
+            where = rest.substring(5).trim();
+        }
+        return new SimpleSelect(select, matcher.group("table"), matcher.group("alias"), where);
+    }
+
+    public static final class SimpleSelect {
+        private final String selectList;
+        private final String table;
+        private final String alias;
+        private final String where;
+
+        SimpleSelect(String selectList, String table, String alias, String where) {
+            this.selectList = selectList;
+            this.table = table;
+            this.alias = alias;
+            this.where = where;
+        }
+
+        public String getSelectList() { return selectList; }
+        public String getTable() { return table; }
+        public String getAlias() { return alias; }
+        public String getWhere() { return where; }
+
+        /**
+         * 列引用时使用的限定名：有别名用别名，否则用表名
+         */
+        public String getQualifier() {
+            return alias != null ? alias : table;
+        }
+    }
+}
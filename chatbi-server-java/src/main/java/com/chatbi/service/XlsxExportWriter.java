@@ -0,0 +1,142 @@
+package com.chatbi.service;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+/**
+ * 流式XLSX：SXSSF 只在内存中保留最近 WINDOW_ROWS 行，其余行写入压缩的临时文件，
+ * 结束时再打包写出。单个工作表超过Excel行数上限时续写到下一个工作表。
+ */
+class XlsxExportWriter implements ExportWriter {
+    private static final int WINDOW_ROWS = 100;
+    private static final int MAX_SHEET_ROWS = 1_048_576;
+    private static final int MAX_CELL_CHARS = 32_767;
+    private static final long MAX_EXACT = 999_999_999_999_999L;
+
+    private final OutputStream out;
+    private final SXSSFWorkbook workbook = new SXSSFWorkbook(WINDOW_ROWS);
+    private final CellStyle headerStyle;
+    private final CellStyle dateStyle;
+    private final CellStyle timestampStyle;
+
+    private String[] columns;
+    private Sheet sheet;
+    private int sheetRow;
+
+    XlsxExportWriter(OutputStream out) {
+        this.out = out;
+        workbook.setCompressTempFiles(true);
+        Font bold = workbook.createFont();
+        bold.setBold(true);
+        headerStyle = workbook.createCellStyle();
+        headerStyle.setFont(bold);
+        dateStyle = workbook.createCellStyle();
+        dateStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd"));
+        timestampStyle = workbook.createCellStyle();
+        timestampStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd hh:mm:ss"));
+    }
+
+    @Override
+    public void start(ResultSetMetaData metaData) throws SQLException {
+        columns = new String[metaData.getColumnCount()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = JdbcUtils.lookupColumnName(metaData, i + 1);
+        }
+        newSheet();
+    }
+
+    @Override
+    public void writeRow(ResultSet rs, Object[] values) throws SQLException {
+        ExportWriter.readValues(rs, values);
+        if (sheetRow == MAX_SHEET_ROWS) {
+            newSheet();
+        }
+        Row row = sheet.createRow(sheetRow++);
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value != null) {
+                setValue(row.createCell(i), value);
+            }
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        try {
+            workbook.write(out);
+            out.flush();
+        } finally {
+            abort();
+        }
+    }
+
+    @Override
+    public void abort() {
+        try {
+            // Also deletes the temporary sheet files
+            workbook.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void newSheet() {
+        sheet = workbook.createSheet("Sheet" + (workbook.getNumberOfSheets() + 1));
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < columns.length; i++) {
+            Cell cell = header.createCell(i);
+            cell.setCellValue(columns[i]);
+            cell.setCellStyle(headerStyle);
+        }
+        sheetRow = 1;
+    }
+
+    private void setValue(Cell cell, Object value) {
+        if (value instanceof BigDecimal || value instanceof BigInteger) {
+            // Excel keeps 15 significant digits; wider values stay exact as text
+            String text = value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+            if (text.replace("-", "").replace(".", "").length() <= 15) {
+                cell.setCellValue(Double.parseDouble(text));
+            } else {
+                cell.setCellValue(text);
+            }
+        } else if (value instanceof Long longValue && (longValue > MAX_EXACT || longValue < -MAX_EXACT)) {
+            cell.setCellValue(longValue.toString());
+        } else if (value instanceof Number number) {
+            cell.setCellValue(number.doubleValue());
+        } else if (value instanceof Boolean bool) {
+            cell.setCellValue(bool);
+        } else if (value instanceof Timestamp timestamp) {
+            cell.setCellValue(timestamp.toLocalDateTime());
+            cell.setCellStyle(timestampStyle);
+        } else if (value instanceof java.sql.Date date) {
+            cell.setCellValue(date.toLocalDate());
+            cell.setCellStyle(dateStyle);
+        } else if (value instanceof Time) {
+            cell.setCellValue(value.toString());
+        } else if (value instanceof byte[] bytes) {
+            cell.setCellValue(truncate(Base64.getEncoder().encodeToString(bytes)));
+        } else {
+            cell.setCellValue(truncate(value.toString()));
+        }
+    }
+
+    private static String truncate(String text) {
+        return text.length() > MAX_CELL_CHARS ? text.substring(0, MAX_CELL_CHARS) : text;
+    }
+}
@@ -37,3 +37,68 @@ CREATE TABLE IF NOT EXISTS chat_message (
   KEY idx_chat_message_created_at (created_at),
   CONSTRAINT fk_chat_message_session_id FOREIGN KEY (session_id) REFERENCES chat_session(id) ON DELETE CASCADE
 ) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+
+-- Target database connections
+CREATE TABLE IF NOT EXISTS database_connection (
+  id VARCHAR(191) PRIMARY KEY,
+  name VARCHAR(255) NOT NULL,
+  host VARCHAR(255) NOT NULL,
+  port INT NOT NULL DEFAULT 3306,
+  username VARCHAR(255) NOT NULL,
+  password VARCHAR(255) NOT NULL,
+  database_name VARCHAR(255) NOT NULL,
+  charset_name VARCHAR(50) DEFAULT 'utf8mb4',
+  description TEXT,
+  is_active TINYINT(1) DEFAULT 1,
+  query_timeout_seconds INT NULL,
+  max_concurrent_queries INT NULL,
+  cost_warn_rows BIGINT NULL,
+  cost_limit_rows BIGINT NULL,
+  cost_block_rows BIGINT NULL,
+  created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+  updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  KEY idx_database_connection_is_active (is_active),
+  KEY idx_database_connection_name (name)
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+
+-- Async query jobs
+CREATE TABLE IF NOT EXISTS query_job (
+  id VARCHAR(64) PRIMARY KEY,
+  user_id VARCHAR(191) NULL,
+  session_id BIGINT NULL,
+  message_id BIGINT NULL,
+  connection_id VARCHAR(191) NULL,
+  sql_query LONGTEXT NOT NULL,
+  status VARCHAR(20) NOT NULL,
+  row_count BIGINT NULL,
+  error_message TEXT NULL,
+  result_file VARCHAR(512) NULL,
+  created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  started_at DATETIME NULL,
+  finished_at DATETIME NULL,
+  KEY idx_query_job_session_id (session_id),
+  KEY idx_query_job_status (status)
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+
+-- Read replicas of a database connection
+CREATE TABLE IF NOT EXISTS database_replica (
+  id VARCHAR(191) PRIMARY KEY,
+  connection_id VARCHAR(191) NOT NULL,
+  host VARCHAR(255) NOT NULL,
+  port INT NOT NULL DEFAULT 3306,
+  username VARCHAR(255) NULL,
+  password VARCHAR(255) NULL,
+  weight INT NOT NULL DEFAULT 1,
+  max_lag_seconds INT NULL,
+  enabled TINYINT(1) NOT NULL DEFAULT 1,
+  created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+  updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  KEY idx_database_replica_connection_id (connection_id)
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+
+-- Columns added after the initial release
+ALTER TABLE database_connection ADD COLUMN IF NOT EXISTS query_timeout_seconds INT NULL;
+ALTER TABLE database_connection ADD COLUMN IF NOT EXISTS max_concurrent_queries INT NULL;
+ALTER TABLE database_connection ADD COLUMN IF NOT EXISTS cost_warn_rows BIGINT NULL;
+ALTER TABLE database_connection ADD COLUMN IF NOT EXISTS cost_limit_rows BIGINT NULL;
+ALTER TABLE database_connection ADD COLUMN IF NOT EXISTS cost_block_rows BIGINT NULL;
@@ -0,0 +1,45 @@
+package com.chatbi.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParameterizedSQLTest {
+
+    @Test
+    void renderSubstitutesPlaceholdersOutsideQuotes() {
+        ParameterizedSQL sql = new ParameterizedSQL(
+            "SELECT * FROM t WHERE note = 'why?' AND `odd?` = ? AND region = ? AND amount > ?",
+            List.of(SqlParameter.of(1), SqlParameter.of("O'Brien"), SqlParameter.of(new BigDecimal("10.50"))));
+
+        assertThat(sql.render())
+            .isEqualTo("SELECT * FROM t WHERE note = 'why?' AND `odd?` = 1 AND region = 'O''Brien' AND amount > 10.50");
+    }
+
+    @Test
+    void renderLeavesSqlUntouchedWithoutParameters() {
+        assertThat(new ParameterizedSQL("SELECT 1", List.of()).render()).isEqualTo("SELECT 1");
+    }
+
+    @Test
+    void renderKeepsExtraPlaceholdersWhenParametersRunOut() {
+        ParameterizedSQL sql = new ParameterizedSQL("SELECT ? , ?", List.of(SqlParameter.of(null)));
+
+        assertThat(sql.render()).isEqualTo("SELECT NULL , ?");
+    }
+
+    @Test
+    void parameterTypesSurviveStringifiedValues() {
+        assertThat(SqlParameter.of(7).getJdbcValue()).isEqualTo(7L);
+        assertThat(new SqlParameter(SqlParameter.TYPE_LONG, "42").getJdbcValue()).isEqualTo(42L);
+        assertThat(new SqlParameter(SqlParameter.TYPE_DOUBLE, "1.5").getJdbcValue()).isEqualTo(1.5);
+        assertThat(new SqlParameter(SqlParameter.TYPE_BOOLEAN, "true").getJdbcValue()).isEqualTo(true);
+        assertThat(SqlParameter.of(new BigDecimal("0.10")).getJdbcValue()).isEqualTo(new BigDecimal("0.10"));
+        assertThat(SqlParameter.of(BigInteger.TWO.pow(70)).getType()).isEqualTo(SqlParameter.TYPE_DECIMAL);
+        assertThat(SqlParameter.of("a\\b").getSqlLiteral()).isEqualTo("'a\\\\b'");
+    }
+}
@@ -0,0 +1,33 @@
+package com.chatbi.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryExecutionTest {
+
+    @Test
+    void resultMapCarriesExecutionIdAndTimestamp() {
+        QueryExecution execution = QueryExecution.start("SELECT 1", "conn-1");
+        SQLExecutionResponse response = new SQLExecutionResponse(true, List.of(Map.of("x", 1)), null, 1);
+
+        Map<String, Object> resultMap = execution.complete(response).toResultMap();
+
+        assertThat(execution.getId()).isNotBlank();
+        assertThat(resultMap)
+            .containsEntry("success", true)
+            .containsEntry("row_count", 1)
+            .containsEntry("execution_id", execution.getId())
+            .containsEntry("executed_at", execution.getFinishedAt().toString());
+        assertThat(execution.getFinishedAt()).isAfterOrEqualTo(execution.getStartedAt());
+    }
+
+    @Test
+    void eachExecutionGetsItsOwnId() {
+        assertThat(QueryExecution.start("SELECT 1", null).getId())
+            .isNotEqualTo(QueryExecution.start("SELECT 1", null).getId());
+    }
+}
@@ -0,0 +1,107 @@
+package com.chatbi.service;
+
+import com.chatbi.model.SemanticSQL;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AggregatePlanTest {
+    private static final MySQLSQLGenerator GENERATOR = new MySQLSQLGenerator();
+    private static final Map<String, String> COLUMN_TYPES = Map.of(
+        "id", "bigint", "region_id", "int", "region", "varchar", "amount", "decimal", "created_at", "datetime");
+
+    private static SemanticSQL semantic(List<String> columns, List<String> groupBy) {
+        SemanticSQL semanticSQL = new SemanticSQL();
+        semanticSQL.setTables(List.of("sales"));
+        semanticSQL.setColumns(columns);
+        semanticSQL.setGroupBy(groupBy);
+        semanticSQL.setConditions(new ArrayList<>());
+        semanticSQL.setJoins(new ArrayList<>());
+        return semanticSQL;
+    }
+
+    @Test
+    void splitsAverageIntoSumAndCount() {
+        SemanticSQL semanticSQL = semantic(
+            List.of("region_id", "COUNT(*) AS orders", "AVG(amount) AS avg_amount"), List.of("region_id"));
+        semanticSQL.setConditions(List.of(Map.of("column", "amount", "operator", ">", "value", 10)));
+
+        AggregatePlan plan = AggregatePlan.parse(semanticSQL, GENERATOR, COLUMN_TYPES);
+
+        assertThat(plan.partialCount()).isEqualTo(3);
+        assertThat(plan.partialSql("`id` BETWEEN ? AND ?")).isEqualTo(
+            "SELECT `region_id` AS g0, COUNT(*) AS p0, SUM(amount) AS p1, COUNT(amount) AS p2 FROM `sales` "
+                + "WHERE (amount > ?) AND `id` BETWEEN ? AND ? GROUP BY `region_id`");
+        assertThat(plan.bindValues(1L, 100L)).containsExactly(10L, 1L, 100L);
+    }
+
+    @Test
+    void rejectsShapesThatCannotBeMergedExactly() {
+        // Character comparisons depend on the column collation
+        assertThat(AggregatePlan.parse(semantic(List.of("region", "COUNT(*)"), List.of("region")),
+            GENERATOR, COLUMN_TYPES)).isNull();
+        assertThat(AggregatePlan.parse(semantic(List.of("MAX(region)"), null), GENERATOR, COLUMN_TYPES)).isNull();
+        assertThat(AggregatePlan.parse(semantic(List.of("COUNT(DISTINCT region_id)"), null),
+            GENERATOR, COLUMN_TYPES)).isNull();
+        // Neither grouped nor aggregated
+        assertThat(AggregatePlan.parse(semantic(List.of("id", "amount"), null), GENERATOR, COLUMN_TYPES)).isNull();
+        // Without column types the group values are merged as-is
+        assertThat(AggregatePlan.parse(semantic(List.of("region", "COUNT(*)"), List.of("region")),
+            GENERATOR, null)).isNotNull();
+    }
+
+    @Test
+    void mergesPartialsAcrossSlices() {
+        SemanticSQL semanticSQL = semantic(List.of("region_id", "COUNT(*) AS orders", "SUM(amount) AS total",
+            "MIN(created_at) AS first_at", "AVG(amount) AS avg_amount"), List.of("region_id"));
+        semanticSQL.setOrderBy(List.of(Map.of("column", "orders", "direction", "DESC")));
+        semanticSQL.setLimit(2);
+        AggregatePlan plan = AggregatePlan.parse(semanticSQL, GENERATOR, COLUMN_TYPES);
+
+        AggregatePlan.AggregateTable first = plan.newTable();
+        first.accumulate(new Object[] {1L}, new Object[] {2L, new BigDecimal("10"), "2024-01-05", new BigDecimal("10"), 2L});
+        first.accumulate(new Object[] {2L}, new Object[] {1L, new BigDecimal("3"), "2024-01-01", new BigDecimal("3"), 1L});
+        AggregatePlan.AggregateTable second = plan.newTable();
+        second.accumulate(new Object[] {1L}, new Object[] {1L, new BigDecimal("5"), "2024-01-02", new BigDecimal("5"), 1L});
+        second.accumulate(new Object[] {3L}, new Object[] {1L, null, null, null, 0L});
+
+        List<Map<String, Object>> rows = plan.finish(plan.merge(List.of(first, second)));
+
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0)).containsEntry("region_id", 1L).containsEntry("orders", 3L)
+            .containsEntry("total", new BigDecimal("15")).containsEntry("first_at", "2024-01-02")
+            .containsEntry("avg_amount", new BigDecimal("5.0000"));
+        assertThat(rows.get(1).get("orders")).isEqualTo(1L);
+    }
+
+    @Test
+    void globalAggregateOverNoRowsStillReturnsOneRow() {
+        AggregatePlan plan = AggregatePlan.parse(semantic(List.of("COUNT(*) AS n", "SUM(amount) AS total"), null),
+            GENERATOR, COLUMN_TYPES);
+
+        List<Map<String, Object>> rows = plan.finish(plan.merge(List.of()));
+
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0)).containsEntry("n", 0L).containsEntry("total", null);
+    }
+
+    @Test
+    void integerAndLongGroupKeysMergeIntoTheSameGroup() {
+        AggregatePlan plan = AggregatePlan.parse(semantic(List.of("region_id", "COUNT(*) AS n"), List.of("region_id")),
+            GENERATOR, COLUMN_TYPES);
+
+        AggregatePlan.AggregateTable first = plan.newTable();
+        first.accumulate(new Object[] {7}, new Object[] {2L});
+        AggregatePlan.AggregateTable second = plan.newTable();
+        second.accumulate(new Object[] {7L}, new Object[] {3L});
+
+        List<Map<String, Object>> rows = plan.finish(plan.merge(List.of(first, second)));
+
+        assertThat(rows).singleElement().satisfies(row -> assertThat(row).containsEntry("n", 5L));
+    }
+}
@@ -0,0 +1,69 @@
+package com.chatbi.service;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArrowExportWriterTest {
+
+    @Test
+    void writesRecordBatchesThatRoundTrip() throws Exception {
+        ResultSet rs = TestResultSets.of(new String[]{"id", "total", "ratio", "city"},
+            new int[]{Types.INTEGER, Types.BIGINT, Types.DOUBLE, Types.VARCHAR},
+            new Object[]{1, 10_000_000_000L, 0.5, "北京"},
+            new Object[]{2, null, null, null},
+            new Object[]{3, 30L, 1.25, "上海"});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (BufferAllocator root = new RootAllocator()) {
+            ArrowExportWriter writer = new ArrowExportWriter(out, root.newChildAllocator("test", 0, Long.MAX_VALUE), 2);
+            writer.start(rs.getMetaData());
+            Object[] values = new Object[4];
+            while (rs.next()) {
+                writer.writeRow(rs, values);
+            }
+            writer.finish();
+
+            List<Integer> batchSizes = new ArrayList<>();
+            List<Object> ids = new ArrayList<>();
+            List<Object> totals = new ArrayList<>();
+            List<Object> ratios = new ArrayList<>();
+            List<String> cities = new ArrayList<>();
+            try (ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(out.toByteArray()), root)) {
+                VectorSchemaRoot batch = reader.getVectorSchemaRoot();
+                while (reader.loadNextBatch()) {
+                    batchSizes.add(batch.getRowCount());
+                    for (int i = 0; i < batch.getRowCount(); i++) {
+                        ids.add(((IntVector) batch.getVector("id")).getObject(i));
+                        totals.add(((BigIntVector) batch.getVector("total")).getObject(i));
+                        ratios.add(((Float8Vector) batch.getVector("ratio")).getObject(i));
+                        VarCharVector city = (VarCharVector) batch.getVector("city");
+                        cities.add(city.isNull(i) ? null : city.getObject(i).toString());
+                    }
+                }
+            }
+
+            assertThat(batchSizes).containsExactly(2, 1);
+            assertThat(ids).containsExactly(1, 2, 3);
+            assertThat(totals).containsExactly(10_000_000_000L, null, 30L);
+            assertThat(ratios).containsExactly(0.5, null, 1.25);
+            assertThat(cities).containsExactly("北京", null, "上海");
+            assertThat(root.getAllocatedMemory()).isZero();
+        }
+    }
+}
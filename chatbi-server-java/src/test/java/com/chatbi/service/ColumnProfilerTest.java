@@ -0,0 +1,89 @@
+package com.chatbi.service;
+
+import com.chatbi.model.ColumnProfile;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ColumnProfilerTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ColumnProfile profile(ColumnProfiler.ColumnStats stats, boolean sampled) throws Exception {
+        return stats.toProfile(objectMapper, 5, sampled);
+    }
+
+    private List<Map<String, Object>> topValues(ColumnProfile profile) throws Exception {
+        return objectMapper.readValue(profile.getTopValues(), new TypeReference<>() {});
+    }
+
+    @Test
+    void fewDistinctValuesAreListedCompletely() throws Exception {
+        ColumnProfiler.ColumnStats stats = new ColumnProfiler.ColumnStats("status", 1, 3);
+        for (int i = 0; i < 800; i++) {
+            stats.add("s" + (i % 8));
+        }
+
+        ColumnProfile profile = profile(stats, false);
+
+        assertThat(profile.getCompleteValues()).isTrue();
+        assertThat(profile.getDistinctCount()).isEqualTo(8);
+        // More than top-k, because the list is the whole value set
+        assertThat(topValues(profile)).hasSize(8);
+        assertThat(profile.getSampled()).isFalse();
+    }
+
+    @Test
+    void valuesBeyondTheListLimitAreCountedExactlyButNotListed() throws Exception {
+        ColumnProfiler.ColumnStats stats = new ColumnProfiler.ColumnStats("city", 1, 3);
+        for (int i = 0; i < 30; i++) {
+            stats.add("c" + i);
+        }
+
+        ColumnProfile profile = profile(stats, false);
+
+        assertThat(profile.getCompleteValues()).isFalse();
+        assertThat(profile.getDistinctCount()).isEqualTo(30);
+        assertThat(topValues(profile)).hasSize(5);
+    }
+
+    @Test
+    void highCardinalityKeepsTheHeavyHittersAndEstimatesDistinct() throws Exception {
+        ColumnProfiler.ColumnStats stats = new ColumnProfiler.ColumnStats("sku", 1, 3);
+        for (int i = 0; i < 5000; i++) {
+            stats.add(i % 2 == 0 ? "hot" : "sku-" + i);
+        }
+
+        ColumnProfile profile = profile(stats, true);
+
+        assertThat(profile.getCompleteValues()).isFalse();
+        assertThat(profile.getSampled()).isTrue();
+        assertThat(profile.getDistinctCount()).isCloseTo(2501L, within(150L));
+        List<Map<String, Object>> top = topValues(profile);
+        assertThat(top).hasSize(5);
+        assertThat(top.get(0)).containsEntry("value", "hot");
+    }
+
+    @Test
+    void nullsAndNumericRangeAreTracked() throws Exception {
+        ColumnProfiler.ColumnStats stats = new ColumnProfiler.ColumnStats("amount", 2, 3);
+        stats.add(null);
+        stats.add(9);
+        stats.add(10L);
+        stats.add(new BigDecimal("2.50"));
+
+        ColumnProfile profile = profile(stats, false);
+
+        assertThat(profile.getRowCount()).isEqualTo(4);
+        assertThat(profile.getNullRatio()).isEqualTo(0.25);
+        assertThat(profile.getMinValue()).isEqualTo("2.50");
+        assertThat(profile.getMaxValue()).isEqualTo("10");
+        assertThat(objectMapper.readValue(profile.getSampleValues(), List.class)).containsExactly("9", "10", "2.50");
+    }
+}
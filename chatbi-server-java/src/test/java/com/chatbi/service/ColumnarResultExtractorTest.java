@@ -0,0 +1,64 @@
+package com.chatbi.service;
+
+import com.chatbi.model.ColumnarResult;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.Types;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnarResultExtractorTest {
+
+    @Test
+    void encodesColumnsByJdbcTypeWithNullPositions() throws Exception {
+        ResultSet rs = TestResultSets.of(
+            new String[]{"id", "amount", "city"},
+            new int[]{Types.INTEGER, Types.DECIMAL, Types.VARCHAR},
+            new Object[]{1, 9.5, "Beijing"},
+            new Object[]{null, null, "Shanghai"},
+            new Object[]{3, 2.25, "Beijing"});
+
+        ColumnarResult result = new ColumnarResultExtractor().extractData(rs);
+
+        assertThat(result.getRowCount()).isEqualTo(3);
+        assertThat(result.getColumns()).extracting(ColumnarResult.ColumnHeader::getEncoding).containsExactly(
+            ColumnarResult.ENCODING_INT64, ColumnarResult.ENCODING_FLOAT64, ColumnarResult.ENCODING_DICTIONARY);
+
+        ColumnarResult.ColumnVector ids = result.getVectors().get(0);
+        assertThat((long[]) ids.getValues()).containsExactly(1L, 0L, 3L);
+        assertThat(ids.getNulls()).containsExactly(1);
+
+        ColumnarResult.ColumnVector amounts = result.getVectors().get(1);
+        assertThat((double[]) amounts.getValues()).containsExactly(9.5, 0.0, 2.25);
+        assertThat(amounts.getNulls()).containsExactly(1);
+
+        ColumnarResult.ColumnVector cities = result.getVectors().get(2);
+        assertThat(cities.getDictionary()).containsExactly("Beijing", "Shanghai");
+        assertThat(cities.getCodes()).containsExactly(0, 1, 0);
+    }
+
+    @Test
+    void dictionaryColumnMarksNullsWithNegativeCode() throws Exception {
+        ResultSet rs = TestResultSets.of(new String[]{"status"}, new Object[]{"paid"}, new Object[]{null});
+
+        ColumnarResult result = new ColumnarResultExtractor().extractData(rs);
+
+        assertThat(result.getVectors().get(0).getCodes()).containsExactly(0, -1);
+    }
+
+    @Test
+    void growsBeyondInitialCapacity() throws Exception {
+        Object[][] rows = new Object[1000][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[]{(long) i};
+        }
+        ResultSet rs = TestResultSets.of(new String[]{"n"}, new int[]{Types.BIGINT}, rows);
+
+        ColumnarResult result = new ColumnarResultExtractor().extractData(rs);
+
+        long[] values = (long[]) result.getVectors().get(0).getValues();
+        assertThat(values).hasSize(1000);
+        assertThat(values[999]).isEqualTo(999L);
+    }
+}
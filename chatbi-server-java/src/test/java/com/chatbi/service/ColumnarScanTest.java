@@ -0,0 +1,95 @@
+package com.chatbi.service;
+
+import com.chatbi.model.SemanticSQL;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnarScanTest {
+    private static ColumnarTable table;
+
+    @BeforeAll
+    static void buildTable() throws Exception {
+        ResultSet rs = TestResultSets.of(new String[] {"id", "region", "amount", "price", "day"},
+            new int[] {Types.BIGINT, Types.VARCHAR, Types.DOUBLE, Types.DECIMAL, Types.DATE},
+            new Object[] {1L, "East", 10.0, new BigDecimal("1.50"), Date.valueOf("2024-01-01")},
+            new Object[] {2L, "west", 20.0, new BigDecimal("2.00"), Date.valueOf("2024-01-02")},
+            new Object[] {3L, "Éast ", 30.0, null, Date.valueOf("2024-01-03")},
+            new Object[] {4L, null, null, new BigDecimal("3.25"), null});
+        ColumnarTable.Builder builder = new ColumnarTable.Builder("sales", "utf8mb4_general_ci", rs.getMetaData());
+        while (rs.next()) {
+            builder.add(rs);
+        }
+        table = builder.build();
+    }
+
+    private static List<Object> ids(String column, String operator, Object value) {
+        SemanticSQL semanticSQL = new SemanticSQL();
+        semanticSQL.setTables(List.of("sales"));
+        semanticSQL.setColumns(List.of("id"));
+        semanticSQL.setConditions(List.of(Map.of("column", column, "operator", operator, "value", value)));
+        semanticSQL.setJoins(new ArrayList<>());
+        List<Map<String, Object>> rows = ColumnarScan.execute(table, semanticSQL);
+        return rows == null ? null : rows.stream().map(row -> row.get("id")).toList();
+    }
+
+    @Test
+    void filtersIntegerColumns() {
+        assertThat(ids("id", "BETWEEN", List.of(2, 3))).containsExactly(2L, 3L);
+        assertThat(ids("id", "IN", List.of(1, 4))).containsExactly(1L, 4L);
+        assertThat(ids("id", "NOT IN", List.of(1, 4))).containsExactly(2L, 3L);
+        assertThat(ids("id", ">=", "3")).containsExactly(3L, 4L);
+        // A fractional bound is left to the database
+        assertThat(ids("id", ">", 2.5)).isNull();
+    }
+
+    @Test
+    void filtersDoubleColumnsAndSkipsNulls() {
+        assertThat(ids("amount", ">=", 20)).containsExactly(2L, 3L);
+        assertThat(ids("amount", "!=", 10)).containsExactly(2L, 3L);
+        assertThat(ids("amount", "IN", List.of(10, 30))).containsExactly(1L, 3L);
+    }
+
+    @Test
+    void filtersStringColumnsWithTheCollation() {
+        // general_ci ignores case, accents and trailing spaces
+        assertThat(ids("region", "=", "east")).containsExactly(1L, 3L);
+        assertThat(ids("region", "<>", "east")).containsExactly(2L);
+        assertThat(ids("region", "LIKE", "W%")).containsExactly(2L);
+        assertThat(ids("region", "NOT LIKE", "%st")).containsExactly(3L);
+        // Range comparisons and numeric literals depend on the server's rules
+        assertThat(ids("region", ">", "m")).isNull();
+        assertThat(ids("region", "=", 1)).isNull();
+    }
+
+    @Test
+    void filtersObjectColumnsAfterCoercingTheLiteral() {
+        assertThat(ids("price", ">", "1.75")).containsExactly(2L, 4L);
+        assertThat(ids("price", "=", 2)).containsExactly(2L);
+        assertThat(ids("day", "BETWEEN", List.of("2024-01-02", "2024-01-03"))).containsExactly(2L, 3L);
+        assertThat(ids("day", "<", "not a date")).isNull();
+    }
+
+    @Test
+    void aggregatesOverTheSelection() {
+        SemanticSQL semanticSQL = new SemanticSQL();
+        semanticSQL.setTables(List.of("sales"));
+        semanticSQL.setColumns(List.of("COUNT(*) AS n", "SUM(amount) AS total", "COUNT(region) AS regions"));
+        semanticSQL.setConditions(List.of(Map.of("column", "id", "operator", ">", "value", 1)));
+        semanticSQL.setJoins(new ArrayList<>());
+
+        List<Map<String, Object>> rows = ColumnarScan.execute(table, semanticSQL);
+
+        assertThat(rows).singleElement().satisfies(row -> assertThat(row)
+            .containsEntry("n", 3L).containsEntry("total", 50.0).containsEntry("regions", 2L));
+    }
+}
@@ -0,0 +1,83 @@
+package com.chatbi.service;
+
+import com.chatbi.exception.BulkheadRejectedException;
+import com.chatbi.model.DatabaseConnection;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConnectionBulkheadTest {
+
+    static ConnectionBulkhead bulkhead(int maxConcurrent, long maxWaitMs) {
+        ConnectionBulkhead bulkhead = new ConnectionBulkhead();
+        ReflectionTestUtils.setField(bulkhead, "enabled", true);
+        ReflectionTestUtils.setField(bulkhead, "defaultMaxConcurrent", maxConcurrent);
+        ReflectionTestUtils.setField(bulkhead, "maxQueueDepth", 50);
+        ReflectionTestUtils.setField(bulkhead, "maxWaitMs", maxWaitMs);
+        bulkhead.initMetrics();
+        return bulkhead;
+    }
+
+    private static DatabaseConnection connection(String id, Integer maxConcurrent) {
+        DatabaseConnection connection = new DatabaseConnection();
+        connection.setId(id);
+        connection.setMaxConcurrentQueries(maxConcurrent);
+        return connection;
+    }
+
+    @Test
+    void rejectsOnceLimitIsReachedAndAdmitsAfterRelease() {
+        ConnectionBulkhead bulkhead = bulkhead(1, 20);
+        DatabaseConnection connection = connection("c1", null);
+
+        ConnectionBulkhead.Permit permit = bulkhead.acquire(connection);
+        assertThatThrownBy(() -> bulkhead.acquire(connection)).isInstanceOf(BulkheadRejectedException.class);
+
+        permit.close();
+        bulkhead.acquire(connection).close();
+    }
+
+    @Test
+    void closingPermitTwiceReleasesOnce() {
+        ConnectionBulkhead bulkhead = bulkhead(2, 20);
+        DatabaseConnection connection = connection("c1", null);
+
+        ConnectionBulkhead.Permit first = bulkhead.acquire(connection);
+        first.close();
+        first.close();
+        ConnectionBulkhead.Permit a = bulkhead.acquire(connection);
+        ConnectionBulkhead.Permit b = bulkhead.acquire(connection);
+
+        assertThatThrownBy(() -> bulkhead.acquire(connection)).isInstanceOf(BulkheadRejectedException.class);
+        a.close();
+        b.close();
+    }
+
+    @Test
+    void connectionsHaveSeparateCompartmentsAndOwnLimits() {
+        ConnectionBulkhead bulkhead = bulkhead(1, 20);
+        DatabaseConnection small = connection("small", null);
+        DatabaseConnection wide = connection("wide", 2);
+
+        try (ConnectionBulkhead.Permit held = bulkhead.acquire(small);
+             ConnectionBulkhead.Permit w1 = bulkhead.acquire(wide);
+             ConnectionBulkhead.Permit w2 = bulkhead.acquire(wide)) {
+            assertThatThrownBy(() -> bulkhead.acquire(wide)).isInstanceOf(BulkheadRejectedException.class);
+        }
+    }
+
+    @Test
+    void disabledBulkheadNeverRejects() {
+        ConnectionBulkhead bulkhead = bulkhead(1, 20);
+        ReflectionTestUtils.setField(bulkhead, "enabled", false);
+        DatabaseConnection connection = connection("c1", null);
+
+        try (ConnectionBulkhead.Permit a = bulkhead.acquire(connection);
+             ConnectionBulkhead.Permit b = bulkhead.acquire(connection)) {
+            assertThat(a).isNotNull();
+            assertThat(b).isNotNull();
+        }
+    }
+}
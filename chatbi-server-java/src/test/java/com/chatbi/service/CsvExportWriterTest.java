@@ -0,0 +1,35 @@
+package com.chatbi.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CsvExportWriterTest {
+
+    @Test
+    void writesBomHeaderAndQuotesOnlyWhenNeeded() throws Exception {
+        ResultSet rs = TestResultSets.of(new String[]{"名称", "note", "amount", "at", "blob"},
+            new Object[]{"北京", "a, \"b\"", new BigDecimal("1E+3"), Timestamp.valueOf("2024-05-01 08:30:00"), new byte[]{1, 2, 3}},
+            new Object[]{"x", "line\nbreak", null, Timestamp.valueOf("2024-05-01 08:30:00.123456"), null});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CsvExportWriter writer = new CsvExportWriter(out);
+
+        writer.start(rs.getMetaData());
+        Object[] values = new Object[5];
+        while (rs.next()) {
+            writer.writeRow(rs, values);
+        }
+        writer.finish();
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+            "\uFEFF名称,note,amount,at,blob\r\n"
+                + "北京,\"a, \"\"b\"\"\",1000,2024-05-01 08:30:00,AQID\r\n"
+                + "x,\"line\nbreak\",,2024-05-01 08:30:00.123456,\r\n");
+    }
+}
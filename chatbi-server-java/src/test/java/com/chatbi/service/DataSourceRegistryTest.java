@@ -0,0 +1,31 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+
+class DataSourceRegistryTest {
+
+    @Test
+    void buildsMariaDbUrlFromConnectionSettings() {
+        DatabaseConnection connection = new DatabaseConnection();
+        connection.setHost("db.internal");
+        connection.setPort(3307);
+        connection.setDatabaseName("sales");
+        connection.setCharsetName("utf8mb4");
+
+        assertThat(DataSourceRegistry.buildJdbcUrl(connection))
+            .startsWith("jdbc:mariadb://db.internal:3307/sales?")
+            .contains("characterEncoding=utf8mb4");
+    }
+
+    @Test
+    void evictingUnknownConnectionIsNoOp() {
+        DataSourceRegistry registry = new DataSourceRegistry();
+
+        assertThatCode(() -> registry.evict("missing")).doesNotThrowAnyException();
+        assertThat(registry.getPoolStats()).isEmpty();
+    }
+}
@@ -0,0 +1,124 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryOptions;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DatabaseManagerStreamingTest {
+    private final DatabaseManager databaseManager = new DatabaseManager();
+    private PreparedStatement statement;
+    private ResultSet resultSet;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        resultSet = TestResultSets.of(new String[]{"id", "name"},
+            new Object[]{1L, "a"}, new Object[]{2L, "b"}, new Object[]{3L, "c"});
+        statement = mock(PreparedStatement.class);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+
+        ReflectionTestUtils.setField(databaseManager, "jdbcTemplate", new JdbcTemplate(dataSource));
+        ReflectionTestUtils.setField(databaseManager, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(databaseManager, "queryRegistry", QueryRegistryTest.registry(300, 3600));
+        ReflectionTestUtils.setField(databaseManager, "connectionBulkhead", ConnectionBulkheadTest.bulkhead(8, 1000));
+        ReflectionTestUtils.setField(databaseManager, "replicaRouter", new ReplicaRouter());
+        ReflectionTestUtils.setField(databaseManager, "streamingFetchSize", 100);
+        ReflectionTestUtils.setField(databaseManager, "streamingFlushRows", 2);
+    }
+
+    @Test
+    void writesColumnsRowsAndEndAsNdjson() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        databaseManager.streamQuery("SELECT id, name FROM t", (DatabaseConnection) null, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).containsExactly(
+            "{\"type\":\"columns\",\"columns\":[\"id\",\"name\"]}",
+            "{\"type\":\"row\",\"data\":{\"id\":1,\"name\":\"a\"}}",
+            "{\"type\":\"row\",\"data\":{\"id\":2,\"name\":\"b\"}}",
+            "{\"type\":\"row\",\"data\":{\"id\":3,\"name\":\"c\"}}",
+            "{\"type\":\"end\",\"row_count\":3}");
+    }
+
+    @Test
+    void clientDisconnectCancelsStatementBeforeResultSetIsClosed() throws Exception {
+        OutputStream disconnecting = new OutputStream() {
+            private int flushes;
+
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void flush() throws IOException {
+                // The columns line goes out, the first row does not
+                if (++flushes > 1) {
+                    throw new IOException("Broken pipe");
+                }
+            }
+        };
+
+        assertThatThrownBy(() -> databaseManager.streamQuery("SELECT id, name FROM t", (DatabaseConnection) null, disconnecting))
+            .isInstanceOf(IOException.class);
+
+        InOrder order = inOrder(statement, resultSet);
+        order.verify(statement).cancel();
+        order.verify(resultSet).close();
+    }
+
+    @Test
+    void queryStreamingCancelsStatementBeforeResultSetIsClosed() throws Exception {
+        assertThatThrownBy(() -> databaseManager.queryStreaming("SELECT id, name FROM t", null, QueryOptions.defaults(),
+                QueryRegistry.SOURCE_EXPORT, (ResultSetExtractor<Void>) rs -> {
+                    rs.next();
+                    throw new UncheckedIOException(new IOException("Broken pipe"));
+                }))
+            .isInstanceOf(UncheckedIOException.class);
+
+        InOrder order = inOrder(statement, resultSet);
+        order.verify(statement).cancel();
+        order.verify(resultSet).close();
+    }
+
+    @Test
+    void trackedExtractorCanCancelWhenItStopsEarly() throws Exception {
+        Integer first = databaseManager.queryStreaming("SELECT id, name FROM t", null, QueryOptions.defaults(),
+            QueryRegistry.SOURCE_EXECUTE, (rs, query) -> {
+                rs.next();
+                query.cancel();
+                return rs.getInt(1);
+            });
+
+        assertThat(first).isEqualTo(1);
+        InOrder order = inOrder(statement, resultSet);
+        order.verify(statement).cancel();
+        order.verify(resultSet).close();
+    }
+}
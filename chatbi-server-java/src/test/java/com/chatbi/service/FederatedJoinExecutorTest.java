@@ -0,0 +1,120 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryOptions;
+import com.chatbi.model.SQLExecutionResponse;
+import com.chatbi.model.SemanticSQL;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FederatedJoinExecutorTest {
+    private final FederatedJoinExecutor executor = new FederatedJoinExecutor();
+    private final DatabaseManager databaseManager = mock(DatabaseManager.class);
+    private final DatabaseConnection sales = connection("sales");
+    private final DatabaseConnection crm = connection("crm");
+    private final Map<String, QueryRegistry.TrackedQuery> queries = new HashMap<>();
+
+    @TempDir
+    Path spillDir;
+
+    @BeforeEach
+    void setUp() {
+        ResultBufferFactory resultBufferFactory = new ResultBufferFactory();
+        ReflectionTestUtils.setField(resultBufferFactory, "spillThresholdBytes", 1L << 20);
+        ReflectionTestUtils.setField(resultBufferFactory, "spillDir", spillDir.toString());
+
+        ReflectionTestUtils.setField(executor, "databaseManager", databaseManager);
+        ReflectionTestUtils.setField(executor, "resultBufferFactory", resultBufferFactory);
+        ReflectionTestUtils.setField(executor, "mysqlSQLGenerator", new MySQLSQLGenerator());
+        ReflectionTestUtils.setField(executor, "connectionBulkhead", ConnectionBulkheadTest.bulkhead(8, 1000));
+        ReflectionTestUtils.setField(executor, "buildMemoryBytes", 1L << 20);
+        ReflectionTestUtils.setField(executor, "partitionCount", 4);
+
+        columns(sales, "orders", "id", "customer_id");
+        columns(crm, "customers", "id", "name");
+        // orders: customer_id AS c0, id AS c1; customers: id AS c0, name AS c1
+        rows("orders", new Object[] {10L, 1L}, new Object[] {10L, 2L}, new Object[] {11L, 3L});
+        rows("customers", new Object[] {10L, "acme"}, new Object[] {11L, "globex"});
+    }
+
+    private static DatabaseConnection connection(String id) {
+        DatabaseConnection connection = new DatabaseConnection();
+        connection.setId(id);
+        return connection;
+    }
+
+    private void columns(DatabaseConnection connection, String table, String... names) {
+        JdbcTemplate template = mock(JdbcTemplate.class);
+        List<Map<String, Object>> columns = new ArrayList<>();
+        for (String name : names) {
+            columns.add(Map.of("TABLE_NAME", table, "COLUMN_NAME", name));
+        }
+        when(template.queryForList(anyString(), any(Object[].class))).thenReturn(columns);
+        when(databaseManager.getReadTemplate(connection)).thenReturn(template);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rows(String table, Object[]... rows) {
+        QueryRegistry.TrackedQuery query = mock(QueryRegistry.TrackedQuery.class);
+        queries.put(table, query);
+        when(databaseManager.queryStreaming(
+            contains("FROM `" + table + "`"), any(), any(QueryOptions.class), anyString(),
+            any(DatabaseManager.TrackedResultSetExtractor.class)))
+            .thenAnswer(invocation -> {
+                ResultSet rs = TestResultSets.of(new String[] {"c0", "c1"}, rows);
+                return ((DatabaseManager.TrackedResultSetExtractor<Object>) invocation.getArgument(4))
+                    .extractData(rs, query);
+            });
+    }
+
+    private static SemanticSQL join(String type, Integer limit) {
+        SemanticSQL semanticSQL = new SemanticSQL();
+        semanticSQL.setTables(List.of("orders", "customers"));
+        semanticSQL.setColumns(List.of("orders.id", "customers.name"));
+        semanticSQL.setConditions(new ArrayList<>());
+        semanticSQL.setJoins(List.of(Map.of("type", type, "condition", "orders.customer_id = customers.id")));
+        semanticSQL.setLimit(limit);
+        return semanticSQL;
+    }
+
+    @Test
+    void joinsRowsFromTwoConnections() {
+        SQLExecutionResponse response = executor.execute(join("INNER", null), List.of(sales, crm),
+            QueryOptions.defaults());
+
+        assertThat(response.isSuccess()).isTrue();
+        assertThat(response.getData()).containsExactly(
+            Map.of("id", 1L, "name", "acme"), Map.of("id", 2L, "name", "acme"), Map.of("id", 3L, "name", "globex"));
+        assertThat(response.getJoinCost().getBuildTable()).isEqualTo("customers");
+        verify(queries.get("orders"), never()).cancel();
+    }
+
+    @Test
+    void cancelsTheProbeSideOnceTheLimitIsReached() {
+        SQLExecutionResponse response = executor.execute(join("INNER", 1), List.of(sales, crm),
+            QueryOptions.defaults());
+
+        assertThat(response.getData()).containsExactly(Map.of("id", 1L, "name", "acme"));
+        verify(queries.get("orders")).cancel();
+        verify(queries.get("customers"), never()).cancel();
+    }
+}
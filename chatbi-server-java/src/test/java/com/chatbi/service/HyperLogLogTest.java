@@ -0,0 +1,41 @@
+package com.chatbi.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    private static long estimate(int distinct, int repeats) {
+        HyperLogLog hll = new HyperLogLog(12);
+        for (int r = 0; r < repeats; r++) {
+            for (int i = 0; i < distinct; i++) {
+                hll.add("value-" + i);
+            }
+        }
+        return hll.estimate();
+    }
+
+    @Test
+    void emptySketchEstimatesZero() {
+        assertThat(new HyperLogLog(12).estimate()).isZero();
+    }
+
+    @Test
+    void smallCardinalitiesAreNearlyExact() {
+        assertThat(estimate(10, 1)).isEqualTo(10);
+        assertThat(estimate(1000, 1)).isCloseTo(1000, within(30L));
+    }
+
+    @Test
+    void repeatedValuesDoNotChangeTheEstimate() {
+        assertThat(estimate(500, 5)).isEqualTo(estimate(500, 1));
+    }
+
+    @Test
+    void largeCardinalitiesStayWithinTheStandardError() {
+        // 1.04 / sqrt(4096) is about 1.6%; allow three standard errors
+        assertThat(estimate(200_000, 1)).isCloseTo(200_000, within(10_000L));
+    }
+}
@@ -0,0 +1,48 @@
+package com.chatbi.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongObjectHashMapTest {
+
+    @Test
+    void keepsEveryKeyAcrossRehashes() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>(4);
+        for (long key = -500; key < 500; key++) {
+            map.computeIfAbsent(key * 7919, k -> "v" + k);
+        }
+
+        assertThat(map.size()).isEqualTo(1000);
+        for (long key = -500; key < 500; key++) {
+            assertThat(map.get(key * 7919)).isEqualTo("v" + key * 7919);
+        }
+        assertThat(map.get(1)).isNull();
+    }
+
+    @Test
+    void computeIfAbsentReturnsTheExistingValue() {
+        LongObjectHashMap<StringBuilder> map = new LongObjectHashMap<>(16);
+        map.computeIfAbsent(Long.MIN_VALUE, k -> new StringBuilder("a"));
+        map.computeIfAbsent(Long.MIN_VALUE, k -> new StringBuilder("b")).append('!');
+
+        assertThat(map.size()).isEqualTo(1);
+        assertThat(map.get(Long.MIN_VALUE)).hasToString("a!");
+    }
+
+    @Test
+    void forEachVisitsEveryEntryOnce() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>(16);
+        for (long key = 0; key < 100; key++) {
+            map.computeIfAbsent(key, k -> k * 2);
+        }
+
+        Map<Long, Long> seen = new HashMap<>();
+        map.forEach((key, value) -> assertThat(seen.put(key, value)).isNull());
+
+        assertThat(seen).hasSize(100).containsEntry(0L, 0L).containsEntry(99L, 198L);
+    }
+}
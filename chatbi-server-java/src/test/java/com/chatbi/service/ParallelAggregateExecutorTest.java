@@ -0,0 +1,75 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryOptions;
+import com.chatbi.model.SemanticSQL;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ParallelAggregateExecutorTest {
+    private final ParallelAggregateExecutor executor = new ParallelAggregateExecutor();
+    private final DataSourceRegistry dataSourceRegistry = mock(DataSourceRegistry.class);
+    private final JdbcTemplate replicaTemplate = mock(JdbcTemplate.class);
+    private final ConnectionBulkhead bulkhead = ConnectionBulkheadTest.bulkhead(1, 20);
+    private final DatabaseConnection primary = connection("db1");
+    private final DatabaseConnection replica = connection("db1#r1");
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(executor, "dataSourceRegistry", dataSourceRegistry);
+        ReflectionTestUtils.setField(executor, "connectionBulkhead", bulkhead);
+        ReflectionTestUtils.setField(executor, "enabled", true);
+        ReflectionTestUtils.setField(executor, "slices", 4);
+        ReflectionTestUtils.setField(executor, "minRows", 0L);
+        when(dataSourceRegistry.getJdbcTemplate(replica)).thenReturn(replicaTemplate);
+    }
+
+    private static DatabaseConnection connection(String id) {
+        DatabaseConnection connection = new DatabaseConnection();
+        connection.setId(id);
+        return connection;
+    }
+
+    private static SemanticSQL countByRegion() {
+        SemanticSQL semanticSQL = new SemanticSQL();
+        semanticSQL.setTables(List.of("sales"));
+        semanticSQL.setColumns(List.of("region_id", "COUNT(*) AS orders"));
+        semanticSQL.setGroupBy(List.of("region_id"));
+        return semanticSQL;
+    }
+
+    @Test
+    void readsColumnMetadataFromTheRoutedReader() {
+        // A composite primary key cannot be sliced, so planning stops after the metadata lookup
+        when(replicaTemplate.queryForList(anyString(), any(Object[].class))).thenReturn(List.of(
+            Map.of("COLUMN_NAME", "id", "DATA_TYPE", "int", "COLUMN_KEY", "PRI"),
+            Map.of("COLUMN_NAME", "region_id", "DATA_TYPE", "int", "COLUMN_KEY", "PRI")));
+
+        assertThat(executor.execute(countByRegion(), primary, replica, QueryOptions.defaults())).isNull();
+
+        verify(replicaTemplate).queryForList(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void metadataLookupWaitsForABulkheadPermit() {
+        try (ConnectionBulkhead.Permit held = bulkhead.acquire(primary)) {
+            // Rejected: falls back to the serial statement without touching the database
+            assertThat(executor.execute(countByRegion(), primary, replica, QueryOptions.defaults())).isNull();
+        }
+
+        verify(replicaTemplate, never()).queryForList(anyString(), any(Object[].class));
+    }
+}
@@ -0,0 +1,106 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryCostEstimate;
+import com.chatbi.model.QueryOptions;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class QueryCostGateTest {
+    private static final String JOIN_PLAN = """
+        {"query_block": {"select_id": 1, "nested_loop": [
+          {"table": {"table_name": "o", "access_type": "ALL", "rows_examined_per_scan": 200000, "filtered": "10.00"}},
+          {"table": {"table_name": "c", "access_type": "eq_ref", "rows_examined_per_scan": 1, "filtered": "100.00"}}
+        ], "ordering_operation": {"using_filesort": true}}}
+        """;
+
+    private final QueryCostGate gate = new QueryCostGate();
+    private final JdbcTemplate template = mock(JdbcTemplate.class);
+    private final DatabaseConnection connection = new DatabaseConnection();
+    private String plan = JOIN_PLAN;
+
+    @BeforeEach
+    void setUp() {
+        connection.setId("db1");
+        DataSourceRegistry dataSourceRegistry = mock(DataSourceRegistry.class);
+        ReplicaRouter replicaRouter = mock(ReplicaRouter.class);
+        when(replicaRouter.routeRead(connection)).thenReturn(connection);
+        when(dataSourceRegistry.getJdbcTemplate(connection)).thenReturn(template);
+        when(template.queryForList(anyString(), any(Object[].class))).thenAnswer(inv -> List.of(Map.of("EXPLAIN", plan)));
+
+        ReflectionTestUtils.setField(gate, "dataSourceRegistry", dataSourceRegistry);
+        ReflectionTestUtils.setField(gate, "replicaRouter", replicaRouter);
+        ReflectionTestUtils.setField(gate, "connectionBulkhead", ConnectionBulkheadTest.bulkhead(8, 1000));
+        ReflectionTestUtils.setField(gate, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(gate, "enabled", true);
+        ReflectionTestUtils.setField(gate, "defaultWarnRows", 1_000_000L);
+        ReflectionTestUtils.setField(gate, "defaultLimitRows", 10_000_000L);
+        ReflectionTestUtils.setField(gate, "defaultBlockRows", 100_000_000L);
+        ReflectionTestUtils.setField(gate, "fullScanWarnRows", 100_000L);
+        ReflectionTestUtils.setField(gate, "autoLimit", 10_000);
+    }
+
+    @Test
+    void estimatesRowsAlongJoinOrderAndWarnsOnLargeFullScan() {
+        QueryCostEstimate estimate = gate.evaluate("SELECT * FROM orders o JOIN customers c ON c.id = o.cid ORDER BY o.id",
+            connection, QueryOptions.defaults());
+
+        // 200000 scanned from o, then one lookup per surviving row (200000 * 10%)
+        assertThat(estimate.getEstimatedRows()).isEqualTo(220_000L);
+        assertThat(estimate.getFullScanTables()).containsExactly("o");
+        assertThat(estimate.isFilesort()).isTrue();
+        assertThat(estimate.getAction()).isEqualTo(QueryCostEstimate.ACTION_WARN);
+    }
+
+    @Test
+    void connectionThresholdsOverrideDefaults() {
+        connection.setCostBlockRows(100_000L);
+
+        QueryCostEstimate estimate = gate.evaluate("SELECT * FROM orders", connection, QueryOptions.defaults());
+
+        assertThat(estimate.isBlocked()).isTrue();
+    }
+
+    @Test
+    void appendsLimitOnlyWhenQueryHasNone() {
+        connection.setCostLimitRows(100_000L);
+
+        QueryCostEstimate estimate = gate.evaluate("SELECT * FROM orders;", connection, QueryOptions.defaults());
+        QueryCostEstimate limited = gate.evaluate("SELECT * FROM orders LIMIT 50", connection, QueryOptions.defaults());
+
+        assertThat(estimate.getAction()).isEqualTo(QueryCostEstimate.ACTION_LIMIT);
+        assertThat(gate.applyLimit("SELECT * FROM orders;", estimate)).isEqualTo("SELECT * FROM orders LIMIT 10000");
+        assertThat(limited.getAction()).isEqualTo(QueryCostEstimate.ACTION_WARN);
+        assertThat(gate.applyLimit("SELECT * FROM orders LIMIT 50", limited)).isEqualTo("SELECT * FROM orders LIMIT 50");
+    }
+
+    @Test
+    void smallIndexedQueryIsAllowed() {
+        plan = """
+            {"query_block": {"table": {"table_name": "o", "access_type": "const", "rows_examined_per_scan": 1}}}
+            """;
+
+        QueryCostEstimate estimate = gate.evaluate("SELECT * FROM orders WHERE id = 1", connection, QueryOptions.defaults());
+
+        assertThat(estimate.getAction()).isEqualTo(QueryCostEstimate.ACTION_ALLOW);
+    }
+
+    @Test
+    void nonSelectAndExplainFailureSkipTheGate() {
+        assertThat(gate.evaluate("DELETE FROM orders", connection, QueryOptions.defaults())).isNull();
+        plan = "not json";
+        assertThat(gate.evaluate("SELECT * FROM orders", connection, QueryOptions.defaults())).isNull();
+    }
+}
@@ -0,0 +1,90 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class QueryRegistryTest {
+
+    static QueryRegistry registry(int defaultTimeoutSeconds, int maxTimeoutSeconds) {
+        QueryRegistry registry = new QueryRegistry();
+        ReflectionTestUtils.setField(registry, "defaultTimeoutSeconds", defaultTimeoutSeconds);
+        ReflectionTestUtils.setField(registry, "maxTimeoutSeconds", maxTimeoutSeconds);
+        return registry;
+    }
+
+    @Test
+    void timeoutPrefersRequestThenConnectionThenDefaultCappedAtMax() {
+        QueryRegistry registry = registry(300, 600);
+        DatabaseConnection connection = new DatabaseConnection();
+        connection.setQueryTimeoutSeconds(120);
+
+        assertThat(registry.resolveTimeout(connection, 30)).isEqualTo(30);
+        assertThat(registry.resolveTimeout(connection, null)).isEqualTo(120);
+        assertThat(registry.resolveTimeout(connection, 0)).isEqualTo(120);
+        assertThat(registry.resolveTimeout(null, null)).isEqualTo(300);
+        assertThat(registry.resolveTimeout(null, 7200)).isEqualTo(600);
+    }
+
+    @Test
+    void attachSetsTimeoutAndCloseUnregisters() throws Exception {
+        QueryRegistry registry = registry(300, 3600);
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        try (QueryRegistry.TrackedQuery query = registry.register(null, "SELECT 1", QueryRegistry.SOURCE_EXECUTE, 45)) {
+            query.attach(mock(Connection.class), statement);
+            assertThat(registry.list()).singleElement()
+                .satisfies(info -> assertThat(info.getTimeoutSeconds()).isEqualTo(45));
+        }
+
+        verify(statement).setQueryTimeout(45);
+        assertThat(registry.list()).isEmpty();
+    }
+
+    @Test
+    void untimedQueryLeavesStatementTimeoutUnset() throws Exception {
+        QueryRegistry registry = registry(300, 3600);
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        try (QueryRegistry.TrackedQuery query = registry.registerUntimed(null, "SELECT 1", QueryRegistry.SOURCE_EXECUTE)) {
+            query.attach(mock(Connection.class), statement);
+        }
+
+        verify(statement, never()).setQueryTimeout(anyInt());
+    }
+
+    @Test
+    void cancelBeforeAttachCancelsStatementOnAttach() throws Exception {
+        QueryRegistry registry = registry(300, 3600);
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        try (QueryRegistry.TrackedQuery query = registry.register(null, "SELECT 1", QueryRegistry.SOURCE_EXECUTE, null)) {
+            assertThat(registry.cancel(query.getId())).isTrue();
+            query.attach(mock(Connection.class), statement);
+            assertThat(query.failureMessage(new RuntimeException("boom"))).isEqualTo("查询已被取消");
+        }
+
+        verify(statement).cancel();
+        assertThat(registry.cancel("missing")).isFalse();
+    }
+
+    @Test
+    void failureMessageReportsTimeout() {
+        QueryRegistry registry = registry(300, 3600);
+
+        try (QueryRegistry.TrackedQuery query = registry.register(null, "SELECT 1", QueryRegistry.SOURCE_EXECUTE, 5)) {
+            assertThat(query.failureMessage(new QueryTimeoutException("timeout"))).isEqualTo("查询超时（超过5秒）");
+            assertThat(query.failureMessage(new RuntimeException("syntax"))).isEqualTo("syntax");
+        }
+    }
+}
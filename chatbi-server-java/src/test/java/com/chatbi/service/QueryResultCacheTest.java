@@ -0,0 +1,138 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryOptions;
+import com.chatbi.model.SQLExecutionResponse;
+import com.chatbi.model.SqlParameter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QueryResultCacheTest {
+    private static final String SQL = "SELECT region, amount FROM sales";
+
+    private final QueryResultCache cache = new QueryResultCache();
+    private final DataSourceRegistry dataSourceRegistry = mock(DataSourceRegistry.class);
+    private final ReplicaRouter replicaRouter = mock(ReplicaRouter.class);
+    private final JdbcTemplate replicaTemplate = mock(JdbcTemplate.class);
+    private final SchemaMetadataCache schemaMetadataCache = new SchemaMetadataCache();
+    private final DatabaseConnection primary = connection("db1");
+    private final DatabaseConnection replica = connection("db1#r1");
+    private final List<DatabaseConnection> loadedFrom = new ArrayList<>();
+    private String signature = "2024-01-01|2024-01-02|10|16384";
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "dataSourceRegistry", dataSourceRegistry);
+        ReflectionTestUtils.setField(cache, "replicaRouter", replicaRouter);
+        ReflectionTestUtils.setField(cache, "connectionBulkhead", ConnectionBulkheadTest.bulkhead(8, 1000));
+        ReflectionTestUtils.setField(cache, "schemaMetadataCache", schemaMetadataCache);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxBytes", 1L << 20);
+        ReflectionTestUtils.setField(cache, "maxEntryBytes", 1L << 20);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(cache, "validationIntervalMs", 0L);
+        cache.initMetrics();
+
+        when(replicaRouter.routeRead(primary)).thenReturn(replica);
+        when(dataSourceRegistry.getJdbcTemplate(replica)).thenReturn(replicaTemplate);
+        when(replicaTemplate.queryForList(anyString(), any(Object[].class))).thenAnswer(inv ->
+            List.of(Map.of("table_key", "shop.sales", "signature", signature)));
+    }
+
+    private static DatabaseConnection connection(String id) {
+        DatabaseConnection connection = new DatabaseConnection();
+        connection.setId(id);
+        return connection;
+    }
+
+    private SQLExecutionResponse load() {
+        return load(QueryOptions.defaults());
+    }
+
+    private SQLExecutionResponse load(QueryOptions options) {
+        return cache.getOrLoad(primary, SQL, options, reader -> {
+            loadedFrom.add(reader);
+            return new SQLExecutionResponse(true, List.of(Map.of("region", "east", "amount", loadedFrom.size())), null, 1);
+        });
+    }
+
+    @Test
+    void signaturesAreReadFromTheSameReplicaAsTheQuery() {
+        load();
+
+        assertThat(loadedFrom).containsExactly(replica);
+        verify(dataSourceRegistry).getJdbcTemplate(replica);
+        verify(dataSourceRegistry, never()).getJdbcTemplate(primary);
+    }
+
+    @Test
+    void unchangedSignatureIsServedFromCache() {
+        SQLExecutionResponse first = load();
+        SQLExecutionResponse second = load();
+
+        assertThat(second).isSameAs(first);
+        assertThat(loadedFrom).hasSize(1);
+        assertThat(cache.getEntryCount()).isEqualTo(1);
+    }
+
+    @Test
+    void changedSignatureReloads() {
+        load();
+        signature = "2024-01-01|2024-01-03|11|16384";
+
+        SQLExecutionResponse reloaded = load();
+
+        assertThat(loadedFrom).hasSize(2);
+        assertThat(reloaded.getData().get(0)).containsEntry("amount", 2);
+    }
+
+    @Test
+    void schemaVersionChangeRetiresEntries() {
+        load();
+        schemaMetadataCache.bumpSchemaVersion("db1");
+
+        load();
+        load();
+
+        assertThat(loadedFrom).hasSize(2);
+    }
+
+    @Test
+    void bindParametersArePartOfTheKey() {
+        QueryOptions east = new QueryOptions();
+        east.setParameters(List.of(SqlParameter.of("east")));
+        QueryOptions west = new QueryOptions();
+        west.setParameters(List.of(SqlParameter.of("west")));
+
+        load(east);
+        load(west);
+        load(east);
+
+        assertThat(loadedFrom).hasSize(2);
+        assertThat(cache.getEntryCount()).isEqualTo(2);
+    }
+
+    @Test
+    void invalidateConnectionDropsEntries() {
+        load();
+
+        cache.invalidateConnection("db1");
+
+        assertThat(cache.getEntryCount()).isZero();
+        assertThat(cache.getTotalBytes()).isZero();
+    }
+}
@@ -0,0 +1,100 @@
+package com.chatbi.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultBufferTest {
+
+    @TempDir
+    Path dir;
+
+    private static Map<String, Object> row(int n) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", n);
+        row.put("total", (long) n * 1_000_000_000L);
+        row.put("price", new BigDecimal(n + ".25"));
+        row.put("name", n % 3 == 0 ? null : "名称-" + n);
+        row.put("ratio", n / 4.0);
+        row.put("active", n % 2 == 0);
+        row.put("created_at", new Timestamp(1_700_000_000_000L + n));
+        return row;
+    }
+
+    @Test
+    void smallResultStaysOnHeap() throws Exception {
+        Path file = dir.resolve("small.rb");
+        try (ResultBuffer buffer = new ResultBuffer(file, 1 << 20)) {
+            for (int i = 0; i < 10; i++) {
+                buffer.add(row(i));
+            }
+            buffer.finish();
+
+            assertThat(buffer.isSpilled()).isFalse();
+            assertThat(Files.exists(file)).isFalse();
+            assertThat(buffer.readPage(8, 5)).containsExactly(row(8), row(9));
+        }
+    }
+
+    @Test
+    void spilledRowsRoundTripAcrossIndexPoints() throws Exception {
+        Path file = dir.resolve("large.rb");
+        try (ResultBuffer buffer = new ResultBuffer(file, 512)) {
+            for (int i = 0; i < 300; i++) {
+                buffer.add(row(i));
+            }
+            buffer.finish();
+
+            assertThat(buffer.isSpilled()).isTrue();
+            assertThat(buffer.getRowCount()).isEqualTo(300);
+            assertThat(buffer.readPage(0, 2)).containsExactly(row(0), row(1));
+            assertThat(buffer.readPage(62, 4)).containsExactly(row(62), row(63), row(64), row(65));
+            assertThat(buffer.readPage(299, 10)).containsExactly(row(299));
+            assertThat(buffer.readPage(300, 10)).isEmpty();
+        }
+        assertThat(Files.exists(file)).isFalse();
+    }
+
+    @Test
+    void rowViewIteratesAndIndexesSpilledRows() throws Exception {
+        try (ResultBuffer buffer = new ResultBuffer(dir.resolve("view.rb"), 0)) {
+            for (int i = 0; i < 2500; i++) {
+                buffer.add(row(i));
+            }
+            buffer.finish();
+
+            List<Map<String, Object>> rows = buffer.asRows();
+            List<Object> ids = new ArrayList<>();
+            rows.forEach(r -> ids.add(r.get("id")));
+
+            assertThat(rows).hasSize(2500);
+            assertThat(rows.get(1234)).isEqualTo(row(1234));
+            assertThat(ids).hasSize(2500).startsWith(0, 1, 2).endsWith(2499);
+        }
+    }
+
+    @Test
+    void reopenedFileReadsHeaderAndRebuildsIndex() throws Exception {
+        Path file = dir.resolve("reopen.rb");
+        ResultBuffer writer = new ResultBuffer(file, 0);
+        for (int i = 0; i < 200; i++) {
+            writer.add(row(i));
+        }
+        writer.finish();
+
+        try (ResultBuffer reopened = ResultBuffer.reopen(file, 200)) {
+            assertThat(reopened.readPage(130, 3)).containsExactly(row(130), row(131), row(132));
+        }
+        assertThat(Files.exists(file)).isFalse();
+    }
+}
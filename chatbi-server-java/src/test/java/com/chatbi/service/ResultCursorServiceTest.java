@@ -0,0 +1,127 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.QueryOptions;
+import com.chatbi.model.SQLExecutionResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ResultCursorServiceTest {
+    private static final String[] PAGE_COLUMNS = {"id", "name", "__chatbi_k0"};
+
+    private final ResultCursorService service = new ResultCursorService();
+    private final DatabaseConnection connection = new DatabaseConnection();
+    private final List<String> executedSql = new ArrayList<>();
+    private final List<PreparedStatement> statements = new ArrayList<>();
+    private JdbcTemplate template;
+
+    @BeforeEach
+    void setUp() {
+        connection.setId("c1");
+        template = mock(JdbcTemplate.class);
+        DatabaseManager databaseManager = mock(DatabaseManager.class);
+        when(databaseManager.getTemplate(connection)).thenReturn(template);
+        when(databaseManager.getReadTemplate(connection)).thenReturn(template);
+        when(databaseManager.routeRead(connection)).thenReturn(connection);
+        when(template.queryForList(anyString(), (Object) any(), (Object) any()))
+            .thenReturn(List.of(Map.of("index_name", "PRIMARY", "column_name", "id", "is_nullable", "NO")));
+        ReflectionTestUtils.setField(service, "databaseManager", databaseManager);
+        ReflectionTestUtils.setField(service, "queryRegistry", QueryRegistryTest.registry(300, 3600));
+        ReflectionTestUtils.setField(service, "connectionBulkhead", ConnectionBulkheadTest.bulkhead(8, 1000));
+        ReflectionTestUtils.setField(service, "maxHeldCursors", 20);
+        ReflectionTestUtils.setField(service, "queryCostGate", new QueryCostGate());
+    }
+
+    @Test
+    void keysetCursorReadsShortLastPage() throws Exception {
+        answerPages(
+            List.of(new Object[]{1, "a", 1}, new Object[]{2, "b", 2}, new Object[]{3, "c", 3}),
+            List.<Object[]>of(new Object[]{3, "c", 3}));
+
+        SQLExecutionResponse first = service.openCursor("SELECT id, name FROM orders", connection,
+            QueryOptions.defaults(), 2);
+
+        assertThat(first.isSuccess()).isTrue();
+        assertThat(first.getPaginationMode()).isEqualTo(ResultCursorService.MODE_KEYSET);
+        assertThat(first.getData()).extracting(row -> row.get("id")).containsExactly(1, 2);
+        assertThat(first.getData().get(0)).doesNotContainKey("__chatbi_k0");
+        assertThat(first.getNextCursor()).isNotNull();
+
+        Optional<SQLExecutionResponse> last = service.fetchNext(first.getNextCursor());
+
+        assertThat(last).isPresent();
+        assertThat(last.get().isSuccess()).isTrue();
+        assertThat(last.get().getData()).extracting(row -> row.get("id")).containsExactly(3);
+        assertThat(last.get().getNextCursor()).isNull();
+        assertThat(executedSql.get(1)).contains("WHERE ((orders.`id` > ?))").endsWith("LIMIT 3");
+        verify(statements.get(1)).setObject(1, 2);
+        assertThat(service.fetchNext(first.getNextCursor())).isEmpty();
+    }
+
+    @Test
+    void keysetCursorFittingInOnePageHasNoNextCursor() throws Exception {
+        answerPages(List.<Object[]>of(new Object[]{1, "a", 1}));
+
+        SQLExecutionResponse only = service.openCursor("SELECT id, name FROM orders", connection,
+            QueryOptions.defaults(), 2);
+
+        assertThat(only.isSuccess()).isTrue();
+        assertThat(only.getData()).hasSize(1);
+        assertThat(only.getNextCursor()).isNull();
+    }
+
+    @Test
+    void columnarKeysetCursorReadsShortLastPage() throws Exception {
+        answerPages(
+            List.of(new Object[]{1, "a", 1}, new Object[]{2, "b", 2}, new Object[]{3, "c", 3}),
+            List.<Object[]>of(new Object[]{3, "c", 3}));
+        QueryOptions options = new QueryOptions();
+        options.setResultFormat(QueryOptions.FORMAT_COLUMNAR);
+
+        SQLExecutionResponse first = service.openCursor("SELECT id, name FROM orders", connection, options, 2);
+        SQLExecutionResponse last = service.fetchNext(first.getNextCursor()).orElseThrow();
+
+        assertThat(first.getColumnar().getColumns()).hasSize(2);
+        assertThat(last.isSuccess()).isTrue();
+        assertThat(last.getColumnar().getRowCount()).isEqualTo(1);
+        verify(statements.get(1)).setObject(1, 2);
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    private void answerPages(List<Object[]>... pages) throws Exception {
+        int[] types = {Types.INTEGER, Types.VARCHAR, Types.INTEGER};
+        int[] call = {0};
+        when(template.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class))).thenAnswer(inv -> {
+            Connection con = mock(Connection.class);
+            PreparedStatement ps = mock(PreparedStatement.class);
+            when(con.prepareStatement(anyString())).thenAnswer(prepare -> {
+                executedSql.add(prepare.getArgument(0));
+                return ps;
+            });
+            inv.<PreparedStatementCreator>getArgument(0).createPreparedStatement(con);
+            statements.add(ps);
+            return inv.<ResultSetExtractor<Object>>getArgument(1)
+                .extractData(TestResultSets.of(PAGE_COLUMNS, types, pages[call[0]++]));
+        });
+    }
+}
@@ -0,0 +1,95 @@
+package com.chatbi.service;
+
+import com.chatbi.model.RollupTable;
+import com.chatbi.model.SemanticSQL;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RollupPlanTest {
+
+    private static RollupTable rollup() {
+        RollupTable rollup = new RollupTable();
+        rollup.setSourceTable("orders");
+        rollup.setTableName("chatbi_rollup_orders_1234abcd");
+        rollup.setDimensions(List.of("region", "date(created_at)"));
+        rollup.setMeasures(List.of("count(*)", "sum(amount)", "count(amount)", "max(amount)"));
+        return rollup;
+    }
+
+    private static SemanticSQL query(List<String> columns, List<String> groupBy) {
+        SemanticSQL semanticSQL = new SemanticSQL();
+        semanticSQL.setTables(List.of("orders"));
+        semanticSQL.setColumns(columns);
+        semanticSQL.setGroupBy(groupBy);
+        semanticSQL.setConditions(new ArrayList<>());
+        semanticSQL.setJoins(new ArrayList<>());
+        return semanticSQL;
+    }
+
+    @Test
+    void normalizesDimensionsAndMeasures() {
+        assertThat(RollupPlan.dimension("DATE(`orders`.created_at)", "orders")).isEqualTo("date(created_at)");
+        assertThat(RollupPlan.dimension("DATE_FORMAT(created_at, '%Y-%m')", "orders"))
+            .isEqualTo("date_format(created_at,'%Y-%m')");
+        assertThat(RollupPlan.measure("SUM( orders.amount )", "orders")).isEqualTo("sum(amount)");
+        assertThatThrownBy(() -> RollupPlan.measure("SUM(*)", "orders")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RollupPlan.dimension("amount + 1", "orders"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rewritesToReaggregateThePartialColumns() {
+        SemanticSQL semanticSQL = query(List.of("region", "COUNT(*) AS orders", "AVG(amount) AS avg_amount"),
+            List.of("region"));
+        semanticSQL.setConditions(List.of(Map.of("column", "DATE(created_at)", "operator", ">=", "value", "2024-01-01")));
+        semanticSQL.setOrderBy(List.of(Map.of("column", "orders", "direction", "DESC")));
+        semanticSQL.setLimit(10);
+
+        SemanticSQL rewritten = RollupPlan.rewrite(semanticSQL, rollup());
+
+        assertThat(rewritten.getTables()).containsExactly("`chatbi_rollup_orders_1234abcd`");
+        assertThat(rewritten.getColumns()).containsExactly("`d0` AS `region`",
+            "CAST(COALESCE(SUM(`m0`), 0) AS SIGNED) AS `orders`", "SUM(`m1`) / SUM(`m2`) AS `avg_amount`");
+        assertThat(rewritten.getGroupBy()).containsExactly("`d0`");
+        assertThat(rewritten.getConditions()).singleElement()
+            .satisfies(condition -> assertThat(condition).containsEntry("column", "`d1`").containsEntry("value", "2024-01-01"));
+        assertThat(rewritten.getOrderBy()).containsExactly(Map.of("column", "`orders`", "direction", "DESC"));
+        assertThat(rewritten.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void doesNotRewriteWhatTheRollupCannotAnswer() {
+        // Not a dimension
+        assertThat(RollupPlan.rewrite(query(List.of("customer_id", "COUNT(*)"), List.of("customer_id")), rollup()))
+            .isNull();
+        // Not a stored measure
+        assertThat(RollupPlan.rewrite(query(List.of("MIN(amount)"), null), rollup())).isNull();
+        // Filter on a column that was aggregated away
+        SemanticSQL filtered = query(List.of("COUNT(*)"), null);
+        filtered.setConditions(List.of(Map.of("column", "amount", "operator", ">", "value", 10)));
+        assertThat(RollupPlan.rewrite(filtered, rollup())).isNull();
+        // Another table
+        SemanticSQL other = query(List.of("COUNT(*)"), null);
+        other.setTables(List.of("customers"));
+        assertThat(RollupPlan.rewrite(other, rollup())).isNull();
+    }
+
+    @Test
+    void buildsRefreshAndCompactionStatements() {
+        RollupTable rollup = rollup();
+
+        assertThat(RollupPlan.sourceSelect(rollup, "`id` > ? AND `id` <= ?")).isEqualTo(
+            "SELECT `region` AS `d0`, DATE(`created_at`) AS `d1`, COUNT(*) AS `m0`, SUM(`amount`) AS `m1`, "
+                + "COUNT(`amount`) AS `m2`, MAX(`amount`) AS `m3` FROM `orders` WHERE `id` > ? AND `id` <= ? "
+                + "GROUP BY `region`, DATE(`created_at`)");
+        assertThat(RollupPlan.compactSelect(rollup)).isEqualTo(
+            "SELECT `d0`, `d1`, SUM(`m0`) AS `m0`, SUM(`m1`) AS `m1`, SUM(`m2`) AS `m2`, MAX(`m3`) AS `m3` "
+                + "FROM `chatbi_rollup_orders_1234abcd` GROUP BY `d0`, `d1`");
+    }
+}
@@ -0,0 +1,134 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.model.RollupTable;
+import com.chatbi.repository.DatabaseConnectionRepository;
+import com.chatbi.repository.RollupTableRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RollupServiceTest {
+    private final RollupService service = new RollupService();
+    private final RollupTableRepository repository = mock(RollupTableRepository.class);
+    private final JdbcTemplate template = mock(JdbcTemplate.class);
+    private final RollupTable rollup = new RollupTable();
+    private final List<String> statements = new ArrayList<>();
+    private final List<String> savedWatermarks = new ArrayList<>();
+    private boolean failInsert;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DatabaseConnection connection = new DatabaseConnection();
+        connection.setId("db1");
+        DatabaseConnectionRepository connectionRepository = mock(DatabaseConnectionRepository.class);
+        when(connectionRepository.findById("db1")).thenReturn(Optional.of(connection));
+        DataSourceRegistry dataSourceRegistry = mock(DataSourceRegistry.class);
+        when(dataSourceRegistry.getJdbcTemplate(connection)).thenReturn(template);
+
+        ReflectionTestUtils.setField(service, "repository", repository);
+        ReflectionTestUtils.setField(service, "connectionRepository", connectionRepository);
+        ReflectionTestUtils.setField(service, "dataSourceRegistry", dataSourceRegistry);
+        ReflectionTestUtils.setField(service, "connectionBulkhead", ConnectionBulkheadTest.bulkhead(8, 1000));
+        ReflectionTestUtils.setField(service, "queryRegistry", QueryRegistryTest.registry(300, 3600));
+        ReflectionTestUtils.setField(service, "queryResultCache", mock(QueryResultCache.class));
+        ReflectionTestUtils.setField(service, "compactEveryRefreshes", 24);
+        ReflectionTestUtils.setField(service, "statementTimeoutSeconds", 600);
+
+        rollup.setId("r1");
+        rollup.setConnectionId("db1");
+        rollup.setSourceTable("orders");
+        rollup.setTableName("chatbi_rollup_orders_r1");
+        rollup.setDimensions(List.of("region"));
+        rollup.setMeasures(List.of("count(*)"));
+        rollup.setWatermarkColumn("id");
+        rollup.setEnabled(true);
+        rollup.setStatus(RollupTable.STATUS_ACTIVE);
+        rollup.setLastWatermark("100");
+        when(repository.findById("r1")).thenReturn(Optional.of(rollup));
+        when(repository.save(any(RollupTable.class))).thenAnswer(invocation -> {
+            savedWatermarks.add(((RollupTable) invocation.getArgument(0)).getLastWatermark());
+            return invocation.getArgument(0);
+        });
+
+        when(template.queryForObject(contains("MAX(`id`)"), eq(String.class))).thenReturn("200");
+        when(template.queryForObject(contains("information_schema.TABLES"), eq(Integer.class), any(Object[].class)))
+            .thenReturn(1);
+        when(template.queryForObject(startsWith("SELECT COUNT(*) FROM `"), eq(Long.class))).thenReturn(3L);
+        when(template.update(any(PreparedStatementCreator.class))).thenAnswer(invocation -> {
+            Connection con = mock(Connection.class);
+            when(con.prepareStatement(anyString())).thenAnswer(prepare -> {
+                String sql = prepare.getArgument(0);
+                statements.add(sql);
+                if (failInsert && sql.startsWith("INSERT")) {
+                    throw new SQLException("Lock wait timeout exceeded");
+                }
+                return mock(PreparedStatement.class);
+            });
+            ((PreparedStatementCreator) invocation.getArgument(0)).createPreparedStatement(con);
+            return 1;
+        });
+    }
+
+    private void refresh() {
+        ReflectionTestUtils.invokeMethod(service, "refresh", "r1");
+    }
+
+    @Test
+    void incrementAppendsRowsAboveTheSavedWatermark() {
+        refresh();
+
+        assertThat(statements).singleElement().satisfies(sql -> assertThat(sql)
+            .startsWith("INSERT INTO `chatbi_rollup_orders_r1` SELECT").contains("WHERE `id` > ? AND `id` <= ?"));
+        // Cleared before the rollup table changed, saved again once it has
+        assertThat(savedWatermarks).containsExactly(null, "200");
+        assertThat(rollup.getStatus()).isEqualTo(RollupTable.STATUS_ACTIVE);
+    }
+
+    @Test
+    void interruptedIncrementIsFollowedByARebuild() {
+        failInsert = true;
+        refresh();
+
+        assertThat(rollup.getLastWatermark()).isNull();
+        assertThat(rollup.getStatus()).isEqualTo(RollupTable.STATUS_FAILED);
+
+        failInsert = false;
+        statements.clear();
+        refresh();
+
+        assertThat(statements).noneMatch(sql -> sql.startsWith("INSERT"));
+        assertThat(statements).anyMatch(sql -> sql.startsWith("CREATE TABLE `chatbi_rollup_orders_r1__new` AS SELECT")
+            && sql.contains("WHERE `id` <= ?"));
+        assertThat(rollup.getLastWatermark()).isEqualTo("200");
+        assertThat(rollup.getStatus()).isEqualTo(RollupTable.STATUS_ACTIVE);
+    }
+
+    @Test
+    void unchangedSourceKeepsTheWatermark() {
+        when(template.queryForObject(contains("MAX(`id`)"), eq(String.class))).thenReturn("100");
+
+        refresh();
+
+        assertThat(statements).isEmpty();
+        assertThat(savedWatermarks).containsExactly("100");
+    }
+}
@@ -0,0 +1,199 @@
+package com.chatbi.service;
+
+import com.chatbi.model.ColumnProfile;
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.repository.ColumnProfileRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SchemaMetadataBuilderTest {
+    private final SchemaMetadataBuilder builder = new SchemaMetadataBuilder();
+    private final JdbcTemplate template = mock(JdbcTemplate.class);
+    private final DatabaseConnection connection = new DatabaseConnection();
+    private final SchemaMetadataCache cache = new SchemaMetadataCache();
+    private final List<ColumnProfile> profiles = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        connection.setId("db1");
+        DatabaseManager databaseManager = mock(DatabaseManager.class);
+        when(databaseManager.getReadTemplate(connection)).thenReturn(template);
+        ColumnProfileRepository columnProfileRepository = mock(ColumnProfileRepository.class);
+        when(columnProfileRepository.findByConnectionId("db1")).thenReturn(profiles);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+        ReflectionTestUtils.setField(cache, "staleTtlSeconds", 30L);
+
+        ReflectionTestUtils.setField(builder, "databaseManager", databaseManager);
+        ReflectionTestUtils.setField(builder, "connectionBulkhead", ConnectionBulkheadTest.bulkhead(8, 1000));
+        ReflectionTestUtils.setField(builder, "schemaMetadataCache", cache);
+        ReflectionTestUtils.setField(builder, "columnProfileRepository", columnProfileRepository);
+        ReflectionTestUtils.setField(builder, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(builder, "rollupTablePrefix", "chatbi_rollup_");
+
+        when(template.queryForList(infoSchema("tables"), any(Object[].class))).thenReturn(List.of(
+            row("table_name", "customers", "comment", "客户"),
+            row("table_name", "orders", "comment", null),
+            row("table_name", "chatbi_rollup_orders_1234abcd", "comment", "")));
+        when(template.queryForList(infoSchema("columns"), any(Object[].class))).thenReturn(List.of(
+            row("table_name", "customers", "name", "id", "type", "int"),
+            row("table_name", "orders", "name", "id", "type", "bigint"),
+            row("table_name", "orders", "name", "customer_id", "type", "int"),
+            row("table_name", "chatbi_rollup_orders_1234abcd", "name", "d0", "type", "int")));
+        when(template.queryForList(infoSchema("statistics"), any(Object[].class))).thenReturn(List.of(
+            row("table_name", "orders", "index_name", "PRIMARY", "non_unique", 0, "column_name", "id"),
+            row("table_name", "orders", "index_name", "idx_customer", "non_unique", 1, "column_name", "customer_id")));
+        when(template.queryForList(infoSchema("key_column_usage"), any(Object[].class))).thenReturn(List.of(
+            row("table_name", "orders", "constraint_name", "fk_customer", "column_name", "customer_id",
+                "referenced_table", "customers", "referenced_column", "id")));
+        profile("orders", "id", 1, false, false, 2L, "[{\"value\": \"1\", \"count\": 1}]", "[\"1\", \"2\"]");
+        profile("orders", "customer_id", 2, true, false, 1L, "[{\"value\": \"7\", \"count\": 2}]", "[\"7\"]");
+    }
+
+    private ColumnProfile profile(String table, String column, int position, boolean complete, boolean sampled,
+                                  long distinct, String topValues, String sampleValues) {
+        ColumnProfile profile = new ColumnProfile();
+        profile.setConnectionId("db1");
+        profile.setTableName(table);
+        profile.setColumnName(column);
+        profile.setOrdinalPosition(position);
+        profile.setCompleteValues(complete);
+        profile.setSampled(sampled);
+        profile.setDistinctCount(distinct);
+        profile.setTopValues(topValues);
+        profile.setSampleValues(sampleValues);
+        profile.setMinValue(sampleValues.contains("1") ? "1" : null);
+        profile.setMaxValue(sampleValues.contains("1") ? "2" : null);
+        profile.setNullRatio(0.0);
+        profiles.add(profile);
+        return profile;
+    }
+
+    private static String infoSchema(String view) {
+        return contains("FROM information_schema." + view);
+    }
+
+    private static Map<String, Object> row(Object... keyValues) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            row.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return row;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> table(Map<String, Object> metadata, String name) {
+        return (Map<String, Object>) ((Map<String, Object>) metadata.get("tables")).get(name);
+    }
+
+    @Test
+    void groupsBulkInformationSchemaRowsByTable() {
+        Map<String, Object> metadata = builder.buildDatabaseMetadata(connection);
+
+        assertThat((Map<String, Object>) metadata.get("tables")).containsOnlyKeys("customers", "orders");
+        Map<String, Object> orders = table(metadata, "orders");
+        assertThat(orders).containsEntry("comment", "").containsEntry("primary_key", List.of("id"));
+        assertThat(orders.get("indexes")).isEqualTo(List.of(
+            Map.of("name", "idx_customer", "unique", false, "columns", List.of("customer_id"))));
+        assertThat(orders.get("foreign_keys")).isEqualTo(List.of(Map.of("name", "fk_customer",
+            "columns", List.of("customer_id"), "referenced_table", "customers", "referenced_columns", List.of("id"))));
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> columns = (List<Map<String, Object>>) orders.get("columns");
+        assertThat(columns).extracting(column -> column.get("name")).containsExactly("id", "customer_id");
+        assertThat(columns.get(1)).doesNotContainKey("table_name").containsEntry("samples", List.of("7"));
+    }
+
+    @Test
+    void keysAndIndexesAreOptional() {
+        when(template.queryForList(infoSchema("statistics"), any(Object[].class)))
+            .thenThrow(new BadSqlGrammarException("statistics", "SELECT", new SQLException("denied")));
+
+        Map<String, Object> metadata = builder.buildDatabaseMetadata(connection);
+
+        assertThat(table(metadata, "orders")).containsEntry("primary_key", new ArrayList<>());
+        assertThat(table(metadata, "customers")).isNotNull();
+    }
+
+    @Test
+    void schemaQueriesDoNotGrowWithTheNumberOfTables() {
+        builder.buildDatabaseMetadata(connection);
+        builder.buildDatabaseMetadata(connection);
+
+        verify(template, times(1)).queryForList(infoSchema("columns"), any(Object[].class));
+        verify(template, times(4)).queryForList(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void tablesWithoutProfilesAreStale() {
+        Map<String, Object> metadata = builder.buildDatabaseMetadata(connection);
+
+        assertThat(metadata.get("stale_tables")).isEqualTo(List.of("customers"));
+        assertThat(((Map<?, ?>) metadata.get("cache")).get("stale_tables")).isEqualTo(List.of("customers"));
+    }
+
+    @Test
+    void promptListsValuesOnlyWhenTheProfileHasAllOfThem() {
+        String prompt = builder.summarizeMetadataForPrompt(builder.buildDatabaseMetadata(connection));
+
+        assertThat(prompt).contains("customer_id(int): 主键/外键标识，取值: 7",
+            "id(bigint): 主键/外键标识，样例: 1, 2，范围: 1 ~ 2，约2个不同值");
+    }
+
+    @Test
+    void promptLabelsStatisticsOfATruncatedScanAsSampled() {
+        profiles.clear();
+        profile("orders", "id", 1, false, true, 2L, "[{\"value\": \"1\", \"count\": 1}]", "[\"1\", \"2\"]");
+        profile("orders", "customer_id", 2, true, true, 1L, "[{\"value\": \"7\", \"count\": 2}]", "[\"7\"]");
+
+        String prompt = builder.summarizeMetadataForPrompt(builder.buildDatabaseMetadata(connection));
+
+        assertThat(prompt).contains("customer_id(int): 主键/外键标识，样本中的取值: 7",
+            "id(bigint): 主键/外键标识，样例: 1, 2，样本范围: 1 ~ 2，样本中约2个不同值");
+        assertThat(prompt).doesNotContain("，取值:", "，范围:", "，约");
+    }
+
+    @Test
+    void refreshTablesReloadsOnlyChangedTables() {
+        builder.buildDatabaseMetadata(connection);
+        when(template.queryForList(infoSchema("tables"), eq("orders"))).thenReturn(List.of(
+            row("table_name", "orders", "comment", "订单")));
+        when(template.queryForList(infoSchema("columns"), eq("orders"))).thenReturn(List.of(
+            row("table_name", "orders", "name", "id", "type", "bigint"),
+            row("table_name", "orders", "name", "status", "type", "varchar(16)")));
+
+        assertThat(builder.refreshTables(connection, List.of("orders"), List.of("customers"))).isTrue();
+
+        Map<String, Object> metadata = builder.buildDatabaseMetadata(connection);
+        assertThat(((Map<?, ?>) metadata.get("cache")).get("hit")).isEqualTo(true);
+        assertThat((Map<String, Object>) metadata.get("tables")).containsOnlyKeys("orders");
+        assertThat(builder.summarizeMetadataForPrompt(metadata)).contains("- 表 orders: 订单", "status(varchar(16))");
+        verify(template, times(4)).queryForList(contains("table_name IN (?)"), eq("orders"));
+    }
+
+    @Test
+    void refreshTablesWithoutCachedMetadataLeavesTheNextBuildToLoad() {
+        assertThat(builder.refreshTables(connection, List.of("orders"), List.of())).isTrue();
+
+        verify(template, times(0)).queryForList(infoSchema("tables"), any(Object[].class));
+    }
+}
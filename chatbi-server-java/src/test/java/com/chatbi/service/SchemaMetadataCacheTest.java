@@ -0,0 +1,99 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchemaMetadataCacheTest {
+    private static final Map<String, Object> METADATA = Map.of("tables", Map.of("orders", Map.of()));
+
+    private final SchemaMetadataCache cache = new SchemaMetadataCache();
+    private final DatabaseConnection connection = new DatabaseConnection();
+    private final AtomicInteger builds = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+        connection.setId("db1");
+    }
+
+    private Map<String, Object> load() {
+        builds.incrementAndGet();
+        return METADATA;
+    }
+
+    @Test
+    void servesHitsUntilInvalidated() {
+        SchemaMetadataCache.Snapshot first = cache.get(connection, this::load);
+        SchemaMetadataCache.Snapshot second = cache.get(connection, this::load);
+
+        assertThat(first.hit()).isFalse();
+        assertThat(second.hit()).isTrue();
+        assertThat(second.version()).isEqualTo(first.version());
+
+        cache.invalidate("db1");
+        SchemaMetadataCache.Snapshot rebuilt = cache.get(connection, this::load);
+
+        assertThat(rebuilt.hit()).isFalse();
+        assertThat(rebuilt.version()).isGreaterThan(first.version());
+        assertThat(builds).hasValue(2);
+    }
+
+    @Test
+    void emptySchemaIsNotCached() {
+        cache.get(connection, () -> {
+            builds.incrementAndGet();
+            return Map.of("tables", Map.of());
+        });
+        cache.get(connection, this::load);
+
+        assertThat(builds).hasValue(2);
+    }
+
+    @Test
+    void invalidationDuringABuildKeepsItsResultOutOfTheCache() {
+        cache.get(connection, () -> {
+            cache.invalidate("db1");
+            return load();
+        });
+        SchemaMetadataCache.Snapshot next = cache.get(connection, this::load);
+
+        assertThat(next.hit()).isFalse();
+        assertThat(builds).hasValue(2);
+    }
+
+    @Test
+    void concurrentMissesShareOneBuild() throws Exception {
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<SchemaMetadataCache.Snapshot> first = CompletableFuture.supplyAsync(() ->
+            cache.get(connection, () -> {
+                building.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return load();
+            }));
+        assertThat(building.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<SchemaMetadataCache.Snapshot> second = CompletableFuture.supplyAsync(() ->
+            cache.get(connection, this::load));
+
+        Thread.sleep(50);
+        release.countDown();
+
+        assertThat(second.get(5, TimeUnit.SECONDS).version()).isEqualTo(first.get(5, TimeUnit.SECONDS).version());
+        assertThat(builds).hasValue(1);
+    }
+}
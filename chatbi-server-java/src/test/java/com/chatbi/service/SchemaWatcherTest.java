@@ -0,0 +1,134 @@
+package com.chatbi.service;
+
+import com.chatbi.model.DatabaseConnection;
+import com.chatbi.repository.DatabaseConnectionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SchemaWatcherTest {
+    private final SchemaWatcher watcher = new SchemaWatcher();
+    private final SchemaMetadataCache cache = new SchemaMetadataCache();
+    private final SchemaMetadataBuilder builder = mock(SchemaMetadataBuilder.class);
+    private final ColumnProfiler profiler = mock(ColumnProfiler.class);
+    private final DatabaseConnection connection = new DatabaseConnection();
+    private volatile List<Map<String, Object>> signals = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        connection.setId("db1");
+        DatabaseConnectionRepository repository = mock(DatabaseConnectionRepository.class);
+        when(repository.findByIsActiveTrue()).thenReturn(List.of(connection));
+        ReplicaRouter replicaRouter = mock(ReplicaRouter.class);
+        when(replicaRouter.routeRead(connection)).thenReturn(connection);
+        JdbcTemplate template = mock(JdbcTemplate.class);
+        when(template.queryForList(anyString())).thenAnswer(invocation -> signals);
+        DataSourceRegistry dataSourceRegistry = mock(DataSourceRegistry.class);
+        when(dataSourceRegistry.getJdbcTemplate(connection)).thenReturn(template);
+        when(builder.refreshTables(any(), any(), any())).thenReturn(true);
+
+        ReflectionTestUtils.setField(watcher, "connectionRepository", repository);
+        ReflectionTestUtils.setField(watcher, "dataSourceRegistry", dataSourceRegistry);
+        ReflectionTestUtils.setField(watcher, "replicaRouter", replicaRouter);
+        ReflectionTestUtils.setField(watcher, "connectionBulkhead", ConnectionBulkheadTest.bulkhead(8, 1000));
+        ReflectionTestUtils.setField(watcher, "schemaMetadataCache", cache);
+        ReflectionTestUtils.setField(watcher, "schemaMetadataBuilder", builder);
+        ReflectionTestUtils.setField(watcher, "columnProfiler", profiler);
+        ReflectionTestUtils.setField(watcher, "enabled", true);
+        ReflectionTestUtils.setField(watcher, "rollupTablePrefix", "chatbi_rollup_");
+
+        signals = List.of(
+            Map.of("table_name", "orders", "structure", "s1", "update_time", "t1"),
+            Map.of("table_name", "customers", "structure", "s1", "update_time", "t1"),
+            Map.of("table_name", "chatbi_rollup_orders_1234abcd", "structure", "s1", "update_time", "t1"));
+        check();
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.shutdown();
+    }
+
+    /**
+     * 运行一轮检查并等它在检查线程上完成
+     */
+    private void check() {
+        Object before = watcher.describe("db1").get("checked_at");
+        ReflectionTestUtils.invokeMethod(watcher, "checkAll");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (watcher.describe("db1").get("checked_at") == before && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        while (isChecking() && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private boolean isChecking() {
+        Object watch = ((Map<?, ?>) ReflectionTestUtils.getField(watcher, "watches")).get("db1");
+        return watch != null && ((AtomicBoolean) ReflectionTestUtils.getField(watch, "checking")).get();
+    }
+
+    @Test
+    void firstCheckOnlyRecordsTheBaseline() {
+        assertThat(watcher.describe("db1")).containsEntry("schema_version", 0L).containsEntry("table_count", 2)
+            .containsEntry("changed_at", null);
+        verify(builder, never()).refreshTables(any(), any(), any());
+    }
+
+    @Test
+    void structuralChangeBumpsTheVersionAndReprofilesChangedTables() {
+        signals = List.of(
+            Map.of("table_name", "orders", "structure", "s2", "update_time", "t1"),
+            Map.of("table_name", "payments", "structure", "s1", "update_time", "t1"));
+
+        check();
+
+        verify(builder, timeout(5000)).refreshTables(connection, Set.of("orders", "payments"), Set.of("customers"));
+        verify(profiler, timeout(5000)).requestProfile("db1", Set.of("orders", "payments"), true);
+        assertThat(watcher.describe("db1")).containsEntry("schema_version", 1L);
+        assertThat(watcher.describe("db1").get("changed_at")).isNotNull();
+    }
+
+    @Test
+    void dataOnlyChangeOnlyAsksForANewProfile() {
+        signals = List.of(
+            Map.of("table_name", "orders", "structure", "s1", "update_time", "t2"),
+            Map.of("table_name", "customers", "structure", "s1", "update_time", "t1"));
+
+        check();
+
+        verify(profiler, timeout(5000)).requestProfile("db1", Set.of("orders"), false);
+        verify(builder, never()).refreshTables(any(), any(), any());
+        assertThat(watcher.describe("db1")).containsEntry("schema_version", 0L).containsEntry("changed_at", null);
+    }
+
+    @Test
+    void failedStructuralRefreshInvalidatesTheCache() {
+        when(builder.refreshTables(any(), any(), any())).thenReturn(false);
+        signals = List.of(Map.of("table_name", "orders", "structure", "s2", "update_time", "t1"));
+
+        check();
+
+        verify(builder, timeout(5000)).refreshTables(any(), any(), any());
+        // The bump and the invalidation each advance the version
+        assertThat(watcher.describe("db1")).containsEntry("schema_version", 2L);
+    }
+}
@@ -0,0 +1,60 @@
+package com.chatbi.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SqlTextTest {
+
+    @Test
+    void normalizeCollapsesWhitespaceOutsideQuotesOnly() {
+        String sql = "  SELECT  a,\n\tb FROM t WHERE name = 'x  y' AND `odd  col` = 1 ;; ";
+
+        assertThat(SqlText.normalize(sql))
+            .isEqualTo("SELECT a, b FROM t WHERE name = 'x  y' AND `odd  col` = 1");
+    }
+
+    @Test
+    void normalizeKeepsEscapedQuoteInsideLiteral() {
+        assertThat(SqlText.normalize("SELECT 'it\\'s   here'   FROM t"))
+            .isEqualTo("SELECT 'it\\'s   here' FROM t");
+    }
+
+    @Test
+    void referencedTablesCoversFromListsAndJoins() {
+        String sql = "SELECT * FROM `sales`.`orders` o JOIN customers c ON c.id = o.customer_id "
+            + "LEFT JOIN regions r ON r.id = c.region_id WHERE o.id IN (SELECT order_id FROM refunds)";
+
+        assertThat(SqlText.referencedTables(sql))
+            .containsExactlyInAnyOrder("sales.orders", "customers", "regions", "refunds");
+        assertThat(SqlText.referencedTables("SELECT * FROM a, b WHERE a.id = b.id"))
+            .containsExactlyInAnyOrder("a", "b");
+    }
+
+    @Test
+    void detectsNonDeterministicFunctions() {
+        assertThat(SqlText.isNonDeterministic("SELECT * FROM t WHERE d > NOW() - INTERVAL 1 DAY")).isTrue();
+        assertThat(SqlText.isNonDeterministic("SELECT RAND()")).isTrue();
+        assertThat(SqlText.isNonDeterministic("SELECT now_count FROM t")).isFalse();
+    }
+
+    @Test
+    void parseSimpleSelectAcceptsSingleTableFilter() {
+        SqlText.SimpleSelect select = SqlText.parseSimpleSelect("SELECT id, name FROM orders o WHERE amount > 10;");
+
+        assertThat(select).isNotNull();
+        assertThat(select.getSelectList()).isEqualTo("id, name");
+        assertThat(select.getTable()).isEqualTo("orders");
+        assertThat(select.getQualifier()).isEqualTo("o");
+        assertThat(select.getWhere()).isEqualTo("amount > 10");
+    }
+
+    @Test
+    void parseSimpleSelectRejectsShapesThatCannotBePagedByKey() {
+        assertThat(SqlText.parseSimpleSelect("SELECT COUNT(*) FROM orders")).isNull();
+        assertThat(SqlText.parseSimpleSelect("SELECT * FROM orders ORDER BY id")).isNull();
+        assertThat(SqlText.parseSimpleSelect("SELECT * FROM orders LIMIT 10")).isNull();
+        assertThat(SqlText.parseSimpleSelect("SELECT * FROM orders o JOIN items i ON i.order_id = o.id")).isNull();
+        assertThat(SqlText.parseSimpleSelect("SELECT * FROM a, b")).isNull();
+    }
+}
@@ -0,0 +1,141 @@
+package com.chatbi.service;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 基于内存行的 ResultSet 替身。与 MariaDB Connector/J 一致，游标不在某一行上时读取列值会抛出 SQLException
+ */
+final class TestResultSets {
+
+    private TestResultSets() {
+    }
+
+    static ResultSet of(String[] columns, Object[]... rows) {
+        int[] types = new int[columns.length];
+        Arrays.fill(types, Types.VARCHAR);
+        return of(columns, types, rows);
+    }
+
+    static ResultSet of(String[] columns, int[] types, Object[]... rows) {
+        return of(columns, types, Arrays.asList(rows));
+    }
+
+    static ResultSet of(String[] columns, int[] types, List<Object[]> rows) {
+        ResultSetMetaData metaData = metaData(columns, types);
+        State state = new State();
+        return mock(ResultSet.class, invocation -> {
+            Object[] args = invocation.getArguments();
+            switch (invocation.getMethod().getName()) {
+                case "next":
+                    if (state.position < rows.size() - 1) {
+                        state.position++;
+                        return true;
+                    }
+                    state.position = rows.size();
+                    return false;
+                case "getMetaData":
+                    return metaData;
+                case "getRow":
+                    return state.position >= 0 && state.position < rows.size() ? state.position + 1 : 0;
+                case "wasNull":
+                    return state.lastNull;
+                case "close":
+                    state.closed = true;
+                    return null;
+                case "isClosed":
+                    return state.closed;
+                case "getObject":
+                case "getString":
+                case "getLong":
+                case "getInt":
+                case "getDouble":
+                case "getBoolean":
+                case "getBigDecimal":
+                    if (!(args[0] instanceof Integer column)) {
+                        break;
+                    }
+                    if (state.position < 0 || state.position >= rows.size()) {
+                        throw new SQLException("wrong row position");
+                    }
+                    Object value = rows.get(state.position)[column - 1];
+                    state.lastNull = value == null;
+                    return convert(invocation.getMethod().getName(), value);
+                default:
+                    break;
+            }
+            return RETURNS_DEFAULTS.answer(invocation);
+        });
+    }
+
+    private static Object convert(String getter, Object value) {
+        switch (getter) {
+            case "getString":
+                return value != null ? value.toString() : null;
+            case "getLong":
+                return value instanceof Number number ? number.longValue() : 0L;
+            case "getInt":
+                return value instanceof Number number ? number.intValue() : 0;
+            case "getDouble":
+                return value instanceof Number number ? number.doubleValue() : 0d;
+            case "getBoolean":
+                return value instanceof Boolean bool ? bool : value instanceof Number number && number.intValue() != 0;
+            case "getBigDecimal":
+                return value != null ? new BigDecimal(value.toString()) : null;
+            default:
+                return value;
+        }
+    }
+
+    private static ResultSetMetaData metaData(String[] columns, int[] types) {
+        return mock(ResultSetMetaData.class, invocation -> {
+            Object[] args = invocation.getArguments();
+            switch (invocation.getMethod().getName()) {
+                case "getColumnCount":
+                    return columns.length;
+                case "getColumnLabel":
+                case "getColumnName":
+                    return columns[(Integer) args[0] - 1];
+                case "getColumnType":
+                    return types[(Integer) args[0] - 1];
+                case "getColumnTypeName":
+                    return String.valueOf(types[(Integer) args[0] - 1]);
+                case "getColumnClassName":
+                    return className(types[(Integer) args[0] - 1]);
+                case "isSigned":
+                    return true;
+                default:
+                    return RETURNS_DEFAULTS.answer(invocation);
+            }
+        });
+    }
+
+    /**
+     * 与 MariaDB Connector/J 对常见类型报告的类名一致
+     */
+    private static String className(int type) {
+        return switch (type) {
+            case Types.BIGINT -> Long.class.getName();
+            case Types.INTEGER -> Integer.class.getName();
+            case Types.DOUBLE -> Double.class.getName();
+            case Types.DECIMAL -> BigDecimal.class.getName();
+            case Types.DATE -> java.sql.Date.class.getName();
+            case Types.TIMESTAMP -> java.sql.Timestamp.class.getName();
+            default -> String.class.getName();
+        };
+    }
+
+    private static final class State {
+        int position = -1;
+        boolean lastNull;
+        boolean closed;
+    }
+}
@@ -41,6 +41,11 @@ CREATE TABLE IF NOT EXISTS database_connection (
     charset_name VARCHAR(50) DEFAULT 'utf8mb4',
     description TEXT,
     is_active TINYINT(1) DEFAULT 1,
+    query_timeout_seconds INT NULL COMMENT '语句默认超时（秒），为空时使用服务全局配置',
+    max_concurrent_queries INT NULL COMMENT '同时执行的语句上限，为空时使用服务全局配置',
+    cost_warn_rows BIGINT NULL COMMENT '预计扫描行数超过该值时提示，为空时使用服务全局配置',
+    cost_limit_rows BIGINT NULL COMMENT '预计扫描行数超过该值时自动追加LIMIT，为空时使用服务全局配置',
+    cost_block_rows BIGINT NULL COMMENT '预计扫描行数超过该值时拒绝执行，为空时使用服务全局配置',
     created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
     updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     KEY idx_database_connection_is_active (is_active),
@@ -76,3 +81,124 @@ CREATE TABLE IF NOT EXISTS chat_message (
     CONSTRAINT fk_chat_message_session_id FOREIGN KEY (session_id) REFERENCES chat_session(id) ON DELETE CASCADE
 ) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
 
+-- 创建只读副本表
+CREATE TABLE IF NOT EXISTS database_replica (
+    id VARCHAR(191) PRIMARY KEY,
+    connection_id VARCHAR(191) NOT NULL COMMENT '所属数据库连接',
+    host VARCHAR(255) NOT NULL,
+    port INT NOT NULL DEFAULT 3306,
+    username VARCHAR(255) NULL COMMENT '为空时沿用主库账号',
+    password VARCHAR(255) NULL,
+    weight INT NOT NULL DEFAULT 1 COMMENT '路由权重',
+    max_lag_seconds INT NULL COMMENT '允许的最大复制延迟（秒），为空时使用服务全局配置',
+    enabled TINYINT(1) NOT NULL DEFAULT 1,
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    KEY idx_database_replica_connection_id (connection_id)
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+
+-- 创建分片连接组表
+CREATE TABLE IF NOT EXISTS database_connection_group (
+    id VARCHAR(191) PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    description TEXT NULL,
+    shard_timeout_seconds INT NULL COMMENT '每个分片上语句的超时（秒），为空时使用服务全局配置',
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS database_connection_group_member (
+    group_id VARCHAR(191) NOT NULL,
+    shard_index INT NOT NULL COMMENT '分片顺序',
+    connection_id VARCHAR(191) NOT NULL,
+    PRIMARY KEY (group_id, shard_index),
+    KEY idx_group_member_connection_id (connection_id),
+    CONSTRAINT fk_group_member_group_id FOREIGN KEY (group_id) REFERENCES database_connection_group(id) ON DELETE CASCADE
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+
+-- 创建列式缓存表配置表
+CREATE TABLE IF NOT EXISTS cached_table (
+    id VARCHAR(191) PRIMARY KEY,
+    connection_id VARCHAR(191) NOT NULL COMMENT '所属数据库连接',
+    table_name VARCHAR(255) NOT NULL,
+    watermark_column VARCHAR(255) NULL COMMENT '判断数据变化的列（如 updated_at），为空时使用 information_schema.TABLES.UPDATE_TIME',
+    refresh_interval_seconds INT NULL COMMENT '检查数据变化的间隔（秒），为空时使用服务全局配置',
+    enabled TINYINT(1) NOT NULL DEFAULT 1,
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    KEY idx_cached_table_connection_id (connection_id)
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+
+-- 创建预聚合汇总表配置表
+CREATE TABLE IF NOT EXISTS rollup_table (
+    id VARCHAR(191) PRIMARY KEY,
+    connection_id VARCHAR(191) NOT NULL COMMENT '所属数据库连接',
+    source_table VARCHAR(255) NOT NULL,
+    table_name VARCHAR(64) NOT NULL COMMENT '库中汇总表的表名',
+    watermark_column VARCHAR(255) NULL COMMENT '增量刷新的水位列，为空时每次整表重建',
+    refresh_interval_seconds INT NULL COMMENT '刷新间隔（秒），为空时使用服务全局配置',
+    enabled TINYINT(1) NOT NULL DEFAULT 1,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING' COMMENT 'PENDING/ACTIVE/FAILED',
+    last_watermark VARCHAR(255) NULL COMMENT '已合并的最大水位值',
+    row_count BIGINT NULL,
+    last_refreshed_at DATETIME NULL,
+    last_error TEXT NULL,
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    KEY idx_rollup_table_connection_id (connection_id)
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS rollup_table_dimension (
+    rollup_id VARCHAR(191) NOT NULL,
+    position INT NOT NULL,
+    expression VARCHAR(255) NOT NULL COMMENT '分组维度，汇总表中的列 d<position>',
+    PRIMARY KEY (rollup_id, position),
+    CONSTRAINT fk_rollup_dimension_rollup_id FOREIGN KEY (rollup_id) REFERENCES rollup_table(id) ON DELETE CASCADE
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS rollup_table_measure (
+    rollup_id VARCHAR(191) NOT NULL,
+    position INT NOT NULL,
+    expression VARCHAR(255) NOT NULL COMMENT '部分聚合，汇总表中的列 m<position>',
+    PRIMARY KEY (rollup_id, position),
+    CONSTRAINT fk_rollup_measure_rollup_id FOREIGN KEY (rollup_id) REFERENCES rollup_table(id) ON DELETE CASCADE
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+
+-- 创建字段画像表（后台统计，供提示词使用）
+CREATE TABLE IF NOT EXISTS column_profile (
+    id VARCHAR(191) PRIMARY KEY COMMENT '由连接、表名、字段名生成',
+    connection_id VARCHAR(191) NOT NULL COMMENT '所属数据库连接',
+    table_name VARCHAR(255) NOT NULL,
+    column_name VARCHAR(255) NOT NULL,
+    ordinal_position INT NOT NULL,
+    row_count BIGINT NULL COMMENT '统计时扫描的行数',
+    null_ratio DOUBLE NULL,
+    min_value VARCHAR(255) NULL,
+    max_value VARCHAR(255) NULL,
+    distinct_count BIGINT NULL COMMENT 'HyperLogLog 估算的不同值数',
+    top_values TEXT NULL COMMENT '高频值及次数（JSON）',
+    complete_values TINYINT(1) NULL COMMENT 'top_values 是否为扫描到的全部取值',
+    sampled TINYINT(1) NULL COMMENT '扫描是否在 max-rows 处截止',
+    sample_values TEXT NULL COMMENT '样例值（JSON）',
+    profiled_at DATETIME NULL,
+    KEY idx_column_profile_connection_table (connection_id, table_name)
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+
+-- 创建异步查询任务表
+CREATE TABLE IF NOT EXISTS query_job (
+    id VARCHAR(64) PRIMARY KEY,
+    user_id VARCHAR(191) NULL,
+    session_id BIGINT NULL COMMENT '关联会话',
+    message_id BIGINT NULL COMMENT '结果写回的助手消息',
+    connection_id VARCHAR(191) NULL,
+    sql_query LONGTEXT NOT NULL,
+    status VARCHAR(20) NOT NULL COMMENT 'PENDING/RUNNING/SUCCEEDED/FAILED/CANCELLED',
+    row_count BIGINT NULL,
+    error_message TEXT NULL,
+    result_file VARCHAR(512) NULL COMMENT '落盘结果文件路径',
+    created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    started_at DATETIME NULL,
+    finished_at DATETIME NULL,
+    KEY idx_query_job_session_id (session_id),
+    KEY idx_query_job_status (status)
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;